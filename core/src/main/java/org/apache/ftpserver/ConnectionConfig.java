@@ -36,12 +36,39 @@ public interface ConnectionConfig {
 
     /**
      * The delay in number of milliseconds between login failures. Important to 
-     * make brute force attacks harder.
+     * make brute force attacks harder. No further requests of the session are
+     * read during the delay, but no thread is held either.
      * 
      * @return The delay time in milliseconds
      */
     int getLoginFailureDelay();
 
+    /**
+     * The factor the login failure delay is multiplied by for every previous
+     * login failure in the same session.
+     * 
+     * @return The factor, 1 for a fixed delay
+     */
+    int getLoginFailureBackoff();
+
+    /**
+     * The factor the login failure delay is multiplied by for every previous
+     * recent login failure from the same IP address, in any session. Recent
+     * failures are counted as for bans, see {@link #getBanDecayTime()}. The
+     * longer of the session and address delays is used.
+     * 
+     * @return The factor, 1 to not take other sessions into account
+     */
+    int getAddressLoginFailureBackoff();
+
+    /**
+     * The maximum delay in number of milliseconds after a login failure,
+     * however many failures there were before.
+     * 
+     * @return The maximum delay time in milliseconds
+     */
+    int getMaxLoginFailureDelay();
+
     /**
      * The maximum number of time an anonymous user can fail to login before getting disconnected
      * @return The maximum number of failer login attempts
@@ -68,4 +95,119 @@ public interface ConnectionConfig {
      *         processing client requests.
      */
     int getMaxThreads();
+
+    /**
+     * Returns the maximum length, in bytes, of a single request line sent by
+     * a client. Sessions sending longer lines are closed.
+     * 
+     * @return the maximum length of a request line
+     */
+    int getMaxCommandLength();
+
+    /**
+     * Are client requests processed on virtual threads? If so, commands for
+     * each session are still executed in order, but without a limit on the
+     * number of sessions executing commands at the same time, and
+     * {@link #getMaxThreads()} is not used.
+     * 
+     * @return true if requests are processed on virtual threads
+     */
+    boolean isVirtualThreadsEnabled();
+
+    /**
+     * Returns the maximum number of client events waiting for a thread of the
+     * thread pool. New connections are rejected while this many events are
+     * queued. Not used if requests are processed on virtual threads.
+     * 
+     * @return the maximum number of queued events, 0 for no limit
+     */
+    int getMaxQueuedEvents();
+
+    /**
+     * Returns the maximum number of data connections open at the same time.
+     * New connections are rejected while this many are open.
+     * 
+     * @return the maximum number of open data connections, 0 for no limit
+     */
+    int getMaxActiveTransfers();
+
+    /**
+     * Returns the percentage of the maximum heap size in use above which new
+     * connections are rejected.
+     * 
+     * @return the maximum heap usage in percent, 0 for no limit
+     */
+    int getMaxHeapUsage();
+
+    /**
+     * Returns the load, in percent of the limits above, at which anonymous
+     * logins are refused, so that anonymous users are shed before other
+     * users are turned away.
+     * 
+     * @return the load in percent at which anonymous logins are refused, 0
+     *         to treat anonymous users like any other
+     */
+    int getAnonymousShedLoad();
+
+    /**
+     * Returns the number of recent login failures from an IP address after
+     * which the address is temporarily banned. Failures are counted with
+     * exponential decay, see {@link #getBanDecayTime()}.
+     * 
+     * @return the number of login failures, 0 to never ban addresses
+     */
+    int getBanLoginFailures();
+
+    /**
+     * Returns the number of recent login failures from a subnet, a /24 for
+     * IPv4 and a /64 for IPv6, after which the whole subnet is temporarily
+     * banned.
+     * 
+     * @return the number of login failures, 0 to never ban subnets
+     */
+    int getBanSubnetLoginFailures();
+
+    /**
+     * Returns the time in seconds after which a login failure only counts
+     * half towards a ban.
+     * 
+     * @return the half-life of login failures in seconds
+     */
+    int getBanDecayTime();
+
+    /**
+     * Returns the duration in seconds of the first ban of an address or
+     * subnet. The duration doubles for every further ban, up to
+     * {@link #getMaxBanDuration()}.
+     * 
+     * @return the duration of the first ban in seconds
+     */
+    int getBanDuration();
+
+    /**
+     * Returns the maximum duration in seconds of a ban. An address or subnet
+     * not banned for this long again starts with the shortest ban.
+     * 
+     * @return the maximum duration of a ban in seconds
+     */
+    int getMaxBanDuration();
+
+    /**
+     * Returns the number of threads verifying passwords. Logins are
+     * authenticated on these threads rather than on the threads processing
+     * client requests, so that expensive password hashing or a slow user
+     * manager does not hold up the commands of other sessions.
+     * 
+     * @return the number of authentication threads, 0 to authenticate on the
+     *         thread processing the PASS command
+     */
+    int getAuthenticationThreads();
+
+    /**
+     * Returns the maximum number of logins waiting for an authentication
+     * thread. Further logins are rejected with a 421 reply.
+     * 
+     * @return the maximum number of queued logins
+     */
+    int getMaxQueuedAuthentications();
 }
@@ -20,6 +20,7 @@
 package org.apache.ftpserver;
 
 import org.apache.ftpserver.impl.DefaultConnectionConfig;
+import org.apache.ftpserver.listener.nio.FtpRequestDecoder;
 
 /**
  * Factory for creating connection configurations
@@ -41,6 +42,75 @@ public class ConnectionConfigFactory {
 
     private int maxThreads = 0;
 
+    private int maxCommandLength = FtpRequestDecoder.DEFAULT_MAX_LINE_LENGTH;
+
+    private boolean virtualThreadsEnabled = false;
+
+    private int maxQueuedEvents = 0;
+
+    private int maxActiveTransfers = 0;
+
+    private int maxHeapUsage = 0;
+
+    private int anonymousShedLoad = 80;
+
+    private int banLoginFailures = 0;
+
+    private int banSubnetLoginFailures = 0;
+
+    private int banDecayTime = 600;
+
+    private int banDuration = 300;
+
+    private int maxBanDuration = 86400;
+
+    private int loginFailureBackoff = 1;
+
+    private int addressLoginFailureBackoff = 1;
+
+    private int maxLoginFailureDelay = 30000;
+
+    private int authenticationThreads = 4;
+
+    private int maxQueuedAuthentications = 256;
+
+    /**
+     * Default constructor
+     */
+    public ConnectionConfigFactory() {
+        // do nothing
+    }
+
+    /**
+     * Copy constructor, will copy properties from the provided connection
+     * configuration.
+     * @param config The connection configuration which properties will be used for this factory
+     */
+    public ConnectionConfigFactory(ConnectionConfig config) {
+        anonymousLoginEnabled = config.isAnonymousLoginEnabled();
+        loginFailureDelay = config.getLoginFailureDelay();
+        maxLogins = config.getMaxLogins();
+        maxAnonymousLogins = config.getMaxAnonymousLogins();
+        maxLoginFailures = config.getMaxLoginFailures();
+        maxThreads = config.getMaxThreads();
+        maxCommandLength = config.getMaxCommandLength();
+        virtualThreadsEnabled = config.isVirtualThreadsEnabled();
+        maxQueuedEvents = config.getMaxQueuedEvents();
+        maxActiveTransfers = config.getMaxActiveTransfers();
+        maxHeapUsage = config.getMaxHeapUsage();
+        anonymousShedLoad = config.getAnonymousShedLoad();
+        banLoginFailures = config.getBanLoginFailures();
+        banSubnetLoginFailures = config.getBanSubnetLoginFailures();
+        banDecayTime = config.getBanDecayTime();
+        banDuration = config.getBanDuration();
+        maxBanDuration = config.getMaxBanDuration();
+        loginFailureBackoff = config.getLoginFailureBackoff();
+        addressLoginFailureBackoff = config.getAddressLoginFailureBackoff();
+        maxLoginFailureDelay = config.getMaxLoginFailureDelay();
+        authenticationThreads = config.getAuthenticationThreads();
+        maxQueuedAuthentications = config.getMaxQueuedAuthentications();
+    }
+
     /**
      * Create a connection configuration instances based on the configuration on this factory
      * @return The {@link ConnectionConfig} instance
@@ -48,7 +118,13 @@ public class ConnectionConfigFactory {
     public ConnectionConfig createConnectionConfig() {
         return new DefaultConnectionConfig(anonymousLoginEnabled,
                 loginFailureDelay, maxLogins, maxAnonymousLogins,
-                maxLoginFailures, maxThreads);
+                maxLoginFailures, maxThreads, maxCommandLength,
+                virtualThreadsEnabled, maxQueuedEvents, maxActiveTransfers,
+                maxHeapUsage, anonymousShedLoad, banLoginFailures,
+                banSubnetLoginFailures, banDecayTime, banDuration,
+                maxBanDuration, loginFailureBackoff,
+                addressLoginFailureBackoff, maxLoginFailureDelay,
+                authenticationThreads, maxQueuedAuthentications);
     }
 
     /**
@@ -125,6 +201,257 @@ public class ConnectionConfigFactory {
         this.maxThreads = maxThreads;
     }
 
+    /**
+     * Returns the maximum length, in bytes, of a single request line sent by
+     * a client.
+     * 
+     * @return the maximum length of a request line
+     */
+    public int getMaxCommandLength() {
+        return maxCommandLength;
+    }
+
+    /**
+     * Sets the maximum length, in bytes, of a single request line sent by a
+     * client. Sessions sending longer lines are closed, which protects the
+     * server from clients trickling in never ending lines.
+     * 
+     * @param maxCommandLength
+     *            the maximum length of a request line
+     */
+    public void setMaxCommandLength(int maxCommandLength) {
+        this.maxCommandLength = maxCommandLength;
+    }
+
+    /**
+     * Are client requests processed on virtual threads?
+     * 
+     * @return true if requests are processed on virtual threads
+     */
+    public boolean isVirtualThreadsEnabled() {
+        return virtualThreadsEnabled;
+    }
+
+    /**
+     * Sets if client requests should be processed on virtual threads rather
+     * than on the shared thread pool. Commands for each session are still
+     * executed in order, but the number of sessions executing commands, or
+     * blocking in data transfers, at the same time is no longer limited by
+     * {@link #setMaxThreads(int)}. Requires a JVM supporting virtual threads,
+     * on older JVMs each active session will use a platform thread instead.
+     * 
+     * @param virtualThreadsEnabled
+     *            true if requests should be processed on virtual threads
+     */
+    public void setVirtualThreadsEnabled(boolean virtualThreadsEnabled) {
+        this.virtualThreadsEnabled = virtualThreadsEnabled;
+    }
+
+    /**
+     * Returns the maximum number of client events waiting for a thread of the
+     * thread pool before new connections are rejected.
+     * 
+     * @return the maximum number of queued events, 0 for no limit
+     */
+    public int getMaxQueuedEvents() {
+        return maxQueuedEvents;
+    }
+
+    /**
+     * Sets the maximum number of client events waiting for a thread of the
+     * thread pool. While this many events are queued, new connections are
+     * rejected with a 421 reply straight away, rather than being greeted and
+     * then left waiting behind the queued work. Not used if requests are
+     * processed on virtual threads.
+     * 
+     * @param maxQueuedEvents
+     *            the maximum number of queued events, 0 for no limit
+     */
+    public void setMaxQueuedEvents(int maxQueuedEvents) {
+        this.maxQueuedEvents = maxQueuedEvents;
+    }
+
+    /**
+     * Returns the maximum number of data connections open at the same time
+     * before new connections are rejected.
+     * 
+     * @return the maximum number of open data connections, 0 for no limit
+     */
+    public int getMaxActiveTransfers() {
+        return maxActiveTransfers;
+    }
+
+    /**
+     * Sets the maximum number of data connections open at the same time.
+     * While this many are open, new connections are rejected with a 421
+     * reply. Transfers of sessions already connected are not limited.
+     * 
+     * @param maxActiveTransfers
+     *            the maximum number of open data connections, 0 for no limit
+     */
+    public void setMaxActiveTransfers(int maxActiveTransfers) {
+        this.maxActiveTransfers = maxActiveTransfers;
+    }
+
+    /**
+     * Returns the percentage of the maximum heap size in use above which new
+     * connections are rejected.
+     * 
+     * @return the maximum heap usage in percent, 0 for no limit
+     */
+    public int getMaxHeapUsage() {
+        return maxHeapUsage;
+    }
+
+    /**
+     * Sets the percentage of the maximum heap size in use above which new
+     * connections are rejected with a 421 reply. The heap in use includes
+     * garbage not yet collected, so leave some headroom.
+     * 
+     * @param maxHeapUsage
+     *            the maximum heap usage in percent, 0 for no limit
+     */
+    public void setMaxHeapUsage(int maxHeapUsage) {
+        this.maxHeapUsage = maxHeapUsage;
+    }
+
+    /**
+     * Returns the load, in percent of the admission limits, at which
+     * anonymous logins are refused.
+     * 
+     * @return the load in percent at which anonymous logins are refused
+     */
+    public int getAnonymousShedLoad() {
+        return anonymousShedLoad;
+    }
+
+    /**
+     * Sets the load, in percent of the admission limits, at which anonymous
+     * logins are refused. With the default of 80, anonymous users get a 421
+     * reply to USER once the server is at 80% of its maximum queued events,
+     * active transfers or heap usage, keeping the remaining capacity for
+     * other users.
+     * 
+     * @param anonymousShedLoad
+     *            the load in percent at which anonymous logins are refused, 0
+     *            to treat anonymous users like any other
+     */
+    public void setAnonymousShedLoad(int anonymousShedLoad) {
+        this.anonymousShedLoad = anonymousShedLoad;
+    }
+
+    /**
+     * Returns the number of recent login failures from an IP address after
+     * which the address is temporarily banned.
+     * 
+     * @return the number of login failures, 0 to never ban addresses
+     */
+    public int getBanLoginFailures() {
+        return banLoginFailures;
+    }
+
+    /**
+     * Sets the number of recent login failures from an IP address after
+     * which the address is temporarily banned. Connections from banned
+     * addresses are closed as soon as they are accepted, before any other
+     * processing. Unlike {@link #setMaxLoginFailures(int)}, failures are
+     * counted across sessions, so reconnecting does not help an attacker.
+     * 
+     * @param banLoginFailures
+     *            the number of login failures, 0 to never ban addresses
+     */
+    public void setBanLoginFailures(int banLoginFailures) {
+        this.banLoginFailures = banLoginFailures;
+    }
+
+    /**
+     * Returns the number of recent login failures from a subnet after which
+     * the whole subnet is temporarily banned.
+     * 
+     * @return the number of login failures, 0 to never ban subnets
+     */
+    public int getBanSubnetLoginFailures() {
+        return banSubnetLoginFailures;
+    }
+
+    /**
+     * Sets the number of recent login failures from a subnet, a /24 for IPv4
+     * and a /64 for IPv6, after which the whole subnet is temporarily
+     * banned. Catches attacks spread over many addresses of the same
+     * network, set it well above {@link #setBanLoginFailures(int)} as users
+     * behind the same NAT or proxy share a subnet.
+     * 
+     * @param banSubnetLoginFailures
+     *            the number of login failures, 0 to never ban subnets
+     */
+    public void setBanSubnetLoginFailures(int banSubnetLoginFailures) {
+        this.banSubnetLoginFailures = banSubnetLoginFailures;
+    }
+
+    /**
+     * Returns the time in seconds after which a login failure only counts
+     * half towards a ban.
+     * 
+     * @return the half-life of login failures in seconds
+     */
+    public int getBanDecayTime() {
+        return banDecayTime;
+    }
+
+    /**
+     * Sets the time in seconds after which a login failure only counts half
+     * towards a ban. Failures are counted with exponential decay, so that
+     * occasional typos never add up to a ban.
+     * 
+     * @param banDecayTime
+     *            the half-life of login failures in seconds
+     */
+    public void setBanDecayTime(int banDecayTime) {
+        this.banDecayTime = banDecayTime;
+    }
+
+    /**
+     * Returns the duration in seconds of the first ban of an address or
+     * subnet.
+     * 
+     * @return the duration of the first ban in seconds
+     */
+    public int getBanDuration() {
+        return banDuration;
+    }
+
+    /**
+     * Sets the duration in seconds of the first ban of an address or subnet.
+     * The duration doubles for every further ban, up to the maximum ban
+     * duration.
+     * 
+     * @param banDuration
+     *            the duration of the first ban in seconds
+     */
+    public void setBanDuration(int banDuration) {
+        this.banDuration = banDuration;
+    }
+
+    /**
+     * Returns the maximum duration in seconds of a ban.
+     * 
+     * @return the maximum duration of a ban in seconds
+     */
+    public int getMaxBanDuration() {
+        return maxBanDuration;
+    }
+
+    /**
+     * Sets the maximum duration in seconds of a ban. An address or subnet
+     * not banned for this long again starts with the shortest ban.
+     * 
+     * @param maxBanDuration
+     *            the maximum duration of a ban in seconds
+     */
+    public void setMaxBanDuration(int maxBanDuration) {
+        this.maxBanDuration = maxBanDuration;
+    }
+
     /**
      * Set if anonymous logins are allowed at the server
      * @param anonymousLoginEnabled true if anonymous logins should be enabled
@@ -151,7 +478,9 @@ public class ConnectionConfigFactory {
 
     /**
      * Set the delay in number of milliseconds between login failures. Important to 
-     * make brute force attacks harder.
+     * make brute force attacks harder. The failure is replied to straight
+     * away, but no further requests of the session are read until the delay
+     * has passed. No thread is held during the delay.
      * 
      * @param loginFailureDelay The delay time in milliseconds
      */
@@ -159,4 +488,111 @@ public class ConnectionConfigFactory {
         this.loginFailureDelay = loginFailureDelay;
     }
 
+    /**
+     * The factor the login failure delay is multiplied by for every previous
+     * login failure in the same session.
+     * 
+     * @return The factor, 1 for a fixed delay
+     */
+    public int getLoginFailureBackoff() {
+        return loginFailureBackoff;
+    }
+
+    /**
+     * Set the factor the login failure delay is multiplied by for every
+     * previous login failure in the same session, e.g. with 2 and a delay of
+     * 500 milliseconds, the third failure is delayed by 2 seconds.
+     * 
+     * @param loginFailureBackoff The factor, 1 for a fixed delay
+     */
+    public void setLoginFailureBackoff(final int loginFailureBackoff) {
+        this.loginFailureBackoff = loginFailureBackoff;
+    }
+
+    /**
+     * The factor the login failure delay is multiplied by for every previous
+     * recent login failure from the same IP address.
+     * 
+     * @return The factor, 1 to not take other sessions into account
+     */
+    public int getAddressLoginFailureBackoff() {
+        return addressLoginFailureBackoff;
+    }
+
+    /**
+     * Set the factor the login failure delay is multiplied by for every
+     * previous recent login failure from the same IP address, in any session,
+     * so that reconnecting does not reset the delay. Failures count for less
+     * as they age, as set by {@link #setBanDecayTime(int)}. The longer of the
+     * session and address delays is used.
+     * 
+     * @param addressLoginFailureBackoff The factor, 1 to not take other sessions into account
+     */
+    public void setAddressLoginFailureBackoff(
+            final int addressLoginFailureBackoff) {
+        this.addressLoginFailureBackoff = addressLoginFailureBackoff;
+    }
+
+    /**
+     * The maximum delay in number of milliseconds after a login failure.
+     * 
+     * @return The maximum delay time in milliseconds
+     */
+    public int getMaxLoginFailureDelay() {
+        return maxLoginFailureDelay;
+    }
+
+    /**
+     * Set the maximum delay in number of milliseconds after a login failure,
+     * however many failures there were before.
+     * 
+     * @param maxLoginFailureDelay The maximum delay time in milliseconds
+     */
+    public void setMaxLoginFailureDelay(final int maxLoginFailureDelay) {
+        this.maxLoginFailureDelay = maxLoginFailureDelay;
+    }
+
+    /**
+     * The number of threads verifying passwords.
+     * 
+     * @return The number of authentication threads
+     */
+    public int getAuthenticationThreads() {
+        return authenticationThreads;
+    }
+
+    /**
+     * Set the number of threads verifying passwords. The user manager is
+     * called on these threads, with reads from the session suspended until
+     * the login has been verified, so that expensive password hashing or a
+     * slow user manager only holds up other logins, not the commands of
+     * logged in sessions.
+     * 
+     * @param authenticationThreads The number of authentication threads, 0 to authenticate on the thread processing the PASS command
+     */
+    public void setAuthenticationThreads(final int authenticationThreads) {
+        this.authenticationThreads = authenticationThreads;
+    }
+
+    /**
+     * The maximum number of logins waiting for an authentication thread.
+     * 
+     * @return The maximum number of queued logins
+     */
+    public int getMaxQueuedAuthentications() {
+        return maxQueuedAuthentications;
+    }
+
+    /**
+     * Set the maximum number of logins waiting for an authentication thread.
+     * When this many are queued, further logins are rejected with a 421
+     * reply and their session is closed, rather than queueing up behind a
+     * brute force attack.
+     * 
+     * @param maxQueuedAuthentications The maximum number of queued logins
+     */
+    public void setMaxQueuedAuthentications(final int maxQueuedAuthentications) {
+        this.maxQueuedAuthentications = maxQueuedAuthentications;
+    }
+
 }
@@ -29,7 +29,10 @@ import org.apache.ftpserver.ftplet.UserManager;
 import org.apache.ftpserver.ftpletcontainer.impl.DefaultFtpletContainer;
 import org.apache.ftpserver.impl.DefaultFtpServer;
 import org.apache.ftpserver.impl.DefaultFtpServerContext;
+import org.apache.ftpserver.impl.ObserverEventBus;
 import org.apache.ftpserver.listener.Listener;
+import org.apache.ftpserver.logincounter.FileLoginCounterStoreFactory;
+import org.apache.ftpserver.logincounter.LoginCounterStore;
 import org.apache.ftpserver.message.MessageResource;
 
 /**
@@ -226,4 +229,97 @@ public class FtpServerFactory {
     public void setConnectionConfig(final ConnectionConfig connectionConfig) {
         serverContext.setConnectionConfig(connectionConfig);
     }
+
+    /**
+     * Get the store counting the current logins per user
+     * 
+     * @return The {@link LoginCounterStore}
+     */
+    public LoginCounterStore getLoginCounterStore() {
+        return serverContext.getLoginCounterStore();
+    }
+
+    /**
+     * Set the store counting the current logins per user, which the login
+     * limits of users are checked against. By default the logins of each
+     * server are counted separately, servers sharing a store, for example
+     * one created by {@link FileLoginCounterStoreFactory}, enforce the limits
+     * across all of them.
+     * 
+     * @param loginCounterStore
+     *            The {@link LoginCounterStore} to be used by servers created
+     *            by this factory
+     */
+    public void setLoginCounterStore(final LoginCounterStore loginCounterStore) {
+        serverContext.setLoginCounterStore(loginCounterStore);
+    }
+
+    /**
+     * Get the bus delivering the statistics and file events to observers
+     * 
+     * @return The {@link ObserverEventBus}, or null if not installed
+     */
+    public ObserverEventBus getObserverEventBus() {
+        return serverContext.getObserverEventBus();
+    }
+
+    /**
+     * Set a bus delivering the statistics and file events of servers created
+     * by this factory to the observers set on it, on a dedicated thread
+     * rather than the threads of the sessions. The bus is installed as the
+     * observer of the statistics, started with the server and stopped with
+     * it. Not installed by default. An observer set on the statistics is
+     * moved to the bus, a file observer set on the statistics must be ported
+     * to {@link org.apache.ftpserver.impl.SnapshotFileObserver} and set on
+     * the bus instead, the server fails to start otherwise.
+     * 
+     * @param observerEventBus
+     *            The {@link ObserverEventBus}, or null for none
+     */
+    public void setObserverEventBus(final ObserverEventBus observerEventBus) {
+        serverContext.setObserverEventBus(observerEventBus);
+    }
+
+    /**
+     * Get the port of the Prometheus metrics endpoint of servers created by
+     * this factory
+     * 
+     * @return The port, 0 for any free port or -1 if the endpoint is
+     *         disabled
+     */
+    public int getMetricsPort() {
+        return serverContext.getMetricsPort();
+    }
+
+    /**
+     * Set the port on which servers created by this factory serve their
+     * statistics and metrics in the Prometheus text format, on
+     * <code>/metrics</code>. Disabled by default.
+     * 
+     * @param metricsPort
+     *            The port, 0 for any free port or -1 to disable the endpoint
+     */
+    public void setMetricsPort(final int metricsPort) {
+        serverContext.setMetricsPort(metricsPort);
+    }
+
+    /**
+     * Get the address the Prometheus metrics endpoint listens on
+     * 
+     * @return The address, or null for all addresses
+     */
+    public String getMetricsAddress() {
+        return serverContext.getMetricsAddress();
+    }
+
+    /**
+     * Set the address the Prometheus metrics endpoint listens on, for
+     * example to only serve the metrics on the loopback interface
+     * 
+     * @param metricsAddress
+     *            The address, or null for all addresses
+     */
+    public void setMetricsAddress(final String metricsAddress) {
+        serverContext.setMetricsAddress(metricsAddress);
+    }
 }
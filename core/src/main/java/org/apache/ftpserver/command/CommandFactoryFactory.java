@@ -64,6 +64,7 @@ import org.apache.ftpserver.command.impl.SITE;
 import org.apache.ftpserver.command.impl.SITE_DESCUSER;
 import org.apache.ftpserver.command.impl.SITE_HELP;
 import org.apache.ftpserver.command.impl.SITE_STAT;
+import org.apache.ftpserver.command.impl.SITE_TOP;
 import org.apache.ftpserver.command.impl.SITE_WHO;
 import org.apache.ftpserver.command.impl.SITE_ZONE;
 import org.apache.ftpserver.command.impl.SIZE;
@@ -128,6 +129,7 @@ public class CommandFactoryFactory {
         DEFAULT_COMMAND_MAP.put("SITE_DESCUSER", new SITE_DESCUSER());
         DEFAULT_COMMAND_MAP.put("SITE_HELP", new SITE_HELP());
         DEFAULT_COMMAND_MAP.put("SITE_STAT", new SITE_STAT());
+        DEFAULT_COMMAND_MAP.put("SITE_TOP", new SITE_TOP());
         DEFAULT_COMMAND_MAP.put("SITE_WHO", new SITE_WHO());
         DEFAULT_COMMAND_MAP.put("SITE_ZONE", new SITE_ZONE());
 
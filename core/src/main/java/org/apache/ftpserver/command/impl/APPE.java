@@ -175,6 +175,7 @@ public class APPE extends AbstractCommand {
                 ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
                         .getFtpStatistics();
                 ftpStat.setUpload(session, file, transSz);
+                context.getHeavyHitters().recordUpload(session, file, transSz);
                 
             } catch (SocketException e) {
                 LOG.debug("SocketException during file upload", e);
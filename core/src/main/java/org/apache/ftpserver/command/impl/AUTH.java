@@ -107,6 +107,9 @@ public class AUTH extends AbstractCommand {
             }
 
             try {
+                // replies to earlier pipelined commands must go out in clear
+                // text, before the SSL filter is in place
+                session.flushReplies();
                 secureSession(session, authType);
                 session.write(LocalizedFtpReply.translate(session, request, context,
                         234, "AUTH." + authType, null));
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.command.impl;
+
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.ftpserver.command.Command;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Immutable lookup table that resolves a command verb directly from the raw
+ * bytes of a request line. Verbs of up to eight ASCII characters are packed
+ * into a <code>long</code> (upper cased on the fly) and looked up in an open
+ * addressing table, so that the decoder never has to create a
+ * <code>String</code> for known commands.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class CommandVerbTable {
+
+    /**
+     * The maximum length of a verb which can be held by this table
+     */
+    public static final int MAX_VERB_LENGTH = 8;
+
+    /**
+     * Returned by {@link #lookup(byte[], int, int)} for verbs which are known
+     * not to match any command
+     */
+    public static final int NOT_FOUND = -1;
+
+    /**
+     * Returned by {@link #lookup(byte[], int, int)} for verbs which can not be
+     * held by this table, these must be resolved by the command factory
+     */
+    public static final int NOT_INDEXED = -2;
+
+    private final long[] keys;
+
+    private final String[] names;
+
+    private final Command[] commands;
+
+    private final int mask;
+
+    /**
+     * Internal constructor, do not use directly.
+     *
+     * @param commandMap
+     *            The commands keyed by their upper case name. Names which are
+     *            too long or not plain ASCII are ignored and must be resolved
+     *            through the {@link org.apache.ftpserver.command.CommandFactory}
+     */
+    public CommandVerbTable(Map<String, Command> commandMap) {
+        int size = 16;
+        while (size < commandMap.size() * 4) {
+            size <<= 1;
+        }
+        keys = new long[size];
+        names = new String[size];
+        commands = new Command[size];
+        mask = size - 1;
+
+        for (Entry<String, Command> entry : commandMap.entrySet()) {
+            String name = entry.getKey();
+            long key = pack(name);
+            if (key == 0) {
+                continue;
+            }
+
+            int slot = slot(key);
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            names[slot] = name;
+            commands[slot] = entry.getValue();
+        }
+    }
+
+    /**
+     * Find the table slot for the verb held in
+     * <code>buf[offset..offset+length)</code>, ignoring case.
+     *
+     * @return The slot, {@link #NOT_FOUND} or {@link #NOT_INDEXED}
+     */
+    public int lookup(byte[] buf, int offset, int length) {
+        if (length == 0) {
+            return NOT_FOUND;
+        } else if (length > MAX_VERB_LENGTH) {
+            return NOT_INDEXED;
+        }
+        long key = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int b = buf[i] & 0xff;
+            if (b >= 'a' && b <= 'z') {
+                b -= 'a' - 'A';
+            } else if (b >= 0x80 || b <= ' ') {
+                return NOT_INDEXED;
+            }
+            key = (key << 8) | b;
+        }
+
+        int slot = slot(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Get the upper case name of the verb in the provided slot
+     */
+    public String getName(int slot) {
+        return names[slot];
+    }
+
+    /**
+     * Get the command registered for the verb in the provided slot
+     */
+    public Command getCommand(int slot) {
+        return commands[slot];
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40) & mask;
+    }
+
+    private static long pack(String name) {
+        if (name.length() == 0 || name.length() > MAX_VERB_LENGTH) {
+            return 0;
+        }
+        long key = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 0x80 || c <= ' ' || (c >= 'a' && c <= 'z')) {
+                return 0;
+            }
+            key = (key << 8) | c;
+        }
+        return key;
+    }
+}
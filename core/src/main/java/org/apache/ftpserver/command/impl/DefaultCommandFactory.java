@@ -47,10 +47,13 @@ public class DefaultCommandFactory implements CommandFactory {
      */
     public DefaultCommandFactory(Map<String, Command> commandMap) {
         this.commandMap = commandMap;
+        this.verbTable = new CommandVerbTable(commandMap);
     }
 
     private final Map<String, Command> commandMap;
 
+    private final CommandVerbTable verbTable;
+
     /**
      * Get command. Returns null if not found.
      */
@@ -61,4 +64,12 @@ public class DefaultCommandFactory implements CommandFactory {
         String upperCaseCmdName = cmdName.toUpperCase();
         return commandMap.get(upperCaseCmdName);
     }
+
+    /**
+     * Get the table used by the protocol decoder to resolve commands
+     * straight from the bytes of the request line.
+     */
+    public CommandVerbTable getVerbTable() {
+        return verbTable;
+    }
 }
@@ -20,8 +20,13 @@
 package org.apache.ftpserver.command.impl;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.ftpserver.ConnectionConfig;
 import org.apache.ftpserver.command.AbstractCommand;
 import org.apache.ftpserver.ftplet.Authentication;
 import org.apache.ftpserver.ftplet.AuthenticationFailedException;
@@ -33,11 +38,16 @@ import org.apache.ftpserver.ftplet.FtpRequest;
 import org.apache.ftpserver.ftplet.User;
 import org.apache.ftpserver.ftplet.UserManager;
 import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpMetrics;
 import org.apache.ftpserver.impl.FtpServerContext;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.ftpserver.impl.PendingCommand;
 import org.apache.ftpserver.impl.ServerFtpStatistics;
+import org.apache.ftpserver.ipfilter.BanManager;
 import org.apache.ftpserver.usermanager.AnonymousAuthentication;
+import org.apache.ftpserver.usermanager.UserManagerUnavailableException;
 import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
+import org.apache.ftpserver.usermanager.impl.CompiledUser;
 import org.apache.ftpserver.usermanager.impl.UserMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,13 +67,15 @@ public class PASS extends AbstractCommand {
     private final Logger LOG = LoggerFactory.getLogger(PASS.class);
 
     /**
-     * Execute command.
+     * Execute command. The user is authenticated on the authentication
+     * executor if there is one, with reads from the session suspended until
+     * the login has been completed on the executor of the session.
      */
     public void execute(final FtpIoSession session,
             final FtpServerContext context, final FtpRequest request)
             throws IOException, FtpException {
 
-        boolean success = false;
+        boolean started = false;
 
         ServerFtpStatistics stat = (ServerFtpStatistics) context
                 .getFtpStatistics();
@@ -73,11 +85,11 @@ public class PASS extends AbstractCommand {
             session.resetState();
 
             // argument check
-            String password = request.getArgument();
+            final String password = request.getArgument();
 
 
             // check user name
-            String userName = session.getUserArgument();
+            final String userName = session.getUserArgument();
 
             if (userName == null && session.getUser() == null) {
                 session.write(LocalizedFtpReply.translate(session, request, context,
@@ -96,7 +108,7 @@ public class PASS extends AbstractCommand {
 
             // anonymous login limit check
 
-            boolean anonymous = userName != null
+            final boolean anonymous = userName != null
                     && userName.equals("anonymous");
             if (anonymous) {
                 int currAnonLogin = stat.getCurrentAnonymousLoginNumber();
@@ -143,34 +155,188 @@ public class PASS extends AbstractCommand {
                 return;
             }
 
-            // authenticate user
-            UserManager userManager = context.getUserManager();
-            User authenticatedUser = null;
-            try {
-                UserMetadata userMetadata = new UserMetadata();
+            UserMetadata userMetadata = new UserMetadata();
 
-                if (session.getRemoteAddress() instanceof InetSocketAddress) {
-                    userMetadata.setInetAddress(((InetSocketAddress) session
-                            .getRemoteAddress()).getAddress());
-                }
-                userMetadata.setCertificateChain(session
-                        .getClientCertificates());
+            if (session.getRemoteAddress() instanceof InetSocketAddress) {
+                userMetadata.setInetAddress(((InetSocketAddress) session
+                        .getRemoteAddress()).getAddress());
+            }
+            userMetadata.setCertificateChain(session
+                    .getClientCertificates());
 
-                Authentication auth;
-                if (anonymous) {
-                    auth = new AnonymousAuthentication(userMetadata);
-                } else {
-                    auth = new UsernamePasswordAuthentication(userName,
-                            password, userMetadata);
+            final Authentication auth;
+            if (anonymous) {
+                auth = new AnonymousAuthentication(userMetadata);
+            } else {
+                auth = new UsernamePasswordAuthentication(userName,
+                        password, userMetadata);
+            }
+
+            ExecutorService authenticationExecutor = context
+                    .getAuthenticationExecutor();
+            if (authenticationExecutor == null) {
+                started = true;
+                User authenticatedUser;
+                try {
+                    authenticatedUser = authenticate(context, auth);
+                } catch (UserManagerUnavailableException e) {
+                    userManagerUnavailable(session, context, request, e);
+                    return;
                 }
+                login(session, context, request, userName, password,
+                        anonymous, authenticatedUser);
+                return;
+            }
 
-                authenticatedUser = userManager.authenticate(auth);
-            } catch (AuthenticationFailedException e) {
-                LOG.warn("User failed to log in");
-            } catch (Exception e) {
-                authenticatedUser = null;
-                LOG.warn("PASS.execute()", e);
+            // authenticate user on the authentication executor
+            final PendingCommand pending = PendingCommand.start(session,
+                    context.getExecutor());
+            final FtpMetrics metrics = context.getMetrics();
+            final long queueTime = System.nanoTime();
+            metrics.authenticationQueued();
+            try {
+                authenticationExecutor.execute(new Runnable() {
+                    public void run() {
+                        long startTime = System.nanoTime();
+                        metrics.authenticationStarted(startTime - queueTime);
+                        final User authenticatedUser;
+                        try {
+                            authenticatedUser = authenticate(context, auth);
+                        } catch (final UserManagerUnavailableException e) {
+                            pending.complete(new Runnable() {
+                                public void run() {
+                                    userManagerUnavailable(session, context,
+                                            request, e);
+                                }
+                            });
+                            return;
+                        } finally {
+                            metrics.recordAuthentication(System.nanoTime()
+                                    - startTime);
+                        }
+
+                        pending.complete(new Runnable() {
+                            public void run() {
+                                completeLogin(session, context, request,
+                                        userName, password, anonymous,
+                                        authenticatedUser);
+                            }
+                        });
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                pending.cancel();
+                metrics.authenticationRejected();
+                LOG.warn("Too many logins waiting for authentication, session will be closed");
+                session
+                        .write(LocalizedFtpReply
+                                .translate(
+                                        session,
+                                        request,
+                                        context,
+                                        FtpReply.REPLY_421_SERVICE_NOT_AVAILABLE_CLOSING_CONTROL_CONNECTION,
+                                        "PASS.busy", null));
+                session.close(false);
+                return;
             }
+            started = true;
+        } finally {
+
+            // if the login was not started - reset user
+            if (!started) {
+                session.reinitialize();
+            }
+        }
+    }
+
+    /**
+     * Authenticate the user with the user manager
+     * 
+     * @return The user, or null if the authentication failed
+     * @throws UserManagerUnavailableException
+     *             If the user manager can not be used at the moment
+     */
+    private User authenticate(final FtpServerContext context,
+            final Authentication auth) throws UserManagerUnavailableException {
+        UserManager userManager = context.getUserManager();
+        try {
+            // compile the authorities for the duration of the session
+            return CompiledUser.compile(userManager.authenticate(auth));
+        } catch (UserManagerUnavailableException e) {
+            throw e;
+        } catch (AuthenticationFailedException e) {
+            LOG.warn("User failed to log in");
+        } catch (Exception e) {
+            LOG.warn("PASS.execute()", e);
+        }
+        return null;
+    }
+
+    /**
+     * Close the session as the user manager can not be used at the moment.
+     * This is not a login failure, the credentials could not be checked.
+     */
+    private void userManagerUnavailable(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final UserManagerUnavailableException e) {
+        LOG.warn("User manager unavailable, session will be closed: "
+                + e.getMessage());
+        session.reinitialize();
+        session
+                .write(LocalizedFtpReply
+                        .translate(
+                                session,
+                                request,
+                                context,
+                                FtpReply.REPLY_421_SERVICE_NOT_AVAILABLE_CLOSING_CONTROL_CONNECTION,
+                                "PASS.unavailable", null));
+        session.close(false);
+    }
+
+    /**
+     * Complete a login authenticated on the authentication executor, and
+     * resume reading from the session unless delayed by a login failure
+     */
+    private void completeLogin(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final String userName, final String password,
+            final boolean anonymous, final User authenticatedUser) {
+        boolean suspended = false;
+        try {
+            suspended = login(session, context, request, userName, password,
+                    anonymous, authenticatedUser);
+        } catch (Exception e) {
+            LOG.warn("PASS.execute()", e);
+            session.write(LocalizedFtpReply.translate(session, request,
+                    context, FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                    null, null));
+        } finally {
+            if (!suspended) {
+                session.resumeRead();
+            }
+        }
+    }
+
+    /**
+     * Log the session in as the authenticated user, or handle the login
+     * failure
+     * 
+     * @param authenticatedUser
+     *            The user, or null if the authentication failed
+     * @return true if reading from the session has been suspended due to a
+     *         login failure
+     */
+    private boolean login(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final String userName, final String password,
+            final boolean anonymous, final User authenticatedUser)
+            throws FtpException {
+
+        boolean success = false;
+
+        ServerFtpStatistics stat = (ServerFtpStatistics) context
+                .getFtpStatistics();
+        try {
 
             // first save old values so that we can reset them if Ftplets
             // tell us to fail
@@ -188,7 +354,7 @@ public class PASS extends AbstractCommand {
                                     context,
                                     FtpReply.REPLY_530_NOT_LOGGED_IN,
                                     "PASS", null));
-                    return;
+                    return false;
                 }
 
                 
@@ -206,9 +372,6 @@ public class PASS extends AbstractCommand {
                 session.setUserArgument(oldUserArgument);
                 session.setMaxIdleTime(oldMaxIdleTime);
 
-                delayAfterLoginFailure(context.getConnectionConfig()
-                        .getLoginFailureDelay());
-
                 LOG.warn("Login failure - " + userName);
                 session.write(LocalizedFtpReply.translate(session, request, context,
                         FtpReply.REPLY_530_NOT_LOGGED_IN, "PASS", userName));
@@ -216,17 +379,23 @@ public class PASS extends AbstractCommand {
 
                 session.increaseFailedLogins();
 
+                if (isBannedAfterLoginFailure(session, context)) {
+                    LOG.warn("Client address has been banned, session will be closed");
+
+                    session.close(false);
+                    return false;
+                }
+
                 // kick the user if the max number of failed logins is reached
                 int maxAllowedLoginFailues = context.getConnectionConfig()
                         .getMaxLoginFailures();
-                if (maxAllowedLoginFailues != 0
-                        && session.getFailedLogins() >= maxAllowedLoginFailues) {
+                boolean kick = maxAllowedLoginFailues != 0
+                        && session.getFailedLogins() >= maxAllowedLoginFailues;
+                if (kick) {
                     LOG.warn("User exceeded the number of allowed failed logins, session will be closed");
-
-                    session.close(false).awaitUninterruptibly(10000);
                 }
 
-                return;
+                return delayAfterLoginFailure(session, context, kick);
             }
 
             // update different objects
@@ -235,6 +404,15 @@ public class PASS extends AbstractCommand {
                     .createFileSystemView(authenticatedUser);
             session.setLogin(fsview);
             stat.setLogin(session);
+            if (session.getRemoteAddress() instanceof InetSocketAddress) {
+                InetAddress address = ((InetSocketAddress) session
+                        .getRemoteAddress()).getAddress();
+                context.getBanManager().loginSucceeded(address);
+            }
+
+            // counted last, once the session is logged in, so that the
+            // logout is only counted for a login counted
+            session.countLogin();
 
             // everything is fine - send login ok message
             session.write(LocalizedFtpReply.translate(session, request, context,
@@ -244,6 +422,7 @@ public class PASS extends AbstractCommand {
             } else {
                 LOG.info("Login success - " + userName);
             }
+            return false;
 
         } finally {
 
@@ -254,17 +433,103 @@ public class PASS extends AbstractCommand {
         }
     }
 
-    private void delayAfterLoginFailure(final int loginFailureDelay) {
-
-        if (loginFailureDelay > 0) {
-            LOG.debug("Waiting for " + loginFailureDelay
-                    + " milliseconds due to login failure");
+    /**
+     * Record the login failure with the ban manager
+     * 
+     * @return true if the client address is now banned
+     */
+    private boolean isBannedAfterLoginFailure(final FtpIoSession session,
+            final FtpServerContext context) {
+        if (!(session.getRemoteAddress() instanceof InetSocketAddress)) {
+            return false;
+        }
+        InetAddress address = ((InetSocketAddress) session.getRemoteAddress())
+                .getAddress();
+        BanManager banManager = context.getBanManager();
+        banManager.loginFailed(address);
+        return banManager.isBanned(address);
+    }
 
-            try {
-                Thread.sleep(loginFailureDelay);
-            } catch (InterruptedException e) {
-                // ignore and go on
+    /**
+     * Hold back the requests of the session for the login failure delay,
+     * including those already read in the same packet, so that pipelined
+     * logins are delayed too. The delay is ended by a timer, so that no
+     * thread is held while waiting, after which the held back requests are
+     * executed, or dropped if the session is closed.
+     * 
+     * @param close
+     *            true to close the session at the end of the delay, rather
+     *            than to resume reading
+     * @return true if reading has been suspended for the delay
+     */
+    private boolean delayAfterLoginFailure(final FtpIoSession session,
+            final FtpServerContext context, final boolean close) {
+        long loginFailureDelay = getLoginFailureDelay(session, context);
+        if (loginFailureDelay <= 0) {
+            if (close) {
+                session.close(false);
             }
+            return false;
+        }
+
+        LOG.debug("Suspending reads for {} milliseconds due to login failure",
+                loginFailureDelay);
+        final PendingCommand delay = PendingCommand.start(session, context
+                .getExecutor());
+        try {
+            context.getScheduler().schedule(new Runnable() {
+                public void run() {
+                    delay.complete(new Runnable() {
+                        public void run() {
+                            if (close) {
+                                session.close(false);
+                            } else {
+                                session.resumeRead();
+                            }
+                        }
+                    });
+                }
+            }, loginFailureDelay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the server is shutting down
+            delay.cancel();
+            session.close(false);
+        }
+        return true;
+    }
+
+    /**
+     * The login failure delay, backing off with the number of failures in the
+     * session and from the client address
+     */
+    private long getLoginFailureDelay(final FtpIoSession session,
+            final FtpServerContext context) {
+        ConnectionConfig config = context.getConnectionConfig();
+        int loginFailureDelay = config.getLoginFailureDelay();
+        if (loginFailureDelay <= 0) {
+            return 0;
+        }
+
+        double backoff = 1;
+        if (config.getLoginFailureBackoff() > 1) {
+            backoff = Math.pow(config.getLoginFailureBackoff(), session
+                    .getFailedLogins() - 1);
+        }
+        if (config.getAddressLoginFailureBackoff() > 1
+                && session.getRemoteAddress() instanceof InetSocketAddress) {
+            int failures = context.getBanManager().getLoginFailures(
+                    ((InetSocketAddress) session.getRemoteAddress())
+                            .getAddress());
+            backoff = Math.max(backoff, Math.pow(config
+                    .getAddressLoginFailureBackoff(), failures - 1));
+        }
+
+        double delay = loginFailureDelay * backoff;
+        int maxLoginFailureDelay = config.getMaxLoginFailureDelay();
+        if (maxLoginFailureDelay > 0) {
+            delay = Math.min(delay, Math.max(maxLoginFailureDelay,
+                    loginFailureDelay));
         }
+        return (long) delay;
     }
 }
@@ -181,6 +181,8 @@ public class RETR extends AbstractCommand {
                 if (ftpStat != null) {
                     ftpStat.setDownload(session, file, transSz);
                 }
+                context.getHeavyHitters().recordDownload(session, file,
+                        transSz);
                 
             } catch (SocketException ex) {
                 LOG.debug("Socket exception during data transfer", ex);
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.command.impl;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.ftplet.DefaultFtpReply;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.impl.FtpHeavyHitters;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.HeavyHitter;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Show the most downloaded files, and the users and remote addresses
+ * transferring the most bytes or opening the most connections, over the
+ * window of the {@link FtpHeavyHitters}. Takes the number of entries to show
+ * per list as an optional argument.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SITE_TOP extends AbstractCommand {
+
+    private static final int DEFAULT_COUNT = 10;
+
+    private static final int MAX_COUNT = 100;
+
+    /**
+     * Execute command.
+     */
+    public void execute(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request)
+            throws IOException, FtpException {
+
+        // reset state variables
+        session.resetState();
+
+        // only administrator can execute this
+        UserManager userManager = context.getUserManager();
+        boolean isAdmin = userManager.isAdmin(session.getUser().getName());
+        if (!isAdmin) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_530_NOT_LOGGED_IN, "SITE", null));
+            return;
+        }
+
+        // get the number of entries
+        int count = DEFAULT_COUNT;
+        String argument = request.getArgument();
+        int spIndex = argument.indexOf(' ');
+        if (spIndex != -1) {
+            try {
+                count = Integer.parseInt(argument.substring(spIndex + 1)
+                        .trim());
+            } catch (NumberFormatException ex) {
+                count = -1;
+            }
+            if (count < 1 || count > MAX_COUNT) {
+                session.write(LocalizedFtpReply.translate(session, request,
+                        context, FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                        "SITE.TOP", null));
+                return;
+            }
+        }
+
+        FtpHeavyHitters heavyHitters = context.getHeavyHitters();
+        StringBuilder sb = new StringBuilder(256);
+        sb.append('\n');
+        append(sb, "Most Downloaded Files", heavyHitters
+                .topDownloadedFiles(count));
+        append(sb, "Users By Bytes", heavyHitters.topUsersByBytes(count));
+        append(sb, "Addresses By Bytes", heavyHitters
+                .topAddressesByBytes(count));
+        append(sb, "Addresses By Connections", heavyHitters
+                .topAddressesByConnections(count));
+        session.write(new DefaultFtpReply(FtpReply.REPLY_200_COMMAND_OKAY, sb
+                .toString()));
+    }
+
+    private void append(StringBuilder sb, String title,
+            List<HeavyHitter> heavyHitters) {
+        if (sb.length() > 1) {
+            sb.append('\n');
+        }
+        sb.append(title).append(" :\n");
+        for (HeavyHitter heavyHitter : heavyHitters) {
+            sb.append("  ").append(heavyHitter.getCount());
+            if (heavyHitter.getError() > 0) {
+                sb.append(" (+/- ").append(heavyHitter.getError()).append(')');
+            }
+            sb.append(' ').append(heavyHitter.getKey()).append('\n');
+        }
+    }
+}
@@ -159,6 +159,7 @@ public class STOR extends AbstractCommand {
                 ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
                         .getFtpStatistics();
                 ftpStat.setUpload(session, file, transSz);
+                context.getHeavyHitters().recordUpload(session, file, transSz);
                 
             } catch (SocketException ex) {
                 LOG.debug("Socket exception during data transfer", ex);
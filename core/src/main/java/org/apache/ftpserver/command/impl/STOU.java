@@ -167,6 +167,7 @@ public class STOU extends AbstractCommand {
                 if (ftpStat != null) {
                     ftpStat.setUpload(session, file, transSz);
                 }
+                context.getHeavyHitters().recordUpload(session, file, transSz);
                 
             } catch (SocketException ex) {
                 LOG.debug("Socket exception during data transfer", ex);
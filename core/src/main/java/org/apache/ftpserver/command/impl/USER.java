@@ -32,10 +32,13 @@ import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
 import org.apache.ftpserver.impl.ServerFtpStatistics;
+import org.apache.ftpserver.listener.nio.FtpMdcFilter;
+import org.apache.ftpserver.logincounter.LoginCounterStore;
+import org.apache.ftpserver.usermanager.UserManagerUnavailableException;
 import org.apache.ftpserver.usermanager.impl.ConcurrentLoginRequest;
-import org.apache.mina.filter.logging.MdcInjectionFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -82,8 +85,11 @@ public class USER extends AbstractCommand {
                 return;
             }
 
-            // Add to the MDC logging
-            MdcInjectionFilter.setProperty(session, "userName", userName);
+            // Add to the MDC logging, for the rest of this command, later
+            // events get the user name from the session
+            if (session.getFilterChain().contains(FtpMdcFilter.class)) {
+                MDC.put(FtpMdcFilter.USER_NAME, userName);
+            }
 
             // already logged-in
             User user = session.getUser();
@@ -111,6 +117,20 @@ public class USER extends AbstractCommand {
                 return;
             }
 
+            // anonymous users are the first to be refused under load
+            if (anonymous && context.getAdmissionController().isShedAnonymous()) {
+                LOG.debug("Server is under load, anonymous user will be disconnected");
+                session
+                        .write(LocalizedFtpReply
+                                .translate(
+                                        session,
+                                        request,
+                                        context,
+                                        FtpReply.REPLY_421_SERVICE_NOT_AVAILABLE_CLOSING_CONTROL_CONNECTION,
+                                        "USER.busy", null));
+                return;
+            }
+
             // anonymous login limit check
             int currAnonLogin = stat.getCurrentAnonymousLoginNumber();
             int maxAnonLogin = context.getConnectionConfig()
@@ -158,7 +178,22 @@ public class USER extends AbstractCommand {
                 return;
             }
 
-            User configUser = context.getUserManager().getUserByName(userName);
+            User configUser;
+            try {
+                configUser = context.getUserManager().getUserByName(userName);
+            } catch (UserManagerUnavailableException e) {
+                LOG.warn("User manager unavailable, session will be closed: "
+                        + e.getMessage());
+                session
+                        .write(LocalizedFtpReply
+                                .translate(
+                                        session,
+                                        request,
+                                        context,
+                                        FtpReply.REPLY_421_SERVICE_NOT_AVAILABLE_CLOSING_CONTROL_CONNECTION,
+                                        "USER.unavailable", null));
+                return;
+            }
             if (configUser != null) {
                 // user login limit check
 
@@ -168,9 +203,12 @@ public class USER extends AbstractCommand {
                             .getAddress();
                 }
 
+                LoginCounterStore loginCounter = context
+                        .getLoginCounterStore();
                 ConcurrentLoginRequest loginRequest = new ConcurrentLoginRequest(
-                        stat.getCurrentUserLoginNumber(configUser) + 1,
-                        stat.getCurrentUserLoginNumber(configUser, address) + 1);
+                        loginCounter.getLoginCount(configUser.getName()) + 1,
+                        loginCounter.getLoginCount(configUser.getName(),
+                                address) + 1);
 
                 if (configUser.authorize(loginRequest) == null) {
                     LOG.debug("User logged in too many sessions, user will be disconnected");
@@ -19,6 +19,8 @@
 
 package org.apache.ftpserver.config.spring;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.UnknownHostException;
 
 import org.apache.ftpserver.DataConnectionConfiguration;
@@ -26,6 +28,7 @@ import org.apache.ftpserver.DataConnectionConfigurationFactory;
 import org.apache.ftpserver.FtpServerConfigurationException;
 import org.apache.ftpserver.ipfilter.IpFilterType;
 import org.apache.ftpserver.ipfilter.RemoteIpFilter;
+import org.apache.ftpserver.ipfilter.SubnetTrieFilter;
 import org.apache.ftpserver.listener.ListenerFactory;
 import org.apache.ftpserver.ssl.SslConfiguration;
 import org.apache.ftpserver.ssl.SslConfigurationFactory;
@@ -96,6 +99,47 @@ public class ListenerBeanDefinitionParser extends
         factoryBuilder.addPropertyValue("implicitSsl", SpringUtil.parseBoolean(
                 element, "implicit-ssl", false));
 
+        if (StringUtils.hasText(element.getAttribute("io-processors"))) {
+            factoryBuilder.addPropertyValue("ioProcessors", SpringUtil
+                    .parseInt(element, "io-processors"));
+        }
+        if (StringUtils.hasText(element.getAttribute("read-buffer-size"))) {
+            factoryBuilder.addPropertyValue("readBufferSize", SpringUtil
+                    .parseInt(element, "read-buffer-size"));
+        }
+        if (StringUtils.hasText(element.getAttribute("adaptive-read-buffer"))) {
+            factoryBuilder.addPropertyValue("adaptiveReadBuffer", SpringUtil
+                    .parseBoolean(element, "adaptive-read-buffer", true));
+        }
+        if (StringUtils.hasText(element.getAttribute("receive-buffer-size"))) {
+            factoryBuilder.addPropertyValue("receiveBufferSize", SpringUtil
+                    .parseInt(element, "receive-buffer-size"));
+        }
+        if (StringUtils.hasText(element.getAttribute("send-buffer-size"))) {
+            factoryBuilder.addPropertyValue("sendBufferSize", SpringUtil
+                    .parseInt(element, "send-buffer-size"));
+        }
+        if (StringUtils.hasText(element.getAttribute("tcp-no-delay"))) {
+            factoryBuilder.addPropertyValue("tcpNoDelay", SpringUtil
+                    .parseBoolean(element, "tcp-no-delay", false));
+        }
+        if (StringUtils.hasText(element.getAttribute("backlog"))) {
+            factoryBuilder.addPropertyValue("backlog", SpringUtil.parseInt(
+                    element, "backlog"));
+        }
+        if (StringUtils.hasText(element.getAttribute("mdc-enabled"))) {
+            factoryBuilder.addPropertyValue("mdcEnabled", SpringUtil
+                    .parseBoolean(element, "mdc-enabled", true));
+        }
+        if (StringUtils.hasText(element.getAttribute("logging-enabled"))) {
+            factoryBuilder.addPropertyValue("loggingEnabled", SpringUtil
+                    .parseBoolean(element, "logging-enabled", true));
+        }
+        if (StringUtils.hasText(element.getAttribute("hibernation-time"))) {
+            factoryBuilder.addPropertyValue("hibernationTime", SpringUtil
+                    .parseInt(element, "hibernation-time"));
+        }
+
         Element blacklistElm = SpringUtil.getChildElement(element,
                 FtpServerNamespaceHandler.FTPSERVER_NS, "blacklist");
         if (blacklistElm != null) {
@@ -120,15 +164,32 @@ public class ListenerBeanDefinitionParser extends
                         "Element 'remote-ip-filter' may not be used when 'blacklist' element is specified. ");
             }
             String filterType = remoteIpFilterElement.getAttribute("type");
-            try {
-                RemoteIpFilter remoteIpFilter = new RemoteIpFilter(IpFilterType
-                        .parse(filterType), remoteIpFilterElement
-                        .getTextContent());
-                factoryBuilder
-                        .addPropertyValue("sessionFilter", remoteIpFilter);
-            } catch (UnknownHostException e) {
-                throw new IllegalArgumentException(
-                        "Invalid IP address or subnet in the 'remote-ip-filter' element");
+            String file = remoteIpFilterElement.getAttribute("file");
+            if (StringUtils.hasText(file)) {
+                if (StringUtils.hasText(remoteIpFilterElement.getTextContent())) {
+                    throw new FtpServerConfigurationException(
+                            "Element 'remote-ip-filter' may not list subnets when the 'file' attribute is specified. ");
+                }
+                try {
+                    SubnetTrieFilter subnetTrieFilter = new SubnetTrieFilter(
+                            IpFilterType.parse(filterType), new File(file));
+                    factoryBuilder.addPropertyValue("sessionFilter",
+                            subnetTrieFilter);
+                } catch (IOException e) {
+                    throw new FtpServerConfigurationException(
+                            "Failed to load the subnets of the 'remote-ip-filter' element from " + file, e);
+                }
+            } else {
+                try {
+                    RemoteIpFilter remoteIpFilter = new RemoteIpFilter(
+                            IpFilterType.parse(filterType),
+                            remoteIpFilterElement.getTextContent());
+                    factoryBuilder.addPropertyValue("sessionFilter",
+                            remoteIpFilter);
+                } catch (UnknownHostException e) {
+                    throw new IllegalArgumentException(
+                            "Invalid IP address or subnet in the 'remote-ip-filter' element");
+                }
             }
         }
         
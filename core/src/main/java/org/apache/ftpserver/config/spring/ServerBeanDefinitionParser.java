@@ -107,6 +107,14 @@ public class ServerBeanDefinitionParser extends
                         parserContext, builder);
                 factoryBuilder.addPropertyValue("messageResource", mr);
 
+            } else if ("login-counter-store".equals(childName)) {
+                factoryBuilder.addPropertyValue("loginCounterStore", SpringUtil
+                        .parseSpringChildElement(childElm, parserContext,
+                                builder));
+            } else if ("observer-event-bus".equals(childName)) {
+                factoryBuilder.addPropertyValue("observerEventBus", SpringUtil
+                        .parseSpringChildElement(childElm, parserContext,
+                                builder));
             } else {
                 throw new FtpServerConfigurationException(
                         "Unknown configuration name: " + childName);
@@ -139,9 +147,82 @@ public class ServerBeanDefinitionParser extends
             connectionConfig.setLoginFailureDelay(SpringUtil.parseInt(element,
                     "login-failure-delay"));
         }
+        if (StringUtils.hasText(element.getAttribute("login-failure-backoff"))) {
+            connectionConfig.setLoginFailureBackoff(SpringUtil.parseInt(element,
+                    "login-failure-backoff"));
+        }
+        if (StringUtils.hasText(element.getAttribute("address-login-failure-backoff"))) {
+            connectionConfig.setAddressLoginFailureBackoff(SpringUtil.parseInt(
+                    element, "address-login-failure-backoff"));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-login-failure-delay"))) {
+            connectionConfig.setMaxLoginFailureDelay(SpringUtil.parseInt(
+                    element, "max-login-failure-delay"));
+        }
+        if (StringUtils.hasText(element.getAttribute("authentication-threads"))) {
+            connectionConfig.setAuthenticationThreads(SpringUtil.parseInt(
+                    element, "authentication-threads"));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-queued-authentications"))) {
+            connectionConfig.setMaxQueuedAuthentications(SpringUtil.parseInt(
+                    element, "max-queued-authentications"));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-command-length"))) {
+            connectionConfig.setMaxCommandLength(SpringUtil.parseInt(element,
+                    "max-command-length"));
+        }
+        if (StringUtils.hasText(element.getAttribute("virtual-threads"))) {
+            connectionConfig.setVirtualThreadsEnabled(SpringUtil.parseBoolean(
+                    element, "virtual-threads", false));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-queued-events"))) {
+            connectionConfig.setMaxQueuedEvents(SpringUtil.parseInt(element,
+                    "max-queued-events"));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-active-transfers"))) {
+            connectionConfig.setMaxActiveTransfers(SpringUtil.parseInt(element,
+                    "max-active-transfers"));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-heap-usage"))) {
+            connectionConfig.setMaxHeapUsage(SpringUtil.parseInt(element,
+                    "max-heap-usage"));
+        }
+        if (StringUtils.hasText(element.getAttribute("anon-shed-load"))) {
+            connectionConfig.setAnonymousShedLoad(SpringUtil.parseInt(element,
+                    "anon-shed-load"));
+        }
+        if (StringUtils.hasText(element.getAttribute("ban-login-failures"))) {
+            connectionConfig.setBanLoginFailures(SpringUtil.parseInt(element,
+                    "ban-login-failures"));
+        }
+        if (StringUtils.hasText(element.getAttribute("ban-subnet-login-failures"))) {
+            connectionConfig.setBanSubnetLoginFailures(SpringUtil.parseInt(
+                    element, "ban-subnet-login-failures"));
+        }
+        if (StringUtils.hasText(element.getAttribute("ban-decay-time"))) {
+            connectionConfig.setBanDecayTime(SpringUtil.parseInt(element,
+                    "ban-decay-time"));
+        }
+        if (StringUtils.hasText(element.getAttribute("ban-duration"))) {
+            connectionConfig.setBanDuration(SpringUtil.parseInt(element,
+                    "ban-duration"));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-ban-duration"))) {
+            connectionConfig.setMaxBanDuration(SpringUtil.parseInt(element,
+                    "max-ban-duration"));
+        }
 
         factoryBuilder.addPropertyValue("connectionConfig", connectionConfig.createConnectionConfig());
 
+        if (StringUtils.hasText(element.getAttribute("metrics-port"))) {
+            factoryBuilder.addPropertyValue("metricsPort", SpringUtil.parseInt(
+                    element, "metrics-port"));
+        }
+        if (StringUtils.hasText(element.getAttribute("metrics-address"))) {
+            factoryBuilder.addPropertyValue("metricsAddress", element
+                    .getAttribute("metrics-address"));
+        }
+
        
         BeanDefinition factoryDefinition = factoryBuilder.getBeanDefinition();
 
@@ -81,6 +81,10 @@ public class UserManagerBeanDefinitionParser extends
             if (StringUtils.hasText(element.getAttribute("url"))) {
                 factoryBuilder.addPropertyValue("url", element.getAttribute("url"));
             }
+            if (StringUtils.hasText(element.getAttribute("watch-file"))) {
+                factoryBuilder.addPropertyValue("watchFile", Boolean
+                        .valueOf(element.getAttribute("watch-file")));
+            }
         } else {
             Element dsElm = SpringUtil.getChildElement(element,
                     FtpServerNamespaceHandler.FTPSERVER_NS, "data-source");
@@ -103,6 +107,10 @@ public class UserManagerBeanDefinitionParser extends
                     "insert-user"));
             factoryBuilder.addPropertyValue("sqlUserUpdate", getSql(element,
                     "update-user"));
+            String upsert = getSql(element, "upsert-user");
+            if (upsert != null) {
+                factoryBuilder.addPropertyValue("sqlUserUpsert", upsert);
+            }
             factoryBuilder.addPropertyValue("sqlUserDelete", getSql(element,
                     "delete-user"));
             factoryBuilder.addPropertyValue("sqlUserSelect", getSql(element,
@@ -202,16 +202,18 @@ public class NativeFtpFile implements FtpFile {
      * Check file write permission.
      */
     public boolean isWritable() {
-        LOG.debug("Checking authorization for " + getAbsolutePath());
-        if (user.authorize(new WriteRequest(getAbsolutePath())) == null) {
+        String absolutePath = getAbsolutePath();
+        LOG.debug("Checking authorization for {}", absolutePath);
+        if (user.authorize(new WriteRequest(absolutePath)) == null) {
             LOG.debug("Not authorized");
             return false;
         }
 
         LOG.debug("Checking if file exists");
         if (file.exists()) {
-            LOG.debug("Checking can write: " + file.canWrite());
-            return file.canWrite();
+            boolean canWrite = file.canWrite();
+            LOG.debug("Checking can write: {}", canWrite);
+            return canWrite;
         }
 
         LOG.debug("Authorized");
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ftpserver.ConnectionConfig;
+import org.apache.mina.core.session.IoEvent;
+import org.apache.mina.filter.executor.IoEventQueueHandler;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Tracks the load of the server against the admission limits of the
+ * {@link ConnectionConfig} of the server, read on every check so that changes
+ * made at runtime apply at once: the number of client events waiting for a thread
+ * of the thread pool, the number of open data connections and the heap usage.
+ * The load is the highest of these in percent of its limit, new sessions are
+ * rejected when it reaches 100 and anonymous logins are refused from
+ * {@link ConnectionConfig#getAnonymousShedLoad()}.
+ *
+ * Queued events are counted by installing this as the queue handler of the
+ * thread pool executor.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class AdmissionController implements IoEventQueueHandler {
+
+    private final FtpServerContext context;
+
+    private final AtomicInteger queuedEvents = new AtomicInteger();
+
+    private final AtomicInteger activeTransfers = new AtomicInteger();
+
+    public AdmissionController(FtpServerContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Counts the event as queued. Counted here rather than in
+     * {@link #offered(Object, IoEvent)}, which is only called after the
+     * event is available to the worker threads.
+     */
+    public boolean accept(Object source, IoEvent event) {
+        queuedEvents.incrementAndGet();
+        return true;
+    }
+
+    public void offered(Object source, IoEvent event) {
+        // counted in accept()
+    }
+
+    public void polled(Object source, IoEvent event) {
+        queuedEvents.decrementAndGet();
+    }
+
+    /**
+     * Called when a data connection has been opened
+     */
+    public void transferStarted() {
+        activeTransfers.incrementAndGet();
+    }
+
+    /**
+     * Called when a data connection opened has been closed
+     */
+    public void transferEnded() {
+        activeTransfers.decrementAndGet();
+    }
+
+    /**
+     * The number of client events waiting for a thread
+     */
+    public int getQueuedEvents() {
+        return queuedEvents.get();
+    }
+
+    /**
+     * The number of open data connections
+     */
+    public int getActiveTransfers() {
+        return activeTransfers.get();
+    }
+
+    /**
+     * The heap in use, including garbage not yet collected, in percent of
+     * the maximum heap size
+     */
+    public int getHeapUsage() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        return (int) (used * 100 / runtime.maxMemory());
+    }
+
+    /**
+     * The load of the server, in percent of the closest admission limit
+     * 
+     * @return The load, 0 if no limits are configured
+     */
+    public int getLoad() {
+        ConnectionConfig connectionConfig = context.getConnectionConfig();
+        int load = load(getQueuedEvents(), connectionConfig
+                .getMaxQueuedEvents());
+        load = Math.max(load, load(getActiveTransfers(), connectionConfig
+                .getMaxActiveTransfers()));
+        int maxHeapUsage = connectionConfig.getMaxHeapUsage();
+        if (maxHeapUsage > 0) {
+            load = Math.max(load, load(getHeapUsage(), maxHeapUsage));
+        }
+        return load;
+    }
+
+    private static int load(int value, int limit) {
+        if (limit <= 0 || value <= 0) {
+            return 0;
+        }
+        return (int) ((long) value * 100 / limit);
+    }
+
+    /**
+     * Should new sessions be rejected?
+     */
+    public boolean isSaturated() {
+        return getLoad() >= 100;
+    }
+
+    /**
+     * Should anonymous logins be refused?
+     */
+    public boolean isShedAnonymous() {
+        int shedLoad = context.getConnectionConfig().getAnonymousShedLoad();
+        return shedLoad > 0 && getLoad() >= shedLoad;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.impl;
+
+/**
+ * JMX management of the data connection configuration of a listener. The
+ * passive ports and idle time can be changed while running, and apply to
+ * the data connections opened from then on.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface DataConnectionMXBean {
+
+    boolean isActiveEnabled();
+
+    String getPassiveAddress();
+
+    String getPassiveExternalAddress();
+
+    /**
+     * The passive ports, for example 30000-30100
+     */
+    String getPassivePorts();
+
+    /**
+     * Replace the passive ports, the ports in use stay reserved until their
+     * data connection is closed
+     */
+    void setPassivePorts(String passivePorts);
+
+    /**
+     * The number of passive ports, 0 if any free port is used
+     */
+    int getPassivePortCount();
+
+    /**
+     * The number of passive ports in use
+     */
+    int getPassivePortsInUse();
+
+    /**
+     * The number of seconds without activity after which a data connection
+     * is closed
+     */
+    int getIdleTime();
+
+    void setIdleTime(int idleTime);
+}
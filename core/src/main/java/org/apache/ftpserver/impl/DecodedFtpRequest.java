@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.nio.charset.Charset;
+
+import org.apache.ftpserver.command.Command;
+import org.apache.ftpserver.ftplet.FtpRequest;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * FTP request created by the protocol decoder. The command has already been
+ * resolved from the raw bytes, the argument and the request line are only
+ * decoded when first asked for.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class DecodedFtpRequest implements FtpRequest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The trimmed request line, as UTF-8
+     */
+    private final byte[] line;
+
+    /**
+     * Index of the space separating the command from the argument, or -1
+     */
+    private final int spaceIndex;
+
+    private final String command;
+
+    private final Command resolvedCommand;
+
+    private final boolean resolved;
+
+    private final long receivedTime;
+
+    private String argument;
+
+    private String requestLine;
+
+    /**
+     * Internal constructor, do not use directly.
+     *
+     * @param line
+     *            The trimmed request line
+     * @param spaceIndex
+     *            Index of the first space in the line, or -1
+     * @param command
+     *            The upper case command name
+     * @param resolvedCommand
+     *            The command implementation, if resolved
+     * @param resolved
+     *            true if the command was looked up by the decoder, in which
+     *            case a null resolvedCommand means that the command is unknown
+     */
+    public DecodedFtpRequest(byte[] line, int spaceIndex, String command,
+            Command resolvedCommand, boolean resolved) {
+        this.receivedTime = System.currentTimeMillis();
+        this.line = line;
+        this.spaceIndex = spaceIndex;
+        this.command = command;
+        this.resolvedCommand = resolvedCommand;
+        this.resolved = resolved;
+    }
+
+    /**
+     * Get the ftp command.
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * Get ftp input argument.
+     */
+    public String getArgument() {
+        if (argument == null && hasArgument()) {
+            argument = new String(line, spaceIndex + 1, line.length
+                    - spaceIndex - 1, UTF_8);
+        }
+        return argument;
+    }
+
+    /**
+     * Get the ftp request line.
+     */
+    public String getRequestLine() {
+        if (requestLine == null) {
+            requestLine = new String(line, UTF_8);
+        }
+        return requestLine;
+    }
+
+    /**
+     * Has argument.
+     */
+    public boolean hasArgument() {
+        return spaceIndex != -1 && spaceIndex + 1 < line.length;
+    }
+
+    public long getReceivedTime() {
+        return receivedTime;
+    }
+
+    /**
+     * Was the command resolved by the decoder?
+     *
+     * @return true if {@link #getResolvedCommand()} can be used instead of
+     *         looking up the command in the command factory
+     */
+    public boolean isResolved() {
+        return resolved;
+    }
+
+    /**
+     * Get the command implementation resolved by the decoder
+     *
+     * @return The command, or null if unknown or not resolved
+     */
+    public Command getResolvedCommand() {
+        return resolvedCommand;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return getRequestLine();
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ftpserver.ConnectionConfig;
+import org.apache.ftpserver.ipfilter.BanManager;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Ban manager configured through the {@link ConnectionConfig} of the server,
+ * read on every use so that changes made at runtime apply at once. Login
+ * failures are counted per address and per subnet with exponential decay,
+ * and an address or subnet is banned when its count reaches the configured
+ * threshold. Repeat offenders get twice the previous ban duration, up to the
+ * maximum. Address failures are also counted, without banning, when the
+ * login failure delay backs off per address.
+ *
+ * Memory use is bounded: once a map of counters or bans reaches its maximum
+ * size, counters which have mostly decayed and long expired bans are
+ * dropped, and if that is not enough, arbitrary entries are.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class DefaultBanManager implements BanManager {
+
+    private static final Logger LOG = LoggerFactory
+            .getLogger(DefaultBanManager.class);
+
+    /**
+     * Default maximum number of counters per map, and of bans
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    private final FtpServerContext context;
+
+    private final int maxEntries;
+
+    private final ConcurrentMap<InetAddress, DecayingCounter> addressFailures = new ConcurrentHashMap<InetAddress, DecayingCounter>();
+
+    private final ConcurrentMap<Prefix, DecayingCounter> subnetFailures = new ConcurrentHashMap<Prefix, DecayingCounter>();
+
+    /**
+     * Bans, including expired ones until the offense is forgotten, keyed by
+     * the address or subnet
+     */
+    private final ConcurrentMap<Prefix, Ban> bans = new ConcurrentHashMap<Prefix, Ban>();
+
+    public DefaultBanManager(FtpServerContext context) {
+        this(context, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Internal constructor, do not use directly.
+     */
+    public DefaultBanManager(FtpServerContext context, int maxEntries) {
+        this.context = context;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * The current time in milliseconds, can be overridden for testing
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    public boolean accept(IoSession session) {
+        SocketAddress address = session.getRemoteAddress();
+        if (address instanceof InetSocketAddress) {
+            return !isBanned(((InetSocketAddress) address).getAddress());
+        }
+        return true;
+    }
+
+    public boolean isBanned(InetAddress address) {
+        if (bans.isEmpty()) {
+            return false;
+        }
+        long now = currentTimeMillis();
+        byte[] bytes = address.getAddress();
+        return isActive(bans.get(new Prefix(bytes, bytes.length * 8)), now)
+                || isActive(bans.get(subnetKey(bytes)), now);
+    }
+
+    private static boolean isActive(Ban ban, long now) {
+        return ban != null && ban.expiry > now;
+    }
+
+    public void loginFailed(InetAddress address) {
+        ConnectionConfig connectionConfig = context.getConnectionConfig();
+        long now = currentTimeMillis();
+        long halfLife = connectionConfig.getBanDecayTime() * 1000L;
+
+        // address failures are also counted for the login failure backoff
+        int maxFailures = connectionConfig.getBanLoginFailures();
+        if (maxFailures > 0
+                || connectionConfig.getAddressLoginFailureBackoff() > 1) {
+            long failures = count(addressFailures, address, now, halfLife);
+            if (maxFailures > 0 && failures >= maxFailures) {
+                addressFailures.remove(address);
+                ban(addressKey(address), now, -1);
+            }
+        }
+
+        int maxSubnetFailures = connectionConfig.getBanSubnetLoginFailures();
+        if (maxSubnetFailures > 0) {
+            Prefix subnet = subnetKey(address.getAddress());
+            if (count(subnetFailures, subnet, now, halfLife) >= maxSubnetFailures) {
+                subnetFailures.remove(subnet);
+                ban(subnet, now, -1);
+            }
+        }
+    }
+
+    public void loginSucceeded(InetAddress address) {
+        addressFailures.remove(address);
+    }
+
+    public int getLoginFailures(InetAddress address) {
+        DecayingCounter counter = addressFailures.get(address);
+        if (counter == null) {
+            return 0;
+        }
+        return (int) Math.round(counter.get(currentTimeMillis(), context
+                .getConnectionConfig().getBanDecayTime() * 1000L));
+    }
+
+    public Map<String, Date> getBans() {
+        long now = currentTimeMillis();
+        Map<String, Date> active = new TreeMap<String, Date>();
+        for (Map.Entry<Prefix, Ban> entry : bans.entrySet()) {
+            if (isActive(entry.getValue(), now)) {
+                active.put(entry.getKey().toString(), new Date(entry
+                        .getValue().expiry));
+            }
+        }
+        return active;
+    }
+
+    public void ban(InetAddress address, int duration) {
+        ban(addressKey(address), currentTimeMillis(), duration * 1000L);
+    }
+
+    public boolean unban(InetAddress address) {
+        long now = currentTimeMillis();
+        Prefix subnet = subnetKey(address.getAddress());
+        boolean banned = isActive(bans.remove(addressKey(address)), now);
+        banned |= isActive(bans.remove(subnet), now);
+        addressFailures.remove(address);
+        subnetFailures.remove(subnet);
+        if (banned) {
+            LOG.info("Lifted ban of {}", address.getHostAddress());
+        }
+        return banned;
+    }
+
+    /**
+     * @param duration
+     *            the duration in milliseconds, or -1 for the escalating
+     *            duration from the configuration
+     */
+    private void ban(Prefix key, long now, long duration) {
+        ConnectionConfig connectionConfig = context.getConnectionConfig();
+        long maxDuration = connectionConfig.getMaxBanDuration() * 1000L;
+        Ban previous = bans.get(key);
+        int count = 1;
+        if (previous != null && now - previous.expiry < maxDuration) {
+            count = previous.count + 1;
+        }
+
+        if (duration < 0) {
+            duration = connectionConfig.getBanDuration() * 1000L;
+            duration = Math.min(duration << Math.min(count - 1, 30),
+                    maxDuration);
+        }
+
+        if (previous == null && bans.size() >= maxEntries) {
+            purgeBans(now, maxDuration);
+        }
+        bans.put(key, new Ban(now + duration, count));
+        LOG.warn("Banned {} for {} seconds", key, duration / 1000);
+    }
+
+    /**
+     * Count a failure
+     * 
+     * @return the number of recent failures, rounded to the closest integer
+     */
+    private <K> long count(ConcurrentMap<K, DecayingCounter> counters,
+            K key, long now, long halfLife) {
+        DecayingCounter counter = counters.get(key);
+        if (counter == null) {
+            if (counters.size() >= maxEntries) {
+                purgeCounters(counters, now, halfLife);
+            }
+            counter = new DecayingCounter(now);
+            DecayingCounter existing = counters.putIfAbsent(key, counter);
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        return Math.round(counter.increment(now, halfLife));
+    }
+
+    private <K> void purgeCounters(ConcurrentMap<K, DecayingCounter> counters,
+            long now, long halfLife) {
+        synchronized (counters) {
+            if (counters.size() < maxEntries) {
+                // purged by another thread
+                return;
+            }
+            Iterator<DecayingCounter> values = counters.values().iterator();
+            while (values.hasNext()) {
+                if (values.next().get(now, halfLife) < 1) {
+                    values.remove();
+                }
+            }
+            trim(counters.values().iterator(), counters.size());
+        }
+    }
+
+    private void purgeBans(long now, long maxDuration) {
+        synchronized (bans) {
+            if (bans.size() < maxEntries) {
+                // purged by another thread
+                return;
+            }
+            Iterator<Ban> values = bans.values().iterator();
+            while (values.hasNext()) {
+                if (now - values.next().expiry >= maxDuration) {
+                    values.remove();
+                }
+            }
+            trim(bans.values().iterator(), bans.size());
+        }
+    }
+
+    /**
+     * Remove arbitrary entries until the map is at 90% of its maximum size
+     */
+    private void trim(Iterator<?> values, int size) {
+        int target = maxEntries - maxEntries / 10;
+        while (size > target && values.hasNext()) {
+            values.next();
+            values.remove();
+            size--;
+        }
+    }
+
+    private static Prefix addressKey(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        return new Prefix(bytes, bytes.length * 8);
+    }
+
+    /**
+     * The /24 (IPv4) or /64 (IPv6) subnet of an address
+     */
+    private static Prefix subnetKey(byte[] address) {
+        return new Prefix(address, address.length == 4 ? 24 : 64);
+    }
+
+    /**
+     * An address or subnet, held as the bits of the address masked to the
+     * prefix length, so that bans are looked up for each connection without
+     * formatting the address. Only formatted in CIDR notation for display.
+     */
+    private static final class Prefix {
+
+        /**
+         * The first 8 bytes of the address, or all 4 bytes of an IPv4 address
+         */
+        private final long high;
+
+        /**
+         * The last 8 bytes of an IPv6 address
+         */
+        private final long low;
+
+        private final int addressLength;
+
+        private final int prefixLength;
+
+        private Prefix(byte[] address, int prefixLength) {
+            long high = 0;
+            long low = 0;
+            for (int i = 0; i < address.length; i++) {
+                int kept = Math.max(0, Math.min(8, prefixLength - i * 8));
+                long b = address[i] & (0xFF00 >> kept) & 0xFF;
+                if (i < 8) {
+                    high = high << 8 | b;
+                } else {
+                    low = low << 8 | b;
+                }
+            }
+            this.high = high;
+            this.low = low;
+            this.addressLength = address.length;
+            this.prefixLength = prefixLength;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = high * 31 + low;
+            return (int) (bits ^ (bits >>> 32)) * 31 + prefixLength;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Prefix)) {
+                return false;
+            }
+            Prefix other = (Prefix) obj;
+            return high == other.high && low == other.low
+                    && addressLength == other.addressLength
+                    && prefixLength == other.prefixLength;
+        }
+
+        @Override
+        public String toString() {
+            byte[] address = new byte[addressLength];
+            int highLength = Math.min(addressLength, 8);
+            for (int i = 0; i < addressLength; i++) {
+                if (i < highLength) {
+                    address[i] = (byte) (high >>> (8 * (highLength - 1 - i)));
+                } else {
+                    address[i] = (byte) (low >>> (8 * (addressLength - 1 - i)));
+                }
+            }
+            try {
+                return InetAddress.getByAddress(address).getHostAddress()
+                        + "/" + prefixLength;
+            } catch (UnknownHostException e) {
+                // can not happen for an address of valid length
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static class Ban {
+
+        private final long expiry;
+
+        /**
+         * The number of times banned, without being forgotten in between
+         */
+        private final int count;
+
+        private Ban(long expiry, int count) {
+            this.expiry = expiry;
+            this.count = count;
+        }
+    }
+
+    /**
+     * A counter halving every half-life
+     */
+    private static class DecayingCounter {
+
+        private double value = 0;
+
+        private long lastUpdate;
+
+        private DecayingCounter(long now) {
+            lastUpdate = now;
+        }
+
+        private synchronized double get(long now, long halfLife) {
+            if (halfLife > 0 && now > lastUpdate) {
+                value *= Math.pow(0.5, (double) (now - lastUpdate) / halfLife);
+                lastUpdate = now;
+            }
+            return value;
+        }
+
+        private synchronized double increment(long now, long halfLife) {
+            value = get(now, halfLife) + 1;
+            return value;
+        }
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.ftpserver.impl;
 
 import org.apache.ftpserver.ConnectionConfig;
 import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.listener.nio.FtpRequestDecoder;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -42,6 +43,38 @@ public class DefaultConnectionConfig implements ConnectionConfig {
     
     private final int maxThreads;
 
+    private final int maxCommandLength;
+
+    private final boolean virtualThreadsEnabled;
+
+    private final int maxQueuedEvents;
+
+    private final int maxActiveTransfers;
+
+    private final int maxHeapUsage;
+
+    private final int anonymousShedLoad;
+
+    private final int banLoginFailures;
+
+    private final int banSubnetLoginFailures;
+
+    private final int banDecayTime;
+
+    private final int banDuration;
+
+    private final int maxBanDuration;
+
+    private final int loginFailureBackoff;
+
+    private final int addressLoginFailureBackoff;
+
+    private final int maxLoginFailureDelay;
+
+    private final int authenticationThreads;
+
+    private final int maxQueuedAuthentications;
+
     public DefaultConnectionConfig() {
         this(true, 500, 10, 10, 3, 0);
     }
@@ -52,12 +85,123 @@ public class DefaultConnectionConfig implements ConnectionConfig {
     public DefaultConnectionConfig(boolean anonymousLoginEnabled,
             int loginFailureDelay, int maxLogins, int maxAnonymousLogins,
             int maxLoginFailures, int maxThreads) {
+        this(anonymousLoginEnabled, loginFailureDelay, maxLogins,
+                maxAnonymousLogins, maxLoginFailures, maxThreads,
+                FtpRequestDecoder.DEFAULT_MAX_LINE_LENGTH);
+    }
+
+    /**
+     * Internal constructor, do not use directly. Use {@link ConnectionConfigFactory} instead
+     */
+    public DefaultConnectionConfig(boolean anonymousLoginEnabled,
+            int loginFailureDelay, int maxLogins, int maxAnonymousLogins,
+            int maxLoginFailures, int maxThreads, int maxCommandLength) {
+        this(anonymousLoginEnabled, loginFailureDelay, maxLogins,
+                maxAnonymousLogins, maxLoginFailures, maxThreads,
+                maxCommandLength, false);
+    }
+
+    /**
+     * Internal constructor, do not use directly. Use {@link ConnectionConfigFactory} instead
+     */
+    public DefaultConnectionConfig(boolean anonymousLoginEnabled,
+            int loginFailureDelay, int maxLogins, int maxAnonymousLogins,
+            int maxLoginFailures, int maxThreads, int maxCommandLength,
+            boolean virtualThreadsEnabled) {
+        this(anonymousLoginEnabled, loginFailureDelay, maxLogins,
+                maxAnonymousLogins, maxLoginFailures, maxThreads,
+                maxCommandLength, virtualThreadsEnabled, 0, 0, 0, 80);
+    }
+
+    /**
+     * Internal constructor, do not use directly. Use {@link ConnectionConfigFactory} instead
+     */
+    public DefaultConnectionConfig(boolean anonymousLoginEnabled,
+            int loginFailureDelay, int maxLogins, int maxAnonymousLogins,
+            int maxLoginFailures, int maxThreads, int maxCommandLength,
+            boolean virtualThreadsEnabled, int maxQueuedEvents,
+            int maxActiveTransfers, int maxHeapUsage, int anonymousShedLoad) {
+        this(anonymousLoginEnabled, loginFailureDelay, maxLogins,
+                maxAnonymousLogins, maxLoginFailures, maxThreads,
+                maxCommandLength, virtualThreadsEnabled, maxQueuedEvents,
+                maxActiveTransfers, maxHeapUsage, anonymousShedLoad, 0, 0,
+                600, 300, 86400);
+    }
+
+    /**
+     * Internal constructor, do not use directly. Use {@link ConnectionConfigFactory} instead
+     */
+    public DefaultConnectionConfig(boolean anonymousLoginEnabled,
+            int loginFailureDelay, int maxLogins, int maxAnonymousLogins,
+            int maxLoginFailures, int maxThreads, int maxCommandLength,
+            boolean virtualThreadsEnabled, int maxQueuedEvents,
+            int maxActiveTransfers, int maxHeapUsage, int anonymousShedLoad,
+            int banLoginFailures, int banSubnetLoginFailures,
+            int banDecayTime, int banDuration, int maxBanDuration) {
+        this(anonymousLoginEnabled, loginFailureDelay, maxLogins,
+                maxAnonymousLogins, maxLoginFailures, maxThreads,
+                maxCommandLength, virtualThreadsEnabled, maxQueuedEvents,
+                maxActiveTransfers, maxHeapUsage, anonymousShedLoad,
+                banLoginFailures, banSubnetLoginFailures, banDecayTime,
+                banDuration, maxBanDuration, 1, 1, 30000);
+    }
+
+    /**
+     * Internal constructor, do not use directly. Use {@link ConnectionConfigFactory} instead
+     */
+    public DefaultConnectionConfig(boolean anonymousLoginEnabled,
+            int loginFailureDelay, int maxLogins, int maxAnonymousLogins,
+            int maxLoginFailures, int maxThreads, int maxCommandLength,
+            boolean virtualThreadsEnabled, int maxQueuedEvents,
+            int maxActiveTransfers, int maxHeapUsage, int anonymousShedLoad,
+            int banLoginFailures, int banSubnetLoginFailures,
+            int banDecayTime, int banDuration, int maxBanDuration,
+            int loginFailureBackoff, int addressLoginFailureBackoff,
+            int maxLoginFailureDelay) {
+        this(anonymousLoginEnabled, loginFailureDelay, maxLogins,
+                maxAnonymousLogins, maxLoginFailures, maxThreads,
+                maxCommandLength, virtualThreadsEnabled, maxQueuedEvents,
+                maxActiveTransfers, maxHeapUsage, anonymousShedLoad,
+                banLoginFailures, banSubnetLoginFailures, banDecayTime,
+                banDuration, maxBanDuration, loginFailureBackoff,
+                addressLoginFailureBackoff, maxLoginFailureDelay, 4, 256);
+    }
+
+    /**
+     * Internal constructor, do not use directly. Use {@link ConnectionConfigFactory} instead
+     */
+    public DefaultConnectionConfig(boolean anonymousLoginEnabled,
+            int loginFailureDelay, int maxLogins, int maxAnonymousLogins,
+            int maxLoginFailures, int maxThreads, int maxCommandLength,
+            boolean virtualThreadsEnabled, int maxQueuedEvents,
+            int maxActiveTransfers, int maxHeapUsage, int anonymousShedLoad,
+            int banLoginFailures, int banSubnetLoginFailures,
+            int banDecayTime, int banDuration, int maxBanDuration,
+            int loginFailureBackoff, int addressLoginFailureBackoff,
+            int maxLoginFailureDelay, int authenticationThreads,
+            int maxQueuedAuthentications) {
         this.anonymousLoginEnabled = anonymousLoginEnabled;
         this.loginFailureDelay = loginFailureDelay;
         this.maxLogins = maxLogins;
         this.maxAnonymousLogins = maxAnonymousLogins;
         this.maxLoginFailures = maxLoginFailures;
         this.maxThreads = maxThreads;
+        this.maxCommandLength = maxCommandLength;
+        this.virtualThreadsEnabled = virtualThreadsEnabled;
+        this.maxQueuedEvents = maxQueuedEvents;
+        this.maxActiveTransfers = maxActiveTransfers;
+        this.maxHeapUsage = maxHeapUsage;
+        this.anonymousShedLoad = anonymousShedLoad;
+        this.banLoginFailures = banLoginFailures;
+        this.banSubnetLoginFailures = banSubnetLoginFailures;
+        this.banDecayTime = banDecayTime;
+        this.banDuration = banDuration;
+        this.maxBanDuration = maxBanDuration;
+        this.loginFailureBackoff = loginFailureBackoff;
+        this.addressLoginFailureBackoff = addressLoginFailureBackoff;
+        this.maxLoginFailureDelay = maxLoginFailureDelay;
+        this.authenticationThreads = authenticationThreads;
+        this.maxQueuedAuthentications = maxQueuedAuthentications;
     }
 
     public int getLoginFailureDelay() {
@@ -83,5 +227,69 @@ public class DefaultConnectionConfig implements ConnectionConfig {
     public int getMaxThreads() {
         return maxThreads;
     }
+
+    public int getMaxCommandLength() {
+        return maxCommandLength;
+    }
+
+    public boolean isVirtualThreadsEnabled() {
+        return virtualThreadsEnabled;
+    }
+
+    public int getMaxQueuedEvents() {
+        return maxQueuedEvents;
+    }
+
+    public int getMaxActiveTransfers() {
+        return maxActiveTransfers;
+    }
+
+    public int getMaxHeapUsage() {
+        return maxHeapUsage;
+    }
+
+    public int getAnonymousShedLoad() {
+        return anonymousShedLoad;
+    }
+
+    public int getBanLoginFailures() {
+        return banLoginFailures;
+    }
+
+    public int getBanSubnetLoginFailures() {
+        return banSubnetLoginFailures;
+    }
+
+    public int getBanDecayTime() {
+        return banDecayTime;
+    }
+
+    public int getBanDuration() {
+        return banDuration;
+    }
+
+    public int getMaxBanDuration() {
+        return maxBanDuration;
+    }
+
+    public int getLoginFailureBackoff() {
+        return loginFailureBackoff;
+    }
+
+    public int getAddressLoginFailureBackoff() {
+        return addressLoginFailureBackoff;
+    }
+
+    public int getMaxLoginFailureDelay() {
+        return maxLoginFailureDelay;
+    }
+
+    public int getAuthenticationThreads() {
+        return authenticationThreads;
+    }
+
+    public int getMaxQueuedAuthentications() {
+        return maxQueuedAuthentications;
+    }
     
 }
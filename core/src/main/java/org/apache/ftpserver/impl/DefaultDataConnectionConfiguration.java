@@ -34,7 +34,7 @@ public class DefaultDataConnectionConfiguration implements
         DataConnectionConfiguration {
 
     // maximum idle time in seconds
-    private final int idleTime;
+    private volatile int idleTime;
     private final SslConfiguration ssl;
 
     private final boolean activeEnabled;
@@ -44,7 +44,7 @@ public class DefaultDataConnectionConfiguration implements
     
     private final String passiveAddress;
     private final String passiveExternalAddress;
-    private final PassivePorts passivePorts;
+    private volatile PassivePorts passivePorts;
     private final boolean passiveIpCheck;
     
     private final boolean implicitSsl;
@@ -78,6 +78,14 @@ public class DefaultDataConnectionConfiguration implements
         return idleTime;
     }
 
+    /**
+     * Set the maximum idle time in seconds, applied to the data connections
+     * opened from now on
+     */
+    public void setIdleTime(int idleTime) {
+        this.idleTime = idleTime;
+    }
+
     /**
      * Is PORT enabled?
      */
@@ -141,6 +149,34 @@ public class DefaultDataConnectionConfiguration implements
         return passivePorts.toString();
     }
 
+    /**
+     * Replace the passive ports, used by the PASV and EPSV commands from now
+     * on. Ports currently in use stay reserved until released.
+     * 
+     * @param passivePorts
+     *            The passive ports string, see
+     *            {@link DataConnectionConfigurationFactory#setPassivePorts(String)}
+     * @throws IllegalArgumentException
+     *             If the passive ports string is invalid
+     */
+    public synchronized void setPassivePorts(String passivePorts) {
+        this.passivePorts = new PassivePorts(passivePorts, this.passivePorts);
+    }
+
+    /**
+     * The number of passive ports configured, 0 if any available port is used
+     */
+    public int getPassivePortCount() {
+        return passivePorts.getPortCount();
+    }
+
+    /**
+     * The number of passive ports currently in use
+     */
+    public int getPassivePortsInUse() {
+        return passivePorts.getReservedPortCount();
+    }
+
     /**
      * Release data port
      */
@@ -21,6 +21,7 @@ package org.apache.ftpserver.impl;
 
 import java.io.IOException;
 import java.nio.charset.MalformedInputException;
+import java.util.List;
 
 import org.apache.ftpserver.command.Command;
 import org.apache.ftpserver.command.CommandFactory;
@@ -31,6 +32,7 @@ import org.apache.ftpserver.ftplet.FtpRequest;
 import org.apache.ftpserver.ftplet.FtpletResult;
 import org.apache.ftpserver.ftpletcontainer.FtpletContainer;
 import org.apache.ftpserver.listener.Listener;
+import org.apache.ftpserver.listener.nio.QueueWaitFilter;
 import org.apache.mina.core.session.IdleStatus;
 import org.apache.mina.core.write.WriteToClosedSessionException;
 import org.apache.mina.filter.codec.ProtocolDecoderException;
@@ -61,6 +63,7 @@ public class DefaultFtpHandler implements FtpHandler {
 
     public void sessionCreated(final FtpIoSession session) throws Exception {
         session.setListener(listener);
+        context.getSessionRegistry().add(session);
         
         ServerFtpStatistics stats = ((ServerFtpStatistics) context
                 .getFtpStatistics());
@@ -68,6 +71,7 @@ public class DefaultFtpHandler implements FtpHandler {
         if (stats != null) {
             stats.setOpenConnection(session);
         }
+        context.getHeavyHitters().recordConnection(session);
     }
 
     public void sessionOpened(final FtpIoSession session) throws Exception {
@@ -112,7 +116,8 @@ public class DefaultFtpHandler implements FtpHandler {
             LOG.warn("Data connection threw an exception on disconnect", e);
         }
         
-        FileSystemView fs = session.getFileSystemView();
+        // not created again if released by hibernation
+        FileSystemView fs = session.getActiveFileSystemView();
         if(fs != null) {
             try  {
                 fs.dispose();
@@ -124,6 +129,7 @@ public class DefaultFtpHandler implements FtpHandler {
         ServerFtpStatistics stats = ((ServerFtpStatistics) context
                 .getFtpStatistics());
 
+        session.countLogout(true);
         if (stats != null) {
             stats.setLogout(session);
             stats.setCloseConnection(session);
@@ -131,6 +137,7 @@ public class DefaultFtpHandler implements FtpHandler {
         } else {
             LOG.warn("Statistics not available in session, can not decrease login and connection count");
         }
+        context.getSessionRegistry().remove(session);
         LOG.debug("Session closed");
     }
 
@@ -153,6 +160,13 @@ public class DefaultFtpHandler implements FtpHandler {
                             "Client closed connection before all replies could be sent, last reply was {}",
                             writeToClosedSessionException.getRequest());
             session.close(false).awaitUninterruptibly(10000);
+        } else if (cause instanceof ProtocolDecoderException) {
+            // for example a request line exceeding the maximum length, do not
+            // bother with a stack trace as this is most likely a misbehaving
+            // client
+            LOG.warn("Client sent an invalid request, closing session: {}",
+                    cause.getMessage());
+            session.close(false).awaitUninterruptibly(10000);
         } else {
             LOG.error("Exception caught, closing session", cause);
             session.close(false).awaitUninterruptibly(10000);
@@ -174,12 +188,32 @@ public class DefaultFtpHandler implements FtpHandler {
 
     public void messageReceived(final FtpIoSession session,
             final FtpRequest request) throws Exception {
+        // hold back requests read before a pending command suspended reads
+        PendingCommand pendingCommand = PendingCommand.get(session);
+        if (pendingCommand != null) {
+            pendingCommand.defer(request);
+            return;
+        }
+        if (session.isClosing()) {
+            // e.g. kicked after a login failure, drop the requests read before
+            return;
+        }
+
+        final long startTime = System.nanoTime();
+        Command command = null;
+        boolean pending = false;
         try {
             session.updateLastAccessTime();
             
             String commandName = request.getCommand();
-            CommandFactory commandFactory = context.getCommandFactory();
-            Command command = commandFactory.getCommand(commandName);
+            if (request instanceof DecodedFtpRequest
+                    && ((DecodedFtpRequest) request).isResolved()) {
+                // already looked up by the decoder
+                command = ((DecodedFtpRequest) request).getResolvedCommand();
+            } else {
+                CommandFactory commandFactory = context.getCommandFactory();
+                command = commandFactory.getCommand(commandName);
+            }
 
             // make sure the user is authenticated before he issues commands
             if (!session.isLoggedIn()
@@ -207,9 +241,7 @@ public class DefaultFtpHandler implements FtpHandler {
             } else if (ftpletRet != FtpletResult.SKIP) {
 
                 if (command != null) {
-                    synchronized (session) {
-                        command.execute(session, context, request);
-                    }
+                    command.execute(session, context, request);
                 } else {
                     session.write(LocalizedFtpReply.translate(session, request,
                             context,
@@ -217,20 +249,21 @@ public class DefaultFtpHandler implements FtpHandler {
                             "not.implemented", null));
                 }
 
-                try {
-                    ftpletRet = ftplets.afterCommand(
-                            session.getFtpletSession(), request, session
-                                    .getLastReply());
-                } catch (Exception e) {
-                    LOG.debug("Ftplet container threw exception", e);
-                    ftpletRet = FtpletResult.DISCONNECT;
-                }
-                if (ftpletRet == FtpletResult.DISCONNECT) {
-                    LOG.debug("Ftplet returned DISCONNECT, session will be closed");
-
-                    session.close(false).awaitUninterruptibly(10000);
+                final PendingCommand started = PendingCommand.get(session);
+                if (started != null) {
+                    // the completion can not run before this returns, as
+                    // both are events of the session
+                    pending = true;
+                    started.setCompletionListener(new Runnable() {
+                        public void run() {
+                            commandCompleted(session, request, startTime,
+                                    started.getDeferredRequests());
+                        }
+                    });
                     return;
                 }
+
+                afterCommand(session, request);
             }
 
         } catch (Exception ex) {
@@ -248,12 +281,102 @@ public class DefaultFtpHandler implements FtpHandler {
             } else {
                 LOG.warn("RequestHandler.service()", ex);
             }
+        } finally {
+            // only implemented commands, to bound the number of histograms
+            if (command != null && !pending) {
+                context.getMetrics().recordCommand(request.getCommand(),
+                        QueueWaitFilter.getQueueWait(session),
+                        System.nanoTime() - startTime);
+            }
+        }
+
+    }
+
+    /**
+     * Notify the Ftplets that a command has been executed, closing the
+     * session if they ask to
+     */
+    private void afterCommand(final FtpIoSession session,
+            final FtpRequest request) {
+        FtpletResult ftpletRet;
+        try {
+            ftpletRet = context.getFtpletContainer().afterCommand(
+                    session.getFtpletSession(), request, session
+                            .getLastReply());
+        } catch (Exception e) {
+            LOG.debug("Ftplet container threw exception", e);
+            ftpletRet = FtpletResult.DISCONNECT;
+        }
+        if (ftpletRet == FtpletResult.DISCONNECT) {
+            LOG.debug("Ftplet returned DISCONNECT, session will be closed");
+
+            session.close(false).awaitUninterruptibly(10000);
+        }
+    }
+
+    /**
+     * Finish a command which completed after its execution returned, then
+     * execute the requests held back in the meantime
+     */
+    private void commandCompleted(final FtpIoSession session,
+            final FtpRequest request, final long startTime,
+            final List<FtpRequest> deferredRequests) {
+        afterCommand(session, request);
+        context.getMetrics().recordCommand(request.getCommand(),
+                QueueWaitFilter.getQueueWait(session),
+                System.nanoTime() - startTime);
+
+        executeDeferred(session, deferredRequests);
+    }
+
+    /**
+     * Execute held back requests, unless one of them is pending again. If
+     * the completion of the command started waiting again, e.g. for the
+     * login failure delay of an authentication completed on the
+     * authentication executor, the requests are held back until that wait
+     * completes, and dropped if the session is closed.
+     */
+    private void executeDeferred(final FtpIoSession session,
+            final List<FtpRequest> deferredRequests) {
+        final PendingCommand waiting = PendingCommand.get(session);
+        if (waiting != null) {
+            for (FtpRequest deferredRequest : deferredRequests) {
+                waiting.defer(deferredRequest);
+            }
+            // the wait can only complete after this event has been processed
+            waiting.setCompletionListener(new Runnable() {
+                public void run() {
+                    executeDeferred(session, waiting.getDeferredRequests());
+                }
+            });
+            return;
         }
 
+        try {
+            for (FtpRequest deferredRequest : deferredRequests) {
+                if (session.isClosing()) {
+                    break;
+                }
+                messageReceived(session, deferredRequest);
+            }
+        } catch (Exception e) {
+            try {
+                exceptionCaught(session, e);
+            } catch (Exception e1) {
+                LOG.warn("Failed to handle exception", e1);
+            }
+        }
     }
 
     public void sessionIdle(final FtpIoSession session, final IdleStatus status)
             throws Exception {
+        if (status == IdleStatus.READER_IDLE) {
+            // only enabled with a hibernation time, hibernation ends with the
+            // next command
+            LOG.debug("Session idle, hibernating");
+            session.hibernate();
+            return;
+        }
         LOG.info("Session idle, closing");
         session.close(false).awaitUninterruptibly(10000);
     }
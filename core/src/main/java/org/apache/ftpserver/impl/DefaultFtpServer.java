@@ -19,20 +19,34 @@
 
 package org.apache.ftpserver.impl;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.apache.ftpserver.ConnectionConfig;
+import org.apache.ftpserver.DataConnectionConfiguration;
 import org.apache.ftpserver.FtpServer;
+import org.apache.ftpserver.FtpServerConfigurationException;
 import org.apache.ftpserver.FtpServerFactory;
 import org.apache.ftpserver.command.CommandFactory;
 import org.apache.ftpserver.ftplet.FileSystemFactory;
 import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpStatistics;
 import org.apache.ftpserver.ftplet.Ftplet;
 import org.apache.ftpserver.ftplet.UserManager;
 import org.apache.ftpserver.listener.Listener;
 import org.apache.ftpserver.message.MessageResource;
+import org.apache.ftpserver.usermanager.impl.ResilientUserManagerMXBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,6 +69,15 @@ public class DefaultFtpServer implements FtpServer {
 
     private boolean started = false;
 
+    /**
+     * Tells apart the MBeans of the servers in the same JVM
+     */
+    private static final AtomicInteger SERVER_SEQUENCE = new AtomicInteger();
+
+    private final List<ObjectName> mbeanNames = new ArrayList<ObjectName>();
+
+    private PrometheusEndpoint metricsEndpoint;
+
     /**
      * Internal constructor, do not use directly. Use {@link FtpServerFactory} instead
      */
@@ -75,6 +98,8 @@ public class DefaultFtpServer implements FtpServer {
         List<Listener> startedListeners = new ArrayList<Listener>();
         
         try {
+            startObserverEventBus();
+
             Map<String, Listener> listeners = serverContext.getListeners();
             for (Listener listener : listeners.values()) {
                 listener.start(serverContext);
@@ -84,14 +109,19 @@ public class DefaultFtpServer implements FtpServer {
             // init the Ftplet container
             serverContext.getFtpletContainer().init(serverContext);
         
+            startMetricsEndpoint();
+
             started = true;
 
+            registerMBeans();
+
             LOG.info("FTP server started");
         } catch(Exception e) {
             // must close listeners that we were able to start
             for(Listener listener : startedListeners) {
                 listener.stop();
             }
+            stopObserverEventBus();
             
             if(e instanceof FtpException) {
                 throw (FtpException)e;
@@ -112,6 +142,13 @@ public class DefaultFtpServer implements FtpServer {
             return;
         }
 
+        unregisterMBeans();
+
+        if (metricsEndpoint != null) {
+            metricsEndpoint.stop();
+            metricsEndpoint = null;
+        }
+
         // stop all listeners
         Map<String, Listener> listeners = serverContext.getListeners();
         for (Listener listener : listeners.values()) {
@@ -121,6 +158,9 @@ public class DefaultFtpServer implements FtpServer {
         // destroy the Ftplet container
         serverContext.getFtpletContainer().destroy();
 
+        // deliver the events of the closed sessions
+        stopObserverEventBus();
+
         // release server resources
         if (serverContext != null) {
             serverContext.dispose();
@@ -130,6 +170,182 @@ public class DefaultFtpServer implements FtpServer {
         started = false;
     }
 
+    private void startMetricsEndpoint() {
+        int port = serverContext.getMetricsPort();
+        if (port < 0) {
+            return;
+        }
+        String address = serverContext.getMetricsAddress();
+        InetSocketAddress socketAddress = address == null ? new InetSocketAddress(
+                port)
+                : new InetSocketAddress(address, port);
+        PrometheusEndpoint endpoint = new PrometheusEndpoint(serverContext);
+        try {
+            endpoint.start(socketAddress);
+        } catch (IOException e) {
+            throw new FtpServerConfigurationException(
+                    "Failed to start the metrics endpoint on " + socketAddress,
+                    e);
+        }
+        metricsEndpoint = endpoint;
+        LOG.info("Serving metrics on port {}", endpoint.getPort());
+    }
+
+    /**
+     * Get the Prometheus metrics endpoint of the server
+     * 
+     * @return The endpoint, or null if disabled or the server is not started
+     */
+    public PrometheusEndpoint getMetricsEndpoint() {
+        return metricsEndpoint;
+    }
+
+    /**
+     * Install the observer event bus, if any, as the observer of the
+     * statistics and start delivering events. An observer already set on the
+     * statistics is moved to the bus, a file observer can not be and fails
+     * the start.
+     */
+    private void startObserverEventBus() {
+        ObserverEventBus bus = serverContext.getObserverEventBus();
+        if (bus == null) {
+            return;
+        }
+        FtpStatistics statistics = serverContext.getFtpStatistics();
+        if (statistics instanceof ServerFtpStatistics) {
+            ServerFtpStatistics serverStatistics = (ServerFtpStatistics) statistics;
+
+            FileObserver fileObserver = serverStatistics.getFileObserver();
+            if (fileObserver != null && fileObserver != bus) {
+                throw new FtpServerConfigurationException(
+                        "A file observer is set on the statistics, it must be "
+                                + "ported to SnapshotFileObserver and set on "
+                                + "the observer event bus instead: "
+                                + fileObserver);
+            }
+
+            StatisticsObserver observer = serverStatistics.getObserver();
+            if (observer != null && observer != bus) {
+                if (bus.getObserver() != null) {
+                    throw new FtpServerConfigurationException(
+                            "An observer is set both on the statistics and on "
+                                    + "the observer event bus, only one can be used: "
+                                    + observer);
+                }
+                LOG.warn("Moving the observer set on the statistics to the "
+                        + "observer event bus, it is now called on the thread "
+                        + "of the bus: " + observer);
+                bus.setObserver(observer);
+            }
+
+            serverStatistics.setObserver(bus);
+            serverStatistics.setFileObserver(bus);
+        } else {
+            LOG.warn("The statistics do not support observers, "
+                    + "the observer event bus will not get any events");
+        }
+        bus.start();
+    }
+
+    private void stopObserverEventBus() {
+        ObserverEventBus bus = serverContext.getObserverEventBus();
+        if (bus != null) {
+            bus.stop();
+        }
+    }
+
+    /**
+     * Register the MBeans of the server with the platform MBean server.
+     * Failing to do so is logged, but does not prevent the server from
+     * running.
+     */
+    private void registerMBeans() {
+        String server = "server" + SERVER_SEQUENCE.incrementAndGet();
+        registerMBean("org.apache.ftpserver:type=Metrics,name=" + server,
+                serverContext.getMetrics());
+        registerMBean("org.apache.ftpserver:type=HeavyHitters,name=" + server,
+                serverContext.getHeavyHitters());
+        registerMBean("org.apache.ftpserver:type=Server,name=" + server,
+                new ServerManagement(this, serverContext));
+
+        ExecutorService executor = serverContext.getExecutor();
+        if (executor instanceof ThreadPoolExecutor) {
+            registerMBean("org.apache.ftpserver:type=ThreadPool,name=" + server,
+                    new ThreadPoolManagement((ThreadPoolExecutor) executor,
+                            serverContext.getAdmissionController()));
+        }
+
+        if (serverContext.getUserManager() instanceof ResilientUserManagerMXBean) {
+            registerMBean("org.apache.ftpserver:type=UserManager,name="
+                    + server, serverContext.getUserManager());
+        }
+
+        for (Map.Entry<String, Listener> entry : serverContext.getListeners()
+                .entrySet()) {
+            String listener = "server=" + server + ",name="
+                    + quote(entry.getKey());
+            registerMBean("org.apache.ftpserver:type=Listener," + listener,
+                    new ListenerManagement(entry.getValue()));
+
+            DataConnectionConfiguration dataConnectionConfig = entry
+                    .getValue().getDataConnectionConfiguration();
+            if (dataConnectionConfig instanceof DefaultDataConnectionConfiguration) {
+                registerMBean("org.apache.ftpserver:type=DataConnection,"
+                        + listener, new DataConnectionManagement(
+                        (DefaultDataConnectionConfiguration) dataConnectionConfig));
+            }
+        }
+    }
+
+    /**
+     * Quote a value of an MBean name if it contains characters which are not
+     * allowed unquoted
+     */
+    private static String quote(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '=' || c == ':' || c == '"' || c == '*'
+                    || c == '?' || c == '\\' || c == '\n') {
+                return ObjectName.quote(value);
+            }
+        }
+        return value;
+    }
+
+    private void registerMBean(String name, Object mbean) {
+        try {
+            MBeanServer mbeanServer = ManagementFactory
+                    .getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            mbeanServer.registerMBean(mbean, objectName);
+            mbeanNames.add(objectName);
+        } catch (JMException e) {
+            LOG.warn("Failed to register MBean " + name, e);
+        }
+    }
+
+    private void unregisterMBeans() {
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : mbeanNames) {
+            try {
+                mbeanServer.unregisterMBean(name);
+            } catch (JMException e) {
+                LOG.warn("Failed to unregister MBean " + name, e);
+            }
+        }
+        mbeanNames.clear();
+    }
+
+    /**
+     * Get the names the MBeans of the server are registered under while it
+     * is started
+     * 
+     * @return The MBean names
+     */
+    public List<ObjectName> getMBeanNames() {
+        return new ArrayList<ObjectName>(mbeanNames);
+    }
+
     /**
      * Get the server status.
      */
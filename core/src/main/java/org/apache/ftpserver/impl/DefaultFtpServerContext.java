@@ -23,8 +23,16 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.ftpserver.ConnectionConfig;
 import org.apache.ftpserver.ConnectionConfigFactory;
@@ -38,8 +46,11 @@ import org.apache.ftpserver.ftplet.Ftplet;
 import org.apache.ftpserver.ftplet.UserManager;
 import org.apache.ftpserver.ftpletcontainer.FtpletContainer;
 import org.apache.ftpserver.ftpletcontainer.impl.DefaultFtpletContainer;
+import org.apache.ftpserver.ipfilter.BanManager;
 import org.apache.ftpserver.listener.Listener;
 import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.logincounter.LoginCounterStore;
+import org.apache.ftpserver.logincounter.impl.InProcessLoginCounterStore;
 import org.apache.ftpserver.message.MessageResource;
 import org.apache.ftpserver.message.MessageResourceFactory;
 import org.apache.ftpserver.usermanager.PropertiesUserManagerFactory;
@@ -75,7 +86,7 @@ public class DefaultFtpServerContext implements FtpServerContext {
 
     private CommandFactory commandFactory = new CommandFactoryFactory().createCommandFactory();
 
-    private ConnectionConfig connectionConfig = new ConnectionConfigFactory().createConnectionConfig();
+    private volatile ConnectionConfig connectionConfig = new ConnectionConfigFactory().createConnectionConfig();
 
     private Map<String, Listener> listeners = new HashMap<String, Listener>();
 
@@ -85,7 +96,38 @@ public class DefaultFtpServerContext implements FtpServerContext {
     /**
      * The thread pool executor to be used by the server using this context
      */
-    private ThreadPoolExecutor threadPoolExecutor = null;
+    private volatile ThreadPoolExecutor threadPoolExecutor = null;
+
+    /**
+     * The executor running sessions on virtual threads, if enabled
+     */
+    private volatile ExecutorService virtualThreadExecutor = null;
+
+    private final FtpSessionRegistry sessionRegistry = new FtpSessionRegistry();
+
+    private int metricsPort = -1;
+
+    private String metricsAddress = null;
+
+    private AdmissionController admissionController = null;
+
+    private BanManager banManager = null;
+
+    private LoginCounterStore loginCounterStore = new InProcessLoginCounterStore();
+
+    private ObserverEventBus observerEventBus = null;
+
+    /**
+     * The executors below are created on first use, read without locking
+     * once created as they are used for every session or login
+     */
+    private volatile ScheduledExecutorService scheduler = null;
+
+    private volatile ExecutorService authenticationExecutor = null;
+
+    private final FtpMetrics metrics = new FtpMetrics();
+
+    private final FtpHeavyHitters heavyHitters = new FtpHeavyHitters();
     
     static {
         ADMIN_AUTHORITIES.add(new WritePermission());
@@ -208,6 +250,28 @@ public class DefaultFtpServerContext implements FtpServerContext {
                 // TODO: how to handle?
             }
         }
+        if (virtualThreadExecutor != null) {
+            LOG.debug("Shutting down the virtual thread executor");
+            virtualThreadExecutor.shutdown();
+            try {
+                virtualThreadExecutor.awaitTermination(5000, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        }
+        loginCounterStore.dispose();
+        synchronized (this) {
+            if (authenticationExecutor != null) {
+                LOG.debug("Shutting down the authentication executor");
+                authenticationExecutor.shutdownNow();
+                authenticationExecutor = null;
+            }
+            if (scheduler != null) {
+                LOG.debug("Shutting down the scheduler");
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
     }
 
     public Listener getListener(String name) {
@@ -262,7 +326,33 @@ public class DefaultFtpServerContext implements FtpServerContext {
         this.connectionConfig = connectionConfig;
     }
     
-    public synchronized ThreadPoolExecutor getThreadPoolExecutor() {
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+    }
+
+    public String getMetricsAddress() {
+        return metricsAddress;
+    }
+
+    public void setMetricsAddress(String metricsAddress) {
+        this.metricsAddress = metricsAddress;
+    }
+
+    public ThreadPoolExecutor getThreadPoolExecutor() {
+        ThreadPoolExecutor executor = threadPoolExecutor;
+        if (executor != null) {
+            return executor;
+        }
+        synchronized (this) {
+            return createThreadPoolExecutor();
+        }
+    }
+
+    private ThreadPoolExecutor createThreadPoolExecutor() {
         if(threadPoolExecutor == null) {
             int maxThreads = connectionConfig.getMaxThreads();
             if(maxThreads < 1) {
@@ -275,8 +365,133 @@ public class DefaultFtpServerContext implements FtpServerContext {
                 }
             }
             LOG.debug("Intializing shared thread pool executor with max threads of {}", maxThreads);
-            threadPoolExecutor = new OrderedThreadPoolExecutor(maxThreads);
+            threadPoolExecutor = new OrderedThreadPoolExecutor(0, maxThreads,
+                    30, TimeUnit.SECONDS, getAdmissionController());
         }
         return threadPoolExecutor;
     }
+
+    public ExecutorService getExecutor() {
+        if (!connectionConfig.isVirtualThreadsEnabled()) {
+            return getThreadPoolExecutor();
+        }
+        ExecutorService executor = virtualThreadExecutor;
+        if (executor != null) {
+            return executor;
+        }
+        synchronized (this) {
+            if (virtualThreadExecutor == null) {
+                LOG.debug("Intializing virtual thread executor");
+                virtualThreadExecutor = new OrderedVirtualThreadExecutor();
+            }
+            return virtualThreadExecutor;
+        }
+    }
+
+    public FtpMetrics getMetrics() {
+        return metrics;
+    }
+
+    public FtpHeavyHitters getHeavyHitters() {
+        return heavyHitters;
+    }
+
+    public FtpSessionRegistry getSessionRegistry() {
+        return sessionRegistry;
+    }
+
+    public synchronized AdmissionController getAdmissionController() {
+        if (admissionController == null) {
+            admissionController = new AdmissionController(this);
+        }
+        return admissionController;
+    }
+
+    public synchronized BanManager getBanManager() {
+        if (banManager == null) {
+            banManager = new DefaultBanManager(this);
+        }
+        return banManager;
+    }
+
+    public LoginCounterStore getLoginCounterStore() {
+        return loginCounterStore;
+    }
+
+    public void setLoginCounterStore(LoginCounterStore loginCounterStore) {
+        this.loginCounterStore = loginCounterStore;
+    }
+
+    public ObserverEventBus getObserverEventBus() {
+        return observerEventBus;
+    }
+
+    public void setObserverEventBus(ObserverEventBus observerEventBus) {
+        this.observerEventBus = observerEventBus;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        ScheduledExecutorService executor = scheduler;
+        if (executor != null) {
+            return executor;
+        }
+        synchronized (this) {
+            return createScheduler();
+        }
+    }
+
+    private ScheduledExecutorService createScheduler() {
+        if (scheduler == null) {
+            LOG.debug("Intializing scheduler");
+            scheduler = Executors
+                    .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                        public Thread newThread(Runnable task) {
+                            Thread thread = new Thread(task, "FtpServer-scheduler");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        return scheduler;
+    }
+
+    public ExecutorService getAuthenticationExecutor() {
+        ExecutorService executor = authenticationExecutor;
+        if (executor != null
+                || connectionConfig.getAuthenticationThreads() <= 0) {
+            return executor;
+        }
+        synchronized (this) {
+            return createAuthenticationExecutor();
+        }
+    }
+
+    private ExecutorService createAuthenticationExecutor() {
+        int threads = connectionConfig.getAuthenticationThreads();
+        if (authenticationExecutor == null && threads > 0) {
+            int maxQueued = connectionConfig.getMaxQueuedAuthentications();
+            LOG.debug("Intializing authentication executor with {} threads",
+                    threads);
+            BlockingQueue<Runnable> queue;
+            if (maxQueued > 0) {
+                queue = new ArrayBlockingQueue<Runnable>(maxQueued);
+            } else {
+                queue = new SynchronousQueue<Runnable>();
+            }
+            final AtomicInteger threadNumber = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads,
+                    threads, 30, TimeUnit.SECONDS, queue, new ThreadFactory() {
+                        public Thread newThread(Runnable task) {
+                            Thread thread = new Thread(task,
+                                    "FtpServer-authentication-"
+                                            + threadNumber.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            authenticationExecutor = executor;
+        }
+        return authenticationExecutor;
+    }
 }
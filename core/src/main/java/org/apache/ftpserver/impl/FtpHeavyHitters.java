@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.User;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * The most active files, users and remote addresses of a server over a
+ * sliding window, complementing the totals of the
+ * {@link ServerFtpStatistics}. Fed from the same points as the statistics,
+ * once per file transfer and connection, and tracked by {@link HeavyHitters}
+ * so that memory stays bounded however many distinct keys are seen.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class FtpHeavyHitters implements FtpHeavyHittersMXBean {
+
+    /**
+     * The default number of keys tracked per slice of the window
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * The default window, one hour divided in five minute slices
+     */
+    public static final long DEFAULT_WINDOW = TimeUnit.HOURS.toMillis(1);
+
+    public static final int DEFAULT_SLICES = 12;
+
+    private final HeavyHitters downloadedFiles;
+
+    private final HeavyHitters userBytes;
+
+    private final HeavyHitters addressBytes;
+
+    private final HeavyHitters addressConnections;
+
+    public FtpHeavyHitters() {
+        this(DEFAULT_CAPACITY, DEFAULT_WINDOW, DEFAULT_SLICES);
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param capacity
+     *            The maximum number of keys tracked per slice, for each kind
+     *            of key
+     * @param window
+     *            The length of the window in milliseconds
+     * @param slices
+     *            The number of slices the window is divided in
+     */
+    public FtpHeavyHitters(int capacity, long window, int slices) {
+        downloadedFiles = new HeavyHitters(capacity, window, slices);
+        userBytes = new HeavyHitters(capacity, window, slices);
+        addressBytes = new HeavyHitters(capacity, window, slices);
+        addressConnections = new HeavyHitters(capacity, window, slices);
+    }
+
+    /**
+     * Record a completed download
+     */
+    public void recordDownload(FtpIoSession session, FtpFile file, long size) {
+        downloadedFiles.add(file.getAbsolutePath(), 1);
+        recordTransfer(session, size);
+    }
+
+    /**
+     * Record a completed upload
+     */
+    public void recordUpload(FtpIoSession session, FtpFile file, long size) {
+        recordTransfer(session, size);
+    }
+
+    /**
+     * Record a new connection
+     */
+    public void recordConnection(FtpIoSession session) {
+        addressConnections.add(getAddress(session), 1);
+    }
+
+    private void recordTransfer(FtpIoSession session, long size) {
+        User user = session.getUser();
+        if (user != null) {
+            userBytes.add(user.getName(), size);
+        }
+        addressBytes.add(getAddress(session), size);
+    }
+
+    private static String getAddress(FtpIoSession session) {
+        SocketAddress address = session.getRemoteAddress();
+        if (address instanceof InetSocketAddress
+                && ((InetSocketAddress) address).getAddress() != null) {
+            return ((InetSocketAddress) address).getAddress()
+                    .getHostAddress();
+        }
+        return null;
+    }
+
+    public List<HeavyHitter> topDownloadedFiles(int count) {
+        return downloadedFiles.getTop(count);
+    }
+
+    public List<HeavyHitter> topUsersByBytes(int count) {
+        return userBytes.getTop(count);
+    }
+
+    public List<HeavyHitter> topAddressesByBytes(int count) {
+        return addressBytes.getTop(count);
+    }
+
+    public List<HeavyHitter> topAddressesByConnections(int count) {
+        return addressConnections.getTop(count);
+    }
+
+    public void clear() {
+        downloadedFiles.clear();
+        userBytes.clear();
+        addressBytes.clear();
+        addressConnections.clear();
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.List;
+
+/**
+ * JMX view of the {@link FtpHeavyHitters} of a server.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface FtpHeavyHittersMXBean {
+
+    /**
+     * The most downloaded files, by number of downloads
+     */
+    List<HeavyHitter> topDownloadedFiles(int count);
+
+    /**
+     * The users transferring the most, by bytes uploaded and downloaded
+     */
+    List<HeavyHitter> topUsersByBytes(int count);
+
+    /**
+     * The remote addresses transferring the most, by bytes uploaded and
+     * downloaded
+     */
+    List<HeavyHitter> topAddressesByBytes(int count);
+
+    /**
+     * The remote addresses opening the most connections
+     */
+    List<HeavyHitter> topAddressesByConnections(int count);
+
+    /**
+     * Forget all the tracked keys
+     */
+    void clear();
+}
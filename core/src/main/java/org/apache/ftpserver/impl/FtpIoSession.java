@@ -18,6 +18,7 @@
  */
 package org.apache.ftpserver.impl;
 
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.security.cert.Certificate;
@@ -30,17 +31,23 @@ import javax.net.ssl.SSLSession;
 
 import org.apache.ftpserver.ftplet.DataType;
 import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpSession;
 import org.apache.ftpserver.ftplet.Structure;
 import org.apache.ftpserver.ftplet.User;
 import org.apache.ftpserver.listener.Listener;
+import org.apache.ftpserver.listener.nio.QueueWaitFilter;
+import org.apache.ftpserver.listener.nio.ReplyCoalescingFilter;
+import org.apache.ftpserver.logincounter.LoginCounterStore;
 import org.apache.mina.core.filterchain.IoFilterChain;
 import org.apache.mina.core.future.CloseFuture;
 import org.apache.mina.core.future.ReadFuture;
 import org.apache.mina.core.future.WriteFuture;
+import org.apache.mina.core.polling.AbstractPollingIoProcessor;
 import org.apache.mina.core.service.IoHandler;
+import org.apache.mina.core.service.IoProcessor;
 import org.apache.mina.core.service.IoService;
 import org.apache.mina.core.service.TransportMetadata;
 import org.apache.mina.core.session.AbstractIoSession;
@@ -62,42 +69,17 @@ import org.slf4j.LoggerFactory;
 public class FtpIoSession implements IoSession {
 
     /**
-     * Contains user name between USER and PASS commands
+     * The prefix of the attributes internal to the server, which ftplets can
+     * not access
      */
     public static final String ATTRIBUTE_PREFIX = "org.apache.ftpserver.";
-    private static final String ATTRIBUTE_USER_ARGUMENT = ATTRIBUTE_PREFIX
-	    + "user-argument";
-    private static final String ATTRIBUTE_SESSION_ID = ATTRIBUTE_PREFIX
-	    + "session-id";
-    private static final String ATTRIBUTE_USER = ATTRIBUTE_PREFIX + "user";
-    private static final String ATTRIBUTE_LANGUAGE = ATTRIBUTE_PREFIX
-	    + "language";
-    private static final String ATTRIBUTE_LOGIN_TIME = ATTRIBUTE_PREFIX
-	    + "login-time";
-    private static final String ATTRIBUTE_DATA_CONNECTION = ATTRIBUTE_PREFIX
-	    + "data-connection";
-    private static final String ATTRIBUTE_FILE_SYSTEM = ATTRIBUTE_PREFIX
-	    + "file-system";
-    private static final String ATTRIBUTE_RENAME_FROM = ATTRIBUTE_PREFIX
-	    + "rename-from";
-    private static final String ATTRIBUTE_FILE_OFFSET = ATTRIBUTE_PREFIX
-	    + "file-offset";
-    private static final String ATTRIBUTE_DATA_TYPE = ATTRIBUTE_PREFIX
-	    + "data-type";
-    private static final String ATTRIBUTE_STRUCTURE = ATTRIBUTE_PREFIX
-	    + "structure";
-    private static final String ATTRIBUTE_FAILED_LOGINS = ATTRIBUTE_PREFIX
-	    + "failed-logins";
-    private static final String ATTRIBUTE_LISTENER = ATTRIBUTE_PREFIX
-	    + "listener";
-    private static final String ATTRIBUTE_MAX_IDLE_TIME = ATTRIBUTE_PREFIX
-	    + "max-idle-time";
-    private static final String ATTRIBUTE_LAST_ACCESS_TIME = ATTRIBUTE_PREFIX
-	    + "last-access-time";
-    private static final String ATTRIBUTE_CACHED_REMOTE_ADDRESS = ATTRIBUTE_PREFIX
-	    + "cached-remote-address";
+
     private final IoSession wrappedSession;
     private final FtpServerContext context;
+    /**
+     * The state of the session, looked up on first use
+     */
+    private volatile FtpSessionState state;
     /**
      * Last reply that was sent to the client, if any.
      */
@@ -108,6 +90,8 @@ public class FtpIoSession implements IoSession {
      * @see IoSession#close()
      */
     public CloseFuture close() {
+	state().setCloseRequested();
+	flushReplies();
 	return wrappedSession.close();
     }
 
@@ -115,6 +99,8 @@ public class FtpIoSession implements IoSession {
      * @see IoSession#close(boolean)
      */
     public CloseFuture close(boolean immediately) {
+	state().setCloseRequested();
+	flushReplies();
 	return wrappedSession.close(immediately);
     }
 
@@ -309,11 +295,10 @@ public class FtpIoSession implements IoSession {
 	// therefore, we attempt to keep a cached copy around
 
 	SocketAddress address = wrappedSession.getRemoteAddress();
-	if (address == null
-		&& containsAttribute(ATTRIBUTE_CACHED_REMOTE_ADDRESS)) {
-	    return (SocketAddress) getAttribute(ATTRIBUTE_CACHED_REMOTE_ADDRESS);
+	if (address == null) {
+	    return state().getCachedRemoteAddress();
 	} else {
-	    setAttribute(ATTRIBUTE_CACHED_REMOTE_ADDRESS, address);
+	    state().setCachedRemoteAddress(address);
 	    return address;
 	}
     }
@@ -389,10 +374,12 @@ public class FtpIoSession implements IoSession {
     }
 
     /**
-     * @see IoSession#isClosing()
+     * Unlike {@link IoSession#isClosing()}, also true as soon as the session
+     * has been closed after flushing the replies written before, so that no
+     * further requests are executed.
      */
     public boolean isClosing() {
-	return wrappedSession.isClosing();
+	return wrappedSession.isClosing() || state().isCloseRequested();
     }
 
     /**
@@ -438,10 +425,29 @@ public class FtpIoSession implements IoSession {
     }
 
     /**
+     * Resume reading, and wake up the I/O processor of the session, which
+     * would otherwise only start reading again after its next timed out
+     * select when idle. The interest in reading is also set again from the
+     * I/O processor thread, as setting it from this thread can be undone by
+     * the processor concurrently updating the interest in writing after
+     * flushing a reply.
+     * 
      * @see IoSession#resumeRead()
      */
+    @SuppressWarnings("unchecked")
     public void resumeRead() {
 	wrappedSession.resumeRead();
+	if (wrappedSession instanceof AbstractIoSession) {
+	    IoProcessor processor = ((AbstractIoSession) wrappedSession)
+		    .getProcessor();
+	    if (processor instanceof AbstractPollingIoProcessor) {
+		((AbstractPollingIoProcessor) processor)
+			.updateTrafficMask((AbstractIoSession) wrappedSession);
+	    } else {
+		// flushing an empty write queue is harmless
+		processor.flush(wrappedSession);
+	    }
+	}
     }
 
     /**
@@ -507,6 +513,10 @@ public class FtpIoSession implements IoSession {
     public WriteFuture write(Object message) {
 	WriteFuture future = wrappedSession.write(message);
 	this.lastReply = (FtpReply) message;
+	if (lastReply.getCode() < 200) {
+	    // preliminary replies announce a transfer and may be waited on
+	    flushReplies();
+	}
 	return future;
     }
 
@@ -516,49 +526,161 @@ public class FtpIoSession implements IoSession {
     public WriteFuture write(Object message, SocketAddress destination) {
 	WriteFuture future = wrappedSession.write(message, destination);
 	this.lastReply = (FtpReply) message;
+	if (lastReply.getCode() < 200) {
+	    // preliminary replies announce a transfer and may be waited on
+	    flushReplies();
+	}
 	return future;
     }
 
     /* End wrapped IoSession methods */
-    public void resetState() {
-	removeAttribute(ATTRIBUTE_RENAME_FROM);
-	removeAttribute(ATTRIBUTE_FILE_OFFSET);
+
+    /**
+     * Write any replies held back while processing pipelined commands. Must be
+     * called before waiting on the client, for example before opening a data
+     * connection.
+     */
+    public void flushReplies() {
+	ReplyCoalescingFilter.flush(wrappedSession);
     }
 
-    public synchronized ServerDataConnectionFactory getDataConnection() {
-	if (containsAttribute(ATTRIBUTE_DATA_CONNECTION)) {
-	    return (ServerDataConnectionFactory) getAttribute(ATTRIBUTE_DATA_CONNECTION);
-	} else {
-	    IODataConnectionFactory dataCon = new IODataConnectionFactory(
-		    context, this);
-	    dataCon.setServerControlAddress(((InetSocketAddress) getLocalAddress()).getAddress());
-	    setAttribute(ATTRIBUTE_DATA_CONNECTION, dataCon);
+    public void resetState() {
+	state().setRenameFrom(null);
+	state().setFileOffset(0);
+    }
 
+    public ServerDataConnectionFactory getDataConnection() {
+	ServerDataConnectionFactory dataCon = state().getDataConnection();
+	if (dataCon != null) {
+	    return dataCon;
+	}
+	synchronized (state()) {
+	    dataCon = state().getDataConnection();
+	    if (dataCon == null) {
+		IODataConnectionFactory ioDataCon = new IODataConnectionFactory(
+			context, this);
+		ioDataCon.setServerControlAddress(((InetSocketAddress) getLocalAddress()).getAddress());
+		state().restoreDataConnection(ioDataCon);
+		state().setDataConnection(ioDataCon);
+		dataCon = ioDataCon;
+	    }
 	    return dataCon;
 	}
     }
 
+    /**
+     * Get the file system view, created again with the same working
+     * directory if released while the session was hibernated
+     */
     public FileSystemView getFileSystemView() {
-	return (FileSystemView) getAttribute(ATTRIBUTE_FILE_SYSTEM);
+	FileSystemView view = state().getFileSystemView();
+	if (view == null && state().getHibernatedWorkingDirectory() != null) {
+	    view = restoreFileSystemView();
+	}
+	return view;
+    }
+
+    /**
+     * Get the file system view, without creating it again if released while
+     * the session was hibernated
+     */
+    FileSystemView getActiveFileSystemView() {
+	return state().getFileSystemView();
+    }
+
+    private FileSystemView restoreFileSystemView() {
+	synchronized (state()) {
+	    FileSystemView view = state().getFileSystemView();
+	    String workingDirectory = state().getHibernatedWorkingDirectory();
+	    if (view != null || workingDirectory == null) {
+		return view;
+	    }
+
+	    try {
+		view = context.getFileSystemManager().createFileSystemView(
+			getUser());
+		if (!view.changeWorkingDirectory(workingDirectory)) {
+		    LoggerFactory.getLogger(this.getClass()).debug(
+			    "Working directory {} no longer available, restored session starts in the home directory",
+			    workingDirectory);
+		}
+	    } catch (FtpException e) {
+		// the session can not go on without a file system
+		LoggerFactory.getLogger(this.getClass()).warn(
+			"Failed to restore the file system view of a hibernated session, closing",
+			e);
+		wrappedSession.close(false);
+		return null;
+	    }
+	    state().setFileSystemView(view);
+	    return view;
+	}
+    }
+
+    /**
+     * Release what an idle session only needs while it is active, to reduce
+     * the memory it holds. The read buffer is shrunk to its minimum size, and
+     * the file system view, the data connection factory, unless a data
+     * connection is open or requested, and the per session filter state are
+     * released. All of them are created again when next used, normally by
+     * the next command. Called on the thread processing the events of the
+     * session, so that no command of the session is processed at the same
+     * time.
+     */
+    public void hibernate() {
+	if (PendingCommand.get(this) != null) {
+	    // a command, e.g. a transfer, is still in progress
+	    return;
+	}
+
+	// read buffers are allocated for each read, so this only makes the
+	// next read smaller, adaptive read buffers then grow again as needed
+	IoSessionConfig config = wrappedSession.getConfig();
+	config.setReadBufferSize(config.getMinReadBufferSize());
+
+	synchronized (state()) {
+	    ServerDataConnectionFactory dataCon = state().getDataConnection();
+	    if (dataCon instanceof IODataConnectionFactory
+		    && ((IODataConnectionFactory) dataCon).isIdle()) {
+		state().releaseDataConnection();
+	    }
+
+	    FileSystemView view = state().getFileSystemView();
+	    if (view != null) {
+		try {
+		    String workingDirectory = view.getWorkingDirectory()
+			    .getAbsolutePath();
+		    state().releaseFileSystemView(workingDirectory);
+		    view.dispose();
+		} catch (FtpException e) {
+		    LoggerFactory.getLogger(this.getClass()).debug(
+			    "Failed to get the working directory, keeping the file system view",
+			    e);
+		}
+	    }
+	}
+
+	ReplyCoalescingFilter.release(wrappedSession);
+	QueueWaitFilter.release(wrappedSession);
     }
 
     public User getUser() {
-	return (User) getAttribute(ATTRIBUTE_USER);
+	return state().getUser();
     }
 
     /**
      * Is logged-in
      */
     public boolean isLoggedIn() {
-	return containsAttribute(ATTRIBUTE_USER);
+	return state().getUser() != null;
     }
 
     public Listener getListener() {
-	return (Listener) getAttribute(ATTRIBUTE_LISTENER);
+	return state().getListener();
     }
 
     public void setListener(Listener listener) {
-	setAttribute(ATTRIBUTE_LISTENER, listener);
+	state().setListener(listener);
     }
 
     public FtpSession getFtpletSession() {
@@ -566,34 +688,31 @@ public class FtpIoSession implements IoSession {
     }
 
     public String getLanguage() {
-	return (String) getAttribute(ATTRIBUTE_LANGUAGE);
+	return state().getLanguage();
     }
 
     public void setLanguage(String language) {
-	setAttribute(ATTRIBUTE_LANGUAGE, language);
-
+	state().setLanguage(language);
     }
 
     public String getUserArgument() {
-	return (String) getAttribute(ATTRIBUTE_USER_ARGUMENT);
+	return state().getUserArgument();
     }
 
     public void setUser(User user) {
-	setAttribute(ATTRIBUTE_USER, user);
-
+	state().setUser(user);
     }
 
     public void setUserArgument(String userArgument) {
-	setAttribute(ATTRIBUTE_USER_ARGUMENT, userArgument);
-
+	state().setUserArgument(userArgument);
     }
 
     public int getMaxIdleTime() {
-	return (Integer) getAttribute(ATTRIBUTE_MAX_IDLE_TIME, 0);
+	return state().getMaxIdleTime();
     }
 
     public void setMaxIdleTime(int maxIdleTime) {
-	setAttribute(ATTRIBUTE_MAX_IDLE_TIME, maxIdleTime);
+	state().setMaxIdleTime(maxIdleTime);
 
 	int listenerTimeout = getListener().getIdleTimeout();
 
@@ -607,32 +726,34 @@ public class FtpIoSession implements IoSession {
 	}
     }
 
-    public synchronized void increaseFailedLogins() {
-	int failedLogins = (Integer) getAttribute(ATTRIBUTE_FAILED_LOGINS, 0);
-	failedLogins++;
-	setAttribute(ATTRIBUTE_FAILED_LOGINS, failedLogins);
+    public void increaseFailedLogins() {
+	state().increaseFailedLogins();
     }
 
     public int getFailedLogins() {
-	return (Integer) getAttribute(ATTRIBUTE_FAILED_LOGINS, 0);
+	return state().getFailedLogins();
     }
 
     public void setLogin(FileSystemView fsview) {
-	setAttribute(ATTRIBUTE_LOGIN_TIME, new Date());
-	setAttribute(ATTRIBUTE_FILE_SYSTEM, fsview);
+	state().setLoginTime(System.currentTimeMillis());
+	state().setFileSystemView(fsview);
+	if (context != null) {
+	    context.getSessionRegistry().login(this);
+	}
     }
 
     public void reinitialize() {
 	logoutUser();
-	removeAttribute(ATTRIBUTE_USER);
-	removeAttribute(ATTRIBUTE_USER_ARGUMENT);
-	removeAttribute(ATTRIBUTE_LOGIN_TIME);
-	removeAttribute(ATTRIBUTE_FILE_SYSTEM);
-	removeAttribute(ATTRIBUTE_RENAME_FROM);
-	removeAttribute(ATTRIBUTE_FILE_OFFSET);
+	state().setUser(null);
+	state().setUserArgument(null);
+	state().setLoginTime(0);
+	state().setFileSystemView(null);
+	resetState();
     }
 
     public void logoutUser() {
+	context.getSessionRegistry().logout(this);
+	countLogout();
 	ServerFtpStatistics stats = ((ServerFtpStatistics) context.getFtpStatistics());
 	if (stats != null) {
 	    stats.setLogout(this);
@@ -642,43 +763,79 @@ public class FtpIoSession implements IoSession {
 	}
     }
 
-    public void setFileOffset(long fileOffset) {
-	setAttribute(ATTRIBUTE_FILE_OFFSET, fileOffset);
+    /**
+     * Count the login of the user in the login counter store, once the
+     * session is logged in
+     */
+    public void countLogin() {
+	String userName = getUser().getName();
+	InetAddress address = getClientAddress();
+	LoginCounterStore loginCounter = context.getLoginCounterStore();
+	loginCounter.login(userName, address);
+	if (!state().setCountedLogin(userName)) {
+	    // closed in the meantime, the logout will not be counted
+	    loginCounter.logout(userName, address);
+	}
+    }
 
+    /**
+     * Remove the login counted for the session, if any, from the login
+     * counter store
+     */
+    void countLogout() {
+	countLogout(false);
     }
 
-    public void setRenameFrom(FtpFile renFr) {
-	setAttribute(ATTRIBUTE_RENAME_FROM, renFr);
+    /**
+     * Remove the login counted for the session, if any, from the login
+     * counter store
+     * 
+     * @param close
+     *            true if the session is closed, no login is counted after
+     */
+    void countLogout(boolean close) {
+	String userName = state().removeCountedLogin(close);
+	if (userName != null) {
+	    context.getLoginCounterStore().logout(userName, getClientAddress());
+	}
+    }
+
+    private InetAddress getClientAddress() {
+	if (getRemoteAddress() instanceof InetSocketAddress) {
+	    return ((InetSocketAddress) getRemoteAddress()).getAddress();
+	}
+	return null;
+    }
 
+    public void setFileOffset(long fileOffset) {
+	state().setFileOffset(fileOffset);
+    }
+
+    public void setRenameFrom(FtpFile renFr) {
+	state().setRenameFrom(renFr);
     }
 
     public FtpFile getRenameFrom() {
-	return (FtpFile) getAttribute(ATTRIBUTE_RENAME_FROM);
+	return state().getRenameFrom();
     }
 
     public long getFileOffset() {
-	return (Long) getAttribute(ATTRIBUTE_FILE_OFFSET, 0L);
+	return state().getFileOffset();
     }
 
     public void setStructure(Structure structure) {
-	setAttribute(ATTRIBUTE_STRUCTURE, structure);
+	state().setStructure(structure);
     }
 
     public void setDataType(DataType dataType) {
-	setAttribute(ATTRIBUTE_DATA_TYPE, dataType);
-
+	state().setDataType(dataType);
     }
 
     /**
      * @see FtpSession#getSessionId()
      */
     public UUID getSessionId() {
-	synchronized (wrappedSession) {
-	    if (!wrappedSession.containsAttribute(ATTRIBUTE_SESSION_ID)) {
-		wrappedSession.setAttribute(ATTRIBUTE_SESSION_ID, UUID.randomUUID());
-	    }
-	    return (UUID) wrappedSession.getAttribute(ATTRIBUTE_SESSION_ID);
-	}
+	return state().getSessionId();
     }
 
     public FtpIoSession(IoSession wrappedSession, FtpServerContext context) {
@@ -686,20 +843,38 @@ public class FtpIoSession implements IoSession {
 	this.context = context;
     }
 
+    /**
+     * Get the state of the session, shared by all wrappers of the MINA
+     * session. Concurrent lookups get the same state, so they are not
+     * synchronized.
+     */
+    private FtpSessionState state() {
+	FtpSessionState current = state;
+	if (current == null) {
+	    current = FtpSessionState.get(wrappedSession);
+	    state = current;
+	}
+	return current;
+    }
+
     public Structure getStructure() {
-	return (Structure) getAttribute(ATTRIBUTE_STRUCTURE, Structure.FILE);
+	return state().getStructure();
     }
 
     public DataType getDataType() {
-	return (DataType) getAttribute(ATTRIBUTE_DATA_TYPE, DataType.ASCII);
+	return state().getDataType();
     }
 
     public Date getLoginTime() {
-	return (Date) getAttribute(ATTRIBUTE_LOGIN_TIME);
+	return toDate(state().getLoginTime());
     }
 
     public Date getLastAccessTime() {
-	return (Date) getAttribute(ATTRIBUTE_LAST_ACCESS_TIME);
+	return toDate(state().getLastAccessTime());
+    }
+
+    private static Date toDate(long time) {
+	return time == 0 ? null : new Date(time);
     }
 
     public Certificate[] getClientCertificates() {
@@ -725,8 +900,7 @@ public class FtpIoSession implements IoSession {
     }
 
     public void updateLastAccessTime() {
-	setAttribute(ATTRIBUTE_LAST_ACCESS_TIME, new Date());
-
+	state().setLastAccessTime(System.currentTimeMillis());
     }
 
     /**
@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Latency and throughput histograms of a server, complementing the totals of
+ * the {@link ServerFtpStatistics}. The service time of each command is split
+ * into the time the request waited for a thread and the time spent executing
+ * it. Transfers record their throughput and time to first byte, that is the
+ * time until the first read from the file for downloads and from the client
+ * for uploads, and the time taken to open their data connection.
+ * 
+ * Times are recorded in microseconds, throughput in bytes per second.
+ * Commands are only recorded if implemented, so the number of histograms is
+ * bounded by the command factory.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class FtpMetrics implements FtpMetricsMXBean {
+
+    private final ConcurrentMap<String, CommandHistograms> commands = new ConcurrentHashMap<String, CommandHistograms>();
+
+    private final Histogram transferThroughput = new Histogram();
+
+    private final Histogram timeToFirstByte = new Histogram();
+
+    private final Histogram dataConnectionSetupTime = new Histogram();
+
+    private final Histogram authenticationQueueWait = new Histogram();
+
+    private final Histogram authenticationTime = new Histogram();
+
+    private final AtomicInteger queuedAuthentications = new AtomicInteger();
+
+    private final AtomicLong rejectedAuthentications = new AtomicLong();
+
+    private static class CommandHistograms {
+
+        private final Histogram queueWait = new Histogram();
+
+        private final Histogram execution = new Histogram();
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * Record the service time of a request
+     * 
+     * @param command
+     *            The upper case command name
+     * @param queueWait
+     *            The time the request waited for a thread in nanoseconds, or
+     *            -1 if unknown
+     * @param execution
+     *            The time spent executing the request in nanoseconds
+     */
+    public void recordCommand(String command, long queueWait, long execution) {
+        CommandHistograms histograms = commands.get(command);
+        if (histograms == null) {
+            histograms = new CommandHistograms();
+            CommandHistograms existing = commands.putIfAbsent(command,
+                    histograms);
+            if (existing != null) {
+                histograms = existing;
+            }
+        }
+        if (queueWait >= 0) {
+            histograms.queueWait.record(toMicros(queueWait));
+        }
+        histograms.execution.record(toMicros(execution));
+    }
+
+    /**
+     * Record a completed file transfer
+     * 
+     * @param bytes
+     *            The number of bytes transferred
+     * @param duration
+     *            The duration of the transfer in nanoseconds
+     */
+    public void recordTransfer(long bytes, long duration) {
+        if (bytes > 0) {
+            transferThroughput.record((long) (bytes * 1e9 / Math.max(duration,
+                    1)));
+        }
+    }
+
+    /**
+     * Record the time from the start of a transfer to its first byte
+     * 
+     * @param time
+     *            The time in nanoseconds
+     */
+    public void recordTimeToFirstByte(long time) {
+        timeToFirstByte.record(toMicros(time));
+    }
+
+    /**
+     * Record the time taken to open a data connection
+     * 
+     * @param time
+     *            The time in nanoseconds
+     */
+    public void recordDataConnectionSetup(long time) {
+        dataConnectionSetupTime.record(toMicros(time));
+    }
+
+    /**
+     * Record a login queued for an authentication thread
+     */
+    public void authenticationQueued() {
+        queuedAuthentications.incrementAndGet();
+    }
+
+    /**
+     * Record a login rejected as too many were queued for an authentication
+     * thread, after being recorded through {@link #authenticationQueued()}
+     */
+    public void authenticationRejected() {
+        queuedAuthentications.decrementAndGet();
+        rejectedAuthentications.incrementAndGet();
+    }
+
+    /**
+     * Record a login taken from the queue by an authentication thread
+     * 
+     * @param queueWait
+     *            The time the login waited for the thread in nanoseconds
+     */
+    public void authenticationStarted(long queueWait) {
+        queuedAuthentications.decrementAndGet();
+        authenticationQueueWait.record(toMicros(queueWait));
+    }
+
+    /**
+     * Record the time taken by the user manager to authenticate a login
+     * 
+     * @param time
+     *            The time in nanoseconds
+     */
+    public void recordAuthentication(long time) {
+        authenticationTime.record(toMicros(time));
+    }
+
+    /**
+     * Get the time requests of a command waited for a thread
+     * 
+     * @param command
+     *            The upper case command name
+     * @return The histogram, or null if the command has not been recorded
+     */
+    public HistogramSnapshot getCommandQueueWaitTime(String command) {
+        CommandHistograms histograms = commands.get(command);
+        return histograms == null ? null : histograms.queueWait.getSnapshot();
+    }
+
+    /**
+     * Get the time spent executing requests of a command
+     * 
+     * @param command
+     *            The upper case command name
+     * @return The histogram, or null if the command has not been recorded
+     */
+    public HistogramSnapshot getCommandExecutionTime(String command) {
+        CommandHistograms histograms = commands.get(command);
+        return histograms == null ? null : histograms.execution.getSnapshot();
+    }
+
+    public Map<String, HistogramSnapshot> getCommandQueueWaitTimes() {
+        Map<String, HistogramSnapshot> snapshots = new TreeMap<String, HistogramSnapshot>();
+        for (Map.Entry<String, CommandHistograms> entry : commands.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().queueWait
+                    .getSnapshot());
+        }
+        return snapshots;
+    }
+
+    public Map<String, HistogramSnapshot> getCommandExecutionTimes() {
+        Map<String, HistogramSnapshot> snapshots = new TreeMap<String, HistogramSnapshot>();
+        for (Map.Entry<String, CommandHistograms> entry : commands.entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().execution
+                    .getSnapshot());
+        }
+        return snapshots;
+    }
+
+    public HistogramSnapshot getTransferThroughput() {
+        return transferThroughput.getSnapshot();
+    }
+
+    public HistogramSnapshot getTimeToFirstByte() {
+        return timeToFirstByte.getSnapshot();
+    }
+
+    public HistogramSnapshot getDataConnectionSetupTime() {
+        return dataConnectionSetupTime.getSnapshot();
+    }
+
+    public HistogramSnapshot getAuthenticationQueueWaitTime() {
+        return authenticationQueueWait.getSnapshot();
+    }
+
+    public HistogramSnapshot getAuthenticationTime() {
+        return authenticationTime.getSnapshot();
+    }
+
+    public int getQueuedAuthentications() {
+        return queuedAuthentications.get();
+    }
+
+    public long getRejectedAuthentications() {
+        return rejectedAuthentications.get();
+    }
+
+    public void reset() {
+        for (CommandHistograms histograms : commands.values()) {
+            histograms.queueWait.reset();
+            histograms.execution.reset();
+        }
+        transferThroughput.reset();
+        timeToFirstByte.reset();
+        dataConnectionSetupTime.reset();
+        authenticationQueueWait.reset();
+        authenticationTime.reset();
+    }
+}
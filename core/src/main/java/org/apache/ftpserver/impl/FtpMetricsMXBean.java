@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link FtpMetrics} of a server. Times are in
+ * microseconds, throughput in bytes per second.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface FtpMetricsMXBean {
+
+    /**
+     * The time requests waited for a thread, per command
+     */
+    Map<String, HistogramSnapshot> getCommandQueueWaitTimes();
+
+    /**
+     * The time spent executing requests, per command
+     */
+    Map<String, HistogramSnapshot> getCommandExecutionTimes();
+
+    /**
+     * The throughput of file transfers
+     */
+    HistogramSnapshot getTransferThroughput();
+
+    /**
+     * The time from the start of file transfers to their first byte
+     */
+    HistogramSnapshot getTimeToFirstByte();
+
+    /**
+     * The time taken to open data connections
+     */
+    HistogramSnapshot getDataConnectionSetupTime();
+
+    /**
+     * The time logins waited for an authentication thread
+     */
+    HistogramSnapshot getAuthenticationQueueWaitTime();
+
+    /**
+     * The time taken by the user manager to authenticate logins
+     */
+    HistogramSnapshot getAuthenticationTime();
+
+    /**
+     * The number of logins currently waiting for an authentication thread
+     */
+    int getQueuedAuthentications();
+
+    /**
+     * The number of logins rejected as too many were waiting for an
+     * authentication thread
+     */
+    long getRejectedAuthentications();
+
+    /**
+     * Clear all the histograms
+     */
+    void reset();
+}
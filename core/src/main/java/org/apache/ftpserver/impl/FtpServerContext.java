@@ -20,13 +20,17 @@
 package org.apache.ftpserver.impl;
 
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import org.apache.ftpserver.ConnectionConfig;
 import org.apache.ftpserver.command.CommandFactory;
 import org.apache.ftpserver.ftplet.FtpletContext;
 import org.apache.ftpserver.ftpletcontainer.FtpletContainer;
+import org.apache.ftpserver.ipfilter.BanManager;
 import org.apache.ftpserver.listener.Listener;
+import org.apache.ftpserver.logincounter.LoginCounterStore;
 import org.apache.ftpserver.message.MessageResource;
 
 /**
@@ -41,6 +45,14 @@ public interface FtpServerContext extends FtpletContext {
 
     ConnectionConfig getConnectionConfig();
 
+    /**
+     * Replaces the connection configuration, applied to the logins and
+     * checks made from now on. Settings read once at start up, such as the
+     * thread pool size, are not affected.
+     * @param connectionConfig the new connection configuration.
+     */
+    void setConnectionConfig(ConnectionConfig connectionConfig);
+
     /**
      * Get message resource.
      */
@@ -70,4 +82,83 @@ public interface FtpServerContext extends FtpletContext {
      * @return the thread pool executor for this context.
      */
     ThreadPoolExecutor getThreadPoolExecutor();
+
+    /**
+     * Returns the executor used for processing client requests, either the
+     * thread pool executor or, if enabled in the connection configuration, an
+     * executor running each session on virtual threads.
+     * @return the executor for processing client requests.
+     */
+    ExecutorService getExecutor();
+
+    /**
+     * Returns the registry of open sessions.
+     * @return the session registry for this context.
+     */
+    FtpSessionRegistry getSessionRegistry();
+
+    /**
+     * Returns the admission controller tracking the load of the server.
+     * @return the admission controller for this context.
+     */
+    AdmissionController getAdmissionController();
+
+    /**
+     * Returns the ban manager tracking login failures per address.
+     * @return the ban manager for this context.
+     */
+    BanManager getBanManager();
+
+    /**
+     * Returns the store counting the current logins per user, which the
+     * login limits of users are checked against.
+     * @return the login counter store for this context.
+     */
+    LoginCounterStore getLoginCounterStore();
+
+    /**
+     * Returns the bus delivering the statistics and file events to observers
+     * on a dedicated thread, if installed.
+     * @return the observer event bus for this context, or null.
+     */
+    ObserverEventBus getObserverEventBus();
+
+    /**
+     * Returns the scheduler for short timed tasks, such as ending the delay
+     * after a login failure. Tasks must not block.
+     * @return the scheduler for this context.
+     */
+    ScheduledExecutorService getScheduler();
+
+    /**
+     * Returns the executor verifying passwords, bounded by the authentication
+     * threads and queue size of the connection configuration.
+     * @return the authentication executor for this context, or null to
+     *         authenticate on the thread processing the PASS command.
+     */
+    ExecutorService getAuthenticationExecutor();
+
+    /**
+     * Returns the latency and throughput histograms of the server.
+     * @return the metrics for this context.
+     */
+    FtpMetrics getMetrics();
+
+    /**
+     * Returns the most active files, users and addresses of the server.
+     * @return the heavy hitters for this context.
+     */
+    FtpHeavyHitters getHeavyHitters();
+
+    /**
+     * Returns the port of the Prometheus metrics endpoint.
+     * @return the port, 0 for any free port or -1 if the endpoint is disabled.
+     */
+    int getMetricsPort();
+
+    /**
+     * Returns the address the Prometheus metrics endpoint listens on.
+     * @return the address, or null for all addresses.
+     */
+    String getMetricsAddress();
 }
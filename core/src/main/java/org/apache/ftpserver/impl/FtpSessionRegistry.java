@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.listener.Listener;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Registry of the open sessions of a server, maintained as sessions are
+ * created, log in, log out and close. Sessions can be looked up by their id,
+ * user name, remote address or listener, and all lookups return live, unmodifiable
+ * views which can be iterated concurrently with sessions being added and
+ * removed, without copying.
+ *
+ * The sessions held are the {@link FtpIoSession} instances passed to
+ * {@link #add(FtpIoSession)}, other wrappers for the same session are
+ * resolved through the session id.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class FtpSessionRegistry {
+
+    private final ConcurrentMap<UUID, FtpIoSession> sessions = new ConcurrentHashMap<UUID, FtpIoSession>();
+
+    private final ConcurrentMap<String, Set<FtpIoSession>> sessionsByUser = new ConcurrentHashMap<String, Set<FtpIoSession>>();
+
+    private final ConcurrentMap<InetAddress, Set<FtpIoSession>> sessionsByAddress = new ConcurrentHashMap<InetAddress, Set<FtpIoSession>>();
+
+    /**
+     * The views of the sessions of each listener, kept when empty as there
+     * are few listeners
+     */
+    private final ConcurrentMap<Listener, Set<FtpIoSession>> sessionsByListener = new ConcurrentHashMap<Listener, Set<FtpIoSession>>();
+
+    private final Collection<FtpIoSession> sessionsView = Collections
+            .unmodifiableCollection(sessions.values());
+
+    /**
+     * Register a new session
+     *
+     * @param session
+     *            The session
+     */
+    public void add(FtpIoSession session) {
+        if (sessions.putIfAbsent(session.getSessionId(), session) != null) {
+            return;
+        }
+        Listener listener = session.getListener();
+        if (listener != null) {
+            listenerSessions(listener).add(session);
+        }
+
+        InetAddress address = getAddress(session);
+        if (address != null) {
+            synchronized (this) {
+                addToIndex(sessionsByAddress, address, session);
+            }
+        }
+    }
+
+    /**
+     * Unregister a session, removing it from all indexes
+     *
+     * @param session
+     *            The session, or another wrapper for the same session
+     */
+    public void remove(FtpIoSession session) {
+        FtpIoSession registered = sessions.remove(session.getSessionId());
+        if (registered == null) {
+            return;
+        }
+
+        Listener listener = registered.getListener();
+        if (listener != null) {
+            listenerSessions(listener).remove(registered);
+        }
+        InetAddress address = getAddress(registered);
+        User user = registered.getUser();
+        synchronized (this) {
+            if (address != null) {
+                removeFromIndex(sessionsByAddress, address, registered);
+            }
+            if (user != null) {
+                removeFromIndex(sessionsByUser, user.getName(), registered);
+            }
+        }
+    }
+
+    /**
+     * Index a session by its user, called when the user has logged in
+     *
+     * @param session
+     *            The session, or another wrapper for the same session
+     */
+    public void login(FtpIoSession session) {
+        FtpIoSession registered = sessions.get(session.getSessionId());
+        User user = session.getUser();
+        if (registered != null && user != null) {
+            synchronized (this) {
+                addToIndex(sessionsByUser, user.getName(), registered);
+            }
+        }
+    }
+
+    /**
+     * Remove a session from the user index, called when the user logs out
+     *
+     * @param session
+     *            The session, or another wrapper for the same session
+     */
+    public void logout(FtpIoSession session) {
+        FtpIoSession registered = sessions.get(session.getSessionId());
+        User user = session.getUser();
+        if (registered != null && user != null) {
+            synchronized (this) {
+                removeFromIndex(sessionsByUser, user.getName(), registered);
+            }
+        }
+    }
+
+    /**
+     * Get a session by its id
+     *
+     * @param sessionId
+     *            The session id
+     * @return The session, or null if no such session is open
+     */
+    public FtpIoSession getSession(UUID sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    /**
+     * Get all open sessions
+     *
+     * @return A live view of the open sessions
+     */
+    public Collection<FtpIoSession> getSessions() {
+        return sessionsView;
+    }
+
+    /**
+     * Get the sessions logged in as a user
+     *
+     * @param userName
+     *            The user name
+     * @return A view of the sessions logged in as the user, only kept up to
+     *         date while the user has sessions open
+     */
+    public Set<FtpIoSession> getSessionsByUser(String userName) {
+        return view(sessionsByUser.get(userName));
+    }
+
+    /**
+     * Get the sessions connected from a remote address
+     *
+     * @param address
+     *            The remote address
+     * @return A view of the sessions connected from the address, only kept
+     *         up to date while the address has sessions open
+     */
+    public Set<FtpIoSession> getSessionsByAddress(InetAddress address) {
+        return view(sessionsByAddress.get(address));
+    }
+
+    /**
+     * Get the sessions accepted by a listener
+     *
+     * @param listener
+     *            The listener
+     * @return A live view of the sessions of the listener
+     */
+    public Set<FtpIoSession> getSessionsByListener(Listener listener) {
+        return Collections.unmodifiableSet(listenerSessions(listener));
+    }
+
+    /**
+     * The number of open sessions
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    private static Set<FtpIoSession> view(Set<FtpIoSession> sessions) {
+        if (sessions == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(sessions);
+    }
+
+    private Set<FtpIoSession> listenerSessions(Listener listener) {
+        Set<FtpIoSession> listenerSessions = sessionsByListener.get(listener);
+        if (listenerSessions == null) {
+            Set<FtpIoSession> created = Collections
+                    .newSetFromMap(new ConcurrentHashMap<FtpIoSession, Boolean>());
+            listenerSessions = sessionsByListener.putIfAbsent(listener,
+                    created);
+            if (listenerSessions == null) {
+                listenerSessions = created;
+            }
+        }
+        return listenerSessions;
+    }
+
+    private static InetAddress getAddress(FtpIoSession session) {
+        SocketAddress address = session.getRemoteAddress();
+        if (address instanceof InetSocketAddress) {
+            return ((InetSocketAddress) address).getAddress();
+        }
+        return null;
+    }
+
+    /**
+     * Must be called while holding the registry lock
+     */
+    private static <K> void addToIndex(ConcurrentMap<K, Set<FtpIoSession>> index,
+            K key, FtpIoSession session) {
+        Set<FtpIoSession> indexed = index.get(key);
+        if (indexed == null) {
+            indexed = Collections
+                    .newSetFromMap(new ConcurrentHashMap<FtpIoSession, Boolean>());
+            index.put(key, indexed);
+        }
+        indexed.add(session);
+    }
+
+    /**
+     * Must be called while holding the registry lock
+     */
+    private static <K> void removeFromIndex(
+            ConcurrentMap<K, Set<FtpIoSession>> index, K key,
+            FtpIoSession session) {
+        Set<FtpIoSession> indexed = index.get(key);
+        if (indexed != null) {
+            indexed.remove(session);
+            if (indexed.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+}
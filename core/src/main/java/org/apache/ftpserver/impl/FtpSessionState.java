@@ -0,0 +1,356 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.impl;
+
+import java.net.SocketAddress;
+import java.util.UUID;
+
+import org.apache.ftpserver.ftplet.DataType;
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.Structure;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.listener.Listener;
+import org.apache.mina.core.session.IoSession;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * The state of an FTP session, kept in plain fields rather than as separate
+ * attributes of the MINA session. A single instance is stored in the MINA
+ * session, and looked up once by each {@link FtpIoSession} wrapping it.
+ *
+ * Fields are volatile, as a session is used by the I/O processor, the
+ * threads processing its commands and transfers, and management threads.
+ * Times are kept as milliseconds rather than dates, which are only created
+ * when asked for.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class FtpSessionState {
+
+    /**
+     * The key of the state in the MINA session. It has the prefix of internal
+     * attributes, so that ftplets can not replace it.
+     */
+    static final String ATTRIBUTE_STATE = FtpIoSession.ATTRIBUTE_PREFIX
+            + "state";
+
+    private final UUID sessionId = UUID.randomUUID();
+
+    private volatile Listener listener;
+
+    private volatile SocketAddress cachedRemoteAddress;
+
+    private volatile String userArgument;
+
+    private volatile User user;
+
+    private volatile FileSystemView fileSystemView;
+
+    /**
+     * The working directory of the file system view released while the
+     * session was hibernated, null if not released
+     */
+    private volatile String hibernatedWorkingDirectory;
+
+    /**
+     * 0 if not logged in
+     */
+    private volatile long loginTime;
+
+    /**
+     * 0 until the first access
+     */
+    private volatile long lastAccessTime;
+
+    private volatile int maxIdleTime;
+
+    private volatile int failedLogins;
+
+    private volatile String language;
+
+    private volatile ServerDataConnectionFactory dataConnection;
+
+    /**
+     * The settings of the data connection factory released while the session
+     * was hibernated, applied when it is created again
+     */
+    private volatile boolean dataConnectionReleased;
+
+    private volatile boolean releasedSecure;
+
+    private volatile boolean releasedZipMode;
+
+    private volatile FtpFile renameFrom;
+
+    private volatile long fileOffset;
+
+    private volatile DataType dataType = DataType.ASCII;
+
+    private volatile Structure structure = Structure.FILE;
+
+    /**
+     * Set when the session is closed, as MINA only marks a session closing
+     * once the replies written before have been flushed
+     */
+    private volatile boolean closeRequested;
+
+    /**
+     * The name of the user whose login is counted in the login counter
+     * store, guarded by this
+     */
+    private String countedLogin;
+
+    /**
+     * Set once the session is closed, no login is counted after, guarded by
+     * this
+     */
+    private boolean loginCountClosed;
+
+    /**
+     * Get the state of a MINA session, creating it on first use
+     */
+    static FtpSessionState get(IoSession session) {
+        FtpSessionState state = (FtpSessionState) session
+                .getAttribute(ATTRIBUTE_STATE);
+        if (state == null) {
+            FtpSessionState created = new FtpSessionState();
+            state = (FtpSessionState) session.setAttributeIfAbsent(
+                    ATTRIBUTE_STATE, created);
+            if (state == null) {
+                state = created;
+            }
+        }
+        return state;
+    }
+
+    public UUID getSessionId() {
+        return sessionId;
+    }
+
+    public Listener getListener() {
+        return listener;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public SocketAddress getCachedRemoteAddress() {
+        return cachedRemoteAddress;
+    }
+
+    public void setCachedRemoteAddress(SocketAddress cachedRemoteAddress) {
+        this.cachedRemoteAddress = cachedRemoteAddress;
+    }
+
+    public String getUserArgument() {
+        return userArgument;
+    }
+
+    public void setUserArgument(String userArgument) {
+        this.userArgument = userArgument;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public void setUser(User user) {
+        this.user = user;
+    }
+
+    public FileSystemView getFileSystemView() {
+        return fileSystemView;
+    }
+
+    public void setFileSystemView(FileSystemView fileSystemView) {
+        this.fileSystemView = fileSystemView;
+        hibernatedWorkingDirectory = null;
+    }
+
+    public String getHibernatedWorkingDirectory() {
+        return hibernatedWorkingDirectory;
+    }
+
+    /**
+     * Release the file system view of a hibernated session
+     * 
+     * @param workingDirectory
+     *            The working directory to restore when the view is created
+     *            again
+     */
+    public void releaseFileSystemView(String workingDirectory) {
+        fileSystemView = null;
+        hibernatedWorkingDirectory = workingDirectory;
+    }
+
+    public long getLoginTime() {
+        return loginTime;
+    }
+
+    public void setLoginTime(long loginTime) {
+        this.loginTime = loginTime;
+    }
+
+    public long getLastAccessTime() {
+        return lastAccessTime;
+    }
+
+    public void setLastAccessTime(long lastAccessTime) {
+        this.lastAccessTime = lastAccessTime;
+    }
+
+    public int getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    public void setMaxIdleTime(int maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    public boolean isCloseRequested() {
+        return closeRequested;
+    }
+
+    public void setCloseRequested() {
+        closeRequested = true;
+    }
+
+    /**
+     * Record the login of the user as counted
+     * 
+     * @return false if the session has been closed, and the login must not
+     *         be counted
+     */
+    public synchronized boolean setCountedLogin(String userName) {
+        if (loginCountClosed) {
+            return false;
+        }
+        countedLogin = userName;
+        return true;
+    }
+
+    /**
+     * Remove the login counted, if any
+     * 
+     * @param close
+     *            true if the session is closed, no login is counted after
+     * @return The name of the user whose login was counted, or null if none
+     */
+    public synchronized String removeCountedLogin(boolean close) {
+        if (close) {
+            loginCountClosed = true;
+        }
+        String userName = countedLogin;
+        countedLogin = null;
+        return userName;
+    }
+
+    public int getFailedLogins() {
+        return failedLogins;
+    }
+
+    public synchronized void increaseFailedLogins() {
+        failedLogins++;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public void setLanguage(String language) {
+        this.language = language;
+    }
+
+    public ServerDataConnectionFactory getDataConnection() {
+        return dataConnection;
+    }
+
+    public void setDataConnection(ServerDataConnectionFactory dataConnection) {
+        this.dataConnection = dataConnection;
+    }
+
+    /**
+     * Release the data connection factory of a hibernated session, keeping
+     * its settings
+     */
+    public void releaseDataConnection() {
+        ServerDataConnectionFactory released = dataConnection;
+        if (released != null) {
+            releasedSecure = released.isSecure();
+            releasedZipMode = released.isZipMode();
+            dataConnectionReleased = true;
+            dataConnection = null;
+        }
+    }
+
+    /**
+     * Apply the settings of the data connection factory released while the
+     * session was hibernated, if any, to the one created again
+     */
+    public void restoreDataConnection(ServerDataConnectionFactory created) {
+        if (dataConnectionReleased) {
+            created.setSecure(releasedSecure);
+            created.setZipMode(releasedZipMode);
+            dataConnectionReleased = false;
+        }
+    }
+
+    public FtpFile getRenameFrom() {
+        return renameFrom;
+    }
+
+    public void setRenameFrom(FtpFile renameFrom) {
+        this.renameFrom = renameFrom;
+    }
+
+    public long getFileOffset() {
+        return fileOffset;
+    }
+
+    public void setFileOffset(long fileOffset) {
+        this.fileOffset = fileOffset;
+    }
+
+    public DataType getDataType() {
+        return dataType;
+    }
+
+    /**
+     * @param dataType
+     *            The data type, null for the default
+     */
+    public void setDataType(DataType dataType) {
+        this.dataType = dataType == null ? DataType.ASCII : dataType;
+    }
+
+    public Structure getStructure() {
+        return structure;
+    }
+
+    /**
+     * @param structure
+     *            The structure, null for the default
+     */
+    public void setStructure(Structure structure) {
+        this.structure = structure == null ? Structure.FILE : structure;
+    }
+}
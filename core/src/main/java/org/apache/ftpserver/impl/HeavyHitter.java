@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * A key tracked by {@link HeavyHitters} with its weight over the window.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class HeavyHitter {
+
+    private final String key;
+
+    private final long count;
+
+    private final long error;
+
+    public HeavyHitter(String key, long count, long error) {
+        this.key = key;
+        this.count = count;
+        this.error = error;
+    }
+
+    /**
+     * The key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * The weight of the key over the window, which can be overestimated by
+     * up to the error
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * The maximum overestimation of the count
+     */
+    public long getError() {
+        return error;
+    }
+
+    /**
+     * The weight the key is guaranteed to have over the window
+     */
+    public long getGuaranteedCount() {
+        return count - error;
+    }
+
+    @Override
+    public String toString() {
+        return key + "=" + count;
+    }
+}
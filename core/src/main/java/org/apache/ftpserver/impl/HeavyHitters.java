@@ -0,0 +1,272 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Tracks the keys with the largest total weight over a sliding window, in
+ * bounded memory, using the Space-Saving algorithm. The window is divided
+ * in slices, each summarized by at most <code>capacity</code> counters, and
+ * a slice is cleared once it falls out of the window.
+ * 
+ * Within a slice, the count of a key is overestimated by at most its error,
+ * and any key with a weight above the total weight of the slice divided by
+ * the capacity is guaranteed to be tracked. The counts of a key over the
+ * window are the sum of its counts in the slices it is tracked in.
+ * 
+ * Updates take a lock, so feed it per file transfer or connection, not per
+ * buffer.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class HeavyHitters {
+
+    private static final Comparator<HeavyHitter> BY_COUNT = new Comparator<HeavyHitter>() {
+        public int compare(HeavyHitter o1, HeavyHitter o2) {
+            if (o1.getCount() != o2.getCount()) {
+                return o1.getCount() > o2.getCount() ? -1 : 1;
+            }
+            return o1.getKey().compareTo(o2.getKey());
+        }
+    };
+
+    private final long sliceLength;
+
+    private final Slice[] slices;
+
+    /**
+     * Constructor
+     * 
+     * @param capacity
+     *            The maximum number of keys tracked per slice
+     * @param window
+     *            The length of the window in milliseconds
+     * @param sliceCount
+     *            The number of slices the window is divided in
+     */
+    public HeavyHitters(int capacity, long window, int sliceCount) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        if (sliceCount < 1 || window < sliceCount) {
+            throw new IllegalArgumentException(
+                    "Window must hold at least one millisecond per slice");
+        }
+        this.sliceLength = window / sliceCount;
+        slices = new Slice[sliceCount];
+        for (int i = 0; i < sliceCount; i++) {
+            slices[i] = new Slice(capacity);
+        }
+    }
+
+    /**
+     * Add weight to a key
+     * 
+     * @param key
+     *            The key
+     * @param weight
+     *            The weight to add, ignored unless positive
+     */
+    public void add(String key, long weight) {
+        add(key, weight, System.currentTimeMillis());
+    }
+
+    synchronized void add(String key, long weight, long now) {
+        if (key == null || weight <= 0) {
+            return;
+        }
+        long epoch = now / sliceLength;
+        Slice slice = slices[(int) (epoch % slices.length)];
+        if (slice.epoch != epoch) {
+            slice.clear(epoch);
+        }
+        slice.add(key, weight);
+    }
+
+    /**
+     * Get the keys with the largest weight over the window
+     * 
+     * @param count
+     *            The maximum number of keys to return
+     * @return The keys, largest first
+     */
+    public List<HeavyHitter> getTop(int count) {
+        return getTop(count, System.currentTimeMillis());
+    }
+
+    synchronized List<HeavyHitter> getTop(int count, long now) {
+        long epoch = now / sliceLength;
+        Map<String, long[]> merged = new HashMap<String, long[]>();
+        for (Slice slice : slices) {
+            if (slice.epoch <= epoch - slices.length || slice.epoch > epoch) {
+                continue;
+            }
+            for (int i = 0; i < slice.size; i++) {
+                Counter counter = slice.heap[i];
+                long[] totals = merged.get(counter.key);
+                if (totals == null) {
+                    totals = new long[2];
+                    merged.put(counter.key, totals);
+                }
+                totals[0] += counter.count;
+                totals[1] += counter.error;
+            }
+        }
+
+        List<HeavyHitter> top = new ArrayList<HeavyHitter>(merged.size());
+        for (Map.Entry<String, long[]> entry : merged.entrySet()) {
+            top.add(new HeavyHitter(entry.getKey(), entry.getValue()[0],
+                    entry.getValue()[1]));
+        }
+        Collections.sort(top, BY_COUNT);
+        if (top.size() > count) {
+            return new ArrayList<HeavyHitter>(top.subList(0, Math.max(count,
+                    0)));
+        }
+        return top;
+    }
+
+    /**
+     * Forget all keys
+     */
+    public synchronized void clear() {
+        for (Slice slice : slices) {
+            slice.clear(-1);
+        }
+    }
+
+    private static class Counter {
+
+        private final String key;
+
+        private long count;
+
+        private long error;
+
+        private int index;
+
+        private Counter(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Space-Saving summary of one slice, the counters are kept in a min-heap
+     * on their count so that the smallest can be replaced in logarithmic
+     * time.
+     */
+    private static class Slice {
+
+        private final Map<String, Counter> counters;
+
+        private final Counter[] heap;
+
+        private int size;
+
+        private long epoch = -1;
+
+        private Slice(int capacity) {
+            counters = new HashMap<String, Counter>(capacity * 2);
+            heap = new Counter[capacity];
+        }
+
+        private void clear(long epoch) {
+            counters.clear();
+            for (int i = 0; i < size; i++) {
+                heap[i] = null;
+            }
+            size = 0;
+            this.epoch = epoch;
+        }
+
+        private void add(String key, long weight) {
+            Counter counter = counters.get(key);
+            if (counter != null) {
+                counter.count += weight;
+                siftDown(counter.index);
+            } else if (size < heap.length) {
+                counter = new Counter(key, weight, 0);
+                counters.put(key, counter);
+                counter.index = size;
+                heap[size++] = counter;
+                siftUp(counter.index);
+            } else {
+                // replace the smallest key, which bounds the error of the
+                // new one
+                Counter smallest = heap[0];
+                counters.remove(smallest.key);
+                counter = new Counter(key, smallest.count + weight,
+                        smallest.count);
+                counters.put(key, counter);
+                counter.index = 0;
+                heap[0] = counter;
+                siftDown(0);
+            }
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (heap[parent].count <= heap[index].count) {
+                    return;
+                }
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            while (true) {
+                int smallest = index;
+                int left = 2 * index + 1;
+                int right = left + 1;
+                if (left < size && heap[left].count < heap[smallest].count) {
+                    smallest = left;
+                }
+                if (right < size && heap[right].count < heap[smallest].count) {
+                    smallest = right;
+                }
+                if (smallest == index) {
+                    return;
+                }
+                swap(index, smallest);
+                index = smallest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            Counter counter = heap[i];
+            heap[i] = heap[j];
+            heap[j] = counter;
+            heap[i].index = i;
+            heap[j].index = j;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Histogram of non-negative values with a bounded relative error, in the
+ * style of HdrHistogram. Values below 16 are counted exactly, larger values
+ * in 8 linear buckets per power of two, that is with an error below 12.5%,
+ * up to {@link #MAX_VALUE}, above which they are counted as the maximum.
+ * 
+ * Recording does not allocate or lock: the counts are striped over a number
+ * of arrays, each thread recording in the stripe of its thread id, and the
+ * stripes are merged when taking a {@link HistogramSnapshot}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class Histogram {
+
+    /**
+     * The largest value recorded as is, about 19 hours in microseconds
+     */
+    public static final long MAX_VALUE = (1L << 36) - 1;
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Values below this are counted exactly
+     */
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+
+    static final int BUCKETS = bucketIndex(MAX_VALUE) + 1;
+
+    private static final int COUNT = BUCKETS;
+
+    private static final int SUM = BUCKETS + 1;
+
+    private static final int MAX = BUCKETS + 2;
+
+    private static final int STRIPES = stripes();
+
+    private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+
+    public Histogram() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS + 3);
+        }
+    }
+
+    /**
+     * One stripe per processor, up to 8
+     */
+    private static int stripes() {
+        int processors = Math.min(Runtime.getRuntime().availableProcessors(),
+                8);
+        return Integer.highestOneBit(Math.max(processors, 1));
+    }
+
+    static int bucketIndex(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS));
+        return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS
+                + subBucket - SUB_BUCKETS;
+    }
+
+    /**
+     * The highest value counted in a bucket
+     */
+    static long highestValue(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int offset = index - LINEAR_LIMIT;
+        int shift = offset / SUB_BUCKETS + 1;
+        long subBucket = SUB_BUCKETS + offset % SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Record a value, negative values are recorded as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        } else if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+        AtomicLongArray stripe = stripes[(int) Thread.currentThread().getId()
+                & (STRIPES - 1)];
+        stripe.incrementAndGet(bucketIndex(value));
+        stripe.incrementAndGet(COUNT);
+        stripe.addAndGet(SUM, value);
+        long max = stripe.get(MAX);
+        while (value > max && !stripe.compareAndSet(MAX, max, value)) {
+            max = stripe.get(MAX);
+        }
+    }
+
+    /**
+     * Get the values recorded so far. Values recorded concurrently may be
+     * partly included.
+     */
+    public HistogramSnapshot getSnapshot() {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        long sum = 0;
+        long max = 0;
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+            count += stripe.get(COUNT);
+            sum += stripe.get(SUM);
+            max = Math.max(max, stripe.get(MAX));
+        }
+        return new HistogramSnapshot(counts, count, sum, max);
+    }
+
+    /**
+     * Clear the recorded values
+     */
+    public void reset() {
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < stripe.length(); i++) {
+                stripe.set(i, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+/**
+ * Immutable copy of the values recorded in a {@link Histogram}. Percentiles
+ * are the highest value of the bucket they fall into, so they may be up to
+ * 12.5% above the actual values, but never above the maximum.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class HistogramSnapshot {
+
+    private final long[] counts;
+
+    private final long count;
+
+    private final long sum;
+
+    private final long max;
+
+    /**
+     * Internal constructor, do not use directly.
+     */
+    public HistogramSnapshot(long[] counts, long count, long sum, long max) {
+        this.counts = counts;
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    /**
+     * The number of values recorded
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * The sum of the values recorded
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * The mean of the values recorded, 0 if none are
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * The largest value recorded, 0 if none are
+     */
+    public long getMax() {
+        return max;
+    }
+
+    public long getMedian() {
+        return getPercentile(50);
+    }
+
+    public long getPercentile90() {
+        return getPercentile(90);
+    }
+
+    public long getPercentile99() {
+        return getPercentile(99);
+    }
+
+    public long getPercentile999() {
+        return getPercentile(99.9);
+    }
+
+    /**
+     * Get the value below which a percentage of the values recorded fall
+     * 
+     * @param percentile
+     *            The percentage, between 0 and 100
+     * @return The value, 0 if no values are recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(Math.min(Math.max(percentile, 0), 100)
+                / 100 * total);
+        rank = Math.max(rank, 1);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(Histogram.highestValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count + ", mean=" + (long) getMean() + ", p50="
+                + getMedian() + ", p90=" + getPercentile90() + ", p99="
+                + getPercentile99() + ", p99.9=" + getPercentile999()
+                + ", max=" + max;
+    }
+}
@@ -60,11 +60,23 @@ public class IODataConnection implements DataConnection {
 
     private final ServerDataConnectionFactory factory;
 
+    private final FtpMetrics metrics;
+
     public IODataConnection(final Socket socket, final FtpIoSession session,
             final ServerDataConnectionFactory factory) {
+        this(socket, session, factory, null);
+    }
+
+    /**
+     * @param metrics
+     *            The metrics to record file transfers in, or null
+     */
+    public IODataConnection(final Socket socket, final FtpIoSession session,
+            final ServerDataConnectionFactory factory, final FtpMetrics metrics) {
         this.session = session;
         this.socket = socket;
         this.factory = factory;
+        this.metrics = metrics;
     }
 
     /**
@@ -200,6 +212,7 @@ public class IODataConnection implements DataConnection {
 
         boolean isAscii = session.getDataType() == DataType.ASCII;
         long startTime = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
         byte[] buff = new byte[4096];
 
         BufferedInputStream bis = null;
@@ -245,6 +258,10 @@ public class IODataConnection implements DataConnection {
                 if (count == -1) {
                     break;
                 }
+                if (transferredSize == 0 && metrics != null) {
+                    metrics.recordTimeToFirstByte(System.nanoTime()
+                            - startNanos);
+                }
 
                 // update MINA session
                 if (defaultFtpSession != null) {
@@ -307,6 +324,10 @@ public class IODataConnection implements DataConnection {
             }
         }
 
+        if (metrics != null) {
+            metrics.recordTransfer(transferredSize, System.nanoTime()
+                    - startNanos);
+        }
         return transferredSize;
     }
 
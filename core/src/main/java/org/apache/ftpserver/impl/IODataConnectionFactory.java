@@ -25,6 +25,7 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.UnknownHostException;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
@@ -73,6 +74,18 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
 
     FtpIoSession session;
 
+    /**
+     * Guards the sockets. A lock rather than a monitor, so that virtual threads
+     * blocking while opening the data connection do not pin their carrier
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Is the open data socket counted as an active transfer by the admission
+     * controller?
+     */
+    private boolean transferCounted = false;
+
     public IODataConnectionFactory(final FtpServerContext serverContext,
             final FtpIoSession session) {
         this.session = session;
@@ -87,55 +100,67 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
      * Close data socket.
      * This method must be idempotent as we might call it multiple times during disconnect.
      */
-    public synchronized void closeDataConnection() {
-
-        // close client socket if any
-        if (dataSoc != null) {
-            try {
-                dataSoc.close();
-            } catch (Exception ex) {
-                LOG.warn("FtpDataConnection.closeDataSocket()", ex);
+    public void closeDataConnection() {
+        lock.lock();
+        try {
+            // close client socket if any
+            if (dataSoc != null) {
+                try {
+                    dataSoc.close();
+                } catch (Exception ex) {
+                    LOG.warn("FtpDataConnection.closeDataSocket()", ex);
+                }
+                dataSoc = null;
             }
-            dataSoc = null;
-        }
-
-        // close server socket if any
-        if (servSoc != null) {
-            try {
-                servSoc.close();
-            } catch (Exception ex) {
-                LOG.warn("FtpDataConnection.closeDataSocket()", ex);
+            if (transferCounted) {
+                serverContext.getAdmissionController().transferEnded();
+                transferCounted = false;
             }
 
-            if (session != null) {
-                DataConnectionConfiguration dcc = session.getListener()
-                        .getDataConnectionConfiguration();
-                if (dcc != null) {
-                    dcc.releasePassivePort(port);
+            // close server socket if any
+            if (servSoc != null) {
+                try {
+                    servSoc.close();
+                } catch (Exception ex) {
+                    LOG.warn("FtpDataConnection.closeDataSocket()", ex);
                 }
+
+                if (session != null) {
+                    DataConnectionConfiguration dcc = session.getListener()
+                            .getDataConnectionConfiguration();
+                    if (dcc != null) {
+                        dcc.releasePassivePort(port);
+                    }
+                }
+
+                servSoc = null;
             }
 
-            servSoc = null;
+            // reset request time
+            requestTime = 0L;
+        } finally {
+            lock.unlock();
         }
-
-        // reset request time
-        requestTime = 0L;
     }
 
     /**
      * Port command.
      */
-    public synchronized void initActiveDataConnection(
+    public void initActiveDataConnection(
             final InetSocketAddress address) {
+        lock.lock();
+        try {
+            // close old sockets if any
+            closeDataConnection();
 
-        // close old sockets if any
-        closeDataConnection();
-
-        // set variables
-        passive = false;
-        this.address = address.getAddress();
-        port = address.getPort();
-        requestTime = System.currentTimeMillis();
+            // set variables
+            passive = false;
+            this.address = address.getAddress();
+            port = address.getPort();
+            requestTime = System.currentTimeMillis();
+        } finally {
+            lock.unlock();
+        }
     }
 
     private SslConfiguration getSslConfiguration() {
@@ -155,79 +180,84 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
     /**
      * Initiate a data connection in passive mode (server listening). 
      */
-    public synchronized InetSocketAddress initPassiveDataConnection()
+    public InetSocketAddress initPassiveDataConnection()
             throws DataConnectionException {
-        LOG.debug("Initiating passive data connection");
-        // close old sockets if any
-        closeDataConnection();
-
-        // get the passive port
-        int passivePort = session.getListener()
-                .getDataConnectionConfiguration().requestPassivePort();
-        if (passivePort == -1) {
-            servSoc = null;
-            throw new DataConnectionException(
-                    "Cannot find an available passive port.");
-        }
-
-        // open passive server socket and get parameters
+        lock.lock();
         try {
-            DataConnectionConfiguration dataCfg = session.getListener()
-                    .getDataConnectionConfiguration();
-
-            String passiveAddress = dataCfg.getPassiveAddress();
+            LOG.debug("Initiating passive data connection");
+            // close old sockets if any
+            closeDataConnection();
 
-            if (passiveAddress == null) {
-                address = serverControlAddress;
-            } else {
-                address = resolveAddress(dataCfg.getPassiveAddress());
+            // get the passive port
+            int passivePort = session.getListener()
+                    .getDataConnectionConfiguration().requestPassivePort();
+            if (passivePort == -1) {
+                servSoc = null;
+                throw new DataConnectionException(
+                        "Cannot find an available passive port.");
             }
 
-            if (secure) {
-                LOG
-                        .debug(
-                                "Opening SSL passive data connection on address \"{}\" and port {}",
-                                address, passivePort);
-                SslConfiguration ssl = getSslConfiguration();
-                if (ssl == null) {
-                    throw new DataConnectionException(
-                            "Data connection SSL required but not configured.");
+            // open passive server socket and get parameters
+            try {
+                DataConnectionConfiguration dataCfg = session.getListener()
+                        .getDataConnectionConfiguration();
+
+                String passiveAddress = dataCfg.getPassiveAddress();
+
+                if (passiveAddress == null) {
+                    address = serverControlAddress;
+                } else {
+                    address = resolveAddress(dataCfg.getPassiveAddress());
                 }
 
-                // this method does not actually create the SSL socket, due to a JVM bug 
-                // (https://issues.apache.org/jira/browse/FTPSERVER-241).
-                // Instead, it creates a regular
-                // ServerSocket that will be wrapped as a SSL socket in createDataSocket()
-                servSoc = new ServerSocket(passivePort, 0, address);
-                LOG
-                        .debug(
-                                "SSL Passive data connection created on address \"{}\" and port {}",
-                                address, passivePort);
-            } else {
-                LOG
-                        .debug(
-                                "Opening passive data connection on address \"{}\" and port {}",
-                                address, passivePort);
-                servSoc = new ServerSocket(passivePort, 0, address);
-                LOG
-                        .debug(
-                                "Passive data connection created on address \"{}\" and port {}",
-                                address, passivePort);
-            }
-            port = servSoc.getLocalPort();
-            servSoc.setSoTimeout(dataCfg.getIdleTime() * 1000);
+                if (secure) {
+                    LOG
+                            .debug(
+                                    "Opening SSL passive data connection on address \"{}\" and port {}",
+                                    address, passivePort);
+                    SslConfiguration ssl = getSslConfiguration();
+                    if (ssl == null) {
+                        throw new DataConnectionException(
+                                "Data connection SSL required but not configured.");
+                    }
 
-            // set different state variables
-            passive = true;
-            requestTime = System.currentTimeMillis();
+                    // this method does not actually create the SSL socket, due to a JVM bug 
+                    // (https://issues.apache.org/jira/browse/FTPSERVER-241).
+                    // Instead, it creates a regular
+                    // ServerSocket that will be wrapped as a SSL socket in createDataSocket()
+                    servSoc = new ServerSocket(passivePort, 0, address);
+                    LOG
+                            .debug(
+                                    "SSL Passive data connection created on address \"{}\" and port {}",
+                                    address, passivePort);
+                } else {
+                    LOG
+                            .debug(
+                                    "Opening passive data connection on address \"{}\" and port {}",
+                                    address, passivePort);
+                    servSoc = new ServerSocket(passivePort, 0, address);
+                    LOG
+                            .debug(
+                                    "Passive data connection created on address \"{}\" and port {}",
+                                    address, passivePort);
+                }
+                port = servSoc.getLocalPort();
+                servSoc.setSoTimeout(dataCfg.getIdleTime() * 1000);
 
-            return new InetSocketAddress(address, port);
-        } catch (Exception ex) {
-            servSoc = null;
-            closeDataConnection();
-            throw new DataConnectionException(
-                    "Failed to initate passive data connection: "
-                            + ex.getMessage(), ex);
+                // set different state variables
+                passive = true;
+                requestTime = System.currentTimeMillis();
+
+                return new InetSocketAddress(address, port);
+            } catch (Exception ex) {
+                servSoc = null;
+                closeDataConnection();
+                throw new DataConnectionException(
+                        "Failed to initate passive data connection: "
+                                + ex.getMessage(), ex);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -255,142 +285,160 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
      * @see org.apache.ftpserver.FtpDataConnectionFactory2#openConnection()
      */
     public DataConnection openConnection() throws Exception {
-        return new IODataConnection(createDataSocket(), session, this);
+        // the client might wait for the preliminary reply before connecting
+        session.flushReplies();
+        if (serverContext == null) {
+            return new IODataConnection(createDataSocket(), session, this);
+        }
+
+        FtpMetrics metrics = serverContext.getMetrics();
+        long startTime = System.nanoTime();
+        Socket socket = createDataSocket();
+        metrics.recordDataConnectionSetup(System.nanoTime() - startTime);
+        return new IODataConnection(socket, session, this, metrics);
     }
 
     /**
      * Get the data socket. In case of error returns null.
      */
-    private synchronized Socket createDataSocket() throws Exception {
-
-        // get socket depending on the selection
-        dataSoc = null;
-        DataConnectionConfiguration dataConfig = session.getListener()
-                .getDataConnectionConfiguration();
+    private Socket createDataSocket() throws Exception {
+        lock.lock();
         try {
-            if (!passive) {
-                if (secure) {
-                    LOG.debug("Opening secure active data connection");
-                    SslConfiguration ssl = getSslConfiguration();
-                    if (ssl == null) {
-                        throw new FtpException(
-                                "Data connection SSL not configured");
+            // get socket depending on the selection
+            dataSoc = null;
+            DataConnectionConfiguration dataConfig = session.getListener()
+                    .getDataConnectionConfiguration();
+            try {
+                if (!passive) {
+                    if (secure) {
+                        LOG.debug("Opening secure active data connection");
+                        SslConfiguration ssl = getSslConfiguration();
+                        if (ssl == null) {
+                            throw new FtpException(
+                                    "Data connection SSL not configured");
+                        }
+
+                        // get socket factory
+                        SSLSocketFactory socFactory = ssl.getSocketFactory();
+
+                        // create socket
+                        SSLSocket ssoc = (SSLSocket) socFactory.createSocket();
+                        ssoc.setUseClientMode(false);
+
+                        // initialize socket
+                        if (ssl.getEnabledCipherSuites() != null) {
+                            ssoc.setEnabledCipherSuites(ssl.getEnabledCipherSuites());
+                        }
+                        dataSoc = ssoc;
+                    } else {
+                        LOG.debug("Opening active data connection");
+                        dataSoc = new Socket();
                     }
 
-                    // get socket factory
-                    SSLSocketFactory socFactory = ssl.getSocketFactory();
-
-                    // create socket
-                    SSLSocket ssoc = (SSLSocket) socFactory.createSocket();
-                    ssoc.setUseClientMode(false);
-
-                    // initialize socket
-                    if (ssl.getEnabledCipherSuites() != null) {
-                        ssoc.setEnabledCipherSuites(ssl.getEnabledCipherSuites());
-                    }
-                    dataSoc = ssoc;
-                } else {
-                    LOG.debug("Opening active data connection");
-                    dataSoc = new Socket();
-                }
+                    dataSoc.setReuseAddress(true);
 
-                dataSoc.setReuseAddress(true);
+                    InetAddress localAddr = resolveAddress(dataConfig
+                            .getActiveLocalAddress());
 
-                InetAddress localAddr = resolveAddress(dataConfig
-                        .getActiveLocalAddress());
+                    // if no local address has been configured, make sure we use the same as the client connects from
+                    if(localAddr == null) {
+                        localAddr = ((InetSocketAddress)session.getLocalAddress()).getAddress();
+                    }       
 
-                // if no local address has been configured, make sure we use the same as the client connects from
-                if(localAddr == null) {
-                    localAddr = ((InetSocketAddress)session.getLocalAddress()).getAddress();
-                }       
-
-                SocketAddress localSocketAddress = new InetSocketAddress(localAddr, dataConfig.getActiveLocalPort());
+                    SocketAddress localSocketAddress = new InetSocketAddress(localAddr, dataConfig.getActiveLocalPort());
                 
-                LOG.debug("Binding active data connection to {}", localSocketAddress);
-                dataSoc.bind(localSocketAddress);
+                    LOG.debug("Binding active data connection to {}", localSocketAddress);
+                    dataSoc.bind(localSocketAddress);
 
-                dataSoc.connect(new InetSocketAddress(address, port));
-            } else {
+                    dataSoc.connect(new InetSocketAddress(address, port));
+                } else {
 
-                if (secure) {
-                    LOG.debug("Opening secure passive data connection");
-                    // this is where we wrap the unsecured socket as a SSLSocket. This is 
-                    // due to the JVM bug described in FTPSERVER-241.
+                    if (secure) {
+                        LOG.debug("Opening secure passive data connection");
+                        // this is where we wrap the unsecured socket as a SSLSocket. This is 
+                        // due to the JVM bug described in FTPSERVER-241.
 
-                    // get server socket factory
-                    SslConfiguration ssl = getSslConfiguration();
+                        // get server socket factory
+                        SslConfiguration ssl = getSslConfiguration();
                     
-                    // we've already checked this, but let's do it again
-                    if (ssl == null) {
-                        throw new FtpException(
-                                "Data connection SSL not configured");
+                        // we've already checked this, but let's do it again
+                        if (ssl == null) {
+                            throw new FtpException(
+                                    "Data connection SSL not configured");
+                        }
+
+                        SSLSocketFactory ssocketFactory = ssl.getSocketFactory();
+
+                        Socket serverSocket = servSoc.accept();
+
+                        SSLSocket sslSocket = (SSLSocket) ssocketFactory
+                                .createSocket(serverSocket, serverSocket
+                                        .getInetAddress().getHostAddress(),
+                                        serverSocket.getPort(), true);
+                        sslSocket.setUseClientMode(false);
+
+                        // initialize server socket
+                        if (ssl.getClientAuth() == ClientAuth.NEED) {
+                            sslSocket.setNeedClientAuth(true);
+                        } else if (ssl.getClientAuth() == ClientAuth.WANT) {
+                            sslSocket.setWantClientAuth(true);
+                        }
+
+                        if (ssl.getEnabledCipherSuites() != null) {
+                            sslSocket.setEnabledCipherSuites(ssl
+                                    .getEnabledCipherSuites());
+                        }
+
+                        dataSoc = sslSocket;
+                    } else {
+                        LOG.debug("Opening passive data connection");
+
+                        dataSoc = servSoc.accept();
                     }
-
-                    SSLSocketFactory ssocketFactory = ssl.getSocketFactory();
-
-                    Socket serverSocket = servSoc.accept();
-
-                    SSLSocket sslSocket = (SSLSocket) ssocketFactory
-                            .createSocket(serverSocket, serverSocket
-                                    .getInetAddress().getHostAddress(),
-                                    serverSocket.getPort(), true);
-                    sslSocket.setUseClientMode(false);
-
-                    // initialize server socket
-                    if (ssl.getClientAuth() == ClientAuth.NEED) {
-                        sslSocket.setNeedClientAuth(true);
-                    } else if (ssl.getClientAuth() == ClientAuth.WANT) {
-                        sslSocket.setWantClientAuth(true);
-                    }
-
-                    if (ssl.getEnabledCipherSuites() != null) {
-                        sslSocket.setEnabledCipherSuites(ssl
-                                .getEnabledCipherSuites());
-                    }
-
-                    dataSoc = sslSocket;
-                } else {
-                    LOG.debug("Opening passive data connection");
-
-                    dataSoc = servSoc.accept();
-                }
                 
-                if (dataConfig.isPassiveIpCheck()) {
-					// Let's make sure we got the connection from the same
-					// client that we are expecting
-					InetAddress remoteAddress = ((InetSocketAddress) session.getRemoteAddress()).getAddress();
-					InetAddress dataSocketAddress = dataSoc.getInetAddress();
-					if (!dataSocketAddress.equals(remoteAddress)) {
-						LOG.warn("Passive IP Check failed. Closing data connection from "
-							+ dataSocketAddress
-							+ " as it does not match the expected address "
-							+ remoteAddress);
-						closeDataConnection();
-						return null;
-					}
-				}
+                    if (dataConfig.isPassiveIpCheck()) {
+    					// Let's make sure we got the connection from the same
+    					// client that we are expecting
+    					InetAddress remoteAddress = ((InetSocketAddress) session.getRemoteAddress()).getAddress();
+    					InetAddress dataSocketAddress = dataSoc.getInetAddress();
+    					if (!dataSocketAddress.equals(remoteAddress)) {
+    						LOG.warn("Passive IP Check failed. Closing data connection from "
+    							+ dataSocketAddress
+    							+ " as it does not match the expected address "
+    							+ remoteAddress);
+    						closeDataConnection();
+    						return null;
+    					}
+    				}
                 
-                DataConnectionConfiguration dataCfg = session.getListener()
-                    .getDataConnectionConfiguration();
+                    DataConnectionConfiguration dataCfg = session.getListener()
+                        .getDataConnectionConfiguration();
                 
-                dataSoc.setSoTimeout(dataCfg.getIdleTime() * 1000);
-                LOG.debug("Passive data connection opened");
+                    dataSoc.setSoTimeout(dataCfg.getIdleTime() * 1000);
+                    LOG.debug("Passive data connection opened");
+                }
+            } catch (Exception ex) {
+                closeDataConnection();
+                LOG.warn("FtpDataConnection.getDataSocket()", ex);
+                throw ex;
             }
-        } catch (Exception ex) {
-            closeDataConnection();
-            LOG.warn("FtpDataConnection.getDataSocket()", ex);
-            throw ex;
-        }
-        dataSoc.setSoTimeout(dataConfig.getIdleTime() * 1000);
+            dataSoc.setSoTimeout(dataConfig.getIdleTime() * 1000);
 
-        // Make sure we initiate the SSL handshake, or we'll
-        // get an error if we turn out not to send any data
-        // e.g. during the listing of an empty directory
-        if (dataSoc instanceof SSLSocket) {
-            ((SSLSocket) dataSoc).startHandshake();
-        }
+            // Make sure we initiate the SSL handshake, or we'll
+            // get an error if we turn out not to send any data
+            // e.g. during the listing of an empty directory
+            if (dataSoc instanceof SSLSocket) {
+                ((SSLSocket) dataSoc).startHandshake();
+            }
 
-        return dataSoc;
+            if (!transferCounted && serverContext != null) {
+                serverContext.getAdmissionController().transferStarted();
+                transferCounted = true;
+            }
+            return dataSoc;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /*
@@ -445,31 +493,48 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
     /**
      * Check the data connection idle status.
      */
-    public synchronized boolean isTimeout(final long currTime) {
+    public boolean isTimeout(final long currTime) {
+        lock.lock();
+        try {
+            // data connection not requested - not a timeout
+            if (requestTime == 0L) {
+                return false;
+            }
 
-        // data connection not requested - not a timeout
-        if (requestTime == 0L) {
-            return false;
-        }
+            // data connection active - not a timeout
+            if (dataSoc != null) {
+                return false;
+            }
 
-        // data connection active - not a timeout
-        if (dataSoc != null) {
-            return false;
-        }
+            // no idle time limit - not a timeout
+            int maxIdleTime = session.getListener()
+                    .getDataConnectionConfiguration().getIdleTime() * 1000;
+            if (maxIdleTime == 0) {
+                return false;
+            }
 
-        // no idle time limit - not a timeout
-        int maxIdleTime = session.getListener()
-                .getDataConnectionConfiguration().getIdleTime() * 1000;
-        if (maxIdleTime == 0) {
-            return false;
-        }
+            // idle time is within limit - not a timeout
+            if ((currTime - requestTime) < maxIdleTime) {
+                return false;
+            }
 
-        // idle time is within limit - not a timeout
-        if ((currTime - requestTime) < maxIdleTime) {
-            return false;
+            return true;
+        } finally {
+            lock.unlock();
         }
+    }
 
-        return true;
+    /**
+     * Is the factory idle, without open sockets or a data connection
+     * requested through PORT or PASV?
+     */
+    public boolean isIdle() {
+        lock.lock();
+        try {
+            return dataSoc == null && servSoc == null && requestTime == 0L;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+
+/**
+ * JMX management of a listener: its state, idle time out and IP filter,
+ * which can be changed while running. Changes apply to new sessions, and to
+ * the open sessions of the listener where noted.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface ListenerMXBean {
+
+    String getServerAddress();
+
+    int getPort();
+
+    boolean isImplicitSsl();
+
+    /**
+     * The number of open sessions
+     */
+    int getActiveSessions();
+
+    boolean isSuspended();
+
+    /**
+     * Stop accepting connections, open sessions are kept
+     */
+    void suspend();
+
+    /**
+     * Accept connections again after {@link #suspend()}
+     */
+    void resume();
+
+    /**
+     * The number of seconds without activity after which a session is
+     * closed, 0 for no limit
+     */
+    int getIdleTimeout();
+
+    /**
+     * Set the idle time out, applied to the open sessions within the limit
+     * of their user
+     */
+    void setIdleTimeout(int idleTimeout);
+
+    /**
+     * The type of the IP filter, ALLOW or DENY, or null if sessions are not
+     * filtered
+     */
+    String getIpFilterType();
+
+    /**
+     * Replace the IP filter, closing the open sessions it rejects
+     * 
+     * @param type
+     *            allow or deny
+     * @param subnets
+     *            A comma or white space separated list of addresses and
+     *            subnets in CIDR notation
+     */
+    void setIpFilter(String type, String subnets) throws IOException;
+
+    /**
+     * Replace the IP filter with one loaded from a file, closing the open
+     * sessions it rejects
+     * 
+     * @param type
+     *            allow or deny
+     * @param file
+     *            The path of a file with one address or subnet per line
+     */
+    void loadIpFilter(String type, String file) throws IOException;
+
+    /**
+     * Reload the IP filter from the file it was loaded from, closing the open
+     * sessions it now rejects. If the file is invalid, the filter is kept.
+     * 
+     * @return The number of sessions closed
+     */
+    int reloadIpFilter() throws IOException;
+
+    /**
+     * Remove the IP filter, accepting all sessions
+     */
+    void clearIpFilter();
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.impl;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.ftpserver.ipfilter.IpFilterType;
+import org.apache.ftpserver.ipfilter.RemoteIpFilter;
+import org.apache.ftpserver.ipfilter.SessionFilter;
+import org.apache.ftpserver.ipfilter.SubnetTrieFilter;
+import org.apache.ftpserver.listener.Listener;
+import org.apache.ftpserver.listener.nio.AbstractListener;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Implementation of {@link ListenerMXBean}. Changing the idle time out and
+ * IP filter requires an {@link AbstractListener}. IP filters set through
+ * JMX are {@link SubnetTrieFilter}s, which are replaced as a whole.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ListenerManagement implements ListenerMXBean {
+
+    private final Listener listener;
+
+    public ListenerManagement(Listener listener) {
+        this.listener = listener;
+    }
+
+    public String getServerAddress() {
+        return listener.getServerAddress();
+    }
+
+    public int getPort() {
+        return listener.getPort();
+    }
+
+    public boolean isImplicitSsl() {
+        return listener.isImplicitSsl();
+    }
+
+    public int getActiveSessions() {
+        return listener.getActiveSessions().size();
+    }
+
+    public boolean isSuspended() {
+        return listener.isSuspended();
+    }
+
+    public void suspend() {
+        listener.suspend();
+    }
+
+    public void resume() {
+        listener.resume();
+    }
+
+    public int getIdleTimeout() {
+        return listener.getIdleTimeout();
+    }
+
+    public void setIdleTimeout(int idleTimeout) {
+        getAbstractListener().setIdleTimeout(idleTimeout);
+    }
+
+    public String getIpFilterType() {
+        SessionFilter sessionFilter = listener.getSessionFilter();
+        if (sessionFilter instanceof SubnetTrieFilter) {
+            return ((SubnetTrieFilter) sessionFilter).getType().toString();
+        } else if (sessionFilter instanceof RemoteIpFilter) {
+            return ((RemoteIpFilter) sessionFilter).getType().toString();
+        } else if (sessionFilter != null) {
+            return sessionFilter.getClass().getName();
+        }
+        return null;
+    }
+
+    public void setIpFilter(String type, String subnets) throws IOException {
+        SubnetTrieFilter sessionFilter = new SubnetTrieFilter(IpFilterType
+                .parse(type), subnets);
+        getAbstractListener().setSessionFilter(sessionFilter);
+    }
+
+    public void loadIpFilter(String type, String file) throws IOException {
+        SubnetTrieFilter sessionFilter = new SubnetTrieFilter(IpFilterType
+                .parse(type), new File(file));
+        getAbstractListener().setSessionFilter(sessionFilter);
+    }
+
+    public int reloadIpFilter() throws IOException {
+        AbstractListener abstractListener = getAbstractListener();
+        SessionFilter sessionFilter = abstractListener.getSessionFilter();
+        if (!(sessionFilter instanceof SubnetTrieFilter)
+                || ((SubnetTrieFilter) sessionFilter).getFile() == null) {
+            throw new IllegalStateException(
+                    "The IP filter is not loaded from a file");
+        }
+        ((SubnetTrieFilter) sessionFilter).reload();
+        return abstractListener.closeRejectedSessions();
+    }
+
+    public void clearIpFilter() {
+        getAbstractListener().setSessionFilter(null);
+    }
+
+    private AbstractListener getAbstractListener() {
+        if (!(listener instanceof AbstractListener)) {
+            throw new UnsupportedOperationException(
+                    "The listener can not be changed while running: "
+                            + listener.getClass().getName());
+        }
+        return (AbstractListener) listener;
+    }
+}
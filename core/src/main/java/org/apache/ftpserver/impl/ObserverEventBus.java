@@ -0,0 +1,618 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Delivers statistics and file events to observers on a dedicated thread, so
+ * that slow observers do not delay the sessions. Set as the observer and file
+ * observer of the {@link ServerFtpStatistics}, the events are published into
+ * a bounded lock-free ring buffer and delivered in batches to the observers
+ * set on the bus, in the order published.
+ * 
+ * When the buffer is full, the {@link OverflowPolicy} decides whether the
+ * publishing thread waits for space, or the event is dropped. The data of
+ * the session of a file event is copied when the event is published, so
+ * queued events do not hold on to sessions. Installed on a server through
+ * {@link org.apache.ftpserver.FtpServerFactory#setObserverEventBus(ObserverEventBus)},
+ * it is started and stopped with the server. A statistics observer already
+ * set on the statistics is moved to the bus, unless the bus has one of its
+ * own. A {@link FileObserver} already set on the statistics can not be
+ * delivered copies of the session, and fails the start of the server: it
+ * has to be ported to {@link SnapshotFileObserver} and set on the bus.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ObserverEventBus implements StatisticsObserver, FileObserver {
+
+    /**
+     * What to do with events published while the buffer is full
+     */
+    public static enum OverflowPolicy {
+        /**
+         * Wait for space in the buffer
+         */
+        BLOCK,
+
+        /**
+         * Drop the event
+         */
+        DROP,
+
+        /**
+         * Once the buffer is half full, only publish one in every sample
+         * rate events, dropping the others, and drop events while the buffer
+         * is full
+         */
+        SAMPLE
+    }
+
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    public static final int DEFAULT_SAMPLE_RATE = 10;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS
+            .toNanos(10);
+
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS
+            .toNanos(100);
+
+    private final Logger LOG = LoggerFactory.getLogger(ObserverEventBus.class);
+
+    private final RingBuffer<Event> buffer;
+
+    private final int batchSize;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final int sampleRate;
+
+    private volatile StatisticsObserver observer = null;
+
+    private volatile SnapshotFileObserver fileObserver = null;
+
+    private volatile Thread dispatcher;
+
+    private volatile boolean running = false;
+
+    private volatile boolean dispatcherIdle = false;
+
+    private final AtomicLong sampleCounter = new AtomicLong();
+
+    private final LongAdder published = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final AtomicLong delivered = new AtomicLong();
+
+    private final AtomicLong batches = new AtomicLong();
+
+    private volatile long lastLag = 0;
+
+    private volatile long maxLag = 0;
+
+    /**
+     * Create a bus with the default batch size and sample rate
+     * 
+     * @param capacity
+     *            The number of events the buffer can hold, rounded up to a
+     *            power of two
+     * @param overflowPolicy
+     *            What to do with events published while the buffer is full
+     */
+    public ObserverEventBus(int capacity, OverflowPolicy overflowPolicy) {
+        this(capacity, DEFAULT_BATCH_SIZE, overflowPolicy, DEFAULT_SAMPLE_RATE);
+    }
+
+    /**
+     * Create a bus
+     * 
+     * @param capacity
+     *            The number of events the buffer can hold, rounded up to a
+     *            power of two
+     * @param batchSize
+     *            The maximum number of events delivered per batch
+     * @param overflowPolicy
+     *            What to do with events published while the buffer is full
+     * @param sampleRate
+     *            With {@link OverflowPolicy#SAMPLE}, publish one in this many
+     *            events while the buffer is half full
+     */
+    public ObserverEventBus(int capacity, int batchSize,
+            OverflowPolicy overflowPolicy, int sampleRate) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity must be at least 2");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        if (overflowPolicy == null) {
+            throw new NullPointerException("overflowPolicy can not be null");
+        }
+        this.buffer = new RingBuffer<Event>(capacity);
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.sampleRate = Math.max(sampleRate, 1);
+    }
+
+    /**
+     * Set the observer the statistics events are delivered to
+     */
+    public void setObserver(StatisticsObserver observer) {
+        this.observer = observer;
+    }
+
+    /**
+     * Get the observer the statistics events are delivered to
+     */
+    public StatisticsObserver getObserver() {
+        return observer;
+    }
+
+    /**
+     * Set the observer the file events are delivered to. As the session may
+     * be gone by the time the event is delivered, file observers get a copy
+     * of its data instead, a {@link FileObserver} has to be ported to
+     * {@link SnapshotFileObserver} to be used with the bus.
+     */
+    public void setFileObserver(SnapshotFileObserver fileObserver) {
+        this.fileObserver = fileObserver;
+    }
+
+    /**
+     * Get the observer the file events are delivered to
+     */
+    public SnapshotFileObserver getFileObserver() {
+        return fileObserver;
+    }
+
+    /**
+     * Start the dispatcher thread
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                dispatch();
+            }
+        }, "FtpServer-observers");
+        thread.setDaemon(true);
+        dispatcher = thread;
+        thread.start();
+    }
+
+    /**
+     * Stop the dispatcher thread, after delivering the events already
+     * published. Events published after stopping are dropped.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        Thread thread = dispatcher;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dispatcher = null;
+    }
+
+    /**
+     * Is the dispatcher thread running?
+     */
+    public boolean isStarted() {
+        return running;
+    }
+
+    /**
+     * The number of events published into the buffer
+     */
+    public long getPublishedEvents() {
+        return published.sum();
+    }
+
+    /**
+     * The number of events delivered to the observers
+     */
+    public long getDeliveredEvents() {
+        return delivered.get();
+    }
+
+    /**
+     * The number of events dropped, because the buffer was full or sampled,
+     * or because the bus was stopped
+     */
+    public long getDroppedEvents() {
+        return dropped.sum();
+    }
+
+    /**
+     * The number of batches delivered
+     */
+    public long getDeliveredBatches() {
+        return batches.get();
+    }
+
+    /**
+     * The number of events published but not delivered yet
+     */
+    public int getBacklog() {
+        return buffer.size();
+    }
+
+    /**
+     * The time in milliseconds the oldest event of the last batch waited for
+     * delivery
+     */
+    public long getLastLag() {
+        return TimeUnit.NANOSECONDS.toMillis(lastLag);
+    }
+
+    /**
+     * The longest time in milliseconds an event has waited for delivery
+     */
+    public long getMaxLag() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLag);
+    }
+
+    public void notifyUpload() {
+        publish(new Event(EventType.UPLOAD));
+    }
+
+    public void notifyDownload() {
+        publish(new Event(EventType.DOWNLOAD));
+    }
+
+    public void notifyDelete() {
+        publish(new Event(EventType.DELETE));
+    }
+
+    public void notifyMkdir() {
+        publish(new Event(EventType.MKDIR));
+    }
+
+    public void notifyRmdir() {
+        publish(new Event(EventType.RMDIR));
+    }
+
+    public void notifyLogin(boolean anonymous) {
+        Event event = new Event(EventType.LOGIN);
+        event.anonymous = anonymous;
+        publish(event);
+    }
+
+    public void notifyLoginFail(InetAddress address) {
+        Event event = new Event(EventType.LOGIN_FAIL);
+        event.address = address;
+        publish(event);
+    }
+
+    public void notifyLogout(boolean anonymous) {
+        Event event = new Event(EventType.LOGOUT);
+        event.anonymous = anonymous;
+        publish(event);
+    }
+
+    public void notifyOpenConnection() {
+        publish(new Event(EventType.OPEN_CONNECTION));
+    }
+
+    public void notifyCloseConnection() {
+        publish(new Event(EventType.CLOSE_CONNECTION));
+    }
+
+    public void notifyUpload(FtpIoSession session, FtpFile file, long size) {
+        publish(new Event(EventType.FILE_UPLOAD, SessionSnapshot.of(session),
+                file, size));
+    }
+
+    public void notifyDownload(FtpIoSession session, FtpFile file, long size) {
+        publish(new Event(EventType.FILE_DOWNLOAD, SessionSnapshot.of(session),
+                file, size));
+    }
+
+    public void notifyDelete(FtpIoSession session, FtpFile file) {
+        publish(new Event(EventType.FILE_DELETE, SessionSnapshot.of(session),
+                file, 0));
+    }
+
+    public void notifyMkdir(FtpIoSession session, FtpFile file) {
+        publish(new Event(EventType.FILE_MKDIR, SessionSnapshot.of(session),
+                file, 0));
+    }
+
+    public void notifyRmdir(FtpIoSession session, FtpFile file) {
+        publish(new Event(EventType.FILE_RMDIR, SessionSnapshot.of(session),
+                file, 0));
+    }
+
+    private void publish(Event event) {
+        if (!running) {
+            dropped.increment();
+            return;
+        }
+
+        if (overflowPolicy == OverflowPolicy.SAMPLE
+                && buffer.size() >= buffer.capacity() / 2
+                && sampleCounter.getAndIncrement() % sampleRate != 0) {
+            dropped.increment();
+            return;
+        }
+
+        event.publishTime = System.nanoTime();
+        while (!buffer.offer(event)) {
+            if (overflowPolicy != OverflowPolicy.BLOCK || !running) {
+                dropped.increment();
+                return;
+            }
+            LockSupport.parkNanos(this, FULL_PARK_NANOS);
+        }
+        published.increment();
+
+        if (dispatcherIdle) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    private void dispatch() {
+        Event[] batch = new Event[batchSize];
+        while (true) {
+            int size = 0;
+            Event event;
+            while (size < batchSize && (event = buffer.poll()) != null) {
+                batch[size++] = event;
+            }
+
+            if (size == 0) {
+                if (!running) {
+                    return;
+                }
+                dispatcherIdle = true;
+                if (buffer.size() == 0) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                dispatcherIdle = false;
+                continue;
+            }
+
+            long lag = System.nanoTime() - batch[0].publishTime;
+            lastLag = lag;
+            if (lag > maxLag) {
+                maxLag = lag;
+            }
+
+            for (int i = 0; i < size; i++) {
+                deliver(batch[i]);
+                batch[i] = null;
+            }
+            delivered.addAndGet(size);
+            batches.incrementAndGet();
+        }
+    }
+
+    private void deliver(Event event) {
+        try {
+            if (event.type.isFileEvent()) {
+                SnapshotFileObserver fileObserver = this.fileObserver;
+                if (fileObserver != null) {
+                    deliver(fileObserver, event);
+                }
+            } else {
+                StatisticsObserver observer = this.observer;
+                if (observer != null) {
+                    deliver(observer, event);
+                }
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Observer failed handling " + event.type + " event", e);
+        }
+    }
+
+    private static void deliver(SnapshotFileObserver fileObserver,
+            Event event) {
+        switch (event.type) {
+        case FILE_UPLOAD:
+            fileObserver.notifyUpload(event.session, event.file, event.size);
+            break;
+        case FILE_DOWNLOAD:
+            fileObserver.notifyDownload(event.session, event.file, event.size);
+            break;
+        case FILE_DELETE:
+            fileObserver.notifyDelete(event.session, event.file);
+            break;
+        case FILE_MKDIR:
+            fileObserver.notifyMkdir(event.session, event.file);
+            break;
+        case FILE_RMDIR:
+            fileObserver.notifyRmdir(event.session, event.file);
+            break;
+        default:
+            throw new IllegalStateException(String.valueOf(event.type));
+        }
+    }
+
+    private static void deliver(StatisticsObserver observer, Event event) {
+        switch (event.type) {
+        case UPLOAD:
+            observer.notifyUpload();
+            break;
+        case DOWNLOAD:
+            observer.notifyDownload();
+            break;
+        case DELETE:
+            observer.notifyDelete();
+            break;
+        case MKDIR:
+            observer.notifyMkdir();
+            break;
+        case RMDIR:
+            observer.notifyRmdir();
+            break;
+        case LOGIN:
+            observer.notifyLogin(event.anonymous);
+            break;
+        case LOGIN_FAIL:
+            observer.notifyLoginFail(event.address);
+            break;
+        case LOGOUT:
+            observer.notifyLogout(event.anonymous);
+            break;
+        case OPEN_CONNECTION:
+            observer.notifyOpenConnection();
+            break;
+        case CLOSE_CONNECTION:
+            observer.notifyCloseConnection();
+            break;
+        default:
+            throw new IllegalStateException(String.valueOf(event.type));
+        }
+    }
+
+    private static enum EventType {
+        UPLOAD, DOWNLOAD, DELETE, MKDIR, RMDIR, LOGIN, LOGIN_FAIL, LOGOUT,
+        OPEN_CONNECTION, CLOSE_CONNECTION,
+        FILE_UPLOAD, FILE_DOWNLOAD, FILE_DELETE, FILE_MKDIR, FILE_RMDIR;
+
+        private boolean isFileEvent() {
+            return ordinal() >= FILE_UPLOAD.ordinal();
+        }
+    }
+
+    private static class Event {
+
+        private final EventType type;
+
+        private final SessionSnapshot session;
+
+        private final FtpFile file;
+
+        private final long size;
+
+        private boolean anonymous;
+
+        private InetAddress address;
+
+        private long publishTime;
+
+        private Event(EventType type) {
+            this(type, null, null, 0);
+        }
+
+        private Event(EventType type, SessionSnapshot session, FtpFile file,
+                long size) {
+            this.type = type;
+            this.session = session;
+            this.file = file;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Bounded lock-free queue for many producers and a single consumer, based
+     * on a ring of slots each holding a sequence number telling whether it is
+     * free for the producer of a position, or filled for the consumer.
+     */
+    private static class RingBuffer<E> {
+
+        private final int mask;
+
+        private final AtomicLongArray sequences;
+
+        private final AtomicReferenceArray<E> elements;
+
+        private final AtomicLong tail = new AtomicLong();
+
+        private final AtomicLong head = new AtomicLong();
+
+        private RingBuffer(int capacity) {
+            int size = Integer.highestOneBit(capacity - 1) << 1;
+            mask = size - 1;
+            sequences = new AtomicLongArray(size);
+            elements = new AtomicReferenceArray<E>(size);
+            for (int i = 0; i < size; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        private int capacity() {
+            return mask + 1;
+        }
+
+        private int size() {
+            return (int) Math.max(tail.get() - head.get(), 0);
+        }
+
+        private boolean offer(E element) {
+            long position = tail.get();
+            while (true) {
+                int index = (int) position & mask;
+                long difference = sequences.get(index) - position;
+                if (difference == 0) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        elements.lazySet(index, element);
+                        sequences.lazySet(index, position + 1);
+                        return true;
+                    }
+                    position = tail.get();
+                } else if (difference < 0) {
+                    // the consumer has not freed the slot yet
+                    return false;
+                } else {
+                    position = tail.get();
+                }
+            }
+        }
+
+        /**
+         * Must only be called by the single consumer
+         */
+        private E poll() {
+            long position = head.get();
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) {
+                return null;
+            }
+            E element = elements.get(index);
+            elements.lazySet(index, null);
+            sequences.lazySet(index, position + mask + 1);
+            head.lazySet(position + 1);
+            return element;
+        }
+    }
+}
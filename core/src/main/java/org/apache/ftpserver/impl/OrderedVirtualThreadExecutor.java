@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoEvent;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Executor running the events of each session in order on a virtual thread.
+ * Events are queued per session and a session with queued events has exactly
+ * one thread draining its queue, started when the first event arrives and
+ * ending when the queue is empty. Unlike the
+ * {@link org.apache.mina.filter.executor.OrderedThreadPoolExecutor} there is
+ * no limit on the number of sessions being served at the same time, so
+ * sessions blocking in data transfers do not starve the others.
+ *
+ * On JVMs without virtual threads, a cached pool of platform threads is used
+ * instead.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class OrderedVirtualThreadExecutor extends AbstractExecutorService {
+
+    private static final Logger LOG = LoggerFactory
+            .getLogger(OrderedVirtualThreadExecutor.class);
+
+    private static final AttributeKey TASKS = new AttributeKey(
+            OrderedVirtualThreadExecutor.class, "tasks");
+
+    private final ExecutorService executor;
+
+    public OrderedVirtualThreadExecutor() {
+        this(createVirtualThreadExecutor());
+    }
+
+    /**
+     * Internal constructor, do not use directly.
+     *
+     * @param executor
+     *            The executor starting a new thread for every task
+     */
+    public OrderedVirtualThreadExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Create an executor starting a virtual thread for every task, or a
+     * cached thread pool if the JVM does not support virtual threads.
+     */
+    static ExecutorService createVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod(
+                    "newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            LOG.warn("Virtual threads are not supported by this JVM, "
+                    + "using a platform thread for each active session");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Are virtual threads supported by this JVM?
+     */
+    public static boolean isVirtualThreadsSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    public void execute(Runnable task) {
+        if (!(task instanceof IoEvent)) {
+            executor.execute(task);
+            return;
+        }
+
+        IoSession session = ((IoEvent) task).getSession();
+        SessionTasks tasks = (SessionTasks) session.getAttribute(TASKS);
+        if (tasks == null) {
+            tasks = new SessionTasks();
+            SessionTasks oldTasks = (SessionTasks) session
+                    .setAttributeIfAbsent(TASKS, tasks);
+            if (oldTasks != null) {
+                tasks = oldTasks;
+            }
+        }
+
+        tasks.queue.offer(task);
+        if (tasks.running.compareAndSet(false, true)) {
+            executor.execute(tasks);
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public List<Runnable> shutdownNow() {
+        return executor.shutdownNow();
+    }
+
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    public boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * The queued events of a session, run by at most one thread at a time
+     */
+    private static class SessionTasks implements Runnable {
+
+        private final Queue<Runnable> queue = new ConcurrentLinkedQueue<Runnable>();
+
+        private final AtomicBoolean running = new AtomicBoolean();
+
+        public void run() {
+            while (true) {
+                Runnable task;
+                while ((task = queue.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        LOG.warn("Unexpected exception processing event", e);
+                    }
+                }
+
+                running.set(false);
+                // an event might have been queued after the last poll
+                if (queue.isEmpty() || !running.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -57,6 +57,22 @@ public class PassivePorts {
 
     private boolean checkIfBound;
 
+    /**
+     * The number of ports, 0 if any port is used
+     */
+    private final int portCount;
+
+    /**
+     * The number of ports reserved, readable without locking
+     */
+    private volatile int reservedCount = 0;
+
+    /**
+     * Ports reserved under a previous configuration and not part of this
+     * one, released without being made available
+     */
+    private Set<Integer> retiredList = new HashSet<Integer>();
+
     /**
      * Parse a string containing passive ports
      * 
@@ -160,10 +176,43 @@ public class PassivePorts {
 
         this.freeList = new ArrayList<Integer>(passivePorts);
         this.usedList = new HashSet<Integer>(passivePorts.size());
+        this.portCount = passivePorts.contains(0) ? 0 : passivePorts.size();
 
         this.checkIfBound = checkIfBound;
     }
 
+    /**
+     * Parse a string containing passive ports, to replace a previous
+     * configuration. The ports reserved under the previous configuration stay
+     * reserved, and are not made available on release unless part of the new
+     * configuration.
+     * 
+     * @param passivePorts
+     *            A string of passive ports, as for
+     *            {@link #PassivePorts(String, boolean)}
+     * @param previous
+     *            The passive ports replaced, which must not be used after
+     *            this call
+     */
+    public PassivePorts(final String passivePorts, PassivePorts previous) {
+        this(passivePorts, previous.checkIfBound);
+
+        for (Integer port : previous.getReservedPorts()) {
+            if (freeList.remove(port)) {
+                usedList.add(port);
+            } else {
+                retiredList.add(port);
+            }
+        }
+        reservedCount = usedList.size();
+    }
+
+    private synchronized Set<Integer> getReservedPorts() {
+        Set<Integer> reserved = new HashSet<Integer>(usedList);
+        reserved.addAll(retiredList);
+        return reserved;
+    }
+
     /**
      * Checks that the port of not bound by another application
      */
@@ -217,6 +266,7 @@ public class PassivePorts {
                 // Not used by someone else, so lets reserve it and return it
                 freeList.remove(i);
                 usedList.add(ret);
+                reservedCount = usedList.size();
                 return ret;
 
             } else {
@@ -236,6 +286,10 @@ public class PassivePorts {
 
         } else if (usedList.remove(port)) {
             freeList.add(port);
+            reservedCount = usedList.size();
+
+        } else if (retiredList.remove(port)) {
+            // reserved under a previous configuration, no longer available
 
         } else {
             // log attempt to release unused port
@@ -243,6 +297,24 @@ public class PassivePorts {
         }
     }
 
+    /**
+     * The number of passive ports configured
+     * 
+     * @return The number of ports, 0 if any available port is used
+     */
+    public int getPortCount() {
+        return portCount;
+    }
+
+    /**
+     * The number of passive ports currently reserved, read without locking
+     * 
+     * @return The number of ports reserved
+     */
+    public int getReservedPortCount() {
+        return reservedCount;
+    }
+
     @Override
     public String toString() {
         if (passivePortsString != null) {
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.mina.core.session.IoEvent;
+import org.apache.mina.core.session.IoEventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * A command completing on another thread, such as PASS waiting for the user
+ * manager on the authentication executor. Reads from the session are
+ * suspended while the command is pending, and requests read before that are
+ * held back by the handler, so that the requests of a session are still
+ * executed one at a time and in order. The completion of the command is run
+ * on the executor of the session, in order with its other events, after
+ * which the handler executes the held back requests.
+ * 
+ * The requests and the completion listener are only accessed while
+ * processing the events of the session, which the executor runs one at a
+ * time.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class PendingCommand {
+
+    private static final Logger LOG = LoggerFactory
+            .getLogger(PendingCommand.class);
+
+    private static final String ATTRIBUTE_PENDING_COMMAND = FtpIoSession.ATTRIBUTE_PREFIX
+            + "pending-command";
+
+    private final FtpIoSession session;
+
+    private final Executor executor;
+
+    private final List<FtpRequest> deferredRequests = new ArrayList<FtpRequest>();
+
+    private Runnable completionListener;
+
+    private PendingCommand(FtpIoSession session, Executor executor) {
+        this.session = session;
+        this.executor = executor;
+    }
+
+    /**
+     * Mark the command being executed as pending, and suspend reads from the
+     * session until it completes. Must be called while executing the
+     * command.
+     * 
+     * @param session
+     *            The session
+     * @param executor
+     *            The executor processing the events of the session
+     * @return The pending command, to be completed through
+     *         {@link #complete(Runnable)}
+     */
+    public static PendingCommand start(FtpIoSession session, Executor executor) {
+        PendingCommand pending = new PendingCommand(session, executor);
+        session.setAttribute(ATTRIBUTE_PENDING_COMMAND, pending);
+        session.suspendRead();
+        return pending;
+    }
+
+    /**
+     * Get the pending command of a session
+     * 
+     * @param session
+     *            The session
+     * @return The pending command, or null if no command is pending
+     */
+    public static PendingCommand get(FtpIoSession session) {
+        return (PendingCommand) session.getAttribute(ATTRIBUTE_PENDING_COMMAND);
+    }
+
+    /**
+     * Give up on the command without completing it, called while still
+     * executing the command. Reads are not resumed.
+     */
+    public void cancel() {
+        session.removeAttribute(ATTRIBUTE_PENDING_COMMAND, this);
+    }
+
+    /**
+     * Hold back a request until the command has completed
+     * 
+     * @param request
+     *            The request
+     */
+    public void defer(FtpRequest request) {
+        deferredRequests.add(request);
+    }
+
+    /**
+     * The requests held back, in the order they were received
+     */
+    public List<FtpRequest> getDeferredRequests() {
+        return deferredRequests;
+    }
+
+    /**
+     * Set the task to run after the command has completed, such as notifying
+     * the Ftplets and executing the held back requests
+     * 
+     * @param completionListener
+     *            The listener
+     */
+    public void setCompletionListener(Runnable completionListener) {
+        this.completionListener = completionListener;
+    }
+
+    /**
+     * Complete the command, can be called from any thread. The completion is
+     * run in order with the events of the session, unless the session has
+     * been closed in the meantime. It is responsible for resuming reads.
+     * 
+     * @param completion
+     *            The rest of the command
+     */
+    public void complete(final Runnable completion) {
+        IoEvent event = new IoEvent(IoEventType.MESSAGE_RECEIVED, session,
+                this) {
+            @Override
+            public void fire() {
+                session.removeAttribute(ATTRIBUTE_PENDING_COMMAND,
+                        PendingCommand.this);
+                if (session.isClosing()) {
+                    LOG.debug("Session closed while a command was pending");
+                    return;
+                }
+
+                try {
+                    completion.run();
+                    if (completionListener != null) {
+                        completionListener.run();
+                    }
+                } catch (RuntimeException e) {
+                    LOG.error("Exception caught completing command, closing session", e);
+                    session.close(false);
+                }
+            }
+        };
+
+        try {
+            executor.execute(event);
+        } catch (RejectedExecutionException e) {
+            // the server is shutting down
+            session.close(false);
+        }
+    }
+}
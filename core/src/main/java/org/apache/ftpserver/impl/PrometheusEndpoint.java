@@ -0,0 +1,421 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.apache.ftpserver.DataConnectionConfiguration;
+import org.apache.ftpserver.ftplet.FtpStatistics;
+import org.apache.ftpserver.listener.Listener;
+import org.apache.ftpserver.usermanager.impl.ResilientUserManager;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Serves the statistics and metrics of a server in the Prometheus text
+ * format on <code>/metrics</code>, using the HTTP server built into the JDK.
+ * Each scrape reads the atomic counters and takes snapshots of the
+ * histograms, so scraping does not contend with sessions.
+ * 
+ * Labels are limited to listener names, implemented commands and the
+ * anonymous and authenticated classes of users, so the number of series is
+ * bounded by the configuration.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class PrometheusEndpoint {
+
+    public static final String PATH = "/metrics";
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private final FtpServerContext context;
+
+    private HttpServer httpServer;
+
+    public PrometheusEndpoint(FtpServerContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Start serving
+     * 
+     * @param address
+     *            The address to listen on, with port 0 for any free port
+     * @throws IOException
+     *             If the address can not be bound
+     */
+    public synchronized void start(InetSocketAddress address)
+            throws IOException {
+        if (httpServer != null) {
+            return;
+        }
+        HttpServer server = HttpServer.create(address, 0);
+        server.createContext(PATH, new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        // handled on the dispatcher thread, scrapes are short
+        server.setExecutor(null);
+        server.start();
+        httpServer = server;
+    }
+
+    /**
+     * Stop serving, waiting for at most a second for scrapes in progress
+     */
+    public synchronized void stop() {
+        if (httpServer != null) {
+            httpServer.stop(1);
+            httpServer = null;
+        }
+    }
+
+    /**
+     * The port listened on
+     * 
+     * @return The port, or -1 if not started
+     */
+    public synchronized int getPort() {
+        return httpServer == null ? -1 : httpServer.getAddress().getPort();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        if (!PATH.equals(exchange.getRequestURI().getPath())) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        if (!"GET".equals(exchange.getRequestMethod())
+                && !"HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(405, -1);
+            return;
+        }
+
+        byte[] body = scrape().getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.flush();
+    }
+
+    /**
+     * Get the current metrics in the Prometheus text format
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(8192);
+        writeStatistics(out);
+        writeSessions(out);
+        writeLoad(out);
+        writeMetrics(out);
+        return out.toString();
+    }
+
+    private void writeStatistics(StringBuilder out) {
+        FtpStatistics stats = context.getFtpStatistics();
+        counter(out, "ftpserver_uploads_total", "Files uploaded", stats
+                .getTotalUploadNumber());
+        counter(out, "ftpserver_downloads_total", "Files downloaded", stats
+                .getTotalDownloadNumber());
+        counter(out, "ftpserver_upload_bytes_total", "Bytes uploaded", stats
+                .getTotalUploadSize());
+        counter(out, "ftpserver_download_bytes_total", "Bytes downloaded",
+                stats.getTotalDownloadSize());
+        counter(out, "ftpserver_deletes_total", "Files deleted", stats
+                .getTotalDeleteNumber());
+        counter(out, "ftpserver_directories_created_total",
+                "Directories created", stats.getTotalDirectoryCreated());
+        counter(out, "ftpserver_directories_removed_total",
+                "Directories removed", stats.getTotalDirectoryRemoved());
+        counter(out, "ftpserver_connections_total", "Connections opened",
+                stats.getTotalConnectionNumber());
+        counter(out, "ftpserver_failed_logins_total", "Failed logins", stats
+                .getTotalFailedLoginNumber());
+
+        header(out, "ftpserver_logins_total", "Successful logins", "counter");
+        sample(out, "ftpserver_logins_total", "class", "anonymous", stats
+                .getTotalAnonymousLoginNumber());
+        sample(out, "ftpserver_logins_total", "class", "user", stats
+                .getTotalLoginNumber()
+                - stats.getTotalAnonymousLoginNumber());
+
+        gauge(out, "ftpserver_connections", "Open connections", stats
+                .getCurrentConnectionNumber());
+        header(out, "ftpserver_logins", "Logged in sessions", "gauge");
+        sample(out, "ftpserver_logins", "class", "anonymous", stats
+                .getCurrentAnonymousLoginNumber());
+        sample(out, "ftpserver_logins", "class", "user", stats
+                .getCurrentLoginNumber()
+                - stats.getCurrentAnonymousLoginNumber());
+    }
+
+    private void writeSessions(StringBuilder out) {
+        Map<String, Listener> listeners = context.getListeners();
+        Map<Listener, String> listenerNames = new IdentityHashMap<Listener, String>();
+        Map<String, int[]> sessions = new TreeMap<String, int[]>();
+        for (Map.Entry<String, Listener> entry : listeners.entrySet()) {
+            listenerNames.put(entry.getValue(), entry.getKey());
+            sessions.put(entry.getKey(), new int[1]);
+        }
+        for (FtpIoSession session : context.getSessionRegistry()
+                .getSessions()) {
+            String name = listenerNames.get(session.getListener());
+            if (name != null) {
+                sessions.get(name)[0]++;
+            }
+        }
+
+        header(out, "ftpserver_sessions", "Open sessions per listener",
+                "gauge");
+        for (Map.Entry<String, int[]> entry : sessions.entrySet()) {
+            sample(out, "ftpserver_sessions", "listener", entry.getKey(),
+                    entry.getValue()[0]);
+        }
+
+        header(out, "ftpserver_passive_ports",
+                "Passive ports configured per listener, 0 for any", "gauge");
+        for (Map.Entry<String, Listener> entry : listeners.entrySet()) {
+            DataConnectionConfiguration config = entry.getValue()
+                    .getDataConnectionConfiguration();
+            if (config instanceof DefaultDataConnectionConfiguration) {
+                sample(out, "ftpserver_passive_ports", "listener", entry
+                        .getKey(), ((DefaultDataConnectionConfiguration) config)
+                        .getPassivePortCount());
+            }
+        }
+        header(out, "ftpserver_passive_ports_in_use",
+                "Passive ports in use per listener", "gauge");
+        for (Map.Entry<String, Listener> entry : listeners.entrySet()) {
+            DataConnectionConfiguration config = entry.getValue()
+                    .getDataConnectionConfiguration();
+            if (config instanceof DefaultDataConnectionConfiguration) {
+                sample(out, "ftpserver_passive_ports_in_use", "listener",
+                        entry.getKey(),
+                        ((DefaultDataConnectionConfiguration) config)
+                                .getPassivePortsInUse());
+            }
+        }
+    }
+
+    private void writeLoad(StringBuilder out) {
+        AdmissionController admission = context.getAdmissionController();
+        gauge(out, "ftpserver_active_transfers", "Open data connections",
+                admission.getActiveTransfers());
+        gauge(out, "ftpserver_executor_queued_events",
+                "Client events waiting for a thread", admission
+                        .getQueuedEvents());
+        gauge(out, "ftpserver_load",
+                "Load in percent of the closest admission limit", admission
+                        .getLoad());
+        gauge(out, "ftpserver_bans", "Banned addresses and subnets", context
+                .getBanManager().getBans().size());
+
+        ExecutorService executor = context.getExecutor();
+        if (executor instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+            gauge(out, "ftpserver_executor_threads",
+                    "Threads of the thread pool", pool.getPoolSize());
+            gauge(out, "ftpserver_executor_active_threads",
+                    "Threads of the thread pool processing events", pool
+                            .getActiveCount());
+            gauge(out, "ftpserver_executor_max_threads",
+                    "Maximum threads of the thread pool", pool
+                            .getMaximumPoolSize());
+        }
+
+        if (context.getUserManager() instanceof ResilientUserManager) {
+            ResilientUserManager userManager = (ResilientUserManager) context
+                    .getUserManager();
+            gauge(out, "ftpserver_user_manager_circuit_state",
+                    "State of the user manager circuit breaker, 0 closed, 1 open, 2 half open",
+                    userManager.getState().ordinal());
+            gauge(out, "ftpserver_user_manager_active_calls",
+                    "Calls to the user manager in progress", userManager
+                            .getActiveCalls());
+            counter(out, "ftpserver_user_manager_failures_total",
+                    "Failed calls to the user manager, including timeouts",
+                    userManager.getFailures());
+            counter(out, "ftpserver_user_manager_timeouts_total",
+                    "Calls to the user manager which timed out", userManager
+                            .getTimeouts());
+            counter(out, "ftpserver_user_manager_rejected_calls_total",
+                    "Calls to the user manager rejected by the circuit breaker or the concurrency limit",
+                    userManager.getRejectedCalls());
+            counter(out, "ftpserver_user_manager_stale_fallbacks_total",
+                    "Users served from the last successful calls as the user manager was unavailable",
+                    userManager.getStaleFallbacks());
+        }
+    }
+
+    private void writeMetrics(StringBuilder out) {
+        FtpMetrics metrics = context.getMetrics();
+        commandSummaries(out, "ftpserver_command_queue_wait_seconds",
+                "Time requests waited for a thread", metrics
+                        .getCommandQueueWaitTimes());
+        commandSummaries(out, "ftpserver_command_execution_seconds",
+                "Time spent executing requests", metrics
+                        .getCommandExecutionTimes());
+
+        header(out, "ftpserver_transfer_throughput_bytes_per_second",
+                "Throughput of file transfers", "summary");
+        summary(out, "ftpserver_transfer_throughput_bytes_per_second", null,
+                null, metrics.getTransferThroughput(), 1);
+        header(out, "ftpserver_transfer_first_byte_seconds",
+                "Time from the start of file transfers to their first byte",
+                "summary");
+        summary(out, "ftpserver_transfer_first_byte_seconds", null, null,
+                metrics.getTimeToFirstByte(), 1e-6);
+        header(out, "ftpserver_data_connection_setup_seconds",
+                "Time taken to open data connections", "summary");
+        summary(out, "ftpserver_data_connection_setup_seconds", null, null,
+                metrics.getDataConnectionSetupTime(), 1e-6);
+
+        header(out, "ftpserver_authentication_queue_wait_seconds",
+                "Time logins waited for an authentication thread", "summary");
+        summary(out, "ftpserver_authentication_queue_wait_seconds", null,
+                null, metrics.getAuthenticationQueueWaitTime(), 1e-6);
+        header(out, "ftpserver_authentication_seconds",
+                "Time taken by the user manager to authenticate logins",
+                "summary");
+        summary(out, "ftpserver_authentication_seconds", null, null, metrics
+                .getAuthenticationTime(), 1e-6);
+        gauge(out, "ftpserver_queued_authentications",
+                "Logins waiting for an authentication thread", metrics
+                        .getQueuedAuthentications());
+        counter(out, "ftpserver_rejected_authentications_total",
+                "Logins rejected as too many were waiting for an authentication thread",
+                metrics.getRejectedAuthentications());
+    }
+
+    private static void commandSummaries(StringBuilder out, String name,
+            String help, Map<String, HistogramSnapshot> snapshots) {
+        header(out, name, help, "summary");
+        for (Map.Entry<String, HistogramSnapshot> entry : snapshots
+                .entrySet()) {
+            summary(out, name, "command", entry.getKey(), entry.getValue(),
+                    1e-6);
+        }
+    }
+
+    /**
+     * @param scale
+     *            The factor to convert the recorded values to the unit of
+     *            the metric
+     */
+    private static void summary(StringBuilder out, String name,
+            String label, String labelValue, HistogramSnapshot snapshot,
+            double scale) {
+        for (double quantile : QUANTILES) {
+            out.append(name).append('{');
+            if (label != null) {
+                out.append(label).append("=\"");
+                escape(out, labelValue);
+                out.append("\",");
+            }
+            out.append("quantile=\"").append(quantile).append("\"} ");
+            out.append(snapshot.getPercentile(quantile * 100) * scale)
+                    .append('\n');
+        }
+        sample(out, name + "_sum", label, labelValue, snapshot.getSum()
+                * scale);
+        sample(out, name + "_count", label, labelValue, snapshot.getCount());
+    }
+
+    private static void counter(StringBuilder out, String name, String help,
+            long value) {
+        header(out, name, help, "counter");
+        sample(out, name, null, null, value);
+    }
+
+    private static void gauge(StringBuilder out, String name, String help,
+            long value) {
+        header(out, name, help, "gauge");
+        sample(out, name, null, null, value);
+    }
+
+    private static void header(StringBuilder out, String name, String help,
+            String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append(
+                '\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append(
+                '\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String label,
+            String labelValue, long value) {
+        sampleName(out, name, label, labelValue);
+        out.append(value).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String label,
+            String labelValue, double value) {
+        sampleName(out, name, label, labelValue);
+        out.append(value).append('\n');
+    }
+
+    private static void sampleName(StringBuilder out, String name,
+            String label, String labelValue) {
+        out.append(name);
+        if (label != null) {
+            out.append('{').append(label).append("=\"");
+            escape(out, labelValue);
+            out.append("\"}");
+        }
+        out.append(' ');
+    }
+
+    private static void escape(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+    }
+}
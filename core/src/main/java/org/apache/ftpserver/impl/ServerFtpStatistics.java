@@ -37,11 +37,21 @@ public interface ServerFtpStatistics extends FtpStatistics {
      */
     void setObserver(StatisticsObserver observer);
 
+    /**
+     * Get statistics observer.
+     */
+    StatisticsObserver getObserver();
+
     /**
      * Set file observer.
      */
     void setFileObserver(FileObserver observer);
 
+    /**
+     * Get file observer.
+     */
+    FileObserver getFileObserver();
+
     /**
      * Increment upload count.
      */
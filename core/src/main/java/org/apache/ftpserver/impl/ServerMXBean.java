@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.impl;
+
+import org.apache.ftpserver.ftplet.FtpException;
+
+/**
+ * JMX management of a server: its live statistics, suspending and resuming
+ * it, and the connection settings that can be changed while running. Each
+ * change replaces the connection configuration as a whole, and applies to
+ * the logins made from then on.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface ServerMXBean {
+
+    /**
+     * Is the server suspended?
+     */
+    boolean isSuspended();
+
+    /**
+     * Stop accepting connections on all listeners, open sessions are kept
+     */
+    void suspend();
+
+    /**
+     * Accept connections again after {@link #suspend()}
+     */
+    void resume();
+
+    int getCurrentConnections();
+
+    int getCurrentLogins();
+
+    int getCurrentAnonymousLogins();
+
+    int getTotalConnections();
+
+    int getTotalLogins();
+
+    int getTotalFailedLogins();
+
+    int getTotalUploads();
+
+    int getTotalDownloads();
+
+    long getTotalUploadBytes();
+
+    long getTotalDownloadBytes();
+
+    /**
+     * The maximum number of logged in sessions, 0 for no limit
+     */
+    int getMaxLogins();
+
+    void setMaxLogins(int maxLogins);
+
+    /**
+     * The maximum number of anonymous logged in sessions, 0 for no limit
+     */
+    int getMaxAnonymousLogins();
+
+    void setMaxAnonymousLogins(int maxAnonymousLogins);
+
+    /**
+     * Are anonymous logins allowed?
+     */
+    boolean isAnonymousLoginEnabled();
+
+    void setAnonymousLoginEnabled(boolean anonymousLoginEnabled);
+
+    /**
+     * The number of failed logins after which a session is closed
+     */
+    int getMaxLoginFailures();
+
+    void setMaxLoginFailures(int maxLoginFailures);
+
+    /**
+     * The delay in milliseconds after a failed login
+     */
+    int getLoginFailureDelay();
+
+    void setLoginFailureDelay(int loginFailureDelay);
+
+    /**
+     * Change the transfer rate limits of a user, saving the user and
+     * applying the limits to the transfers its open sessions start from now
+     * on
+     * 
+     * @param userName
+     *            The user name
+     * @param maxUploadRate
+     *            The maximum upload rate in bytes per second, 0 for no limit
+     * @param maxDownloadRate
+     *            The maximum download rate in bytes per second, 0 for no
+     *            limit
+     * @throws FtpException
+     *             If the user can not be found or saved
+     */
+    void setUserTransferRate(String userName, int maxUploadRate,
+            int maxDownloadRate) throws FtpException;
+
+    /**
+     * Reload a user from the user manager into its open sessions, for
+     * example after changing its permissions, limits or idle time
+     * 
+     * @param userName
+     *            The user name
+     * @return The number of sessions updated
+     * @throws FtpException
+     *             If the user can not be loaded
+     */
+    int refreshUser(String userName) throws FtpException;
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.FtpServer;
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpStatistics;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.usermanager.impl.CompiledUser;
+import org.apache.ftpserver.usermanager.impl.TransferRatePermission;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Implementation of {@link ServerMXBean}. Changes to the connection settings
+ * are serialized, each copies the current configuration, changes one
+ * setting and replaces the configuration of the server context.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ServerManagement implements ServerMXBean {
+
+    private final FtpServer server;
+
+    private final FtpServerContext context;
+
+    public ServerManagement(FtpServer server, FtpServerContext context) {
+        this.server = server;
+        this.context = context;
+    }
+
+    public boolean isSuspended() {
+        return server.isSuspended();
+    }
+
+    public void suspend() {
+        server.suspend();
+    }
+
+    public void resume() {
+        server.resume();
+    }
+
+    private FtpStatistics getStatistics() {
+        return context.getFtpStatistics();
+    }
+
+    public int getCurrentConnections() {
+        return getStatistics().getCurrentConnectionNumber();
+    }
+
+    public int getCurrentLogins() {
+        return getStatistics().getCurrentLoginNumber();
+    }
+
+    public int getCurrentAnonymousLogins() {
+        return getStatistics().getCurrentAnonymousLoginNumber();
+    }
+
+    public int getTotalConnections() {
+        return getStatistics().getTotalConnectionNumber();
+    }
+
+    public int getTotalLogins() {
+        return getStatistics().getTotalLoginNumber();
+    }
+
+    public int getTotalFailedLogins() {
+        return getStatistics().getTotalFailedLoginNumber();
+    }
+
+    public int getTotalUploads() {
+        return getStatistics().getTotalUploadNumber();
+    }
+
+    public int getTotalDownloads() {
+        return getStatistics().getTotalDownloadNumber();
+    }
+
+    public long getTotalUploadBytes() {
+        return getStatistics().getTotalUploadSize();
+    }
+
+    public long getTotalDownloadBytes() {
+        return getStatistics().getTotalDownloadSize();
+    }
+
+    public int getMaxLogins() {
+        return context.getConnectionConfig().getMaxLogins();
+    }
+
+    public synchronized void setMaxLogins(int maxLogins) {
+        ConnectionConfigFactory factory = copyConnectionConfig();
+        factory.setMaxLogins(maxLogins);
+        context.setConnectionConfig(factory.createConnectionConfig());
+    }
+
+    public int getMaxAnonymousLogins() {
+        return context.getConnectionConfig().getMaxAnonymousLogins();
+    }
+
+    public synchronized void setMaxAnonymousLogins(int maxAnonymousLogins) {
+        ConnectionConfigFactory factory = copyConnectionConfig();
+        factory.setMaxAnonymousLogins(maxAnonymousLogins);
+        context.setConnectionConfig(factory.createConnectionConfig());
+    }
+
+    public boolean isAnonymousLoginEnabled() {
+        return context.getConnectionConfig().isAnonymousLoginEnabled();
+    }
+
+    public synchronized void setAnonymousLoginEnabled(
+            boolean anonymousLoginEnabled) {
+        ConnectionConfigFactory factory = copyConnectionConfig();
+        factory.setAnonymousLoginEnabled(anonymousLoginEnabled);
+        context.setConnectionConfig(factory.createConnectionConfig());
+    }
+
+    public int getMaxLoginFailures() {
+        return context.getConnectionConfig().getMaxLoginFailures();
+    }
+
+    public synchronized void setMaxLoginFailures(int maxLoginFailures) {
+        ConnectionConfigFactory factory = copyConnectionConfig();
+        factory.setMaxLoginFailures(maxLoginFailures);
+        context.setConnectionConfig(factory.createConnectionConfig());
+    }
+
+    public int getLoginFailureDelay() {
+        return context.getConnectionConfig().getLoginFailureDelay();
+    }
+
+    public synchronized void setLoginFailureDelay(int loginFailureDelay) {
+        ConnectionConfigFactory factory = copyConnectionConfig();
+        factory.setLoginFailureDelay(loginFailureDelay);
+        context.setConnectionConfig(factory.createConnectionConfig());
+    }
+
+    private ConnectionConfigFactory copyConnectionConfig() {
+        return new ConnectionConfigFactory(context.getConnectionConfig());
+    }
+
+    public void setUserTransferRate(String userName, int maxUploadRate,
+            int maxDownloadRate) throws FtpException {
+        UserManager userManager = context.getUserManager();
+        User user = userManager.getUserByName(userName);
+        if (user == null) {
+            throw new FtpException("Unknown user: " + userName);
+        }
+
+        List<Authority> authorities = new ArrayList<Authority>();
+        for (Authority authority : user.getAuthorities()) {
+            if (!(authority instanceof TransferRatePermission)) {
+                authorities.add(authority);
+            }
+        }
+        authorities.add(new TransferRatePermission(maxDownloadRate,
+                maxUploadRate));
+        BaseUser updated = new BaseUser(user);
+        updated.setAuthorities(authorities);
+        userManager.save(updated);
+
+        refreshUser(userName);
+    }
+
+    public int refreshUser(String userName) throws FtpException {
+        User user = CompiledUser.compile(context.getUserManager()
+                .getUserByName(userName));
+        if (user == null) {
+            throw new FtpException("Unknown user: " + userName);
+        }
+
+        int updated = 0;
+        for (FtpIoSession session : context.getSessionRegistry()
+                .getSessionsByUser(userName)) {
+            // rates are looked up from the user at the start of each
+            // transfer, so replacing it is safe between commands
+            session.setUser(user);
+            session.setMaxIdleTime(user.getMaxIdleTime());
+            updated++;
+        }
+        return updated;
+    }
+}
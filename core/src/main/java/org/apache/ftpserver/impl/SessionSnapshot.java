@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.net.SocketAddress;
+import java.util.UUID;
+
+import org.apache.ftpserver.ftplet.User;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * The data of a session an event was published for, copied when the event
+ * was published, so that an event waiting for delivery does not keep the
+ * session alive and is not affected by what happens to the session later.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SessionSnapshot {
+
+    private final UUID sessionId;
+
+    private final String userName;
+
+    private final SocketAddress clientAddress;
+
+    public SessionSnapshot(UUID sessionId, String userName,
+            SocketAddress clientAddress) {
+        this.sessionId = sessionId;
+        this.userName = userName;
+        this.clientAddress = clientAddress;
+    }
+
+    /**
+     * Copy the data of a session
+     * 
+     * @param session
+     *            The session, or null
+     * @return The copy, or null if the session is null
+     */
+    static SessionSnapshot of(FtpIoSession session) {
+        if (session == null) {
+            return null;
+        }
+        User user = session.getUser();
+        return new SessionSnapshot(session.getSessionId(), user == null ? null
+                : user.getName(), session.getRemoteAddress());
+    }
+
+    /**
+     * The unique id of the session
+     */
+    public UUID getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * The name of the user logged in, or null if not logged in
+     */
+    public String getUserName() {
+        return userName;
+    }
+
+    /**
+     * The address of the client
+     */
+    public SocketAddress getClientAddress() {
+        return clientAddress;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.impl;
+
+/**
+ * JMX management of the thread pool processing the events of the sessions
+ * of a server. The pool can be resized while running, threads above the new
+ * maximum exit once idle.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface ThreadPoolMXBean {
+
+    /**
+     * The number of threads kept even when idle
+     */
+    int getCorePoolSize();
+
+    /**
+     * Set the number of threads kept even when idle, raising the maximum
+     * number of threads if lower
+     */
+    void setCorePoolSize(int corePoolSize);
+
+    /**
+     * The maximum number of threads
+     */
+    int getMaximumPoolSize();
+
+    /**
+     * Set the maximum number of threads, lowering the number of threads kept
+     * when idle if higher
+     */
+    void setMaximumPoolSize(int maximumPoolSize);
+
+    /**
+     * The current number of threads
+     */
+    int getPoolSize();
+
+    /**
+     * The number of threads processing events
+     */
+    int getActiveCount();
+
+    /**
+     * The largest number of threads there has been at the same time
+     */
+    int getLargestPoolSize();
+
+    /**
+     * The approximate number of events processed
+     */
+    long getCompletedTaskCount();
+
+    /**
+     * The number of events waiting for a thread
+     */
+    int getQueuedEvents();
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Implementation of {@link ThreadPoolMXBean}. Resizing is serialized, so
+ * that the core and maximum sizes are always changed in an order the
+ * executor accepts.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ThreadPoolManagement implements ThreadPoolMXBean {
+
+    private final ThreadPoolExecutor executor;
+
+    private final AdmissionController admissionController;
+
+    public ThreadPoolManagement(ThreadPoolExecutor executor,
+            AdmissionController admissionController) {
+        this.executor = executor;
+        this.admissionController = admissionController;
+    }
+
+    public int getCorePoolSize() {
+        return executor.getCorePoolSize();
+    }
+
+    public synchronized void setCorePoolSize(int corePoolSize) {
+        if (corePoolSize < 0) {
+            throw new IllegalArgumentException(
+                    "Core pool size can not be negative: " + corePoolSize);
+        }
+        if (corePoolSize > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(corePoolSize);
+        }
+        executor.setCorePoolSize(corePoolSize);
+    }
+
+    public int getMaximumPoolSize() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public synchronized void setMaximumPoolSize(int maximumPoolSize) {
+        if (maximumPoolSize < 1) {
+            throw new IllegalArgumentException(
+                    "Maximum pool size must be positive: " + maximumPoolSize);
+        }
+        if (maximumPoolSize < executor.getCorePoolSize()) {
+            executor.setCorePoolSize(maximumPoolSize);
+        }
+        executor.setMaximumPoolSize(maximumPoolSize);
+    }
+
+    public int getPoolSize() {
+        return executor.getPoolSize();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getLargestPoolSize() {
+        return executor.getLargestPoolSize();
+    }
+
+    public long getCompletedTaskCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    public int getQueuedEvents() {
+        return admissionController.getQueuedEvents();
+    }
+}
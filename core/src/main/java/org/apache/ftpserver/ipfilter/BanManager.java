@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.ipfilter;
+
+import java.net.InetAddress;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Keeps track of login failures per IP address and subnet, and temporarily
+ * bans the addresses and subnets with too many of them. As a
+ * <code>SessionFilter</code>, it accepts the sessions of all addresses not
+ * currently banned.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface BanManager extends SessionFilter {
+
+    /**
+     * Record a failed login
+     * 
+     * @param address
+     *            the address of the client
+     */
+    void loginFailed(InetAddress address);
+
+    /**
+     * Record a successful login, which clears the failures recorded for the
+     * address
+     * 
+     * @param address
+     *            the address of the client
+     */
+    void loginSucceeded(InetAddress address);
+
+    /**
+     * Get the number of recent login failures recorded for an address
+     * 
+     * @param address
+     *            the address of the client
+     * @return the number of recent failures, 0 if none are recorded
+     */
+    int getLoginFailures(InetAddress address);
+
+    /**
+     * Is an address currently banned, either on its own or as part of a
+     * subnet?
+     * 
+     * @param address
+     *            the address
+     * @return true if the address is banned
+     */
+    boolean isBanned(InetAddress address);
+
+    /**
+     * Get the current bans
+     * 
+     * @return the banned addresses and subnets, in CIDR notation, mapped to
+     *         the end of their ban
+     */
+    Map<String, Date> getBans();
+
+    /**
+     * Ban an address
+     * 
+     * @param address
+     *            the address
+     * @param duration
+     *            the duration of the ban in seconds
+     */
+    void ban(InetAddress address, int duration);
+
+    /**
+     * Lift the bans of an address and of its subnet, and forget the login
+     * failures recorded for them
+     * 
+     * @param address
+     *            the address
+     * @return true if the address was banned
+     */
+    boolean unban(InetAddress address);
+}
@@ -20,6 +20,7 @@
 package org.apache.ftpserver.ipfilter;
 
 import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.AttributeKey;
 import org.apache.mina.core.session.IoSession;
 
 /**
@@ -32,6 +33,9 @@ import org.apache.mina.core.session.IoSession;
 
 public class MinaSessionFilter extends IoFilterAdapter {
 
+    private static final AttributeKey REJECTED = new AttributeKey(
+            MinaSessionFilter.class, "rejected");
+
     /**
      * The actual (or wrapped) <code>SessionFilter</code> used by this filter.
      */
@@ -50,9 +54,30 @@ public class MinaSessionFilter extends IoFilterAdapter {
     @Override
     public void sessionCreated(NextFilter nextFilter, IoSession session) {
         if (!filter.accept(session)) {
+            session.setAttribute(REJECTED, Boolean.TRUE);
             session.close(true);
         } else {
             nextFilter.sessionCreated(session);
         }
     }
+
+    @Override
+    public void sessionOpened(NextFilter nextFilter, IoSession session)
+            throws Exception {
+        if (!session.containsAttribute(REJECTED)) {
+            nextFilter.sessionOpened(session);
+        }
+    }
+
+    /**
+     * The rest of the chain never saw the rejected session created, so must
+     * not see it closed either
+     */
+    @Override
+    public void sessionClosed(NextFilter nextFilter, IoSession session)
+            throws Exception {
+        if (!session.containsAttribute(REJECTED)) {
+            nextFilter.sessionClosed(session);
+        }
+    }
 }
@@ -33,7 +33,9 @@ import org.slf4j.LoggerFactory;
 
 /**
  * An implementation of the <code>SessionFilter</code> interface, to filter
- * sessions based on the remote IP address.
+ * sessions based on the remote IP address. Each session is checked against
+ * every subnet in turn, use {@link SubnetTrieFilter} for large numbers of
+ * subnets.
  * 
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  * 
@@ -175,7 +177,7 @@ public class RemoteIpFilter extends CopyOnWriteArraySet<Subnet> implements
                         LOGGER
                                 .debug(
                                         "Allowing connection from {} because it matches with the whitelist subnet {}",
-                                        new Object[] { address, subnet });
+                                        address, subnet);
                     }
                     return true;
                 }
@@ -184,7 +186,7 @@ public class RemoteIpFilter extends CopyOnWriteArraySet<Subnet> implements
                 LOGGER
                         .debug(
                                 "Denying connection from {} because it does not match any of the whitelist subnets",
-                                new Object[] { address });
+                                address);
             }
             return false;
         case DENY:
@@ -193,7 +195,7 @@ public class RemoteIpFilter extends CopyOnWriteArraySet<Subnet> implements
                     LOGGER
                             .debug(
                                     "Allowing connection from {} because blacklist is empty",
-                                    new Object[] { address });
+                                    address);
                 }
                 return true;
             }
@@ -203,7 +205,7 @@ public class RemoteIpFilter extends CopyOnWriteArraySet<Subnet> implements
                         LOGGER
                                 .debug(
                                         "Denying connection from {} because it matches with the blacklist subnet {}",
-                                        new Object[] { address, subnet });
+                                        address, subnet);
                     }
                     return false;
                 }
@@ -212,7 +214,7 @@ public class RemoteIpFilter extends CopyOnWriteArraySet<Subnet> implements
                 LOGGER
                         .debug(
                                 "Allowing connection from {} because it does not match any of the blacklist subnets",
-                                new Object[] { address });
+                                address);
             }
             return true;
         default:
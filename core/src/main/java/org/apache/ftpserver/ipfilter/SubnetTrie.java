@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.ipfilter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An immutable set of IPv4 and IPv6 subnets, stored in a path compressed
+ * binary trie per address family. Finding the subnets matching an address
+ * takes at most one step per bit of the longest matching prefix, regardless
+ * of the number of subnets, which makes it suitable for large block lists.
+ * 
+ * Subnets are given in CIDR notation, e.g. <code>192.168.0.0/16</code> or
+ * <code>2001:db8::/32</code>, a plain address is a subnet with only that
+ * address.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SubnetTrie {
+
+    private final Node ipv4Root = new Node(new byte[4], 0);
+
+    private final Node ipv6Root = new Node(new byte[16], 0);
+
+    private int size = 0;
+
+    /**
+     * Creates a new instance of <code>SubnetTrie</code>.
+     * 
+     * @param subnets
+     *            the subnets, as IP addresses or in CIDR notation
+     * @throws UnknownHostException
+     *             propagated
+     * @throws NumberFormatException
+     *             propagated
+     */
+    public SubnetTrie(Collection<String> subnets) throws UnknownHostException,
+            NumberFormatException {
+        for (String subnet : subnets) {
+            add(subnet.trim());
+        }
+    }
+
+    /**
+     * Read subnets, one per line. Blank lines and lines starting with
+     * <code>#</code> are ignored, as is anything following the first
+     * whitespace or comma on a line.
+     * 
+     * @param reader
+     *            the reader to read from, not closed
+     * @return the subnets read
+     * @throws IOException
+     *             propagated
+     */
+    public static List<String> readSubnets(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        List<String> subnets = new ArrayList<String>();
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+            if (line.length() == 0 || line.charAt(0) == '#') {
+                continue;
+            }
+            subnets.add(line.split("[\\s,]+", 2)[0]);
+        }
+        return subnets;
+    }
+
+    private void add(String subnet) throws UnknownHostException {
+        // InetAddress assumes the loopback address for a blank string
+        if (subnet.length() == 0) {
+            throw new IllegalArgumentException("Invalid IP Address or Subnet: "
+                    + subnet);
+        }
+        int slash = subnet.indexOf('/');
+        String host = slash == -1 ? subnet : subnet.substring(0, slash);
+        byte[] address = InetAddress.getByName(host).getAddress();
+        int bits = address.length * 8;
+        int prefixLength = bits;
+        if (slash != -1) {
+            prefixLength = Integer.parseInt(subnet.substring(slash + 1));
+            if (prefixLength < 0 || prefixLength > bits) {
+                throw new IllegalArgumentException("Invalid prefix length: "
+                        + subnet);
+            }
+        }
+        mask(address, prefixLength);
+        if (insert(address.length == 4 ? ipv4Root : ipv6Root, address,
+                prefixLength)) {
+            size++;
+        }
+    }
+
+    /**
+     * Clears the bits of the address following the prefix
+     */
+    private static void mask(byte[] address, int prefixLength) {
+        for (int i = prefixLength; i < address.length * 8; i++) {
+            address[i >> 3] &= ~(0x80 >> (i & 7));
+        }
+    }
+
+    private static int bitAt(byte[] address, int index) {
+        return (address[index >> 3] >> (7 - (index & 7))) & 1;
+    }
+
+    /**
+     * The number of leading bits, up to <code>max</code>, two addresses have
+     * in common
+     */
+    private static int commonPrefixLength(byte[] a, byte[] b, int max) {
+        int length = 0;
+        for (int i = 0; length < max; i++) {
+            int diff = (a[i] ^ b[i]) & 0xFF;
+            if (diff != 0) {
+                length += Integer.numberOfLeadingZeros(diff) - 24;
+                break;
+            }
+            length += 8;
+        }
+        return Math.min(length, max);
+    }
+
+    /**
+     * @return true if the subnet was not in the trie yet
+     */
+    private static boolean insert(Node root, byte[] address, int prefixLength) {
+        Node node = root;
+        while (true) {
+            // the prefix of node is a prefix of the address
+            if (node.prefixLength == prefixLength) {
+                boolean added = !node.subnet;
+                node.subnet = true;
+                return added;
+            }
+
+            int bit = bitAt(address, node.prefixLength);
+            Node child = node.children[bit];
+            if (child == null) {
+                node.children[bit] = new Node(address, prefixLength, true);
+                return true;
+            }
+
+            int common = commonPrefixLength(child.address, address, Math.min(
+                    child.prefixLength, prefixLength));
+            if (common == child.prefixLength) {
+                node = child;
+                continue;
+            }
+
+            // split the edge to the child
+            Node branch;
+            if (common == prefixLength) {
+                branch = new Node(address, prefixLength, true);
+            } else {
+                byte[] branchAddress = address.clone();
+                mask(branchAddress, common);
+                branch = new Node(branchAddress, common);
+                branch.children[bitAt(address, common)] = new Node(address,
+                        prefixLength, true);
+            }
+            branch.children[bitAt(child.address, common)] = child;
+            node.children[bit] = branch;
+            return true;
+        }
+    }
+
+    /**
+     * Find the most specific subnet matching an address
+     * 
+     * @param address
+     *            the address
+     * @return the subnet in CIDR notation, or null if no subnet matches
+     */
+    public String getMatch(InetAddress address) {
+        Node match = find(address.getAddress());
+        return match == null ? null : match.toString();
+    }
+
+    /**
+     * Does any subnet match an address?
+     * 
+     * @param address
+     *            the address
+     * @return true if the address is in one of the subnets
+     */
+    public boolean contains(InetAddress address) {
+        return find(address.getAddress()) != null;
+    }
+
+    private Node find(byte[] address) {
+        Node node = address.length == 4 ? ipv4Root : ipv6Root;
+        int bits = address.length * 8;
+        Node match = null;
+        while (node != null
+                && commonPrefixLength(node.address, address,
+                        node.prefixLength) == node.prefixLength) {
+            if (node.subnet) {
+                match = node;
+            }
+            if (node.prefixLength == bits) {
+                break;
+            }
+            node = node.children[bitAt(address, node.prefixLength)];
+        }
+        return match;
+    }
+
+    /**
+     * The number of distinct subnets
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Is the trie empty?
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private static class Node {
+
+        private final byte[] address;
+
+        private final int prefixLength;
+
+        /**
+         * Is this node a subnet, rather than only a branch?
+         */
+        private boolean subnet;
+
+        private final Node[] children = new Node[2];
+
+        private Node(byte[] address, int prefixLength) {
+            this(address, prefixLength, false);
+        }
+
+        private Node(byte[] address, int prefixLength, boolean subnet) {
+            this.address = address;
+            this.prefixLength = prefixLength;
+            this.subnet = subnet;
+        }
+
+        @Override
+        public String toString() {
+            try {
+                return InetAddress.getByAddress(address).getHostAddress()
+                        + "/" + prefixLength;
+            } catch (UnknownHostException e) {
+                // can not happen for an address of valid length
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.ipfilter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.apache.ftpserver.util.IoUtils;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An implementation of the <code>SessionFilter</code> interface, to filter
+ * sessions based on the remote IP address, for large numbers of IPv4 and IPv6
+ * subnets. Unlike {@link RemoteIpFilter}, which checks every subnet in turn,
+ * the subnets are kept in a {@link SubnetTrie}, so that the cost of accepting
+ * a session does not grow with the number of subnets.
+ * 
+ * The subnets are replaced as a whole, either from a collection or by
+ * (re)loading a file with one subnet per line. A new trie is built before
+ * replacing the current one, sessions are filtered against the old subnets
+ * until then and a file with invalid entries leaves the subnets unchanged.
+ * 
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SubnetTrieFilter implements SessionFilter {
+
+    private static final Logger LOG = LoggerFactory
+            .getLogger(SubnetTrieFilter.class);
+
+    private volatile IpFilterType type;
+
+    private volatile SubnetTrie subnets;
+
+    private volatile File file;
+
+    /**
+     * Creates a new instance of <code>SubnetTrieFilter</code> without any
+     * subnets.
+     * 
+     * @param type
+     *            the filter type
+     */
+    public SubnetTrieFilter(IpFilterType type) {
+        this.type = type;
+        try {
+            this.subnets = new SubnetTrie(Collections.<String> emptyList());
+        } catch (UnknownHostException e) {
+            // can not happen without any subnets
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Creates a new instance of <code>SubnetTrieFilter</code>.
+     * 
+     * @param type
+     *            the filter type
+     * @param addresses
+     *            a comma, space, tab, CR, LF separated list of IP
+     *            addresses/CIDRs.
+     * @throws UnknownHostException
+     *             propagated
+     * @throws NumberFormatException
+     *             propagated
+     */
+    public SubnetTrieFilter(IpFilterType type, String addresses)
+            throws NumberFormatException, UnknownHostException {
+        this.type = type;
+        String trimmed = addresses == null ? "" : addresses.trim();
+        if (trimmed.length() == 0) {
+            setSubnets(Collections.<String> emptyList());
+        } else {
+            setSubnets(Arrays.asList(trimmed.split("[\\s,]+")));
+        }
+    }
+
+    /**
+     * Creates a new instance of <code>SubnetTrieFilter</code> with the
+     * subnets read from a file.
+     * 
+     * @param type
+     *            the filter type
+     * @param file
+     *            the file to read the subnets from, see {@link #load(File)}
+     * @throws IOException
+     *             if the file can not be read or contains invalid subnets
+     */
+    public SubnetTrieFilter(IpFilterType type, File file) throws IOException {
+        this.type = type;
+        load(file);
+    }
+
+    /**
+     * Returns the type of this filter.
+     * 
+     * @return the type of this filter.
+     */
+    public IpFilterType getType() {
+        return type;
+    }
+
+    /**
+     * Sets the type of this filter.
+     * 
+     * @param type
+     *            the type of this filter.
+     */
+    public void setType(IpFilterType type) {
+        this.type = type;
+    }
+
+    /**
+     * Returns the current subnets.
+     * 
+     * @return the current subnets
+     */
+    public SubnetTrie getSubnets() {
+        return subnets;
+    }
+
+    /**
+     * Replaces the subnets of this filter.
+     * 
+     * @param subnets
+     *            the new subnets
+     */
+    public void setSubnets(SubnetTrie subnets) {
+        this.subnets = subnets;
+        LOG.info("Filtering sessions against {} subnets", subnets.size());
+    }
+
+    /**
+     * Replaces the subnets of this filter.
+     * 
+     * @param subnets
+     *            the new subnets, as IP addresses or in CIDR notation
+     * @throws UnknownHostException
+     *             propagated
+     * @throws NumberFormatException
+     *             propagated
+     */
+    public void setSubnets(Collection<String> subnets)
+            throws UnknownHostException, NumberFormatException {
+        setSubnets(new SubnetTrie(subnets));
+    }
+
+    /**
+     * Returns the file the subnets were last loaded from.
+     * 
+     * @return the file, or null if the subnets were not loaded from a file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Replaces the subnets of this filter with the ones in a file, in the
+     * format read by {@link SubnetTrie#readSubnets(Reader)}. The file is
+     * remembered for {@link #reload()}.
+     * 
+     * @param file
+     *            the file to read the subnets from
+     * @throws IOException
+     *             if the file can not be read or contains invalid subnets,
+     *             in which case the subnets are left unchanged
+     */
+    public void load(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file),
+                "UTF-8");
+        SubnetTrie loaded;
+        try {
+            loaded = new SubnetTrie(SubnetTrie.readSubnets(reader));
+        } catch (IllegalArgumentException e) {
+            // includes NumberFormatException
+            throw (IOException) new IOException("Invalid subnet in "
+                    + file.getAbsolutePath() + ": " + e.getMessage())
+                    .initCause(e);
+        } finally {
+            IoUtils.close(reader);
+        }
+        this.file = file;
+        setSubnets(loaded);
+    }
+
+    /**
+     * Reloads the subnets from the file they were last loaded from.
+     * 
+     * @throws IOException
+     *             if the file can not be read or contains invalid subnets,
+     *             in which case the subnets are left unchanged
+     */
+    public void reload() throws IOException {
+        File file = this.file;
+        if (file == null) {
+            throw new IllegalStateException(
+                    "The subnets were not loaded from a file");
+        }
+        load(file);
+    }
+
+    public boolean accept(IoSession session) {
+        InetAddress address = ((InetSocketAddress) session.getRemoteAddress())
+                .getAddress();
+        SubnetTrie subnets = this.subnets;
+        switch (type) {
+        case ALLOW:
+            if (subnets.contains(address)) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(
+                            "Allowing connection from {} because it matches with the whitelist subnet {}",
+                            address, subnets.getMatch(address));
+                }
+                return true;
+            }
+            LOG.debug(
+                    "Denying connection from {} because it does not match any of the whitelist subnets",
+                    address);
+            return false;
+        case DENY:
+            if (subnets.contains(address)) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(
+                            "Denying connection from {} because it matches with the blacklist subnet {}",
+                            address, subnets.getMatch(address));
+                }
+                return false;
+            }
+            LOG.debug(
+                    "Allowing connection from {} because it does not match any of the blacklist subnets",
+                    address);
+            return true;
+        default:
+            throw new RuntimeException("Unknown or unimplemented filter type: "
+                    + type);
+        }
+    }
+}
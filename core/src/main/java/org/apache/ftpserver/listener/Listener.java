@@ -85,7 +85,9 @@ public interface Listener {
 
     /**
      * Returns the currently active sessions for this listener. If no sessions
-     * are active, an empty {@link Set} would be returned.
+     * are active, an empty {@link Set} would be returned. The set might be a
+     * live, unmodifiable view, which can be iterated while sessions are
+     * opened and closed.
      * 
      * @return The currently active sessions
      */
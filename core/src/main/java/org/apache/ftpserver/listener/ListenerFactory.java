@@ -28,6 +28,7 @@ import org.apache.ftpserver.DataConnectionConfigurationFactory;
 import org.apache.ftpserver.FtpServerConfigurationException;
 import org.apache.ftpserver.ipfilter.SessionFilter;
 import org.apache.ftpserver.listener.nio.NioListener;
+import org.apache.ftpserver.listener.nio.NioListenerConfiguration;
 import org.apache.ftpserver.ssl.SslConfiguration;
 import org.apache.mina.filter.firewall.Subnet;
 
@@ -61,6 +62,26 @@ public class ListenerFactory {
      */
     private SessionFilter sessionFilter = null;
 
+    private int ioProcessors = 0;
+
+    private int readBufferSize = 2048;
+
+    private boolean adaptiveReadBuffer = true;
+
+    private int receiveBufferSize = 512;
+
+    private int sendBufferSize = 0;
+
+    private boolean tcpNoDelay = false;
+
+    private int backlog = 50;
+
+    private boolean mdcEnabled = true;
+
+    private boolean loggingEnabled = true;
+
+    private int hibernationTime = 0;
+
     /**
      * Default constructor
      */
@@ -84,6 +105,21 @@ public class ListenerFactory {
         blockedAddresses = listener.getBlockedAddresses();
         blockedSubnets = listener.getBlockedSubnets();
         this.sessionFilter = listener.getSessionFilter();
+
+        if (listener instanceof NioListener) {
+            NioListenerConfiguration configuration = ((NioListener) listener)
+                    .getConfiguration();
+            ioProcessors = configuration.getIoProcessors();
+            readBufferSize = configuration.getReadBufferSize();
+            adaptiveReadBuffer = configuration.isAdaptiveReadBuffer();
+            receiveBufferSize = configuration.getReceiveBufferSize();
+            sendBufferSize = configuration.getSendBufferSize();
+            tcpNoDelay = configuration.isTcpNoDelay();
+            backlog = configuration.getBacklog();
+            mdcEnabled = configuration.isMdcEnabled();
+            loggingEnabled = configuration.isLoggingEnabled();
+            hibernationTime = configuration.getHibernationTime();
+        }
     }
 
     /**
@@ -96,6 +132,11 @@ public class ListenerFactory {
         } catch (UnknownHostException e) {
             throw new FtpServerConfigurationException("Unknown host", e);
         }
+        if (readBufferSize < 1) {
+            throw new FtpServerConfigurationException(
+                    "Read buffer size must be at least 1 byte: "
+                            + readBufferSize);
+        }
         // Deal with the old style black list and new session Filter here.
         if (sessionFilter != null) {
             if (blockedAddresses != null || blockedSubnets != null) {
@@ -109,7 +150,11 @@ public class ListenerFactory {
                     blockedSubnets);
         } else {
             return new NioListener(serverAddress, port, implicitSsl, ssl,
-                    dataConnectionConfig, idleTimeout, sessionFilter);
+                    dataConnectionConfig, idleTimeout, sessionFilter,
+                    new NioListenerConfiguration(ioProcessors, readBufferSize,
+                            adaptiveReadBuffer, receiveBufferSize,
+                            sendBufferSize, tcpNoDelay, backlog, mdcEnabled,
+                            loggingEnabled, hibernationTime));
         }
     }
 
@@ -300,4 +345,221 @@ public class ListenerFactory {
     public void setSessionFilter(SessionFilter sessionFilter) {
         this.sessionFilter = sessionFilter;
     }
-}
\ No newline at end of file
+
+    /**
+     * Get the number of I/O processor threads used by listeners created by
+     * this factory
+     * 
+     * @return The number of I/O processors, 0 for one per available processor
+     */
+    public int getIoProcessors() {
+        return ioProcessors;
+    }
+
+    /**
+     * Set the number of I/O processor threads used by listeners created by
+     * this factory. Defaults to one per available processor.
+     * 
+     * @param ioProcessors
+     *            The number of I/O processors, or 0 for one per available
+     *            processor
+     */
+    public void setIoProcessors(int ioProcessors) {
+        this.ioProcessors = ioProcessors;
+    }
+
+    /**
+     * Get the initial size of the buffer used for reading from client
+     * connections
+     * 
+     * @return The read buffer size in bytes
+     */
+    public int getReadBufferSize() {
+        return readBufferSize;
+    }
+
+    /**
+     * Set the initial size of the buffer used for reading from client
+     * connections. Defaults to 2048 bytes.
+     * 
+     * @param readBufferSize
+     *            The read buffer size in bytes
+     */
+    public void setReadBufferSize(int readBufferSize) {
+        this.readBufferSize = readBufferSize;
+    }
+
+    /**
+     * Is the read buffer grown and shrunk depending on the amount of data
+     * read?
+     * 
+     * @return true if the read buffer is adaptive, false if its size is fixed
+     */
+    public boolean isAdaptiveReadBuffer() {
+        return adaptiveReadBuffer;
+    }
+
+    /**
+     * Set if the read buffer should be grown and shrunk depending on the
+     * amount of data read, or if it should stay at the configured read buffer
+     * size. Defaults to true.
+     * 
+     * @param adaptiveReadBuffer
+     *            true if the read buffer should be adaptive
+     */
+    public void setAdaptiveReadBuffer(boolean adaptiveReadBuffer) {
+        this.adaptiveReadBuffer = adaptiveReadBuffer;
+    }
+
+    /**
+     * Get the socket receive buffer size (SO_RCVBUF) of client connections
+     * 
+     * @return The receive buffer size in bytes, 0 for the system default
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * Set the socket receive buffer size (SO_RCVBUF) of client connections.
+     * Defaults to 512 bytes, as clients only send short commands on the
+     * control connection.
+     * 
+     * @param receiveBufferSize
+     *            The receive buffer size in bytes, or 0 for the system default
+     */
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    /**
+     * Get the socket send buffer size (SO_SNDBUF) of client connections
+     * 
+     * @return The send buffer size in bytes, 0 for the system default
+     */
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * Set the socket send buffer size (SO_SNDBUF) of client connections.
+     * Defaults to the system default.
+     * 
+     * @param sendBufferSize
+     *            The send buffer size in bytes, or 0 for the system default
+     */
+    public void setSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    /**
+     * Is TCP_NODELAY set on client connections?
+     * 
+     * @return true if Nagle's algorithm is disabled
+     */
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * Set if TCP_NODELAY should be set on client connections, disabling
+     * Nagle's algorithm. Defaults to false.
+     * 
+     * @param tcpNoDelay
+     *            true if Nagle's algorithm should be disabled
+     */
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    /**
+     * Get the maximum length of the queue of incoming connections not yet
+     * accepted
+     * 
+     * @return The accept backlog
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Set the maximum length of the queue of incoming connections not yet
+     * accepted. Raise this if clients are refused or slow to connect during
+     * connection storms. Defaults to 50, the effective value is also capped by
+     * the operating system.
+     * 
+     * @param backlog
+     *            The accept backlog
+     */
+    public void setBacklog(int backlog) {
+        this.backlog = backlog;
+    }
+
+    /**
+     * Is the logging MDC (session, remote address and user name) set up for
+     * client connections?
+     * 
+     * @return true if the MDC is set up
+     */
+    public boolean isMdcEnabled() {
+        return mdcEnabled;
+    }
+
+    /**
+     * Set if the logging MDC (session, remote address and user name) should
+     * be set up while processing events for client connections. Defaults to
+     * true.
+     * 
+     * @param mdcEnabled
+     *            true if the MDC should be set up
+     */
+    public void setMdcEnabled(boolean mdcEnabled) {
+        this.mdcEnabled = mdcEnabled;
+    }
+
+    /**
+     * Are requests and replies logged for client connections?
+     * 
+     * @return true if requests and replies are logged
+     */
+    public boolean isLoggingEnabled() {
+        return loggingEnabled;
+    }
+
+    /**
+     * Set if requests and replies should be logged for client connections.
+     * Defaults to true.
+     * 
+     * @param loggingEnabled
+     *            true if requests and replies should be logged
+     */
+    public void setLoggingEnabled(boolean loggingEnabled) {
+        this.loggingEnabled = loggingEnabled;
+    }
+
+    /**
+     * Get the number of seconds after which idle sessions are hibernated
+     * 
+     * @return The hibernation time in seconds, 0 if sessions are never
+     *         hibernated
+     */
+    public int getHibernationTime() {
+        return hibernationTime;
+    }
+
+    /**
+     * Set the number of seconds a session must have been idle before it is
+     * hibernated. A hibernated session shrinks its read buffer and releases
+     * the objects it only needs while active, such as its file system view
+     * and idle data connection, which are created again on its next command.
+     * Meant for servers holding many mostly idle connections. Defaults to 0,
+     * sessions are never hibernated.
+     * 
+     * @param hibernationTime
+     *            The hibernation time in seconds, 0 to never hibernate
+     *            sessions
+     */
+    public void setHibernationTime(int hibernationTime) {
+        this.hibernationTime = hibernationTime;
+    }
+}
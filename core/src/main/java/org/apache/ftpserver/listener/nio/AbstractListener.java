@@ -23,6 +23,7 @@ import java.net.InetAddress;
 import java.util.List;
 
 import org.apache.ftpserver.DataConnectionConfiguration;
+import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.ipfilter.IpFilterType;
 import org.apache.ftpserver.ipfilter.RemoteIpFilter;
 import org.apache.ftpserver.ipfilter.SessionFilter;
@@ -48,13 +49,13 @@ public abstract class AbstractListener implements Listener {
 
     private final boolean implicitSsl;
     
-    private final int idleTimeout;
+    private volatile int idleTimeout;
     
     private final List<InetAddress> blockedAddresses;
 
     private final List<Subnet> blockedSubnets;
 
-    private final SessionFilter sessionFilter;
+    private volatile SessionFilter sessionFilter;
 
     private final DataConnectionConfiguration dataConnectionConfig;
 
@@ -176,6 +177,24 @@ public abstract class AbstractListener implements Listener {
         return idleTimeout;
     }
 
+    /**
+     * Set the number of seconds during which no network activity is allowed
+     * before a session is closed due to inactivity. Applied to new sessions
+     * and to the open sessions of this listener, within the limit of their
+     * user.
+     * 
+     * @param idleTimeout
+     *            The idle time out, 0 for no time out
+     */
+    public void setIdleTimeout(int idleTimeout) {
+        this.idleTimeout = idleTimeout;
+        for (FtpIoSession session : getActiveSessions()) {
+            session.getConfig().setBothIdleTime(idleTimeout);
+            // applies the user limit if lower
+            session.setMaxIdleTime(session.getMaxIdleTime());
+        }
+    }
+
     /**
      * Retrives the {@link InetAddress} for which this listener blocks
      * connections
@@ -198,4 +217,37 @@ public abstract class AbstractListener implements Listener {
     public SessionFilter getSessionFilter() {
         return sessionFilter;
     }
+
+    /**
+     * Replace the session filter. New sessions are filtered by the new
+     * filter, and the open sessions of this listener it rejects are closed.
+     * 
+     * @param sessionFilter
+     *            The session filter, or null to accept all sessions
+     */
+    public void setSessionFilter(SessionFilter sessionFilter) {
+        this.sessionFilter = sessionFilter;
+        closeRejectedSessions();
+    }
+
+    /**
+     * Close the open sessions of this listener rejected by the session
+     * filter, for example after its subnets were reloaded
+     * 
+     * @return The number of sessions closed
+     */
+    public int closeRejectedSessions() {
+        SessionFilter sessionFilter = this.sessionFilter;
+        if (sessionFilter == null) {
+            return 0;
+        }
+        int closed = 0;
+        for (FtpIoSession session : getActiveSessions()) {
+            if (!sessionFilter.accept(session)) {
+                session.close(false);
+                closed++;
+            }
+        }
+        return closed;
+    }
 }
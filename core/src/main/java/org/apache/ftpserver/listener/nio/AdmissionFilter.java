@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.listener.nio;
+
+import java.nio.charset.Charset;
+
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IdleStatus;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Filter rejecting new sessions while the server is saturated, as decided by
+ * the {@link org.apache.ftpserver.impl.AdmissionController}. Placed in front
+ * of the executor, rejected sessions get a 421 reply written from the I/O
+ * thread and are closed, without being passed on to the handler: no ftplet
+ * is called, no greeting is sent and no work is queued for them.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class AdmissionFilter extends IoFilterAdapter {
+
+    private static final Logger LOG = LoggerFactory
+            .getLogger(AdmissionFilter.class);
+
+    private static final AttributeKey REJECTED = new AttributeKey(
+            AdmissionFilter.class, "rejected");
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private final FtpServerContext context;
+
+    public AdmissionFilter(FtpServerContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public void sessionCreated(NextFilter nextFilter, IoSession session)
+            throws Exception {
+        if (!context.getAdmissionController().isSaturated()) {
+            nextFilter.sessionCreated(session);
+            return;
+        }
+
+        LOG.info("Server is saturated, rejecting connection from {}",
+                session.getRemoteAddress());
+        session.setAttribute(REJECTED, Boolean.TRUE);
+
+        FtpReply reply = LocalizedFtpReply.translate(new FtpIoSession(
+                session, context), null, context,
+                FtpReply.REPLY_421_SERVICE_NOT_AVAILABLE_CLOSING_CONTROL_CONNECTION,
+                "busy", null);
+        session.write(IoBuffer.wrap(reply.toString().getBytes(CHARSET)));
+        session.close(false);
+    }
+
+    private static boolean isRejected(IoSession session) {
+        return session.containsAttribute(REJECTED);
+    }
+
+    @Override
+    public void sessionOpened(NextFilter nextFilter, IoSession session)
+            throws Exception {
+        if (!isRejected(session)) {
+            nextFilter.sessionOpened(session);
+        }
+    }
+
+    @Override
+    public void sessionClosed(NextFilter nextFilter, IoSession session)
+            throws Exception {
+        if (!isRejected(session)) {
+            nextFilter.sessionClosed(session);
+        }
+    }
+
+    @Override
+    public void sessionIdle(NextFilter nextFilter, IoSession session,
+            IdleStatus status) throws Exception {
+        if (!isRejected(session)) {
+            nextFilter.sessionIdle(session, status);
+        }
+    }
+
+    @Override
+    public void exceptionCaught(NextFilter nextFilter, IoSession session,
+            Throwable cause) throws Exception {
+        if (!isRejected(session)) {
+            nextFilter.exceptionCaught(session, cause);
+        } else {
+            LOG.debug("Exception on rejected session", cause);
+        }
+    }
+
+    @Override
+    public void messageReceived(NextFilter nextFilter, IoSession session,
+            Object message) throws Exception {
+        if (!isRejected(session)) {
+            nextFilter.messageReceived(session, message);
+        }
+    }
+
+    @Override
+    public void messageSent(NextFilter nextFilter, IoSession session,
+            WriteRequest writeRequest) throws Exception {
+        if (!isRejected(session)) {
+            nextFilter.messageSent(session, writeRequest);
+        }
+    }
+}
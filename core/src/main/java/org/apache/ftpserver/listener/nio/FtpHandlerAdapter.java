@@ -28,7 +28,6 @@ import org.apache.ftpserver.impl.FtpServerContext;
 import org.apache.mina.core.service.IoHandler;
 import org.apache.mina.core.session.IdleStatus;
 import org.apache.mina.core.session.IoSession;
-import org.apache.mina.filter.logging.MdcInjectionFilter;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -57,7 +56,12 @@ public class FtpHandlerAdapter implements IoHandler {
     public void messageReceived(IoSession session, Object message)
             throws Exception {
         FtpIoSession ftpSession = new FtpIoSession(session, context);
-        FtpRequest request = new DefaultFtpRequest(message.toString());
+        FtpRequest request;
+        if (message instanceof FtpRequest) {
+            request = (FtpRequest) message;
+        } else {
+            request = new DefaultFtpRequest(message.toString());
+        }
 
         ftpHandler.messageReceived(ftpSession, request);
     }
@@ -74,8 +78,6 @@ public class FtpHandlerAdapter implements IoHandler {
 
     public void sessionCreated(IoSession session) throws Exception {
         FtpIoSession ftpSession = new FtpIoSession(session, context);
-        MdcInjectionFilter.setProperty(session, "session", ftpSession.getSessionId().toString());
-
         ftpHandler.sessionCreated(ftpSession);
         
     }
@@ -19,6 +19,7 @@
 
 package org.apache.ftpserver.listener.nio;
 
+import org.apache.ftpserver.ftplet.FtpRequest;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.logging.LoggingFilter;
 import org.slf4j.Logger;
@@ -67,22 +68,28 @@ public class FtpLoggingFilter extends LoggingFilter {
     @Override
     public void messageReceived(NextFilter nextFilter, IoSession session,
             Object message) throws Exception {
-        String request = (String) message;
-
-        String logMessage;
-        if (maskPassword) {
+        if (logger.isInfoEnabled()) {
+            logger.info("RECEIVED: {}", toLogMessage(message));
+        }
+        nextFilter.messageReceived(session, message);
+    }
 
-            if (request.trim().toUpperCase().startsWith("PASS ")) {
-                logMessage = "PASS *****";
-            } else {
-                logMessage = request;
+    private String toLogMessage(Object message) {
+        if (message instanceof FtpRequest) {
+            FtpRequest request = (FtpRequest) message;
+            if (maskPassword && "PASS".equals(request.getCommand())
+                    && request.hasArgument()) {
+                return "PASS *****";
             }
-        } else {
-            logMessage = request;
+            return request.getRequestLine();
         }
 
-        logger.info("RECEIVED: {}", logMessage);
-        nextFilter.messageReceived(session, message);
+        String request = message.toString();
+        if (maskPassword
+                && request.trim().toUpperCase().startsWith("PASS ")) {
+            return "PASS *****";
+        }
+        return request;
     }
 
     /**
@@ -0,0 +1,130 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package org.apache.ftpserver.listener.nio;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.mina.core.filterchain.IoFilterEvent;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.logging.MdcInjectionFilter;
+import org.apache.mina.filter.util.CommonEventFilter;
+import org.slf4j.MDC;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Sets up the logging MDC while processing the events of a session, with the
+ * same keys as {@link MdcInjectionFilter}, the id of the session as
+ * <code>session</code> and the name of the user as <code>userName</code>.
+ *
+ * Unlike {@link MdcInjectionFilter}, which keeps a map of the values in each
+ * session, the values are derived from the session for each event, so that
+ * idle sessions do not hold on to them.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class FtpMdcFilter extends CommonEventFilter {
+
+    public static final String HANDLER_CLASS = "handlerClass";
+
+    public static final String REMOTE_ADDRESS = "remoteAddress";
+
+    public static final String LOCAL_ADDRESS = "localAddress";
+
+    public static final String REMOTE_IP = "remoteIp";
+
+    public static final String REMOTE_PORT = "remotePort";
+
+    public static final String LOCAL_IP = "localIp";
+
+    public static final String LOCAL_PORT = "localPort";
+
+    public static final String SESSION = "session";
+
+    public static final String USER_NAME = "userName";
+
+    private static final String[] KEYS = { HANDLER_CLASS, REMOTE_ADDRESS,
+            LOCAL_ADDRESS, REMOTE_IP, REMOTE_PORT, LOCAL_IP, LOCAL_PORT,
+            SESSION, USER_NAME };
+
+    /**
+     * Events can be fired while processing another event, e.g. writes, only
+     * the outermost event sets up and clears the MDC
+     */
+    private final ThreadLocal<int[]> callDepth = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    @Override
+    protected void filter(IoFilterEvent event) throws Exception {
+        int[] depth = callDepth.get();
+        if (depth[0]++ == 0) {
+            put(event.getSession());
+        }
+        try {
+            event.fire();
+        } finally {
+            if (--depth[0] == 0) {
+                for (String key : KEYS) {
+                    MDC.remove(key);
+                }
+            }
+        }
+    }
+
+    private static void put(IoSession session) {
+        MDC.put(HANDLER_CLASS, session.getHandler().getClass().getName());
+
+        SocketAddress remoteAddress = session.getRemoteAddress();
+        if (remoteAddress != null) {
+            MDC.put(REMOTE_ADDRESS, remoteAddress.toString());
+            if (remoteAddress instanceof InetSocketAddress) {
+                InetSocketAddress address = (InetSocketAddress) remoteAddress;
+                MDC.put(REMOTE_IP, address.getAddress().getHostAddress());
+                MDC.put(REMOTE_PORT, Integer.toString(address.getPort()));
+            }
+        }
+        SocketAddress localAddress = session.getLocalAddress();
+        if (localAddress != null) {
+            MDC.put(LOCAL_ADDRESS, localAddress.toString());
+            if (localAddress instanceof InetSocketAddress) {
+                InetSocketAddress address = (InetSocketAddress) localAddress;
+                MDC.put(LOCAL_IP, address.getAddress().getHostAddress());
+                MDC.put(LOCAL_PORT, Integer.toString(address.getPort()));
+            }
+        }
+
+        FtpIoSession ftpSession = new FtpIoSession(session, null);
+        MDC.put(SESSION, ftpSession.getSessionId().toString());
+        User user = ftpSession.getUser();
+        String userName = user != null ? user.getName() : ftpSession
+                .getUserArgument();
+        if (userName != null) {
+            MDC.put(USER_NAME, userName);
+        }
+    }
+}
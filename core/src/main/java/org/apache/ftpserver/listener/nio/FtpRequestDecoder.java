@@ -0,0 +1,260 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.ftpserver.listener.nio;
+
+import java.nio.charset.Charset;
+import java.nio.charset.MalformedInputException;
+import java.util.Arrays;
+
+import org.apache.ftpserver.command.impl.CommandVerbTable;
+import org.apache.ftpserver.impl.DecodedFtpRequest;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolDecoderAdapter;
+import org.apache.mina.filter.codec.ProtocolDecoderException;
+import org.apache.mina.filter.codec.ProtocolDecoderOutput;
+import org.apache.mina.filter.codec.RecoverableProtocolDecoderException;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Decodes FTP request lines straight into {@link DecodedFtpRequest}s. Lines
+ * are terminated by LF (optionally preceded by CR), the command verb is
+ * resolved case insensitively from the bytes using a {@link CommandVerbTable}
+ * and the argument is only decoded when asked for. Lines longer than the
+ * configured maximum cause the session to be failed, rather than buffering
+ * without limit.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class FtpRequestDecoder extends ProtocolDecoderAdapter {
+
+    /**
+     * The default maximum length of a request line, in bytes
+     */
+    public static final int DEFAULT_MAX_LINE_LENGTH = 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte LF = '\n';
+
+    private static final AttributeKey PENDING = new AttributeKey(
+            FtpRequestDecoder.class, "pending");
+
+    private final CommandVerbTable verbTable;
+
+    private final int maxLineLength;
+
+    /**
+     * Create a decoder
+     *
+     * @param verbTable
+     *            The table used for resolving commands, or null if commands
+     *            should be resolved by the command factory
+     * @param maxLineLength
+     *            The maximum length of a request line, in bytes
+     */
+    public FtpRequestDecoder(CommandVerbTable verbTable, int maxLineLength) {
+        if (maxLineLength < 1) {
+            throw new IllegalArgumentException(
+                    "maxLineLength must be a positive number");
+        }
+        this.verbTable = verbTable;
+        this.maxLineLength = maxLineLength;
+    }
+
+    public void decode(IoSession session, IoBuffer in, ProtocolDecoderOutput out)
+            throws Exception {
+        while (in.hasRemaining()) {
+            IoBuffer pending = (IoBuffer) session.getAttribute(PENDING);
+            int buffered = pending == null ? 0 : pending.position();
+
+            int lf = in.indexOf(LF);
+            if (lf == -1) {
+                // incomplete line, keep it until the rest arrives
+                if (buffered + in.remaining() > maxLineLength) {
+                    discard(session, in, pending);
+                }
+                if (pending == null) {
+                    pending = IoBuffer.allocate(
+                            Math.min(maxLineLength, Math.max(64, in.remaining())),
+                            false).setAutoExpand(true);
+                    session.setAttribute(PENDING, pending);
+                }
+                pending.put(in);
+                return;
+            }
+
+            int length = lf - in.position();
+            if (buffered + length > maxLineLength) {
+                discard(session, in, pending);
+            }
+
+            if (buffered == 0 && in.hasArray()) {
+                // the common case, the full line is in the read buffer
+                int start = in.arrayOffset() + in.position();
+                in.position(lf + 1);
+                out.write(parse(in.array(), start, length));
+            } else {
+                if (pending == null) {
+                    pending = IoBuffer.allocate(length, false).setAutoExpand(true);
+                    session.setAttribute(PENDING, pending);
+                }
+                int limit = in.limit();
+                in.limit(lf);
+                pending.put(in);
+                in.limit(limit);
+                in.position(lf + 1);
+
+                pending.flip();
+                try {
+                    out.write(parse(pending.array(), pending.arrayOffset(),
+                            pending.limit()));
+                } finally {
+                    pending.clear();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void dispose(IoSession session) throws Exception {
+        session.removeAttribute(PENDING);
+    }
+
+    /**
+     * Drop the current line and fail the session
+     */
+    private void discard(IoSession session, IoBuffer in, IoBuffer pending)
+            throws ProtocolDecoderException {
+        if (pending != null) {
+            pending.clear();
+        }
+        in.position(in.limit());
+        throw new ProtocolDecoderException("Request line exceeds the maximum of "
+                + maxLineLength + " bytes");
+    }
+
+    /**
+     * Parse the request line in <code>buf[offset..offset+length)</code>.
+     * Follows the same rules as
+     * {@link org.apache.ftpserver.impl.DefaultFtpRequest}: the line is trimmed,
+     * the command is upper cased and stripped of a leading 'X'.
+     */
+    private DecodedFtpRequest parse(byte[] buf, int offset, int length)
+            throws ProtocolDecoderException {
+        int start = offset;
+        int end = offset + length;
+        while (start < end && (buf[start] & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (buf[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+
+        if (!isValidUtf8(buf, start, end)) {
+            throw new RecoverableProtocolDecoderException(
+                    new MalformedInputException(end - start));
+        }
+
+        byte[] line = Arrays.copyOfRange(buf, start, end);
+
+        int spaceIndex = -1;
+        for (int i = 0; i < line.length; i++) {
+            if (line[i] == ' ') {
+                spaceIndex = i;
+                break;
+            }
+        }
+
+        int verbStart = 0;
+        int verbEnd = spaceIndex == -1 ? line.length : spaceIndex;
+        if (verbEnd > 0 && (line[0] == 'X' || line[0] == 'x')) {
+            verbStart = 1;
+        }
+        int verbLength = verbEnd - verbStart;
+
+        if (verbTable != null) {
+            int slot = verbTable.lookup(line, verbStart, verbLength);
+            if (slot >= 0) {
+                return new DecodedFtpRequest(line, spaceIndex, verbTable
+                        .getName(slot), verbTable.getCommand(slot), true);
+            } else if (slot == CommandVerbTable.NOT_FOUND) {
+                return new DecodedFtpRequest(line, spaceIndex, toCommandName(
+                        line, verbStart, verbLength), null, true);
+            }
+        }
+
+        return new DecodedFtpRequest(line, spaceIndex, toCommandName(line,
+                verbStart, verbLength), null, false);
+    }
+
+    private static String toCommandName(byte[] line, int offset, int length) {
+        if (length == 0) {
+            return "";
+        }
+        return new String(line, offset, length, UTF_8).toUpperCase();
+    }
+
+    /**
+     * Strict UTF-8 validation, rejecting the same input as the JDK decoder
+     * (overlong forms, surrogates and truncated sequences).
+     */
+    static boolean isValidUtf8(byte[] buf, int start, int end) {
+        int i = start;
+        while (i < end) {
+            int c = buf[i] & 0xff;
+            if (c < 0x80) {
+                i++;
+                continue;
+            }
+
+            int trailing;
+            if (c >= 0xc2 && c <= 0xdf) {
+                trailing = 1;
+            } else if (c >= 0xe0 && c <= 0xef) {
+                trailing = 2;
+            } else if (c >= 0xf0 && c <= 0xf4) {
+                trailing = 3;
+            } else {
+                return false;
+            }
+            if (i + trailing >= end) {
+                return false;
+            }
+
+            int c1 = buf[i + 1] & 0xff;
+            if (c1 < 0x80 || c1 > 0xbf || (c == 0xe0 && c1 < 0xa0)
+                    || (c == 0xed && c1 > 0x9f) || (c == 0xf0 && c1 < 0x90)
+                    || (c == 0xf4 && c1 > 0x8f)) {
+                return false;
+            }
+            for (int j = 2; j <= trailing; j++) {
+                int cj = buf[i + j] & 0xff;
+                if (cj < 0x80 || cj > 0xbf) {
+                    return false;
+                }
+            }
+            i += trailing + 1;
+        }
+        return true;
+    }
+}
@@ -19,13 +19,13 @@
  */
 package org.apache.ftpserver.listener.nio;
 
-import java.nio.charset.Charset;
-
+import org.apache.ftpserver.command.CommandFactory;
+import org.apache.ftpserver.command.impl.CommandVerbTable;
+import org.apache.ftpserver.command.impl.DefaultCommandFactory;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolCodecFactory;
 import org.apache.mina.filter.codec.ProtocolDecoder;
 import org.apache.mina.filter.codec.ProtocolEncoder;
-import org.apache.mina.filter.codec.textline.TextLineDecoder;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -35,11 +35,32 @@ import org.apache.mina.filter.codec.textline.TextLineDecoder;
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
 public class FtpServerProtocolCodecFactory implements ProtocolCodecFactory {
-    private final ProtocolDecoder decoder = new TextLineDecoder(Charset
-            .forName("UTF-8"));
+    private final ProtocolDecoder decoder;
 
     private final ProtocolEncoder encoder = new FtpResponseEncoder();
 
+    public FtpServerProtocolCodecFactory() {
+        this(null, FtpRequestDecoder.DEFAULT_MAX_LINE_LENGTH);
+    }
+
+    /**
+     * Create a codec factory which resolves commands while decoding
+     * 
+     * @param commandFactory
+     *            The command factory used by the server, commands can only be
+     *            resolved by the decoder for the {@link DefaultCommandFactory}
+     * @param maxLineLength
+     *            The maximum length of a request line, in bytes
+     */
+    public FtpServerProtocolCodecFactory(CommandFactory commandFactory,
+            int maxLineLength) {
+        CommandVerbTable verbTable = null;
+        if (commandFactory instanceof DefaultCommandFactory) {
+            verbTable = ((DefaultCommandFactory) commandFactory).getVerbTable();
+        }
+        decoder = new FtpRequestDecoder(verbTable, maxLineLength);
+    }
+
     public ProtocolDecoder getDecoder(IoSession session) throws Exception {
         return decoder;
     }
@@ -23,9 +23,8 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.security.GeneralSecurityException;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import org.apache.ftpserver.DataConnectionConfiguration;
@@ -45,9 +44,9 @@ import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolCodecFilter;
 import org.apache.mina.filter.executor.ExecutorFilter;
 import org.apache.mina.filter.firewall.Subnet;
-import org.apache.mina.filter.logging.MdcInjectionFilter;
 import org.apache.mina.filter.ssl.SslFilter;
 import org.apache.mina.transport.socket.SocketAcceptor;
+import org.apache.mina.transport.socket.SocketSessionConfig;
 import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -71,7 +70,16 @@ public class NioListener extends AbstractListener {
 
     private FtpHandler handler = new DefaultFtpHandler();
 
-    private FtpServerContext context;
+    private volatile FtpServerContext context;
+
+    /**
+     * The sessions of this listener in the registry of the server, while
+     * started
+     */
+    private volatile Set<FtpIoSession> activeSessions = Collections
+            .emptySet();
+
+    private final NioListenerConfiguration configuration;
 
     /**
      * @deprecated Use the constructor with IpFilter instead. 
@@ -85,6 +93,7 @@ public class NioListener extends AbstractListener {
             int idleTimeout, List<InetAddress> blockedAddresses, List<Subnet> blockedSubnets) {
         super(serverAddress, port, implicitSsl, sslConfiguration, dataConnectionConfig, 
                 idleTimeout, blockedAddresses, blockedSubnets);   
+        this.configuration = new NioListenerConfiguration();
     }
 
     /**
@@ -94,8 +103,30 @@ public class NioListener extends AbstractListener {
             SslConfiguration sslConfiguration,
             DataConnectionConfiguration dataConnectionConfig, int idleTimeout,
             SessionFilter sessionFilter) {
+        this(serverAddress, port, implicitSsl, sslConfiguration,
+                dataConnectionConfig, idleTimeout, sessionFilter,
+                new NioListenerConfiguration());
+    }
+
+    /**
+     * Constructor for internal use, do not use directly. Instead use {@link ListenerFactory}
+     */
+    public NioListener(String serverAddress, int port, boolean implicitSsl,
+            SslConfiguration sslConfiguration,
+            DataConnectionConfiguration dataConnectionConfig, int idleTimeout,
+            SessionFilter sessionFilter, NioListenerConfiguration configuration) {
         super(serverAddress, port, implicitSsl, sslConfiguration,
                 dataConnectionConfig, idleTimeout, sessionFilter);
+        this.configuration = configuration;
+    }
+
+    /**
+     * Get the socket and filter chain settings of this listener
+     * 
+     * @return The settings
+     */
+    public NioListenerConfiguration getConfiguration() {
+        return configuration;
     }
 
     /**
@@ -110,9 +141,14 @@ public class NioListener extends AbstractListener {
         try {
             
             this.context = context;
+            activeSessions = context.getSessionRegistry()
+                    .getSessionsByListener(this);
     
-            acceptor = new NioSocketAcceptor(Runtime.getRuntime()
-                    .availableProcessors());
+            int ioProcessors = configuration.getIoProcessors();
+            if (ioProcessors < 1) {
+                ioProcessors = Runtime.getRuntime().availableProcessors();
+            }
+            acceptor = new NioSocketAcceptor(ioProcessors);
     
             if (getServerAddress() != null) {
                 address = new InetSocketAddress(getServerAddress(), getPort());
@@ -121,29 +157,70 @@ public class NioListener extends AbstractListener {
             }
     
             acceptor.setReuseAddress(true);
-            acceptor.getSessionConfig().setReadBufferSize(2048);
-            acceptor.getSessionConfig().setIdleTime(IdleStatus.BOTH_IDLE,
-                    getIdleTimeout());
-            // Decrease the default receiver buffer size
-            acceptor.getSessionConfig().setReceiveBufferSize(512);
-    
-            MdcInjectionFilter mdcFilter = new MdcInjectionFilter();
-    
-            acceptor.getFilterChain().addLast("mdcFilter", mdcFilter);
+            acceptor.setBacklog(configuration.getBacklog());
 
-            SessionFilter sessionFilter = getSessionFilter();
-            if (sessionFilter != null) {
-                // add and IP filter to the filter chain.
-                acceptor.getFilterChain().addLast("sessionFilter",
-                        new MinaSessionFilter(sessionFilter));
+            SocketSessionConfig sessionConfig = acceptor.getSessionConfig();
+            int readBufferSize = configuration.getReadBufferSize();
+            if (!configuration.isAdaptiveReadBuffer()) {
+                // MINA rejects a minimum above the maximum and the other way
+                // round, move the bound on the side of the new size first
+                if (readBufferSize < sessionConfig.getMinReadBufferSize()) {
+                    sessionConfig.setMinReadBufferSize(readBufferSize);
+                    sessionConfig.setMaxReadBufferSize(readBufferSize);
+                } else {
+                    sessionConfig.setMaxReadBufferSize(readBufferSize);
+                    sessionConfig.setMinReadBufferSize(readBufferSize);
+                }
+            }
+            sessionConfig.setReadBufferSize(readBufferSize);
+            sessionConfig.setIdleTime(IdleStatus.BOTH_IDLE, getIdleTimeout());
+            // reader idle events hibernate the session
+            sessionConfig.setIdleTime(IdleStatus.READER_IDLE, configuration
+                    .getHibernationTime());
+            if (configuration.getReceiveBufferSize() > 0) {
+                sessionConfig.setReceiveBufferSize(configuration
+                        .getReceiveBufferSize());
+            }
+            if (configuration.getSendBufferSize() > 0) {
+                sessionConfig.setSendBufferSize(configuration
+                        .getSendBufferSize());
             }
+            sessionConfig.setTcpNoDelay(configuration.isTcpNoDelay());
+
+            // add and IP filter to the filter chain, looked up for each
+            // session so that it can be replaced while running
+            acceptor.getFilterChain().addLast("sessionFilter",
+                    new MinaSessionFilter(new SessionFilter() {
+                        public boolean accept(IoSession session) {
+                            SessionFilter sessionFilter = getSessionFilter();
+                            return sessionFilter == null
+                                    || sessionFilter.accept(session);
+                        }
+                    }));
     
+            acceptor.getFilterChain().addLast("admission",
+                    new AdmissionFilter(context));
+            acceptor.getFilterChain().addLast("queueWaitStart",
+                    QueueWaitFilter.ENQUEUE);
             acceptor.getFilterChain().addLast("threadPool",
-                    new ExecutorFilter(context.getThreadPoolExecutor()));
+                    new ExecutorFilter(context.getExecutor()));
+            acceptor.getFilterChain().addLast("queueWaitEnd",
+                    QueueWaitFilter.DEQUEUE);
+            acceptor.getFilterChain().addLast("replyCoalescing",
+                    new ReplyCoalescingFilter());
             acceptor.getFilterChain().addLast("codec",
-                    new ProtocolCodecFilter(new FtpServerProtocolCodecFactory()));
-            acceptor.getFilterChain().addLast("mdcFilter2", mdcFilter);
-            acceptor.getFilterChain().addLast("logger", new FtpLoggingFilter());
+                    new ProtocolCodecFilter(new FtpServerProtocolCodecFactory(
+                            context.getCommandFactory(), context
+                                    .getConnectionConfig().getMaxCommandLength())));
+            if (configuration.isMdcEnabled()) {
+                // after the executor, as that is where commands are executed
+                acceptor.getFilterChain().addLast("mdcFilter",
+                        new FtpMdcFilter());
+            }
+            if (configuration.isLoggingEnabled()) {
+                acceptor.getFilterChain().addLast("logger",
+                        new FtpLoggingFilter());
+            }
     
             if (isImplicitSsl()) {
                 SslConfiguration ssl = getSslConfiguration();
@@ -166,6 +243,10 @@ public class NioListener extends AbstractListener {
     
                 acceptor.getFilterChain().addFirst("sslFilter", sslFilter);
             }
+
+            // banned addresses are rejected before anything else
+            acceptor.getFilterChain().addFirst("banFilter",
+                    new MinaSessionFilter(context.getBanManager()));
     
             handler.init(context, this);
             acceptor.setHandler(new FtpHandlerAdapter(context, handler));
@@ -191,6 +272,19 @@ public class NioListener extends AbstractListener {
         setPort(acceptor.getLocalAddress().getPort());
     }
 
+    /**
+     * Set the idle time out of new sessions, and of the open sessions of
+     * this listener within the limit of their user
+     */
+    @Override
+    public synchronized void setIdleTimeout(int idleTimeout) {
+        if (acceptor != null) {
+            acceptor.getSessionConfig().setIdleTime(IdleStatus.BOTH_IDLE,
+                    idleTimeout);
+        }
+        super.setIdleTimeout(idleTimeout);
+    }
+
     /**
      * @see Listener#stop()
      */
@@ -202,6 +296,7 @@ public class NioListener extends AbstractListener {
             acceptor = null;
         }
         context = null;
+        activeSessions = Collections.emptySet();
     }
 
     /**
@@ -254,13 +349,7 @@ public class NioListener extends AbstractListener {
     /**
      * @see Listener#getActiveSessions()
      */
-    public synchronized Set<FtpIoSession> getActiveSessions() {
-        Map<Long, IoSession> sessions = acceptor.getManagedSessions();
-
-        Set<FtpIoSession> ftpSessions = new HashSet<FtpIoSession>();
-        for (IoSession session : sessions.values()) {
-            ftpSessions.add(new FtpIoSession(session, context));
-        }
-        return ftpSessions;
+    public Set<FtpIoSession> getActiveSessions() {
+        return activeSessions;
     }
 }
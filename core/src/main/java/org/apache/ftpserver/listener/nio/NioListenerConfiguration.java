@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.listener.nio;
+
+import org.apache.ftpserver.listener.ListenerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Immutable socket and filter chain settings for a {@link NioListener}.
+ * Configure using {@link ListenerFactory}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioListenerConfiguration {
+
+    private final int ioProcessors;
+
+    private final int readBufferSize;
+
+    private final boolean adaptiveReadBuffer;
+
+    private final int receiveBufferSize;
+
+    private final int sendBufferSize;
+
+    private final boolean tcpNoDelay;
+
+    private final int backlog;
+
+    private final boolean mdcEnabled;
+
+    private final boolean loggingEnabled;
+
+    private final int hibernationTime;
+
+    /**
+     * Create a configuration with the default settings
+     */
+    public NioListenerConfiguration() {
+        this(0, 2048, true, 512, 0, false, 50, true, true, 0);
+    }
+
+    /**
+     * Internal constructor, do not use directly. Use {@link ListenerFactory}
+     * instead
+     */
+    public NioListenerConfiguration(int ioProcessors, int readBufferSize,
+            boolean adaptiveReadBuffer, int receiveBufferSize,
+            int sendBufferSize, boolean tcpNoDelay, int backlog,
+            boolean mdcEnabled, boolean loggingEnabled, int hibernationTime) {
+        this.ioProcessors = ioProcessors;
+        this.readBufferSize = readBufferSize;
+        this.adaptiveReadBuffer = adaptiveReadBuffer;
+        this.receiveBufferSize = receiveBufferSize;
+        this.sendBufferSize = sendBufferSize;
+        this.tcpNoDelay = tcpNoDelay;
+        this.backlog = backlog;
+        this.mdcEnabled = mdcEnabled;
+        this.loggingEnabled = loggingEnabled;
+        this.hibernationTime = hibernationTime;
+    }
+
+    /**
+     * The number of I/O processor threads, 0 for one per available processor
+     */
+    public int getIoProcessors() {
+        return ioProcessors;
+    }
+
+    /**
+     * The initial size, in bytes, of the buffer used for reading from a
+     * session
+     */
+    public int getReadBufferSize() {
+        return readBufferSize;
+    }
+
+    /**
+     * Is the read buffer size adjusted to the amount of data read, or fixed
+     * at the initial size?
+     */
+    public boolean isAdaptiveReadBuffer() {
+        return adaptiveReadBuffer;
+    }
+
+    /**
+     * The SO_RCVBUF of the control sockets, 0 for the system default
+     */
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * The SO_SNDBUF of the control sockets, 0 for the system default
+     */
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * Is TCP_NODELAY set on the control sockets?
+     */
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * The maximum length of the queue of pending connections
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Is the MDC (session, remote address and user name) set up for logging
+     * while processing events?
+     */
+    public boolean isMdcEnabled() {
+        return mdcEnabled;
+    }
+
+    /**
+     * Are requests and replies logged?
+     */
+    public boolean isLoggingEnabled() {
+        return loggingEnabled;
+    }
+
+    /**
+     * The number of seconds a session must have been idle before it is
+     * hibernated, 0 if sessions are never hibernated
+     */
+    public int getHibernationTime() {
+        return hibernationTime;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.ftpserver.listener.nio;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.mina.core.filterchain.IoFilter;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoSession;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Measures the time reads wait for a thread. The {@link #ENQUEUE} filter,
+ * placed before the executor, records when each read is handed to the
+ * executor, and the {@link #DEQUEUE} filter, placed after it, when it starts
+ * being processed. The wait is then available through
+ * {@link #getQueueWait(IoSession)} while the requests of the read are
+ * processed.
+ *
+ * The times are kept in a small ring per session, so measuring does not
+ * allocate. The waits of reads queued while the ring is full are unknown.
+ * The ring is created on the first read of a session, and can be released
+ * while the session is idle through {@link #release(IoSession)}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class QueueWaitFilter {
+
+    private static final AttributeKey TIMER = new AttributeKey(
+            QueueWaitFilter.class, "timer");
+
+    /**
+     * The filter to place before the executor
+     */
+    public static final IoFilter ENQUEUE = new IoFilterAdapter() {
+        @Override
+        public void messageReceived(NextFilter nextFilter, IoSession session,
+                Object message) throws Exception {
+            Timer timer = (Timer) session.getAttribute(TIMER);
+            if (timer == null) {
+                // only called on the I/O processor thread of the session
+                timer = new Timer();
+                session.setAttribute(TIMER, timer);
+            }
+            timer.enqueued(System.nanoTime());
+            nextFilter.messageReceived(session, message);
+        }
+    };
+
+    /**
+     * The filter to place after the executor
+     */
+    public static final IoFilter DEQUEUE = new IoFilterAdapter() {
+        @Override
+        public void messageReceived(NextFilter nextFilter, IoSession session,
+                Object message) throws Exception {
+            Timer timer = (Timer) session.getAttribute(TIMER);
+            if (timer != null) {
+                timer.dequeued(System.nanoTime());
+            }
+            nextFilter.messageReceived(session, message);
+        }
+    };
+
+    private QueueWaitFilter() {
+        // filters only available through the constants
+    }
+
+    /**
+     * Get the time the read being processed waited for a thread
+     * 
+     * @param session
+     *            The MINA session
+     * @return The time in nanoseconds, or -1 if unknown
+     */
+    public static long getQueueWait(IoSession session) {
+        Timer timer = (Timer) session.getAttribute(TIMER);
+        return timer == null ? -1 : timer.lastWait;
+    }
+
+    /**
+     * Release the times kept for an idle session, they are kept again from
+     * its next read. Not done while a read waits for a thread.
+     * 
+     * @param session
+     *            The MINA session
+     */
+    public static void release(IoSession session) {
+        Timer timer = (Timer) session.getAttribute(TIMER);
+        if (timer != null && !timer.isWaiting()) {
+            session.removeAttribute(TIMER, timer);
+        }
+    }
+
+    /**
+     * Ring of the times of the reads queued for a session. Written by the
+     * I/O processor thread of the session only, and read by the thread
+     * processing the session.
+     */
+    private static class Timer {
+
+        private static final int SIZE = 16;
+
+        private final long[] times = new long[SIZE];
+
+        /**
+         * The read each slot holds the time of, published after the time
+         */
+        private final AtomicLongArray reads = new AtomicLongArray(SIZE);
+
+        private final AtomicLong processed = new AtomicLong();
+
+        private long received = 0;
+
+        private volatile long lastWait = -1;
+
+        private Timer() {
+            for (int i = 0; i < SIZE; i++) {
+                reads.set(i, -1);
+            }
+        }
+
+        private void enqueued(long now) {
+            long read = received++;
+            if (read - processed.get() < SIZE) {
+                int index = (int) read & (SIZE - 1);
+                times[index] = now;
+                reads.lazySet(index, read);
+            }
+        }
+
+        private void dequeued(long now) {
+            long read = processed.get();
+            int index = (int) read & (SIZE - 1);
+            lastWait = reads.get(index) == read ? now - times[index] : -1;
+            processed.lazySet(read + 1);
+        }
+
+        /**
+         * Is a read queued but not yet processed?
+         */
+        private boolean isWaiting() {
+            long read = processed.get();
+            return reads.get((int) read & (SIZE - 1)) == read;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.ftpserver.listener.nio;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.future.DefaultWriteFuture;
+import org.apache.mina.core.future.IoFutureListener;
+import org.apache.mina.core.future.WriteFuture;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.DefaultWriteRequest;
+import org.apache.mina.core.write.WriteRequest;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Filter coalescing the replies to pipelined commands. Placed between the
+ * executor and the codec, it sees every read as one buffer which the codec
+ * then splits into one or more requests, all processed in order on the
+ * current thread. Encoded replies written while that happens are held back
+ * and written as a single buffer once the read has been processed, so that
+ * a client sending e.g. <code>TYPE I</code>, <code>PASV</code> and
+ * <code>RETR</code> in one packet does not cause one write per reply.
+ *
+ * Replies must be flushed before anything that waits on the client, which is
+ * done through {@link #flush(IoSession)} on preliminary (1xx) replies, when
+ * opening a data connection and when closing the session.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ReplyCoalescingFilter extends IoFilterAdapter {
+
+    private static final AttributeKey BATCH = new AttributeKey(
+            ReplyCoalescingFilter.class, "batch");
+
+    /**
+     * Write any held back replies for the session. Only has an effect when
+     * called on the thread currently processing a read for the session.
+     *
+     * @param session
+     *            The MINA session
+     */
+    public static void flush(IoSession session) {
+        Batch batch = (Batch) session.getAttribute(BATCH);
+        if (batch != null && batch.owner == Thread.currentThread()) {
+            batch.flush(session);
+        }
+    }
+
+    /**
+     * Release the state kept for an idle session, it is created again on its
+     * next read. Has no effect while a read of the session is processed.
+     * 
+     * @param session
+     *            The MINA session
+     */
+    public static void release(IoSession session) {
+        Batch batch = (Batch) session.getAttribute(BATCH);
+        if (batch != null && batch.owner == null) {
+            session.removeAttribute(BATCH, batch);
+        }
+    }
+
+    @Override
+    public void messageReceived(NextFilter nextFilter, IoSession session,
+            Object message) throws Exception {
+        if (!(message instanceof IoBuffer)) {
+            nextFilter.messageReceived(session, message);
+            return;
+        }
+
+        Batch batch = (Batch) session.getAttribute(BATCH);
+        if (batch == null) {
+            batch = new Batch();
+            session.setAttribute(BATCH, batch);
+        }
+
+        batch.owner = Thread.currentThread();
+        try {
+            nextFilter.messageReceived(session, message);
+        } finally {
+            try {
+                batch.flush(session);
+            } finally {
+                batch.owner = null;
+            }
+        }
+    }
+
+    @Override
+    public void filterWrite(NextFilter nextFilter, IoSession session,
+            WriteRequest writeRequest) throws Exception {
+        Batch batch = (Batch) session.getAttribute(BATCH);
+        if (batch != null && batch.owner == Thread.currentThread()) {
+            batch.nextFilter = nextFilter;
+            batch.pending.add(writeRequest);
+        } else {
+            nextFilter.filterWrite(session, writeRequest);
+        }
+    }
+
+    @Override
+    public void messageSent(NextFilter nextFilter, IoSession session,
+            WriteRequest writeRequest) throws Exception {
+        // the original requests are notified through their own futures
+        if (!(writeRequest instanceof CoalescedWriteRequest)) {
+            nextFilter.messageSent(session, writeRequest);
+        }
+    }
+
+    @Override
+    public void sessionClosed(NextFilter nextFilter, IoSession session)
+            throws Exception {
+        session.removeAttribute(BATCH);
+        nextFilter.sessionClosed(session);
+    }
+
+    /**
+     * The write requests held back for a session
+     */
+    private static class Batch {
+
+        private volatile Thread owner;
+
+        private NextFilter nextFilter;
+
+        private final List<WriteRequest> pending = new ArrayList<WriteRequest>();
+
+        private void flush(IoSession session) {
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            int buffers = 0;
+            int size = 0;
+            boolean mergeable = true;
+            for (WriteRequest request : pending) {
+                Object message = request.getMessage();
+                if (!(message instanceof IoBuffer)) {
+                    mergeable = false;
+                    break;
+                }
+                int remaining = ((IoBuffer) message).remaining();
+                if (remaining > 0) {
+                    buffers++;
+                    size += remaining;
+                }
+            }
+
+            List<WriteRequest> requests = new ArrayList<WriteRequest>(pending);
+            pending.clear();
+
+            if (!mergeable || buffers < 2) {
+                for (WriteRequest request : requests) {
+                    nextFilter.filterWrite(session, request);
+                }
+                return;
+            }
+
+            IoBuffer merged = IoBuffer.allocate(size, false);
+            final List<WriteRequest> parts = new ArrayList<WriteRequest>(buffers);
+            List<WriteRequest> notifications = new ArrayList<WriteRequest>();
+            SocketAddress destination = null;
+            for (WriteRequest request : requests) {
+                IoBuffer buffer = (IoBuffer) request.getMessage();
+                if (buffer.hasRemaining()) {
+                    merged.put(buffer.duplicate());
+                    parts.add(request);
+                    destination = request.getDestination();
+                } else {
+                    // the empty requests the codec uses for firing messageSent
+                    notifications.add(request);
+                }
+            }
+            merged.flip();
+
+            WriteFuture future = new DefaultWriteFuture(session);
+            future.addListener(new IoFutureListener<WriteFuture>() {
+                public void operationComplete(WriteFuture future) {
+                    for (WriteRequest part : parts) {
+                        if (future.isWritten()) {
+                            part.getFuture().setWritten();
+                        } else {
+                            part.getFuture().setException(future.getException());
+                        }
+                    }
+                }
+            });
+
+            nextFilter.filterWrite(session, new CoalescedWriteRequest(merged,
+                    future, destination));
+            for (WriteRequest request : notifications) {
+                nextFilter.filterWrite(session, request);
+            }
+        }
+    }
+
+    private static class CoalescedWriteRequest extends DefaultWriteRequest {
+        public CoalescedWriteRequest(IoBuffer message, WriteFuture future,
+                SocketAddress destination) {
+            super(message, future, destination);
+        }
+    }
+}
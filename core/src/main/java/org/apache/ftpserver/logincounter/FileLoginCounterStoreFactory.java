@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.logincounter;
+
+import java.io.File;
+import java.util.UUID;
+
+import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.logincounter.impl.FileLoginCounterStore;
+
+/**
+ * Factory for a {@link LoginCounterStore} shared by the servers using the same
+ * directory, so that the login limits of users apply across all of them.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class FileLoginCounterStoreFactory {
+
+    private File directory;
+
+    private String nodeId;
+
+    private long leaseTime = 30000;
+
+    private long refreshInterval = 5000;
+
+    /**
+     * Creates a {@link FileLoginCounterStore} instance based on the provided
+     * configuration
+     */
+    public LoginCounterStore createLoginCounterStore() {
+        if (directory == null) {
+            throw new FtpServerConfigurationException(
+                    "Required directory not provided");
+        }
+        String id = nodeId;
+        if (id == null) {
+            id = UUID.randomUUID().toString();
+        } else if (!id.matches("[A-Za-z0-9._-]+")) {
+            throw new FtpServerConfigurationException(
+                    "Node id must only contain letters, digits, '.', '_' and '-': "
+                            + id);
+        }
+        if (refreshInterval <= 0 || refreshInterval >= leaseTime) {
+            throw new FtpServerConfigurationException(
+                    "Refresh interval must be positive and shorter than the lease time");
+        }
+        return new FileLoginCounterStore(directory, id, leaseTime,
+                refreshInterval);
+    }
+
+    /**
+     * Get the directory shared by the servers
+     * 
+     * @return The directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Set the directory shared by the servers, created if it does not exist
+     * 
+     * @param directory
+     *            The directory
+     */
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Get the id of the server
+     * 
+     * @return The node id, or null for a random id
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Set the id of the server, unique among the servers sharing the
+     * directory. By default a random id is used.
+     * 
+     * @param nodeId
+     *            The node id, made of letters, digits, '.', '_' and '-'
+     */
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    /**
+     * Get the time the logins of a server count for without being renewed
+     * 
+     * @return The lease time in milliseconds
+     */
+    public long getLeaseTime() {
+        return leaseTime;
+    }
+
+    /**
+     * Set the time the logins of a server count for without being renewed.
+     * The logins of a server which stopped without cleaning up stop counting
+     * after at most this time. The default value is 30000.
+     * 
+     * @param leaseTime
+     *            The lease time in milliseconds
+     */
+    public void setLeaseTime(long leaseTime) {
+        this.leaseTime = leaseTime;
+    }
+
+    /**
+     * Get the interval at which a server renews its lease and reads the
+     * logins of the other servers
+     * 
+     * @return The refresh interval in milliseconds
+     */
+    public long getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    /**
+     * Set the interval at which a server renews its lease and reads the
+     * logins of the other servers, shorter than the lease time. The default
+     * value is 5000.
+     * 
+     * @param refreshInterval
+     *            The refresh interval in milliseconds
+     */
+    public void setRefreshInterval(long refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+}
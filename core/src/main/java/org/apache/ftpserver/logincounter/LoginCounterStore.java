@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.logincounter;
+
+import java.net.InetAddress;
+
+/**
+ * Counts the current logins per user and per user and remote address, which
+ * {@link org.apache.ftpserver.usermanager.impl.ConcurrentLoginPermission}s are
+ * checked against. The default store counts the logins of the server only,
+ * servers sharing a store, such as the nodes behind a load balancer, enforce
+ * the login limits of users across all of them.
+ * 
+ * Counts are read for every login attempt, implementations are expected to
+ * answer from memory rather than calling out to other nodes each time.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface LoginCounterStore {
+
+    /**
+     * Get the current number of logins of a user
+     * 
+     * @param userName
+     *            The user name
+     * @return The number of logins
+     */
+    int getLoginCount(String userName);
+
+    /**
+     * Get the current number of logins of a user from a remote address
+     * 
+     * @param userName
+     *            The user name
+     * @param address
+     *            The remote address
+     * @return The number of logins, 0 if the address is null
+     */
+    int getLoginCount(String userName, InetAddress address);
+
+    /**
+     * Count a login
+     * 
+     * @param userName
+     *            The user name
+     * @param address
+     *            The remote address, or null if not known
+     */
+    void login(String userName, InetAddress address);
+
+    /**
+     * Count a logout, for a login counted by {@link #login(String, InetAddress)}
+     * 
+     * @param userName
+     *            The user name
+     * @param address
+     *            The remote address, or null if not known
+     */
+    void logout(String userName, InetAddress address);
+
+    /**
+     * Release the resources of the store, called when the server is stopped.
+     * The logins of the server are no longer counted by the other servers
+     * sharing the store.
+     */
+    void dispose();
+}
@@ -0,0 +1,392 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.logincounter.impl;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.ftpserver.logincounter.FileLoginCounterStoreFactory;
+import org.apache.ftpserver.logincounter.LoginCounterStore;
+import org.apache.ftpserver.util.IoUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * {@link LoginCounterStore} shared by the servers using the same directory,
+ * for example servers on the same host or mounting the same network file
+ * system. Each server writes its own logins to a file named after its node id,
+ * and regularly reads the files of the other servers.
+ * 
+ * Logins are counted in memory and the counts of the other servers are cached
+ * between reads, so logging in does not touch the file system. Logins and
+ * logouts are written in the background straight away. As a consequence, the
+ * login limits of a user can be exceeded by logins made on different servers
+ * at the same time, within one refresh interval.
+ * 
+ * The file of a server is a lease: it holds the time until which its logins
+ * count, and is rewritten with a new expiry at each refresh. The logins of a
+ * server which stopped without cleaning up, for example because it crashed,
+ * stop counting when its lease expires, and the file is removed by the other
+ * servers. The clocks of the servers are expected to be in sync, within a
+ * small fraction of the lease time.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class FileLoginCounterStore extends InProcessLoginCounterStore {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(FileLoginCounterStore.class);
+
+    private static final String SUFFIX = ".logins";
+
+    private static final String EXPIRES = "expires";
+
+    private static final String USER_PREFIX = "user.";
+
+    private static final String ADDRESS_PREFIX = "address.";
+
+    private final File directory;
+
+    private final String nodeId;
+
+    private final long leaseTime;
+
+    private final long refreshInterval;
+
+    private final File nodeFile;
+
+    private final Object writeLock = new Object();
+
+    private final AtomicBoolean writePending = new AtomicBoolean();
+
+    private volatile ScheduledExecutorService refresher;
+
+    /**
+     * The logins of the other servers, as of the last read
+     */
+    private volatile Map<String, Integer> remoteUserLogins = Collections
+            .emptyMap();
+
+    private volatile Map<String, Integer> remoteAddressLogins = Collections
+            .emptyMap();
+
+    /**
+     * Only used by the thread refreshing the counts
+     */
+    private long lastRead;
+
+    private final Runnable refreshTask = new Runnable() {
+        public void run() {
+            refresh();
+        }
+    };
+
+    private final Runnable writeTask = new Runnable() {
+        public void run() {
+            writePending.set(false);
+            try {
+                writeNodeFile();
+            } catch (IOException e) {
+                LOG.warn("Failed to write logins to " + nodeFile, e);
+            }
+        }
+    };
+
+    /**
+     * Internal constructor, do not use directly. Use
+     * {@link FileLoginCounterStoreFactory} instead.
+     */
+    public FileLoginCounterStore(File directory, String nodeId,
+            long leaseTime, long refreshInterval) {
+        this.directory = directory;
+        this.nodeId = nodeId;
+        this.leaseTime = leaseTime;
+        this.refreshInterval = refreshInterval;
+        nodeFile = new File(directory, nodeId + SUFFIX);
+    }
+
+    /**
+     * The id of this server, naming its file
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public int getLoginCount(String userName) {
+        ensureStarted();
+        return super.getLoginCount(userName)
+                + get(remoteUserLogins, userName);
+    }
+
+    @Override
+    public int getLoginCount(String userName, InetAddress address) {
+        if (address == null) {
+            return 0;
+        }
+        ensureStarted();
+        return super.getLoginCount(userName, address)
+                + get(remoteAddressLogins, addressKey(userName, address));
+    }
+
+    @Override
+    public void login(String userName, InetAddress address) {
+        super.login(userName, address);
+        publish();
+    }
+
+    @Override
+    public void logout(String userName, InetAddress address) {
+        super.logout(userName, address);
+        publish();
+    }
+
+    /**
+     * Stop refreshing and remove the file of this server
+     */
+    @Override
+    public synchronized void dispose() {
+        if (refresher == null) {
+            return;
+        }
+        refresher.shutdownNow();
+        try {
+            refresher.awaitTermination(5000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        refresher = null;
+
+        synchronized (writeLock) {
+            if (nodeFile.exists() && !nodeFile.delete()) {
+                LOG.warn("Failed to delete " + nodeFile);
+            }
+        }
+        remoteUserLogins = Collections.emptyMap();
+        remoteAddressLogins = Collections.emptyMap();
+    }
+
+    /**
+     * Write the logins of this server, renewing its lease, and read the
+     * logins of the other servers
+     */
+    void refresh() {
+        try {
+            writeNodeFile();
+        } catch (IOException e) {
+            LOG.warn("Failed to write logins to " + nodeFile, e);
+        }
+        long now = currentTime();
+        try {
+            readNodeFiles(now);
+            lastRead = now;
+        } catch (IOException e) {
+            LOG.warn("Failed to read logins from " + directory, e);
+            if (now - lastRead > leaseTime) {
+                // the cached logins have outlived their leases
+                remoteUserLogins = Collections.emptyMap();
+                remoteAddressLogins = Collections.emptyMap();
+            }
+        }
+    }
+
+    /**
+     * The current time in milliseconds, against which leases are checked
+     */
+    long currentTime() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Run a write of the logins of this server in the background
+     */
+    void executeWrite(ScheduledExecutorService executor, Runnable write) {
+        executor.execute(write);
+    }
+
+    private ScheduledExecutorService ensureStarted() {
+        ScheduledExecutorService current = refresher;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (refresher == null) {
+                if (!directory.isDirectory() && !directory.mkdirs()) {
+                    LOG.warn("Failed to create " + directory);
+                }
+                ScheduledExecutorService executor = Executors
+                        .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                            public Thread newThread(Runnable task) {
+                                Thread thread = new Thread(task,
+                                        "FtpServer-login-counter");
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+                // read the logins of the other servers before the first check
+                refresh();
+                executor.scheduleWithFixedDelay(refreshTask, refreshInterval,
+                        refreshInterval, TimeUnit.MILLISECONDS);
+                refresher = executor;
+            }
+            return refresher;
+        }
+    }
+
+    /**
+     * Write the logins of this server in the background, coalescing the
+     * changes made until the write starts
+     */
+    private void publish() {
+        ScheduledExecutorService executor = ensureStarted();
+        if (writePending.compareAndSet(false, true)) {
+            try {
+                executeWrite(executor, writeTask);
+            } catch (RejectedExecutionException e) {
+                // disposed
+                writePending.set(false);
+            }
+        }
+    }
+
+    private void writeNodeFile() throws IOException {
+        synchronized (writeLock) {
+            // the expiry and the counts are taken under the lock, so that a
+            // write never replaces a newer lease or newer counts
+            Properties logins = new Properties();
+            logins.setProperty(EXPIRES, String.valueOf(currentTime()
+                    + leaseTime));
+            for (Map.Entry<String, Integer> entry : getUserLogins()
+                    .entrySet()) {
+                logins.setProperty(USER_PREFIX + entry.getKey(), entry
+                        .getValue().toString());
+            }
+            for (Map.Entry<String, Integer> entry : getAddressLogins()
+                    .entrySet()) {
+                logins.setProperty(ADDRESS_PREFIX + entry.getKey(), entry
+                        .getValue().toString());
+            }
+
+            // write to a temporary file first, readers never see a partial
+            // file
+            File tmpFile = new File(directory, nodeId + SUFFIX + ".tmp");
+            OutputStream out = null;
+            try {
+                out = new FileOutputStream(tmpFile);
+                logins.store(out, "Logins of node " + nodeId);
+            } finally {
+                IoUtils.close(out);
+            }
+            try {
+                Files.move(tmpFile.toPath(), nodeFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile.toPath(), nodeFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private void readNodeFiles(long now) throws IOException {
+        File[] files = directory.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.getName().endsWith(SUFFIX)
+                        && !file.equals(nodeFile);
+            }
+        });
+        if (files == null) {
+            throw new IOException("Can not list " + directory);
+        }
+
+        Map<String, Integer> userLogins = new HashMap<String, Integer>();
+        Map<String, Integer> addressLogins = new HashMap<String, Integer>();
+        for (File file : files) {
+            Properties logins = new Properties();
+            InputStream in = null;
+            try {
+                in = new FileInputStream(file);
+                logins.load(in);
+            } catch (FileNotFoundException e) {
+                // removed since listed
+                continue;
+            } finally {
+                IoUtils.close(in);
+            }
+
+            long expires;
+            try {
+                expires = Long.parseLong(logins.getProperty(EXPIRES));
+            } catch (NumberFormatException e) {
+                LOG.warn("Ignoring logins without a valid expiry in " + file);
+                continue;
+            }
+            if (expires < now) {
+                // the server has not renewed its lease for a whole lease time,
+                // it is gone
+                if (expires + leaseTime < now && file.delete()) {
+                    LOG.info("Removed the expired logins of " + file);
+                }
+                continue;
+            }
+
+            for (String key : logins.stringPropertyNames()) {
+                if (key.startsWith(USER_PREFIX)) {
+                    add(userLogins, key.substring(USER_PREFIX.length()),
+                            logins.getProperty(key));
+                } else if (key.startsWith(ADDRESS_PREFIX)) {
+                    add(addressLogins, key.substring(ADDRESS_PREFIX.length()),
+                            logins.getProperty(key));
+                }
+            }
+        }
+        remoteUserLogins = userLogins;
+        remoteAddressLogins = addressLogins;
+    }
+
+    private void add(Map<String, Integer> logins, String key, String value) {
+        try {
+            logins.put(key, get(logins, key) + Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            LOG.warn("Ignoring invalid login count " + value + " for " + key);
+        }
+    }
+}
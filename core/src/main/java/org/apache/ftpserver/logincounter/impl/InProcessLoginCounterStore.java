@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.logincounter.impl;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+import org.apache.ftpserver.logincounter.LoginCounterStore;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * {@link LoginCounterStore} counting the logins of this server only, in
+ * concurrent maps updated atomically per key and dropping the keys no longer
+ * logged in. This is the default store.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class InProcessLoginCounterStore implements LoginCounterStore {
+
+    private static final BiFunction<String, Integer, Integer> INCREMENT = new BiFunction<String, Integer, Integer>() {
+        public Integer apply(String key, Integer logins) {
+            return logins == null ? 1 : logins + 1;
+        }
+    };
+
+    /**
+     * Removes the key when the last login is gone
+     */
+    private static final BiFunction<String, Integer, Integer> DECREMENT = new BiFunction<String, Integer, Integer>() {
+        public Integer apply(String key, Integer logins) {
+            return logins == null || logins <= 1 ? null : logins - 1;
+        }
+    };
+
+    /**
+     * The current logins per user name
+     */
+    private final ConcurrentHashMap<String, Integer> userLogins = new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * The current logins per user name and remote address, keyed by
+     * {@link #addressKey(String, InetAddress)}
+     */
+    private final ConcurrentHashMap<String, Integer> addressLogins = new ConcurrentHashMap<String, Integer>();
+
+    public int getLoginCount(String userName) {
+        return get(userLogins, userName);
+    }
+
+    public int getLoginCount(String userName, InetAddress address) {
+        if (address == null) {
+            return 0;
+        }
+        return get(addressLogins, addressKey(userName, address));
+    }
+
+    public void login(String userName, InetAddress address) {
+        userLogins.compute(userName, INCREMENT);
+        if (address != null) {
+            addressLogins.compute(addressKey(userName, address), INCREMENT);
+        }
+    }
+
+    public void logout(String userName, InetAddress address) {
+        userLogins.computeIfPresent(userName, DECREMENT);
+        if (address != null) {
+            addressLogins.computeIfPresent(addressKey(userName, address),
+                    DECREMENT);
+        }
+    }
+
+    public void dispose() {
+        // nothing to release
+    }
+
+    /**
+     * Get a copy of the current logins per user name
+     */
+    protected Map<String, Integer> getUserLogins() {
+        return Collections.unmodifiableMap(new HashMap<String, Integer>(
+                userLogins));
+    }
+
+    /**
+     * Get a copy of the current logins per user name and remote address,
+     * keyed by {@link #addressKey(String, InetAddress)}
+     */
+    protected Map<String, Integer> getAddressLogins() {
+        return Collections.unmodifiableMap(new HashMap<String, Integer>(
+                addressLogins));
+    }
+
+    /**
+     * The key of the logins of a user from an address. Addresses do not
+     * contain a slash, so the key is unambiguous whatever the user name.
+     */
+    protected static String addressKey(String userName, InetAddress address) {
+        return address.getHostAddress() + '/' + userName;
+    }
+
+    protected static int get(Map<String, Integer> logins, String key) {
+        Integer count = logins.get(key);
+        return count == null ? 0 : count;
+    }
+}
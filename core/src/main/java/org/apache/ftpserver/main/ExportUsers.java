@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.main;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+import org.apache.ftpserver.FtpServer;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.impl.DefaultFtpServer;
+import org.apache.ftpserver.usermanager.UserExporter;
+import org.apache.ftpserver.usermanager.UserFileFormat;
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+ * Used to export the users of the user manager for a particular FtpServer
+ * configuration to a CSV or JSON lines file
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ExportUsers extends CommandLine {
+
+    /**
+     * Instance methods only used internaly
+     */
+    protected ExportUsers() {
+    }
+
+    /**
+     * Used to export the users of the user manager for a particular FtpServer
+     * configuration
+     * 
+     * @param args
+     *            The options, the file to export to, and the kind of
+     *            configuration to be used to start the server.
+     */
+    public static void main(String args[]) {
+        ExportUsers exportUsers = new ExportUsers();
+
+        try {
+            UserFileFormat format = null;
+            int i = 0;
+            if (args.length > 1 && args[0].equals("--format")) {
+                format = UserFileFormat.parse(args[1]);
+                i = 2;
+            }
+            if (i == args.length || args[i].startsWith("-")) {
+                exportUsers.usage();
+                return;
+            }
+            File file = new File(args[i]);
+            if (format == null) {
+                format = UserFileFormat.forFileName(file.getName());
+            }
+
+            // get configuration
+            FtpServer server = exportUsers.getConfiguration(Arrays
+                    .copyOfRange(args, i + 1, args.length));
+            if (server == null) {
+                return;
+            }
+
+            UserManager um = ((DefaultFtpServer) server).getUserManager();
+            UserExporter exporter = new UserExporter(um);
+            exporter.setFormat(format);
+
+            long start = System.currentTimeMillis();
+            Writer out = new OutputStreamWriter(new FileOutputStream(file),
+                    "UTF-8");
+            try {
+                int count = exporter.exportUsers(out);
+                System.out.println("Exported " + count + " users to "
+                        + file.getAbsolutePath() + " in "
+                        + (System.currentTimeMillis() - start) + " ms");
+            } finally {
+                IoUtils.close(out);
+            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Print the usage message.
+     */
+    @Override
+    protected void usage() {
+        System.err.println("Usage: java " + ExportUsers.class.getName()
+                + " [OPTION] FILE [CONFIGFILE]");
+        System.err
+                .println("Exports the users of the user manager to a file, without their passwords");
+        System.err.println("");
+        System.err
+                .println("      --format csv|json      format of the file, by default json for files");
+        System.err
+                .println("                             named .json or .jsonl, csv otherwise");
+        System.err
+                .println("      --default              use the default configuration, ");
+        System.err
+                .println("                             also used if no configuration file is given ");
+        System.err.println("  -?, --help                 print this message");
+    }
+}
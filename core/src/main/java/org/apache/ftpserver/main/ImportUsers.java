@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.main;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+
+import org.apache.ftpserver.FtpServer;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.impl.DefaultFtpServer;
+import org.apache.ftpserver.usermanager.UserFileFormat;
+import org.apache.ftpserver.usermanager.UserImporter;
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+ * Used to import users from a CSV or JSON lines file into the user manager
+ * for a particular FtpServer configuration
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ImportUsers extends CommandLine {
+
+    /**
+     * Instance methods only used internaly
+     */
+    protected ImportUsers() {
+    }
+
+    /**
+     * Used to import users into the user manager for a particular FtpServer
+     * configuration
+     * 
+     * @param args
+     *            The options, the file to import, and the kind of
+     *            configuration to be used to start the server.
+     */
+    public static void main(String args[]) {
+        ImportUsers importUsers = new ImportUsers();
+
+        try {
+            UserFileFormat format = null;
+            int batchSize = 1000;
+            int i = 0;
+            for (; i + 1 < args.length; i += 2) {
+                if (args[i].equals("--format")) {
+                    format = UserFileFormat.parse(args[i + 1]);
+                } else if (args[i].equals("--batch-size")) {
+                    batchSize = Integer.parseInt(args[i + 1]);
+                } else {
+                    break;
+                }
+            }
+            if (i == args.length || args[i].startsWith("-")) {
+                importUsers.usage();
+                return;
+            }
+            File file = new File(args[i]);
+            if (format == null) {
+                format = UserFileFormat.forFileName(file.getName());
+            }
+
+            // get configuration
+            FtpServer server = importUsers.getConfiguration(Arrays
+                    .copyOfRange(args, i + 1, args.length));
+            if (server == null) {
+                return;
+            }
+
+            UserManager um = ((DefaultFtpServer) server).getUserManager();
+            UserImporter importer = new UserImporter(um);
+            importer.setFormat(format);
+            importer.setBatchSize(batchSize);
+
+            long start = System.currentTimeMillis();
+            Reader in = new InputStreamReader(new FileInputStream(file),
+                    "UTF-8");
+            try {
+                int count = importer.importUsers(in);
+                System.out.println("Imported " + count + " users in "
+                        + (System.currentTimeMillis() - start) + " ms");
+            } finally {
+                IoUtils.close(in);
+            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Print the usage message.
+     */
+    @Override
+    protected void usage() {
+        System.err.println("Usage: java " + ImportUsers.class.getName()
+                + " [OPTION] FILE [CONFIGFILE]");
+        System.err
+                .println("Imports users from a file into the user manager, updating existing users");
+        System.err.println("");
+        System.err
+                .println("      --format csv|json      format of the file, by default json for files");
+        System.err
+                .println("                             named .json or .jsonl, csv otherwise");
+        System.err
+                .println("      --batch-size SIZE      number of users saved at once, 1000 by default");
+        System.err
+                .println("      --default              use the default configuration, ");
+        System.err
+                .println("                             also used if no configuration file is given ");
+        System.err.println("  -?, --help                 print this message");
+    }
+}
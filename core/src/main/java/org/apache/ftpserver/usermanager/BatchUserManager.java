@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager;
+
+import java.util.Collection;
+
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.ftplet.UserManager;
+
+/**
+ * A {@link UserManager} with bulk operations, for importing and exporting
+ * large numbers of users without a round trip to the backend per user.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface BatchUserManager extends UserManager {
+
+    /**
+     * Save a number of users, as {@link UserManager#save(User)} would do one
+     * by one. Passwords are encrypted in parallel.
+     * 
+     * @param users
+     *            The users to save
+     * @throws FtpException
+     */
+    void saveAll(Collection<? extends User> users) throws FtpException;
+
+    /**
+     * Visit all users, ordered by name, without loading them all at once.
+     * As for {@link UserManager#getUserByName(String)}, the users do not
+     * carry their password.
+     * 
+     * @param visitor
+     *            Called for every user
+     * @throws FtpException
+     *             If the users could not be read, or thrown by the visitor
+     */
+    void forEachUser(UserVisitor visitor) throws FtpException;
+}
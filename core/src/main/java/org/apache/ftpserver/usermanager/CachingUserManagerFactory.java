@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager;
+
+import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.usermanager.impl.CachingUserManager;
+
+/**
+ * Factory for a <code>UserManager</code> caching the users and successful
+ * password verifications of another user manager.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class CachingUserManagerFactory implements UserManagerFactory {
+
+    private UserManager userManager;
+
+    private int maxSize = 1000;
+
+    private long timeToLive = 60000;
+
+    private long negativeTimeToLive = 10000;
+
+    private long refreshAfter = 45000;
+
+    /**
+     * Creates a {@link CachingUserManager} instance based on the provided
+     * configuration
+     */
+    public UserManager createUserManager() {
+        if (userManager == null) {
+            throw new FtpServerConfigurationException(
+                    "Required user manager to cache not provided");
+        }
+        return new CachingUserManager(userManager, maxSize, timeToLive,
+                negativeTimeToLive, refreshAfter);
+    }
+
+    /**
+     * Get the user manager to cache
+     * 
+     * @return The user manager
+     */
+    public UserManager getUserManager() {
+        return userManager;
+    }
+
+    /**
+     * Set the user manager to cache, for example one created by
+     * {@link DbUserManagerFactory}
+     * 
+     * @param userManager
+     *            The user manager
+     */
+    public void setUserManager(UserManager userManager) {
+        this.userManager = userManager;
+    }
+
+    /**
+     * Get the maximum number of users cached
+     * 
+     * @return The maximum number of users
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Set the maximum number of users cached, the least recently used users
+     * are evicted first. Successful password verifications are bounded to the
+     * same number. The default value is 1000.
+     * 
+     * @param maxSize
+     *            The maximum number of users
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the time users and password verifications are cached
+     * 
+     * @return The time to live in milliseconds
+     */
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Set the time users and password verifications are cached. Changes made
+     * to users other than through the user manager are seen after at most
+     * this time. The default value is 60000.
+     * 
+     * @param timeToLive
+     *            The time to live in milliseconds
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Get the time unknown user names are cached
+     * 
+     * @return The time to live in milliseconds
+     */
+    public long getNegativeTimeToLive() {
+        return negativeTimeToLive;
+    }
+
+    /**
+     * Set the time unknown user names are cached, 0 to not cache them. The
+     * default value is 10000.
+     * 
+     * @param negativeTimeToLive
+     *            The time to live in milliseconds
+     */
+    public void setNegativeTimeToLive(long negativeTimeToLive) {
+        this.negativeTimeToLive = negativeTimeToLive;
+    }
+
+    /**
+     * Get the age after which cached users are reloaded in the background
+     * 
+     * @return The age in milliseconds
+     */
+    public long getRefreshAfter() {
+        return refreshAfter;
+    }
+
+    /**
+     * Set the age after which a cached user is reloaded in the background when
+     * used, so that users logging in regularly are not reloaded while logging
+     * in. 0 disables reloading before the user expires. The default value is
+     * 45000.
+     * 
+     * @param refreshAfter
+     *            The age in milliseconds
+     */
+    public void setRefreshAfter(long refreshAfter) {
+        this.refreshAfter = refreshAfter;
+    }
+}
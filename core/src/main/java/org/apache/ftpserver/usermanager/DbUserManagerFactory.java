@@ -38,6 +38,8 @@ public class DbUserManagerFactory implements UserManagerFactory {
 
     private String updateUserStmt;
 
+    private String upsertUserStmt;
+
     private String deleteUserStmt;
 
     private String selectUserStmt;
@@ -87,8 +89,8 @@ public class DbUserManagerFactory implements UserManagerFactory {
         }
         
         return new DbUserManager(dataSource, selectAllStmt, selectUserStmt, 
-                insertUserStmt, updateUserStmt, deleteUserStmt, authenticateStmt, 
-                isAdminStmt, passwordEncryptor, adminName);
+                insertUserStmt, updateUserStmt, upsertUserStmt, deleteUserStmt, 
+                authenticateStmt, isAdminStmt, passwordEncryptor, adminName);
     }
     
     /**
@@ -189,6 +191,32 @@ public class DbUserManagerFactory implements UserManagerFactory {
         updateUserStmt = sql;
     }
 
+    /**
+     * Get the SQL statement used to insert a new user or update an existing
+     * one.
+     * 
+     * @return The SQL statement, or null if not set
+     */
+    public String getSqlUserUpsert() {
+        return upsertUserStmt;
+    }
+
+    /**
+     * Set the SQL statement used to insert a new user or update an existing
+     * one, such as <code>MERGE</code>, <code>INSERT ... ON DUPLICATE KEY
+     * UPDATE</code> or <code>INSERT ... ON CONFLICT DO UPDATE</code>,
+     * depending on the database. Optional, if set users are saved with a
+     * single statement, otherwise the UPDATE statement is tried first and the
+     * INSERT statement used if no user was updated. All the dynamic values
+     * will be replaced during runtime.
+     * 
+     * @param sql
+     *            The SQL statement
+     */
+    public void setSqlUserUpsert(String sql) {
+        upsertUserStmt = sql;
+    }
+
     /**
      * Get the SQL SELECT statement used to select an existing user.
      * 
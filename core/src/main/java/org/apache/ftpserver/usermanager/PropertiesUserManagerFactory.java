@@ -40,6 +40,8 @@ public class PropertiesUserManagerFactory implements UserManagerFactory {
 
     private PasswordEncryptor passwordEncryptor = new Md5PasswordEncryptor();
 
+    private boolean watchFile = false;
+
     /**
      * Creates a {@link PropertiesUserManager} instance based on the provided configuration
      */
@@ -50,7 +52,7 @@ public class PropertiesUserManagerFactory implements UserManagerFactory {
         } else {
 
             return new PropertiesUserManager(passwordEncryptor, userDataFile,
-                    adminName);
+                    adminName, watchFile);
         }
     }
 
@@ -125,4 +127,25 @@ public class PropertiesUserManagerFactory implements UserManagerFactory {
     public void setPasswordEncryptor(PasswordEncryptor passwordEncryptor) {
         this.passwordEncryptor = passwordEncryptor;
     }
+
+    /**
+     * Is the file watched for changes?
+     * @return true if the file is reloaded when changed
+     */
+    public boolean isWatchFile() {
+        return watchFile;
+    }
+
+    /**
+     * Set whether the file is watched for changes, and reloaded when modified
+     * other than by the user manager. Only used for a file on the file
+     * system, not loaded from the classpath or a URL. The default value is
+     * false.
+     * 
+     * @param watchFile
+     *            true to reload the file when changed
+     */
+    public void setWatchFile(boolean watchFile) {
+        this.watchFile = watchFile;
+    }
 }
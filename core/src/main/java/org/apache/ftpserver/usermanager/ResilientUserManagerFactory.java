@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager;
+
+import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.usermanager.impl.ResilientUserManager;
+
+/**
+ * Factory for a <code>UserManager</code> protecting the server from a slow or
+ * failing user manager, with a time limit on calls, a limit on the number of
+ * calls in progress and a circuit breaker. When the user manager is
+ * unavailable, logins are rejected with a 421 reply, or optionally served
+ * from the last successful calls.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ResilientUserManagerFactory implements UserManagerFactory {
+
+    private UserManager userManager;
+
+    private long callTimeout = 5000;
+
+    private int maxConcurrentCalls = 16;
+
+    private int failureThreshold = 5;
+
+    private long openDuration = 30000;
+
+    private long staleTimeToLive = 0;
+
+    private int maxStaleUsers = 1000;
+
+    /**
+     * Creates a {@link ResilientUserManager} instance based on the provided
+     * configuration
+     */
+    public UserManager createUserManager() {
+        if (userManager == null) {
+            throw new FtpServerConfigurationException(
+                    "Required user manager to protect not provided");
+        }
+        if (failureThreshold < 1) {
+            throw new FtpServerConfigurationException(
+                    "Failure threshold must be positive");
+        }
+        if (maxStaleUsers < 1) {
+            throw new FtpServerConfigurationException(
+                    "Maximum number of stale users must be positive");
+        }
+        return new ResilientUserManager(userManager, callTimeout,
+                maxConcurrentCalls, failureThreshold, openDuration,
+                staleTimeToLive, maxStaleUsers);
+    }
+
+    /**
+     * Get the user manager to protect
+     * 
+     * @return The user manager
+     */
+    public UserManager getUserManager() {
+        return userManager;
+    }
+
+    /**
+     * Set the user manager to protect, for example one created by
+     * {@link DbUserManagerFactory}
+     * 
+     * @param userManager
+     *            The user manager
+     */
+    public void setUserManager(UserManager userManager) {
+        this.userManager = userManager;
+    }
+
+    /**
+     * Get the time limit of calls to the user manager
+     * 
+     * @return The time limit in milliseconds
+     */
+    public long getCallTimeout() {
+        return callTimeout;
+    }
+
+    /**
+     * Set the time limit of calls to the user manager, after which the call
+     * fails while the user manager call carries on in the background. 0 makes
+     * the calls on the calling thread without a time limit. The default value
+     * is 5000.
+     * 
+     * @param callTimeout
+     *            The time limit in milliseconds
+     */
+    public void setCallTimeout(long callTimeout) {
+        this.callTimeout = callTimeout;
+    }
+
+    /**
+     * Get the maximum number of calls to the user manager in progress
+     * 
+     * @return The maximum number of calls
+     */
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    /**
+     * Set the maximum number of calls to the user manager in progress,
+     * including calls which timed out but have not returned yet. Further
+     * calls fail straight away. 0 for no limit. The default value is 16.
+     * 
+     * @param maxConcurrentCalls
+     *            The maximum number of calls
+     */
+    public void setMaxConcurrentCalls(int maxConcurrentCalls) {
+        this.maxConcurrentCalls = maxConcurrentCalls;
+    }
+
+    /**
+     * Get the number of consecutive failures opening the circuit
+     * 
+     * @return The number of failures
+     */
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    /**
+     * Set the number of consecutive failed calls after which the circuit
+     * opens, calls then failing straight away. The default value is 5.
+     * 
+     * @param failureThreshold
+     *            The number of failures
+     */
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * Get the time the circuit stays open
+     * 
+     * @return The time in milliseconds
+     */
+    public long getOpenDuration() {
+        return openDuration;
+    }
+
+    /**
+     * Set the time the circuit stays open before a trial call is made to the
+     * user manager. The default value is 30000.
+     * 
+     * @param openDuration
+     *            The time in milliseconds
+     */
+    public void setOpenDuration(long openDuration) {
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * Get the time the last successful calls are used when the user manager
+     * is unavailable
+     * 
+     * @return The time to live in milliseconds
+     */
+    public long getStaleTimeToLive() {
+        return staleTimeToLive;
+    }
+
+    /**
+     * Set the time users and successful password verifications are used when
+     * the user manager is unavailable, so that users who logged in recently
+     * can still log in. Changes made to users while the user manager is
+     * unavailable are not seen. 0 to not use them. The default value is 0.
+     * 
+     * @param staleTimeToLive
+     *            The time to live in milliseconds
+     */
+    public void setStaleTimeToLive(long staleTimeToLive) {
+        this.staleTimeToLive = staleTimeToLive;
+    }
+
+    /**
+     * Get the maximum number of users kept for when the user manager is
+     * unavailable
+     * 
+     * @return The maximum number of users
+     */
+    public int getMaxStaleUsers() {
+        return maxStaleUsers;
+    }
+
+    /**
+     * Set the maximum number of users kept for when the user manager is
+     * unavailable, the least recently used users are evicted first.
+     * Successful password verifications are bounded to the same number. The
+     * default value is 1000.
+     * 
+     * @param maxStaleUsers
+     *            The maximum number of users
+     */
+    public void setMaxStaleUsers(int maxStaleUsers) {
+        this.maxStaleUsers = maxStaleUsers;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.usermanager.impl.UserRecordWriter;
+
+/**
+ * Exports the users of a user manager to a stream, a user at a time. With a
+ * {@link BatchUserManager}, the users are read without a call to the user
+ * manager per user. Passwords are not exported, as user managers do not give
+ * them out.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class UserExporter {
+
+    private final UserManager userManager;
+
+    private UserFileFormat format = UserFileFormat.CSV;
+
+    /**
+     * @param userManager
+     *            The user manager to export from
+     */
+    public UserExporter(UserManager userManager) {
+        this.userManager = userManager;
+    }
+
+    /**
+     * Get the format of the exported users
+     * 
+     * @return The format
+     */
+    public UserFileFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Set the format of the exported users. The default value is
+     * {@link UserFileFormat#CSV}.
+     * 
+     * @param format
+     *            The format
+     */
+    public void setFormat(UserFileFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * Export all users to a stream
+     * 
+     * @param out
+     *            The stream, flushed but not closed
+     * @return The number of users exported
+     * @throws IOException
+     *             If the stream can not be written
+     * @throws FtpException
+     *             If the users could not be read
+     */
+    public int exportUsers(Writer out) throws IOException, FtpException {
+        UserRecordWriter writer = format.createWriter(out);
+        writer.writeHeader();
+        WritingVisitor visitor = new WritingVisitor(writer);
+        try {
+            forEachUser(userManager, visitor);
+        } catch (FtpException e) {
+            if (visitor.failure != null) {
+                throw visitor.failure;
+            }
+            throw e;
+        }
+        writer.flush();
+        return visitor.count;
+    }
+
+    /**
+     * Visit all users, without a call per user if the user manager supports
+     * it
+     * 
+     * @param userManager
+     *            The user manager
+     * @param visitor
+     *            Called for every user
+     * @throws FtpException
+     */
+    public static void forEachUser(UserManager userManager,
+            UserVisitor visitor) throws FtpException {
+        if (userManager instanceof BatchUserManager) {
+            ((BatchUserManager) userManager).forEachUser(visitor);
+        } else {
+            for (String name : userManager.getAllUserNames()) {
+                User user = userManager.getUserByName(name);
+                // deleted since listed
+                if (user != null) {
+                    visitor.visit(user);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the users visited, keeping the write failure, if any, to report
+     * it as such
+     */
+    private static class WritingVisitor implements UserVisitor {
+
+        private final UserRecordWriter writer;
+
+        private int count;
+
+        private IOException failure;
+
+        public WritingVisitor(UserRecordWriter writer) {
+            this.writer = writer;
+        }
+
+        public void visit(User user) throws FtpException {
+            try {
+                writer.write(user);
+                count++;
+            } catch (IOException e) {
+                failure = e;
+                throw new FtpException("Failed to write user", e);
+            }
+        }
+    }
+}
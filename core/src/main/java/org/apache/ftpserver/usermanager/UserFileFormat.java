@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager;
+
+import java.io.Reader;
+import java.io.Writer;
+
+import org.apache.ftpserver.usermanager.impl.CsvUserRecordReader;
+import org.apache.ftpserver.usermanager.impl.CsvUserRecordWriter;
+import org.apache.ftpserver.usermanager.impl.JsonUserRecordReader;
+import org.apache.ftpserver.usermanager.impl.JsonUserRecordWriter;
+import org.apache.ftpserver.usermanager.impl.UserRecordReader;
+import org.apache.ftpserver.usermanager.impl.UserRecordWriter;
+
+/**
+ * The file formats users can be imported from and exported to. Both are
+ * streamed a user at a time, and use the field names of the properties file:
+ * <code>userid</code>, <code>userpassword</code>,
+ * <code>homedirectory</code>, <code>enableflag</code>,
+ * <code>writepermission</code>, <code>idletime</code>,
+ * <code>uploadrate</code>, <code>downloadrate</code>,
+ * <code>maxloginnumber</code> and <code>maxloginperip</code>.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public enum UserFileFormat {
+
+    /**
+     * Comma separated values, with a first line naming the fields
+     */
+    CSV {
+        @Override
+        public UserRecordReader createReader(Reader in) {
+            return new CsvUserRecordReader(in);
+        }
+
+        @Override
+        public UserRecordWriter createWriter(Writer out) {
+            return new CsvUserRecordWriter(out);
+        }
+    },
+
+    /**
+     * JSON lines, a JSON object per user and line
+     */
+    JSON_LINES {
+        @Override
+        public UserRecordReader createReader(Reader in) {
+            return new JsonUserRecordReader(in);
+        }
+
+        @Override
+        public UserRecordWriter createWriter(Writer out) {
+            return new JsonUserRecordWriter(out);
+        }
+    };
+
+    /**
+     * Create a reader of users in this format
+     */
+    public abstract UserRecordReader createReader(Reader in);
+
+    /**
+     * Create a writer of users in this format
+     */
+    public abstract UserRecordWriter createWriter(Writer out);
+
+    /**
+     * Get a format by name, <code>csv</code>, or <code>json</code> for JSON
+     * lines
+     * 
+     * @throws IllegalArgumentException
+     *             If the name is not a known format
+     */
+    public static UserFileFormat parse(String name) {
+        if ("csv".equalsIgnoreCase(name)) {
+            return CSV;
+        } else if ("json".equalsIgnoreCase(name)
+                || "jsonl".equalsIgnoreCase(name)) {
+            return JSON_LINES;
+        }
+        throw new IllegalArgumentException("Unknown user file format: "
+                + name);
+    }
+
+    /**
+     * Get the format of a file from its name, JSON lines for the
+     * <code>.json</code> and <code>.jsonl</code> extensions, CSV otherwise
+     */
+    public static UserFileFormat forFileName(String fileName) {
+        String lowerCase = fileName.toLowerCase();
+        if (lowerCase.endsWith(".json") || lowerCase.endsWith(".jsonl")) {
+            return JSON_LINES;
+        }
+        return CSV;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.usermanager.impl.UserRecordReader;
+
+/**
+ * Imports users into a user manager from a stream, in batches so that the
+ * whole stream is never held in memory. With a {@link BatchUserManager}, each
+ * batch is saved at once, with the passwords encrypted in parallel. Existing
+ * users are updated, keeping their password if none is given.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class UserImporter {
+
+    private final UserManager userManager;
+
+    private UserFileFormat format = UserFileFormat.CSV;
+
+    private int batchSize = 1000;
+
+    /**
+     * @param userManager
+     *            The user manager to import into
+     */
+    public UserImporter(UserManager userManager) {
+        this.userManager = userManager;
+    }
+
+    /**
+     * Get the format of the imported users
+     * 
+     * @return The format
+     */
+    public UserFileFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Set the format of the imported users. The default value is
+     * {@link UserFileFormat#CSV}.
+     * 
+     * @param format
+     *            The format
+     */
+    public void setFormat(UserFileFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * Get the number of users saved at once
+     * 
+     * @return The batch size
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Set the number of users saved at once. With a properties file, each
+     * batch rewrites the file, so a larger batch size speeds up large
+     * imports. The default value is 1000.
+     * 
+     * @param batchSize
+     *            The batch size
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Import the users read from a stream. Batches saved before a failure
+     * stay imported.
+     * 
+     * @param in
+     *            The stream, not closed
+     * @return The number of users imported
+     * @throws IOException
+     *             If the stream can not be read or contains an invalid user
+     * @throws FtpException
+     *             If the users could not be saved
+     */
+    public int importUsers(Reader in) throws IOException, FtpException {
+        UserRecordReader reader = format.createReader(in);
+        List<User> batch = new ArrayList<User>();
+        int count = 0;
+        User user;
+        while ((user = reader.read()) != null) {
+            batch.add(user);
+            if (batch.size() == batchSize) {
+                saveAll(userManager, batch);
+                count += batch.size();
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            saveAll(userManager, batch);
+            count += batch.size();
+        }
+        return count;
+    }
+
+    /**
+     * Save a number of users, at once if the user manager supports it
+     * 
+     * @param userManager
+     *            The user manager
+     * @param users
+     *            The users to save
+     * @throws FtpException
+     */
+    public static void saveAll(UserManager userManager,
+            Collection<? extends User> users) throws FtpException {
+        if (userManager instanceof BatchUserManager) {
+            ((BatchUserManager) userManager).saveAll(users);
+        } else {
+            for (User user : users) {
+                userManager.save(user);
+            }
+        }
+    }
+}
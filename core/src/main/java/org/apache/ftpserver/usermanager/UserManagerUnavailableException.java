@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager;
+
+import org.apache.ftpserver.ftplet.AuthenticationFailedException;
+
+/**
+ * Thrown when the user manager can not be used at the moment, for example
+ * because its backend is too slow or failing, as opposed to the credentials
+ * being wrong. Logins failing with this exception are rejected with a 421
+ * reply and are not counted as login failures. User managers throw it when
+ * their backend fails, for example with an <code>SQLException</code>.
+ * 
+ * It extends {@link AuthenticationFailedException} so that it can be thrown
+ * from every method of a user manager.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class UserManagerUnavailableException extends
+        AuthenticationFailedException {
+
+    private static final long serialVersionUID = 2745190183216430125L;
+
+    /**
+     * Constructs a <code>UserManagerUnavailableException</code> object with a
+     * message.
+     * 
+     * @param msg
+     *            A description of the exception
+     */
+    public UserManagerUnavailableException(String msg) {
+        super(msg);
+    }
+
+    /**
+     * Constructs a <code>UserManagerUnavailableException</code> object with a
+     * <code>Throwable</code> cause and a detailed message.
+     * 
+     * @param msg
+     *            A description of the exception
+     * @param th
+     *            The original cause
+     */
+    public UserManagerUnavailableException(String msg, Throwable th) {
+        super(msg, th);
+        // FtpException does not keep the cause
+        initCause(th);
+    }
+}
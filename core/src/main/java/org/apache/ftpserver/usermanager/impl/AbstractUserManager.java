@@ -19,7 +19,14 @@
 
 package org.apache.ftpserver.usermanager.impl;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
 import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.User;
 import org.apache.ftpserver.ftplet.UserManager;
 import org.apache.ftpserver.usermanager.Md5PasswordEncryptor;
 import org.apache.ftpserver.usermanager.PasswordEncryptor;
@@ -53,6 +60,12 @@ public abstract class AbstractUserManager implements UserManager {
 
     public static final String ATTR_MAX_LOGIN_PER_IP = "maxloginperip";
 
+    /**
+     * Below this number of passwords per thread, encrypting in parallel is
+     * not worth it
+     */
+    private static final int MIN_PASSWORDS_PER_THREAD = 16;
+
     private final String adminName;
     
     private final PasswordEncryptor passwordEncryptor;
@@ -92,4 +105,67 @@ public abstract class AbstractUserManager implements UserManager {
     public PasswordEncryptor getPasswordEncryptor() {
         return passwordEncryptor;
     }
+
+    /**
+     * Encrypt the passwords of a number of users, spread over the available
+     * processors as encryptors like {@link org.apache.ftpserver.usermanager.SaltedPasswordEncryptor}
+     * are made to be slow.
+     * 
+     * @param users
+     *            The users
+     * @return The encrypted passwords, in the order of the users, null for
+     *         users without a password
+     */
+    protected String[] encryptPasswords(final List<? extends User> users)
+            throws FtpException {
+        final String[] encrypted = new String[users.size()];
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(),
+                users.size() / MIN_PASSWORDS_PER_THREAD);
+        if (threads <= 1) {
+            encryptPasswords(users, encrypted, 0, users.size());
+            return encrypted;
+        }
+
+        // the calling thread takes the first chunk
+        int chunk = (users.size() + threads - 1) / threads;
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int start = chunk; start < users.size(); start += chunk) {
+            final int from = start;
+            final int to = Math.min(start + chunk, users.size());
+            futures.add(ForkJoinPool.commonPool().submit(new Runnable() {
+                public void run() {
+                    encryptPasswords(users, encrypted, from, to);
+                }
+            }));
+        }
+        encryptPasswords(users, encrypted, 0, chunk);
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            for (Future<?> future : futures) {
+                future.cancel(false);
+            }
+            Thread.currentThread().interrupt();
+            throw new FtpException("Interrupted while encrypting passwords", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new FtpException("Failed to encrypt passwords", e.getCause());
+        }
+        return encrypted;
+    }
+
+    private void encryptPasswords(List<? extends User> users,
+            String[] encrypted, int from, int to) {
+        for (int i = from; i < to; i++) {
+            String password = users.get(i).getPassword();
+            if (password != null) {
+                encrypted[i] = passwordEncryptor.encrypt(password);
+            }
+        }
+    }
 }
@@ -0,0 +1,459 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ftpserver.ftplet.Authentication;
+import org.apache.ftpserver.ftplet.AuthenticationFailedException;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.usermanager.BatchUserManager;
+import org.apache.ftpserver.usermanager.CachingUserManagerFactory;
+import org.apache.ftpserver.usermanager.UserExporter;
+import org.apache.ftpserver.usermanager.UserImporter;
+import org.apache.ftpserver.usermanager.UserVisitor;
+import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * {@link UserManager} decorator caching the users and the successful password
+ * verifications of another user manager, to take the load of logins off
+ * a user database. Both caches are bounded, least recently used entries being
+ * evicted first, and entries expire after a time to live. Unknown user names
+ * are cached too, for a shorter time, so that logins with a non existing user
+ * do not reach the user manager either. Users used after the refresh time
+ * are reloaded in the background while the cached user is still returned,
+ * and concurrent lookups of a user not in the cache share a single load.
+ *
+ * Passwords are never kept, a successful verification is cached as a salted
+ * SHA-256 digest of the user name and password, with a random salt per
+ * instance. A cached verification still requires the user to be found, failed
+ * verifications and other types of authentication always go to the user
+ * manager.
+ *
+ * Saving and deleting users through this user manager invalidates their
+ * cache entries. Changes made elsewhere, like another application sharing the
+ * user database, are only seen once the entries expire, unless
+ * {@link #invalidate(String)} or {@link #invalidateAll()} is called.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class CachingUserManager implements BatchUserManager {
+
+    private final Logger LOG = LoggerFactory.getLogger(CachingUserManager.class);
+
+    private final UserManager userManager;
+
+    private final long timeToLive;
+
+    private final long negativeTimeToLive;
+
+    private final long refreshAfter;
+
+    private final Executor refreshExecutor;
+
+    private final LruMap<String, CachedUser> users;
+
+    private final LruMap<String, CachedCredentials> credentials;
+
+    private final ConcurrentMap<String, FutureTask<User>> loading = new ConcurrentHashMap<String, FutureTask<User>>();
+
+    /**
+     * Incremented on every invalidation, loads started before an invalidation
+     * are not cached
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final CredentialDigester digester = new CredentialDigester();
+
+    /**
+     * Internal constructor, do not use directly. Use
+     * {@link CachingUserManagerFactory} instead.
+     * 
+     * @param userManager
+     *            The user manager to cache
+     * @param maxSize
+     *            The maximum number of users, and separately of password
+     *            verifications, cached
+     * @param timeToLive
+     *            The time, in milliseconds, users and password verifications
+     *            are cached
+     * @param negativeTimeToLive
+     *            The time, in milliseconds, unknown user names are cached
+     * @param refreshAfter
+     *            The age, in milliseconds, after which a cached user is
+     *            reloaded in the background when used, 0 to never reload
+     *            before expiry
+     */
+    public CachingUserManager(UserManager userManager, int maxSize,
+            long timeToLive, long negativeTimeToLive, long refreshAfter) {
+        this(userManager, maxSize, timeToLive, negativeTimeToLive,
+                refreshAfter, createRefreshExecutor());
+    }
+
+    /**
+     * Internal constructor, do not use directly. Use
+     * {@link CachingUserManagerFactory} instead.
+     */
+    public CachingUserManager(UserManager userManager, int maxSize,
+            long timeToLive, long negativeTimeToLive, long refreshAfter,
+            Executor refreshExecutor) {
+        if (userManager == null) {
+            throw new IllegalArgumentException("userManager can not be null");
+        }
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.userManager = userManager;
+        this.timeToLive = timeToLive;
+        this.negativeTimeToLive = negativeTimeToLive;
+        this.refreshAfter = refreshAfter;
+        this.refreshExecutor = refreshExecutor;
+        this.users = new LruMap<String, CachedUser>(maxSize);
+        this.credentials = new LruMap<String, CachedCredentials>(maxSize);
+    }
+
+    /**
+     * A single daemon thread, only kept while there are users to refresh
+     */
+    private static Executor createRefreshExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable task) {
+                        Thread thread = new Thread(task,
+                                "FtpServer-user-cache-refresh");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * The user manager being cached
+     */
+    public UserManager getUserManager() {
+        return userManager;
+    }
+
+    /**
+     * Drop the cached user and password verification for a user name, for
+     * when the user has been changed elsewhere
+     * 
+     * @param name
+     *            The user name
+     */
+    public void invalidate(String name) {
+        synchronized (users) {
+            generation.incrementAndGet();
+            users.remove(name);
+            credentials.remove(name);
+        }
+    }
+
+    /**
+     * Drop all cached users and password verifications
+     */
+    public void invalidateAll() {
+        synchronized (users) {
+            generation.incrementAndGet();
+            users.clear();
+            credentials.clear();
+        }
+    }
+
+    /**
+     * The number of users, including unknown user names, cached
+     */
+    public int getCachedUserCount() {
+        return users.size();
+    }
+
+    /**
+     * Get a user, from the cache if present
+     */
+    public User getUserByName(String name) throws FtpException {
+        if (name == null) {
+            return userManager.getUserByName(name);
+        }
+
+        long now = currentTime();
+        CachedUser cached = users.get(name);
+        if (cached != null) {
+            long age = now - cached.loaded;
+            if (age < (cached.user != null ? timeToLive : negativeTimeToLive)) {
+                if (cached.user != null && refreshAfter > 0
+                        && age >= refreshAfter) {
+                    refresh(name, cached);
+                }
+                return cached.user;
+            }
+            users.remove(name, cached);
+        }
+        return load(name);
+    }
+
+    /**
+     * Load a user, sharing the load with concurrent lookups of the same user
+     */
+    private User load(final String name) throws FtpException {
+        FutureTask<User> task = new FutureTask<User>(new Callable<User>() {
+            public User call() throws Exception {
+                long loadGeneration = generation.get();
+                User user = userManager.getUserByName(name);
+                cache(name, user, loadGeneration);
+                return user;
+            }
+        });
+
+        FutureTask<User> running = loading.putIfAbsent(name, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                loading.remove(name, task);
+            }
+        }
+
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FtpException("Interrupted while loading user " + name, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof FtpException) {
+                throw (FtpException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new FtpException("Failed to load user " + name, cause);
+        }
+    }
+
+    private void refresh(final String name, final CachedUser cached) {
+        if (!cached.startRefresh()) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        long loadGeneration = generation.get();
+                        User user = userManager.getUserByName(name);
+                        // only replace the entry refreshed, it might have
+                        // been invalidated or reloaded meanwhile
+                        if (users.get(name) == cached) {
+                            cache(name, user, loadGeneration);
+                        }
+                    } catch (Exception e) {
+                        LOG.warn("Failed to refresh user " + name, e);
+                        cached.endRefresh();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            cached.endRefresh();
+        }
+    }
+
+    private void cache(String name, User user, long loadGeneration) {
+        CachedUser cached = new CachedUser(user, currentTime());
+        synchronized (users) {
+            if (generation.get() == loadGeneration) {
+                users.put(name, cached);
+            }
+        }
+    }
+
+    /**
+     * Authenticate, using a cached password verification if present
+     */
+    public User authenticate(Authentication authentication)
+            throws AuthenticationFailedException {
+        if (!(authentication instanceof UsernamePasswordAuthentication)) {
+            return userManager.authenticate(authentication);
+        }
+
+        UsernamePasswordAuthentication upauth = (UsernamePasswordAuthentication) authentication;
+        String name = upauth.getUsername();
+        if (name == null) {
+            return userManager.authenticate(authentication);
+        }
+
+        User user;
+        try {
+            user = getUserByName(name);
+        } catch (FtpException e) {
+            throw new AuthenticationFailedException("Authentication failed", e);
+        }
+        if (user == null) {
+            throw new AuthenticationFailedException("Authentication failed");
+        }
+
+        byte[] digest = digester.digest(name, upauth.getPassword());
+        CachedCredentials cached = credentials.get(name);
+        if (cached != null) {
+            if (currentTime() - cached.verified < timeToLive
+                    && CredentialDigester.matches(digest, cached.digest)) {
+                return user;
+            }
+        }
+
+        long verifyGeneration = generation.get();
+        User authenticated = userManager.authenticate(authentication);
+        synchronized (users) {
+            if (generation.get() == verifyGeneration) {
+                credentials.put(name, new CachedCredentials(digest,
+                        currentTime()));
+            }
+        }
+        return authenticated;
+    }
+
+    /**
+     * User existance check, using the cached user if present
+     */
+    public boolean doesExist(String name) throws FtpException {
+        return getUserByName(name) != null;
+    }
+
+    /**
+     * Save the user and drop it from the cache
+     */
+    public void save(User user) throws FtpException {
+        try {
+            userManager.save(user);
+        } finally {
+            invalidate(user.getName());
+        }
+    }
+
+    /**
+     * Save the users, at once if the cached user manager supports it, and
+     * drop them from the cache
+     */
+    public void saveAll(Collection<? extends User> users) throws FtpException {
+        try {
+            UserImporter.saveAll(userManager, users);
+        } finally {
+            for (User user : users) {
+                invalidate(user.getName());
+            }
+        }
+    }
+
+    /**
+     * Visit the users of the cached user manager, bypassing the cache
+     */
+    public void forEachUser(UserVisitor visitor) throws FtpException {
+        UserExporter.forEachUser(userManager, visitor);
+    }
+
+    /**
+     * Delete the user and drop it from the cache
+     */
+    public void delete(String name) throws FtpException {
+        try {
+            userManager.delete(name);
+        } finally {
+            invalidate(name);
+        }
+    }
+
+    public String[] getAllUserNames() throws FtpException {
+        return userManager.getAllUserNames();
+    }
+
+    public String getAdminName() throws FtpException {
+        return userManager.getAdminName();
+    }
+
+    public boolean isAdmin(String name) throws FtpException {
+        return userManager.isAdmin(name);
+    }
+
+    /**
+     * The current time in milliseconds
+     */
+    long currentTime() {
+        return System.nanoTime() / 1000000;
+    }
+
+    private static class CachedUser {
+
+        private final User user;
+
+        private final long loaded;
+
+        private boolean refreshing;
+
+        public CachedUser(User user, long loaded) {
+            this.user = user;
+            this.loaded = loaded;
+        }
+
+        public synchronized boolean startRefresh() {
+            if (refreshing) {
+                return false;
+            }
+            refreshing = true;
+            return true;
+        }
+
+        public synchronized void endRefresh() {
+            refreshing = false;
+        }
+    }
+
+    private static class CachedCredentials {
+
+        private final byte[] digest;
+
+        private final long verified;
+
+        public CachedCredentials(byte[] digest, long verified) {
+            this.digest = digest;
+            this.verified = verified;
+        }
+    }
+}
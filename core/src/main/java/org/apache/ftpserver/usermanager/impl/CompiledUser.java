@@ -0,0 +1,349 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.AuthorizationRequest;
+import org.apache.ftpserver.ftplet.User;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * A {@link BaseUser} with its authorities compiled, for the duration of a
+ * session, into structures answering authorization requests without walking
+ * the authorities. The answers are the same as {@link BaseUser#authorize}
+ * gives:
+ * <ul>
+ * <li>{@link WriteRequest}s are granted if the file starts with the root of
+ * every {@link WritePermission}, checked by walking a character trie of the
+ * roots. The position in the trie reached for a directory is cached, so that
+ * checking the files of a directory, as when listing it, only walks the file
+ * names, if at all.</li>
+ * <li>{@link TransferRateRequest}s are answered with the precomputed rates.</li>
+ * <li>{@link ConcurrentLoginRequest}s are checked against the precomputed
+ * lowest limits.</li>
+ * </ul>
+ * Users of other types, or with authorities of other types, whose answers
+ * can not be known in advance, are not compiled.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class CompiledUser implements User {
+
+    /**
+     * Maximum number of directories for which the trie position is cached
+     */
+    private static final int MAX_CACHED_DIRECTORIES = 1024;
+
+    private final User user;
+
+    private final int writePermissionCount;
+
+    private final TrieNode writeRoots;
+
+    private final ConcurrentHashMap<String, TriePosition> directoryPositions = new ConcurrentHashMap<String, TriePosition>();
+
+    private final boolean hasTransferRate;
+
+    private final int maxDownloadRate;
+
+    private final int maxUploadRate;
+
+    private final boolean hasConcurrentLogin;
+
+    private final int lowestMaxLogins;
+
+    private final int lowestMaxLoginsPerIP;
+
+    private final int maxLogins;
+
+    private final int maxLoginsPerIP;
+
+    /**
+     * Compile a user if possible
+     * 
+     * @param user
+     *            The user, may be null
+     * @return The compiled user, or the user itself if it can not be compiled
+     */
+    public static User compile(User user) {
+        if (user == null || user.getClass() != BaseUser.class) {
+            return user;
+        }
+        List<? extends Authority> authorities = user.getAuthorities();
+        if (authorities == null) {
+            return user;
+        }
+        for (Authority authority : authorities) {
+            Class<?> type = authority.getClass();
+            if (type != WritePermission.class
+                    && type != TransferRatePermission.class
+                    && type != ConcurrentLoginPermission.class) {
+                return user;
+            }
+        }
+        return new CompiledUser(user, authorities);
+    }
+
+    private CompiledUser(User user, List<? extends Authority> authorities) {
+        this.user = user;
+
+        List<String> roots = new ArrayList<String>();
+        TransferRatePermission transferRate = null;
+        ConcurrentLoginPermission concurrentLogin = null;
+        int lowestMax = 0;
+        int lowestMaxPerIP = 0;
+        for (Authority authority : authorities) {
+            if (authority instanceof WritePermission) {
+                roots.add(((WritePermission) authority).getPermissionRoot());
+            } else if (authority instanceof TransferRatePermission) {
+                // the last permission sets the rates
+                transferRate = (TransferRatePermission) authority;
+            } else if (authority instanceof ConcurrentLoginPermission) {
+                // every permission must grant the login, the last one sets
+                // the limits
+                concurrentLogin = (ConcurrentLoginPermission) authority;
+                lowestMax = lowest(lowestMax, concurrentLogin
+                        .getMaxConcurrentLogins());
+                lowestMaxPerIP = lowest(lowestMaxPerIP, concurrentLogin
+                        .getMaxConcurrentLoginsPerIP());
+            }
+        }
+
+        writePermissionCount = roots.size();
+        writeRoots = new TrieNode();
+        for (String root : roots) {
+            writeRoots.add(root);
+        }
+
+        hasTransferRate = transferRate != null;
+        maxDownloadRate = hasTransferRate ? transferRate.getMaxDownloadRate() : 0;
+        maxUploadRate = hasTransferRate ? transferRate.getMaxUploadRate() : 0;
+
+        hasConcurrentLogin = concurrentLogin != null;
+        lowestMaxLogins = lowestMax;
+        lowestMaxLoginsPerIP = lowestMaxPerIP;
+        maxLogins = hasConcurrentLogin ? concurrentLogin.getMaxConcurrentLogins() : 0;
+        maxLoginsPerIP = hasConcurrentLogin ? concurrentLogin
+                .getMaxConcurrentLoginsPerIP() : 0;
+    }
+
+    /**
+     * The lowest limit, 0 being unlimited
+     */
+    private static int lowest(int limit, int other) {
+        if (limit == 0) {
+            return other;
+        } else if (other == 0) {
+            return limit;
+        }
+        return Math.min(limit, other);
+    }
+
+    /**
+     * The user compiled
+     */
+    public User getUser() {
+        return user;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public AuthorizationRequest authorize(AuthorizationRequest request) {
+        if (request instanceof WriteRequest) {
+            if (writePermissionCount == 0) {
+                return null;
+            }
+            return isWritable(((WriteRequest) request).getFile()) ? request
+                    : null;
+        } else if (request instanceof TransferRateRequest) {
+            if (!hasTransferRate) {
+                return null;
+            }
+            TransferRateRequest transferRateRequest = (TransferRateRequest) request;
+            transferRateRequest.setMaxDownloadRate(maxDownloadRate);
+            transferRateRequest.setMaxUploadRate(maxUploadRate);
+            return transferRateRequest;
+        } else if (request instanceof ConcurrentLoginRequest) {
+            if (!hasConcurrentLogin) {
+                return null;
+            }
+            ConcurrentLoginRequest concurrentLoginRequest = (ConcurrentLoginRequest) request;
+            if (lowestMaxLogins != 0
+                    && lowestMaxLogins < concurrentLoginRequest
+                            .getConcurrentLogins()) {
+                return null;
+            } else if (lowestMaxLoginsPerIP != 0
+                    && lowestMaxLoginsPerIP < concurrentLoginRequest
+                            .getConcurrentLoginsFromThisIP()) {
+                return null;
+            }
+            concurrentLoginRequest.setMaxConcurrentLogins(maxLogins);
+            concurrentLoginRequest.setMaxConcurrentLoginsPerIP(maxLoginsPerIP);
+            return concurrentLoginRequest;
+        }
+        return null;
+    }
+
+    /**
+     * Does the file start with all write permission roots?
+     */
+    private boolean isWritable(String file) {
+        if (file == null) {
+            return false;
+        }
+        TriePosition position;
+        int nameStart = file.lastIndexOf('/') + 1;
+        if (nameStart > 0) {
+            String dir = file.substring(0, nameStart);
+            position = directoryPositions.get(dir);
+            if (position == null) {
+                position = writeRoots.walk(dir, 0, writeRoots.terminals);
+                if (directoryPositions.size() >= MAX_CACHED_DIRECTORIES) {
+                    directoryPositions.clear();
+                }
+                directoryPositions.put(dir, position);
+            }
+        } else {
+            position = new TriePosition(writeRoots, writeRoots.terminals);
+        }
+        if (position.node != null) {
+            position = position.node.walk(file, nameStart, position.matched);
+        }
+        return position.matched == writePermissionCount;
+    }
+
+    public String getName() {
+        return user.getName();
+    }
+
+    public String getPassword() {
+        return user.getPassword();
+    }
+
+    public List<? extends Authority> getAuthorities() {
+        return user.getAuthorities();
+    }
+
+    public List<? extends Authority> getAuthorities(
+            Class<? extends Authority> clazz) {
+        return user.getAuthorities(clazz);
+    }
+
+    public int getMaxIdleTime() {
+        return user.getMaxIdleTime();
+    }
+
+    public boolean getEnabled() {
+        return user.getEnabled();
+    }
+
+    public String getHomeDirectory() {
+        return user.getHomeDirectory();
+    }
+
+    @Override
+    public String toString() {
+        return user.toString();
+    }
+
+    /**
+     * A position reached in the trie, with the number of roots matched on the
+     * way. A null node means no more roots can be matched.
+     */
+    private static class TriePosition {
+
+        private final TrieNode node;
+
+        private final int matched;
+
+        public TriePosition(TrieNode node, int matched) {
+            this.node = node;
+            this.matched = matched;
+        }
+    }
+
+    /**
+     * A node of a character trie, counting the roots ending at it
+     */
+    private static class TrieNode {
+
+        private char[] keys = new char[0];
+
+        private TrieNode[] children = new TrieNode[0];
+
+        private int terminals;
+
+        public void add(String root) {
+            TrieNode node = this;
+            for (int i = 0; i < root.length(); i++) {
+                node = node.getOrAddChild(root.charAt(i));
+            }
+            node.terminals++;
+        }
+
+        private TrieNode getOrAddChild(char c) {
+            TrieNode child = getChild(c);
+            if (child == null) {
+                int length = keys.length;
+                char[] newKeys = new char[length + 1];
+                TrieNode[] newChildren = new TrieNode[length + 1];
+                System.arraycopy(keys, 0, newKeys, 0, length);
+                System.arraycopy(children, 0, newChildren, 0, length);
+                child = new TrieNode();
+                newKeys[length] = c;
+                newChildren[length] = child;
+                keys = newKeys;
+                children = newChildren;
+            }
+            return child;
+        }
+
+        private TrieNode getChild(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Walk down from this node along <code>s</code>, from
+         * <code>start</code>, counting the roots ending on the way
+         */
+        public TriePosition walk(String s, int start, int matched) {
+            TrieNode node = this;
+            for (int i = start; i < s.length() && node.keys.length > 0; i++) {
+                node = node.getChild(s.charAt(i));
+                if (node == null) {
+                    return new TriePosition(null, matched);
+                }
+                matched += node.terminals;
+            }
+            return new TriePosition(node, matched);
+        }
+    }
+}
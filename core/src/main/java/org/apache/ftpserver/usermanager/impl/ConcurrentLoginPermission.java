@@ -41,6 +41,21 @@ public class ConcurrentLoginPermission implements Authority {
         this.maxConcurrentLoginsPerIP = maxConcurrentLoginsPerIP;
     }
 
+    /**
+     * The maximum number of concurrent logins, 0 for unlimited
+     */
+    public int getMaxConcurrentLogins() {
+        return maxConcurrentLogins;
+    }
+
+    /**
+     * The maximum number of concurrent logins from the same IP address, 0
+     * for unlimited
+     */
+    public int getMaxConcurrentLoginsPerIP() {
+        return maxConcurrentLoginsPerIP;
+    }
+
     /**
      * @see Authority#authorize(AuthorizationRequest)
      */
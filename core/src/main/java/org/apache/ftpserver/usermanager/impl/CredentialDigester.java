@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Digests user names and passwords for remembering successful password
+ * verifications without keeping the passwords. The digest is a SHA-256 of
+ * the user name and password with a random salt per instance, so digests are
+ * only comparable within the same instance.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+class CredentialDigester {
+
+    private final byte[] salt = new byte[16];
+
+    public CredentialDigester() {
+        new SecureRandom().nextBytes(salt);
+    }
+
+    /**
+     * Digest a user name and password
+     * 
+     * @param name
+     *            The user name
+     * @param password
+     *            The password, or null
+     * @return The digest
+     */
+    public byte[] digest(String name, String password) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(salt);
+            md.update(name.getBytes("UTF-8"));
+            md.update((byte) 0);
+            if (password != null) {
+                md.update(password.getBytes("UTF-8"));
+            }
+            return md.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Compare two digests in constant time
+     */
+    public static boolean matches(byte[] digest1, byte[] digest2) {
+        return MessageDigest.isEqual(digest1, digest2);
+    }
+}
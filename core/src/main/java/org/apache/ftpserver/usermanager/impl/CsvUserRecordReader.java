@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Reads users from CSV as described in RFC 4180. The first line names the
+ * fields, which can be any subset of the user fields in any order. Quoted
+ * values can contain commas, quotes written twice, and line breaks. Empty
+ * lines are skipped.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class CsvUserRecordReader extends UserRecordReader {
+
+    private List<String> header;
+
+    public CsvUserRecordReader(Reader in) {
+        super(in);
+    }
+
+    @Override
+    protected Map<String, String> readRecord() throws IOException {
+        if (header == null) {
+            header = readFields();
+            if (header == null) {
+                return null;
+            }
+            for (int i = 0; i < header.size(); i++) {
+                header.set(i, header.get(i).trim().toLowerCase());
+            }
+        }
+
+        List<String> fields;
+        do {
+            fields = readFields();
+            if (fields == null) {
+                return null;
+            }
+        } while (fields.size() == 1 && fields.get(0).length() == 0);
+
+        if (fields.size() != header.size()) {
+            throw error("Expected " + header.size() + " fields, found "
+                    + fields.size());
+        }
+        Map<String, String> record = new LinkedHashMap<String, String>();
+        for (int i = 0; i < fields.size(); i++) {
+            record.put(header.get(i), fields.get(i));
+        }
+        return record;
+    }
+
+    /**
+     * Read the fields of the next record
+     * 
+     * @return The fields, or null at the end of the stream
+     */
+    private List<String> readFields() throws IOException {
+        String line = readLine();
+        if (line == null) {
+            return null;
+        }
+
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i == line.length()) {
+                if (!quoted) {
+                    break;
+                }
+                // the quoted value goes on on the next line
+                line = readLine();
+                if (line == null) {
+                    throw error("Unterminated quoted value");
+                }
+                field.append('\n');
+                i = 0;
+                continue;
+            }
+
+            char c = line.charAt(i++);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i < line.length() && line.charAt(i) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
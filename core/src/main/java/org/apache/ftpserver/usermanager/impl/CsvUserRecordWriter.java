@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Writes users as CSV, with a first line naming the fields
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class CsvUserRecordWriter extends UserRecordWriter {
+
+    public CsvUserRecordWriter(Writer out) {
+        super(out);
+    }
+
+    @Override
+    public void writeHeader() throws IOException {
+        writeLine(UserRecords.FIELDS.iterator());
+    }
+
+    @Override
+    protected void writeRecord(Map<String, String> record) throws IOException {
+        writeLine(record.values().iterator());
+    }
+
+    private void writeLine(Iterator<String> values) throws IOException {
+        while (values.hasNext()) {
+            writeValue(values.next());
+            if (values.hasNext()) {
+                out.write(',');
+            }
+        }
+        out.write('\n');
+    }
+
+    private void writeValue(String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+    }
+}
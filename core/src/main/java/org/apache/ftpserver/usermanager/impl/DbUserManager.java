@@ -20,12 +20,16 @@
 package org.apache.ftpserver.usermanager.impl;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.sql.DataSource;
 
@@ -36,10 +40,12 @@ import org.apache.ftpserver.ftplet.Authority;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.User;
 import org.apache.ftpserver.usermanager.AnonymousAuthentication;
+import org.apache.ftpserver.usermanager.BatchUserManager;
 import org.apache.ftpserver.usermanager.DbUserManagerFactory;
 import org.apache.ftpserver.usermanager.PasswordEncryptor;
+import org.apache.ftpserver.usermanager.UserManagerUnavailableException;
+import org.apache.ftpserver.usermanager.UserVisitor;
 import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
-import org.apache.ftpserver.util.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,25 +58,32 @@ import org.slf4j.LoggerFactory;
  * All the user attributes are replaced during run-time. So we can use your
  * database schema. Then you need to modify the SQLs in the configuration file.
  *
+ * The SQL statements are compiled into {@link SqlTemplate}s when configured
+ * and executed as prepared statements, with the user attributes bound as
+ * parameters. Each operation uses a single connection from the data source.
+ *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
-public class DbUserManager extends AbstractUserManager {
+public class DbUserManager extends AbstractUserManager implements
+        BatchUserManager {
 
     private final Logger LOG = LoggerFactory.getLogger(DbUserManager.class);
 
-    private String insertUserStmt;
+    private volatile SqlTemplate insertUserStmt;
+
+    private volatile SqlTemplate updateUserStmt;
 
-    private String updateUserStmt;
+    private volatile SqlTemplate upsertUserStmt;
 
-    private String deleteUserStmt;
+    private volatile SqlTemplate deleteUserStmt;
 
-    private String selectUserStmt;
+    private volatile SqlTemplate selectUserStmt;
 
-    private String selectAllStmt;
+    private volatile SqlTemplate selectAllStmt;
 
-    private String isAdminStmt;
+    private volatile SqlTemplate isAdminStmt;
 
-    private String authenticateStmt;
+    private volatile SqlTemplate authenticateStmt;
 
     private DataSource dataSource;
 
@@ -82,15 +95,30 @@ public class DbUserManager extends AbstractUserManager {
             String updateUserStmt, String deleteUserStmt,
             String authenticateStmt, String isAdminStmt,
             PasswordEncryptor passwordEncryptor, String adminName) {
+        this(dataSource, selectAllStmt, selectUserStmt, insertUserStmt,
+                updateUserStmt, null, deleteUserStmt, authenticateStmt,
+                isAdminStmt, passwordEncryptor, adminName);
+    }
+
+    /**
+     * Internal constructor, do not use directly. Use {@link DbUserManagerFactory} instead.
+     */
+    public DbUserManager(DataSource dataSource, String selectAllStmt,
+            String selectUserStmt, String insertUserStmt,
+            String updateUserStmt, String upsertUserStmt,
+            String deleteUserStmt, String authenticateStmt,
+            String isAdminStmt, PasswordEncryptor passwordEncryptor,
+            String adminName) {
         super(adminName, passwordEncryptor);
         this.dataSource = dataSource;
-        this.selectAllStmt = selectAllStmt;
-        this.selectUserStmt = selectUserStmt;
-        this.insertUserStmt = insertUserStmt;
-        this.updateUserStmt = updateUserStmt;
-        this.deleteUserStmt = deleteUserStmt;
-        this.authenticateStmt = authenticateStmt;
-        this.isAdminStmt = isAdminStmt;
+        this.selectAllStmt = compile(selectAllStmt);
+        this.selectUserStmt = compile(selectUserStmt);
+        this.insertUserStmt = compile(insertUserStmt);
+        this.updateUserStmt = compile(updateUserStmt);
+        this.upsertUserStmt = compile(upsertUserStmt);
+        this.deleteUserStmt = compile(deleteUserStmt);
+        this.authenticateStmt = compile(authenticateStmt);
+        this.isAdminStmt = compile(isAdminStmt);
 
         Connection con = null; 
         try { 
@@ -107,6 +135,14 @@ public class DbUserManager extends AbstractUserManager {
         }
     }
 
+    private static SqlTemplate compile(String sql) {
+        return sql == null ? null : new SqlTemplate(sql);
+    }
+
+    private static String getTemplate(SqlTemplate stmt) {
+        return stmt == null ? null : stmt.getTemplate();
+    }
+
     /**
      * Retrive the data source used by the user manager
      *
@@ -132,7 +168,7 @@ public class DbUserManager extends AbstractUserManager {
      * @return The SQL statement
      */
     public String getSqlUserInsert() {
-        return insertUserStmt;
+        return getTemplate(insertUserStmt);
     }
 
     /**
@@ -143,7 +179,7 @@ public class DbUserManager extends AbstractUserManager {
      *            The SQL statement
      */
     public void setSqlUserInsert(String sql) {
-        insertUserStmt = sql;
+        insertUserStmt = compile(sql);
     }
 
     /**
@@ -152,7 +188,7 @@ public class DbUserManager extends AbstractUserManager {
      * @return The SQL statement
      */
     public String getSqlUserDelete() {
-        return deleteUserStmt;
+        return getTemplate(deleteUserStmt);
     }
 
     /**
@@ -163,7 +199,7 @@ public class DbUserManager extends AbstractUserManager {
      *            The SQL statement
      */
     public void setSqlUserDelete(String sql) {
-        deleteUserStmt = sql;
+        deleteUserStmt = compile(sql);
     }
 
     /**
@@ -172,7 +208,7 @@ public class DbUserManager extends AbstractUserManager {
      * @return The SQL statement
      */
     public String getSqlUserUpdate() {
-        return updateUserStmt;
+        return getTemplate(updateUserStmt);
     }
 
     /**
@@ -183,7 +219,33 @@ public class DbUserManager extends AbstractUserManager {
      *            The SQL statement
      */
     public void setSqlUserUpdate(String sql) {
-        updateUserStmt = sql;
+        updateUserStmt = compile(sql);
+    }
+
+    /**
+     * Get the SQL statement used to insert a new user or update an existing
+     * one.
+     *
+     * @return The SQL statement, or null if not configured
+     */
+    public String getSqlUserUpsert() {
+        return getTemplate(upsertUserStmt);
+    }
+
+    /**
+     * Set the SQL statement used to insert a new user or update an existing
+     * one, such as <code>MERGE</code>, <code>INSERT ... ON DUPLICATE KEY
+     * UPDATE</code> or <code>INSERT ... ON CONFLICT DO UPDATE</code>,
+     * depending on the database. If set, users are saved with this statement
+     * alone, otherwise the UPDATE statement is tried first, followed by the
+     * INSERT statement if no user was updated. All the dynamic values will be
+     * replaced during runtime.
+     *
+     * @param sql
+     *            The SQL statement, or null to not use one
+     */
+    public void setSqlUserUpsert(String sql) {
+        upsertUserStmt = compile(sql);
     }
 
     /**
@@ -192,7 +254,7 @@ public class DbUserManager extends AbstractUserManager {
      * @return The SQL statement
      */
     public String getSqlUserSelect() {
-        return selectUserStmt;
+        return getTemplate(selectUserStmt);
     }
 
     /**
@@ -203,7 +265,7 @@ public class DbUserManager extends AbstractUserManager {
      *            The SQL statement
      */
     public void setSqlUserSelect(String sql) {
-        selectUserStmt = sql;
+        selectUserStmt = compile(sql);
     }
 
     /**
@@ -212,7 +274,7 @@ public class DbUserManager extends AbstractUserManager {
      * @return The SQL statement
      */
     public String getSqlUserSelectAll() {
-        return selectAllStmt;
+        return getTemplate(selectAllStmt);
     }
 
     /**
@@ -223,7 +285,7 @@ public class DbUserManager extends AbstractUserManager {
      *            The SQL statement
      */
     public void setSqlUserSelectAll(String sql) {
-        selectAllStmt = sql;
+        selectAllStmt = compile(sql);
     }
 
     /**
@@ -232,7 +294,7 @@ public class DbUserManager extends AbstractUserManager {
      * @return The SQL statement
      */
     public String getSqlUserAuthenticate() {
-        return authenticateStmt;
+        return getTemplate(authenticateStmt);
     }
 
     /**
@@ -243,7 +305,7 @@ public class DbUserManager extends AbstractUserManager {
      *            The SQL statement
      */
     public void setSqlUserAuthenticate(String sql) {
-        authenticateStmt = sql;
+        authenticateStmt = compile(sql);
     }
 
     /**
@@ -253,7 +315,7 @@ public class DbUserManager extends AbstractUserManager {
      * @return The SQL statement
      */
     public String getSqlUserAdmin() {
-        return isAdminStmt;
+        return getTemplate(isAdminStmt);
     }
 
     /**
@@ -264,7 +326,7 @@ public class DbUserManager extends AbstractUserManager {
      *            The SQL statement
      */
     public void setSqlUserAdmin(String sql) {
-        isAdminStmt = sql;
+        isAdminStmt = compile(sql);
     }
 
     /**
@@ -278,26 +340,15 @@ public class DbUserManager extends AbstractUserManager {
             return false;
         }
 
-        Statement stmt = null;
-        ResultSet rs = null;
+        Connection con = null;
         try {
-
-            // create the sql query
-            HashMap<String, Object> map = new HashMap<String, Object>();
-            map.put(ATTR_LOGIN, escapeString(login));
-            String sql = StringUtils.replaceString(isAdminStmt, map);
-            LOG.info(sql);
-
-            // execute query
-            stmt = createConnection().createStatement();
-            rs = stmt.executeQuery(sql);
-            return rs.next();
+            con = createConnection();
+            return exists(con, isAdminStmt, login);
         } catch (SQLException ex) {
             LOG.error("DbUserManager.isAdmin()", ex);
             throw new FtpException("DbUserManager.isAdmin()", ex);
         } finally {
-            closeQuitely(rs);
-            closeQuitely(stmt);
+            closeQuitely(con);
         }
     }
 
@@ -316,22 +367,15 @@ public class DbUserManager extends AbstractUserManager {
      * Delete user. Delete the row from the table.
      */
     public void delete(String name) throws FtpException {
-        // create sql query
-        HashMap<String, Object> map = new HashMap<String, Object>();
-        map.put(ATTR_LOGIN, escapeString(name));
-        String sql = StringUtils.replaceString(deleteUserStmt, map);
-        LOG.info(sql);
-
-        // execute query
-        Statement stmt = null;
+        Connection con = null;
         try {
-            stmt = createConnection().createStatement();
-            stmt.executeUpdate(sql);
+            con = createConnection();
+            executeUpdate(con, deleteUserStmt, loginParameters(name));
         } catch (SQLException ex) {
             LOG.error("DbUserManager.delete()", ex);
             throw new FtpException("DbUserManager.delete()", ex);
         } finally {
-            closeQuitely(stmt);
+            closeQuitely(con);
         }
     }
 
@@ -344,109 +388,241 @@ public class DbUserManager extends AbstractUserManager {
             throw new NullPointerException("User name is null.");
         }
 
-        Statement stmt = null;
+        Connection con = null;
         try {
-
-            // create sql query
-            HashMap<String, Object> map = new HashMap<String, Object>();
-            map.put(ATTR_LOGIN, escapeString(user.getName()));
-
-            String password = null;
-            if(user.getPassword() != null) {
-                // password provided, encrypt it and store the encrypted value
-                password= getPasswordEncryptor().encrypt(user.getPassword());
+            con = createConnection();
+            Map<String, Object> map = userParameters(user,
+                    user.getPassword() == null ? null : getPasswordEncryptor()
+                            .encrypt(user.getPassword()));
+
+            if (user.getPassword() != null) {
+                if (upsertUserStmt != null) {
+                    executeUpdate(con, upsertUserStmt, map);
+                } else if (executeUpdate(con, updateUserStmt, map) == 0) {
+                    executeUpdate(con, insertUserStmt, map);
+                }
             } else {
-                // password was not provided, either load from the existing user and store that again
-                // or store as null
-                ResultSet rs = null;
+                // password was not provided, either load from the existing
+                // user and store that again or store as null
+                BaseUser existing = selectUserByName(con, user.getName());
+                if (existing != null) {
+                    map.put(ATTR_PASSWORD, existing.getPassword());
+                }
+                executeUpdate(con, getSaveStmt(existing != null), map);
+            }
+        } catch (SQLException ex) {
+            LOG.error("DbUserManager.save()", ex);
+            throw new FtpException("DbUserManager.save()", ex);
+        } finally {
+            closeQuitely(con);
+        }
+    }
 
-                try {
-                    User userWithPassword = selectUserByName(user.getName());
+    /**
+     * Save a number of users in a single transaction, using batch updates.
+     * Meant for bulk imports, where it is much faster than saving the users
+     * one by one. Either all the users are saved, or none of them.
+     *
+     * @param users
+     *            The users to save
+     * @throws FtpException
+     */
+    public void saveAll(Collection<? extends User> users) throws FtpException {
+        for (User user : users) {
+            if (user.getName() == null) {
+                throw new NullPointerException("User name is null.");
+            }
+        }
+        List<? extends User> userList = new ArrayList<User>(users);
 
-                    if(userWithPassword != null) {
-                        // user exists, reuse password
-                        password = userWithPassword.getPassword();
+        // before taking a connection, as it takes a while
+        String[] passwords = encryptPasswords(userList);
+
+        Connection con = null;
+        try {
+            con = createConnection();
+            con.setAutoCommit(false);
+
+            List<Map<String, Object>> upserts = new ArrayList<Map<String, Object>>();
+            List<Map<String, Object>> inserts = new ArrayList<Map<String, Object>>();
+            List<Map<String, Object>> updates = new ArrayList<Map<String, Object>>();
+            for (int i = 0; i < userList.size(); i++) {
+                User user = userList.get(i);
+                Map<String, Object> map = userParameters(user, passwords[i]);
+                if (passwords[i] != null) {
+                    upserts.add(map);
+                } else {
+                    BaseUser existing = selectUserByName(con, user.getName());
+                    if (existing != null) {
+                        map.put(ATTR_PASSWORD, existing.getPassword());
+                        updates.add(map);
+                    } else {
+                        inserts.add(map);
                     }
-                } finally {
-                    closeQuitely(rs);
                 }
             }
-            map.put(ATTR_PASSWORD, escapeString(password));
-
 
-            String home = user.getHomeDirectory();
-            if (home == null) {
-                home = "/";
-            }
-            map.put(ATTR_HOME, escapeString(home));
-            map.put(ATTR_ENABLE, String.valueOf(user.getEnabled()));
-
-            map.put(ATTR_WRITE_PERM, String.valueOf(user
-                    .authorize(new WriteRequest()) != null));
-            map.put(ATTR_MAX_IDLE_TIME, user.getMaxIdleTime());
-
-            TransferRateRequest transferRateRequest = new TransferRateRequest();
-            transferRateRequest = (TransferRateRequest) user
-                    .authorize(transferRateRequest);
-
-            if (transferRateRequest != null) {
-                map.put(ATTR_MAX_UPLOAD_RATE, transferRateRequest
-                        .getMaxUploadRate());
-                map.put(ATTR_MAX_DOWNLOAD_RATE, transferRateRequest
-                        .getMaxDownloadRate());
+            if (upsertUserStmt != null) {
+                executeBatch(con, upsertUserStmt, upserts);
             } else {
-                map.put(ATTR_MAX_UPLOAD_RATE, 0);
-                map.put(ATTR_MAX_DOWNLOAD_RATE, 0);
+                int[] counts = executeBatch(con, updateUserStmt, upserts);
+                for (int i = 0; i < counts.length; i++) {
+                    // SUCCESS_NO_INFO does not tell, assume the user existed
+                    if (counts[i] == 0) {
+                        inserts.add(upserts.get(i));
+                    }
+                }
             }
+            executeBatch(con, updateUserStmt, updates);
+            executeBatch(con, insertUserStmt, inserts);
 
-            // request that always will succeed
-            ConcurrentLoginRequest concurrentLoginRequest = new ConcurrentLoginRequest(
-                    0, 0);
-            concurrentLoginRequest = (ConcurrentLoginRequest) user
-                    .authorize(concurrentLoginRequest);
-
-            if (concurrentLoginRequest != null) {
-                map.put(ATTR_MAX_LOGIN_NUMBER, concurrentLoginRequest
-                        .getMaxConcurrentLogins());
-                map.put(ATTR_MAX_LOGIN_PER_IP, concurrentLoginRequest
-                        .getMaxConcurrentLoginsPerIP());
-            } else {
-                map.put(ATTR_MAX_LOGIN_NUMBER, 0);
-                map.put(ATTR_MAX_LOGIN_PER_IP, 0);
+            con.commit();
+        } catch (SQLException ex) {
+            rollbackQuitely(con);
+            LOG.error("DbUserManager.saveAll()", ex);
+            throw new FtpException("DbUserManager.saveAll()", ex);
+        } catch (RuntimeException ex) {
+            rollbackQuitely(con);
+            throw ex;
+        } finally {
+            if (con != null) {
+                try {
+                    con.setAutoCommit(true);
+                } catch (SQLException e) {
+                    // ignore
+                }
             }
+            closeQuitely(con);
+        }
+    }
 
-            String sql = null;
-            if (!doesExist(user.getName())) {
-                sql = StringUtils.replaceString(insertUserStmt, map);
-            } else {
-                sql = StringUtils.replaceString(updateUserStmt, map);
+    private SqlTemplate getSaveStmt(boolean exists) {
+        if (upsertUserStmt != null) {
+            return upsertUserStmt;
+        }
+        return exists ? updateUserStmt : insertUserStmt;
+    }
+
+    /**
+     * The statement parameters for saving a user
+     * 
+     * @param password
+     *            The encrypted password, or null if not provided
+     */
+    private Map<String, Object> userParameters(User user, String password) {
+        Map<String, Object> map = loginParameters(user.getName());
+
+        if (password != null) {
+            map.put(ATTR_PASSWORD, password);
+        }
+
+        String home = user.getHomeDirectory();
+        if (home == null) {
+            home = "/";
+        }
+        map.put(ATTR_HOME, home);
+        map.put(ATTR_ENABLE, Boolean.valueOf(user.getEnabled()));
+
+        map.put(ATTR_WRITE_PERM, Boolean.valueOf(user
+                .authorize(new WriteRequest()) != null));
+        map.put(ATTR_MAX_IDLE_TIME, user.getMaxIdleTime());
+
+        TransferRateRequest transferRateRequest = new TransferRateRequest();
+        transferRateRequest = (TransferRateRequest) user
+                .authorize(transferRateRequest);
+
+        if (transferRateRequest != null) {
+            map.put(ATTR_MAX_UPLOAD_RATE, transferRateRequest
+                    .getMaxUploadRate());
+            map.put(ATTR_MAX_DOWNLOAD_RATE, transferRateRequest
+                    .getMaxDownloadRate());
+        } else {
+            map.put(ATTR_MAX_UPLOAD_RATE, 0);
+            map.put(ATTR_MAX_DOWNLOAD_RATE, 0);
+        }
+
+        // request that always will succeed
+        ConcurrentLoginRequest concurrentLoginRequest = new ConcurrentLoginRequest(
+                0, 0);
+        concurrentLoginRequest = (ConcurrentLoginRequest) user
+                .authorize(concurrentLoginRequest);
+
+        if (concurrentLoginRequest != null) {
+            map.put(ATTR_MAX_LOGIN_NUMBER, concurrentLoginRequest
+                    .getMaxConcurrentLogins());
+            map.put(ATTR_MAX_LOGIN_PER_IP, concurrentLoginRequest
+                    .getMaxConcurrentLoginsPerIP());
+        } else {
+            map.put(ATTR_MAX_LOGIN_NUMBER, 0);
+            map.put(ATTR_MAX_LOGIN_PER_IP, 0);
+        }
+        return map;
+    }
+
+    private static Map<String, Object> loginParameters(String login) {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put(ATTR_LOGIN, login);
+        return map;
+    }
+
+    private int executeUpdate(Connection con, SqlTemplate template,
+            Map<String, Object> parameters) throws SQLException {
+        LOG.debug(template.getSql());
+
+        PreparedStatement stmt = template.prepare(con);
+        try {
+            template.bind(stmt, parameters);
+            return stmt.executeUpdate();
+        } finally {
+            closeQuitely(stmt);
+        }
+    }
+
+    private int[] executeBatch(Connection con, SqlTemplate template,
+            List<Map<String, Object>> parameters) throws SQLException {
+        if (parameters.isEmpty()) {
+            return new int[0];
+        }
+        LOG.debug("{} (batch of {})", template.getSql(), parameters.size());
+
+        PreparedStatement stmt = template.prepare(con);
+        try {
+            for (Map<String, Object> map : parameters) {
+                template.bind(stmt, map);
+                stmt.addBatch();
             }
-            LOG.info(sql);
+            return stmt.executeBatch();
+        } finally {
+            closeQuitely(stmt);
+        }
+    }
 
-            // execute query
-            stmt = createConnection().createStatement();
-            stmt.executeUpdate(sql);
-        } catch (SQLException ex) {
-            LOG.error("DbUserManager.save()", ex);
-            throw new FtpException("DbUserManager.save()", ex);
+    /**
+     * @return true if the query for the login returns any row
+     */
+    private boolean exists(Connection con, SqlTemplate template, String login)
+            throws SQLException {
+        LOG.debug(template.getSql());
+
+        PreparedStatement stmt = template.prepare(con);
+        ResultSet rs = null;
+        try {
+            template.bind(stmt, loginParameters(login));
+            rs = stmt.executeQuery();
+            return rs.next();
         } finally {
+            closeQuitely(rs);
             closeQuitely(stmt);
         }
     }
 
     private void closeQuitely(Statement stmt) {
         if(stmt != null) {
-	    Connection con = null;
-	    try {
-		con = stmt.getConnection();
-	    } catch (Exception e) {
-	    }
-	    try {
+            try {
                 stmt.close();
             } catch (SQLException e) {
                 // ignore
             }
-	    closeQuitely(con);
         }
     }
 
@@ -470,46 +646,30 @@ public class DbUserManager extends AbstractUserManager {
 	}
     }
 
-    private BaseUser selectUserByName(String name) throws SQLException {
-        // create sql query
-        HashMap<String, Object> map = new HashMap<String, Object>();
-        map.put(ATTR_LOGIN, escapeString(name));
-        String sql = StringUtils.replaceString(selectUserStmt, map);
-        LOG.info(sql);
+    private void rollbackQuitely(Connection con) {
+        if (con != null) {
+            try {
+                con.rollback();
+            } catch (SQLException e) {
+                // ignore
+            }
+        }
+    }
+
+    private BaseUser selectUserByName(Connection con, String name)
+            throws SQLException {
+        SqlTemplate template = selectUserStmt;
+        LOG.debug(template.getSql());
 
-        Statement stmt = null;
+        PreparedStatement stmt = template.prepare(con);
         ResultSet rs = null;
         try {
             // execute query
-            stmt = createConnection().createStatement();
-            rs = stmt.executeQuery(sql);
+            template.bind(stmt, loginParameters(name));
+            rs = stmt.executeQuery();
 
             // populate user object
-            BaseUser thisUser = null;
-            if (rs.next()) {
-                thisUser = new BaseUser();
-                thisUser.setName(rs.getString(ATTR_LOGIN));
-                thisUser.setPassword(rs.getString(ATTR_PASSWORD));
-                thisUser.setHomeDirectory(rs.getString(ATTR_HOME));
-                thisUser.setEnabled(rs.getBoolean(ATTR_ENABLE));
-                thisUser.setMaxIdleTime(rs.getInt(ATTR_MAX_IDLE_TIME));
-
-                List<Authority> authorities = new ArrayList<Authority>();
-                if (rs.getBoolean(ATTR_WRITE_PERM)) {
-                    authorities.add(new WritePermission());
-                }
-
-                authorities.add(new ConcurrentLoginPermission(rs
-                        .getInt(ATTR_MAX_LOGIN_NUMBER), rs
-                        .getInt(ATTR_MAX_LOGIN_PER_IP)));
-                authorities.add(new TransferRatePermission(rs
-                        .getInt(ATTR_MAX_DOWNLOAD_RATE), rs
-                        .getInt(ATTR_MAX_UPLOAD_RATE)));
-
-                thisUser.setAuthorities(authorities);
-            }
-            return thisUser;
-
+            return rs.next() ? buildUser(rs) : null;
         } finally {
             closeQuitely(rs);
             closeQuitely(stmt);
@@ -517,55 +677,146 @@ public class DbUserManager extends AbstractUserManager {
     }
 
     /**
-     * Get the user object. Fetch the row from the table.
+     * Build a user from the current row of a result set
      */
-    public User getUserByName(String name) throws FtpException {
-        Statement stmt = null;
-        ResultSet rs = null;
-        try {
+    private static BaseUser buildUser(ResultSet rs) throws SQLException {
+        BaseUser user = new BaseUser();
+        user.setName(rs.getString(ATTR_LOGIN));
+        user.setPassword(rs.getString(ATTR_PASSWORD));
+        user.setHomeDirectory(rs.getString(ATTR_HOME));
+        user.setEnabled(rs.getBoolean(ATTR_ENABLE));
+        user.setMaxIdleTime(rs.getInt(ATTR_MAX_IDLE_TIME));
+
+        List<Authority> authorities = new ArrayList<Authority>();
+        if (rs.getBoolean(ATTR_WRITE_PERM)) {
+            authorities.add(new WritePermission());
+        }
 
-            BaseUser user = selectUserByName(name);
+        authorities.add(new ConcurrentLoginPermission(rs
+                .getInt(ATTR_MAX_LOGIN_NUMBER), rs
+                .getInt(ATTR_MAX_LOGIN_PER_IP)));
+        authorities.add(new TransferRatePermission(rs
+                .getInt(ATTR_MAX_DOWNLOAD_RATE), rs
+                .getInt(ATTR_MAX_UPLOAD_RATE)));
 
-            if(user != null) {
-                // reset the password, not to be sent to API users
-                user.setPassword(null);
-            }
-            return user;
+        user.setAuthorities(authorities);
+        return user;
+    }
 
+    /**
+     * Does the result set have a column for every user attribute?
+     */
+    private static boolean hasUserColumns(ResultSet rs) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        List<String> columns = new ArrayList<String>();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            columns.add(metaData.getColumnLabel(i).toLowerCase());
+        }
+        for (String attribute : new String[] { ATTR_LOGIN, ATTR_HOME,
+                ATTR_ENABLE, ATTR_WRITE_PERM, ATTR_MAX_IDLE_TIME,
+                ATTR_MAX_UPLOAD_RATE, ATTR_MAX_DOWNLOAD_RATE,
+                ATTR_MAX_LOGIN_NUMBER, ATTR_MAX_LOGIN_PER_IP }) {
+            if (!columns.contains(attribute)) {
+                return false;
+            }
+        }
+        return true;
+    }
 
+    /**
+     * Get the user object. Fetch the row from the table.
+     */
+    public User getUserByName(String name) throws FtpException {
+        Connection con = null;
+        try {
+            con = createConnection();
+            return getUserByName(con, name);
         } catch (SQLException ex) {
             LOG.error("DbUserManager.getUserByName()", ex);
             throw new FtpException("DbUserManager.getUserByName()", ex);
         } finally {
-            closeQuitely(rs);
-            closeQuitely(stmt);
+            closeQuitely(con);
         }
     }
 
+    private User getUserByName(Connection con, String name)
+            throws SQLException {
+        BaseUser user = selectUserByName(con, name);
+
+        if(user != null) {
+            // reset the password, not to be sent to API users
+            user.setPassword(null);
+        }
+        return user;
+    }
+
     /**
      * User existance check.
      */
     public boolean doesExist(String name) throws FtpException {
-        Statement stmt = null;
+        Connection con = null;
+        try {
+            con = createConnection();
+            return exists(con, selectUserStmt, name);
+        } catch (SQLException ex) {
+            LOG.error("DbUserManager.doesExist()", ex);
+            throw new FtpException("DbUserManager.doesExist()", ex);
+        } finally {
+            closeQuitely(con);
+        }
+    }
+
+    /**
+     * Visit all users. If the statement selecting all users returns all the
+     * user columns, for example <code>SELECT * FROM FTP_USER ORDER BY
+     * userid</code>, the users are built from its rows in a single query.
+     * Otherwise they are selected one by one, on the same connection.
+     */
+    public void forEachUser(UserVisitor visitor) throws FtpException {
+        SqlTemplate template = selectAllStmt;
+        Connection con = null;
+        PreparedStatement stmt = null;
         ResultSet rs = null;
         try {
+            LOG.debug(template.getSql());
+
+            con = createConnection();
+            stmt = template.prepare(con);
+            template.bind(stmt, new HashMap<String, Object>());
+            rs = stmt.executeQuery();
+
+            if (hasUserColumns(rs)) {
+                while (rs.next()) {
+                    BaseUser user = buildUser(rs);
+                    user.setPassword(null);
+                    visitor.visit(user);
+                }
+                return;
+            }
 
-            // create the sql
-            HashMap<String, Object> map = new HashMap<String, Object>();
-            map.put(ATTR_LOGIN, escapeString(name));
-            String sql = StringUtils.replaceString(selectUserStmt, map);
-            LOG.info(sql);
+            List<String> names = new ArrayList<String>();
+            while (rs.next()) {
+                names.add(rs.getString(ATTR_LOGIN));
+            }
+            closeQuitely(rs);
+            rs = null;
+            closeQuitely(stmt);
+            stmt = null;
 
-            // execute query
-            stmt = createConnection().createStatement();
-            rs = stmt.executeQuery(sql);
-            return rs.next();
+            for (String name : names) {
+                User user = getUserByName(con, name);
+                // deleted since listed
+                if (user != null) {
+                    visitor.visit(user);
+                }
+            }
         } catch (SQLException ex) {
-            LOG.error("DbUserManager.doesExist()", ex);
-            throw new FtpException("DbUserManager.doesExist()", ex);
+            LOG.error("DbUserManager.forEachUser()", ex);
+            throw new FtpException("DbUserManager.forEachUser()", ex);
         } finally {
             closeQuitely(rs);
             closeQuitely(stmt);
+            closeQuitely(con);
         }
     }
 
@@ -573,18 +824,18 @@ public class DbUserManager extends AbstractUserManager {
      * Get all user names from the database.
      */
     public String[] getAllUserNames() throws FtpException {
-
-        Statement stmt = null;
+        SqlTemplate template = selectAllStmt;
+        Connection con = null;
+        PreparedStatement stmt = null;
         ResultSet rs = null;
         try {
-
-            // create sql query
-            String sql = selectAllStmt;
-            LOG.info(sql);
+            LOG.debug(template.getSql());
 
             // execute query
-            stmt = createConnection().createStatement();
-            rs = stmt.executeQuery(sql);
+            con = createConnection();
+            stmt = template.prepare(con);
+            template.bind(stmt, new HashMap<String, Object>());
+            rs = stmt.executeQuery();
 
             // populate list
             ArrayList<String> names = new ArrayList<String>();
@@ -598,6 +849,7 @@ public class DbUserManager extends AbstractUserManager {
         } finally {
             closeQuitely(rs);
             closeQuitely(stmt);
+            closeQuitely(con);
         }
     }
 
@@ -620,82 +872,62 @@ public class DbUserManager extends AbstractUserManager {
                 password = "";
             }
 
-            Statement stmt = null;
+            SqlTemplate template = authenticateStmt;
+            Connection con = null;
+            PreparedStatement stmt = null;
             ResultSet rs = null;
             try {
-
-                // create the sql query
-                HashMap<String, Object> map = new HashMap<String, Object>();
-                map.put(ATTR_LOGIN, escapeString(user));
-                String sql = StringUtils.replaceString(authenticateStmt, map);
-                LOG.info(sql);
+                LOG.debug(template.getSql());
 
                 // execute query
-                stmt = createConnection().createStatement();
-                rs = stmt.executeQuery(sql);
+                con = createConnection();
+                stmt = template.prepare(con);
+                template.bind(stmt, loginParameters(user));
+                rs = stmt.executeQuery();
                 if (rs.next()) {
-                    try {
-                        String storedPassword = rs.getString(ATTR_PASSWORD);
-                        if (getPasswordEncryptor().matches(password, storedPassword)) {
-                            return getUserByName(user);
-                        } else {
-                            throw new AuthenticationFailedException(
-                                    "Authentication failed");
+                    String storedPassword = rs.getString(ATTR_PASSWORD);
+                    closeQuitely(rs);
+                    rs = null;
+                    if (getPasswordEncryptor().matches(password, storedPassword)) {
+                        // fetch the user on the same connection
+                        User authenticated = getUserByName(con, user);
+                        if (authenticated != null) {
+                            return authenticated;
                         }
-                    } catch (FtpException e) {
-                        throw new AuthenticationFailedException(
-                                "Authentication failed", e);
                     }
-                } else {
-                    throw new AuthenticationFailedException(
-                            "Authentication failed");
                 }
+                throw new AuthenticationFailedException(
+                        "Authentication failed");
             } catch (SQLException ex) {
                 LOG.error("DbUserManager.authenticate()", ex);
-                throw new AuthenticationFailedException(
+                throw new UserManagerUnavailableException(
                         "Authentication failed", ex);
             } finally {
                 closeQuitely(rs);
                 closeQuitely(stmt);
+                closeQuitely(con);
             }
         } else if (authentication instanceof AnonymousAuthentication) {
+            Connection con = null;
             try {
-                if (doesExist("anonymous")) {
-                    return getUserByName("anonymous");
+                con = createConnection();
+                User user = getUserByName(con, "anonymous");
+                if (user != null) {
+                    return user;
                 } else {
                     throw new AuthenticationFailedException(
                             "Authentication failed");
                 }
-            } catch (AuthenticationFailedException e) {
-                throw e;
-            } catch (FtpException e) {
-                throw new AuthenticationFailedException(
-                        "Authentication failed", e);
+            } catch (SQLException ex) {
+                LOG.error("DbUserManager.authenticate()", ex);
+                throw new UserManagerUnavailableException(
+                        "Authentication failed", ex);
+            } finally {
+                closeQuitely(con);
             }
         } else {
             throw new IllegalArgumentException(
                     "Authentication not supported by this user manager");
         }
     }
-
-    /**
-     * Escape string to be embedded in SQL statement.
-     */
-    private String escapeString(String input) {
-        if (input == null) {
-            return input;
-        }
-
-        StringBuilder valBuf = new StringBuilder(input);
-        for (int i = 0; i < valBuf.length(); i++) {
-            char ch = valBuf.charAt(i);
-            if (ch == '\'' || ch == '\\' || ch == '$' || ch == '^' || ch == '['
-                    || ch == ']' || ch == '{' || ch == '}') {
-
-                valBuf.insert(i, '\\');
-                i++;
-            }
-        }
-        return valBuf.toString();
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Reads users from JSON lines, one object per line with the user fields as
+ * members. Values can be strings, numbers, booleans or null, the latter
+ * meaning that the field is not provided. Empty lines are skipped.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class JsonUserRecordReader extends UserRecordReader {
+
+    private String line;
+
+    private int pos;
+
+    public JsonUserRecordReader(Reader in) {
+        super(in);
+    }
+
+    @Override
+    protected Map<String, String> readRecord() throws IOException {
+        do {
+            line = readLine();
+            if (line == null) {
+                return null;
+            }
+            line = line.trim();
+        } while (line.length() == 0);
+        pos = 0;
+
+        Map<String, String> record = new LinkedHashMap<String, String>();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+        } else {
+            while (true) {
+                skipWhitespace();
+                String name = readString();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                String value = readValue();
+                if (value != null) {
+                    record.put(name, value);
+                }
+                skipWhitespace();
+                char c = next();
+                if (c == '}') {
+                    break;
+                } else if (c != ',') {
+                    throw error("Expected ',' or '}' at column " + pos);
+                }
+            }
+        }
+        skipWhitespace();
+        if (pos != line.length()) {
+            throw error("Unexpected content after the object at column "
+                    + (pos + 1));
+        }
+        return record;
+    }
+
+    /**
+     * Read a string, number, boolean or null value
+     * 
+     * @return The value as text, or null for null
+     */
+    private String readValue() throws IOException {
+        char c = peek();
+        if (c == '"') {
+            return readString();
+        }
+
+        int start = pos;
+        while (pos < line.length()
+                && (Character.isLetterOrDigit(line.charAt(pos))
+                        || line.charAt(pos) == '-' || line.charAt(pos) == '.' || line
+                        .charAt(pos) == '+')) {
+            pos++;
+        }
+        String value = line.substring(start, pos);
+        if (value.equals("null")) {
+            return null;
+        } else if (value.equals("true") || value.equals("false")) {
+            return value;
+        } else if (value.length() > 0
+                && (value.charAt(0) == '-' || Character.isDigit(value
+                        .charAt(0)))) {
+            return value;
+        }
+        throw error("Unsupported value at column " + (start + 1));
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        StringBuilder value = new StringBuilder();
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return value.toString();
+            } else if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+
+            c = next();
+            switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                value.append(c);
+                break;
+            case 'b':
+                value.append('\b');
+                break;
+            case 'f':
+                value.append('\f');
+                break;
+            case 'n':
+                value.append('\n');
+                break;
+            case 'r':
+                value.append('\r');
+                break;
+            case 't':
+                value.append('\t');
+                break;
+            case 'u':
+                if (pos + 4 > line.length()) {
+                    throw error("Invalid escape at column " + pos);
+                }
+                try {
+                    value.append((char) Integer.parseInt(line.substring(pos,
+                            pos + 4), 16));
+                } catch (NumberFormatException e) {
+                    throw error("Invalid escape at column " + pos);
+                }
+                pos += 4;
+                break;
+            default:
+                throw error("Invalid escape at column " + pos);
+            }
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private char peek() throws IOException {
+        if (pos == line.length()) {
+            throw error("Unexpected end of line");
+        }
+        return line.charAt(pos);
+    }
+
+    private char next() throws IOException {
+        char c = peek();
+        pos++;
+        return c;
+    }
+
+    private void expect(char expected) throws IOException {
+        if (next() != expected) {
+            throw error("Expected '" + expected + "' at column " + pos);
+        }
+    }
+}
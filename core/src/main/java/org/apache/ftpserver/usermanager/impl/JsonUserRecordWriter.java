@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Writes users as JSON lines, one object per line
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class JsonUserRecordWriter extends UserRecordWriter {
+
+    public JsonUserRecordWriter(Writer out) {
+        super(out);
+    }
+
+    @Override
+    protected void writeRecord(Map<String, String> record) throws IOException {
+        out.write('{');
+        boolean first = true;
+        for (Map.Entry<String, String> field : record.entrySet()) {
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            writeString(field.getKey());
+            out.write(':');
+            if (UserRecords.isString(field.getKey())) {
+                writeString(field.getValue());
+            } else {
+                // numbers and booleans
+                out.write(field.getValue());
+            }
+        }
+        out.write("}\n");
+    }
+
+    private void writeString(String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                out.write("\\\"");
+                break;
+            case '\\':
+                out.write("\\\\");
+                break;
+            case '\n':
+                out.write("\\n");
+                break;
+            case '\r':
+                out.write("\\r");
+                break;
+            case '\t':
+                out.write("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    out.write(String.format("\\u%04x", (int) c));
+                } else {
+                    out.write(c);
+                }
+            }
+        }
+        out.write('"');
+    }
+}
@@ -25,11 +25,23 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Enumeration;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.ftpserver.FtpServerConfigurationException;
 import org.apache.ftpserver.ftplet.Authentication;
@@ -38,8 +50,10 @@ import org.apache.ftpserver.ftplet.Authority;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.User;
 import org.apache.ftpserver.usermanager.AnonymousAuthentication;
+import org.apache.ftpserver.usermanager.BatchUserManager;
 import org.apache.ftpserver.usermanager.PasswordEncryptor;
 import org.apache.ftpserver.usermanager.PropertiesUserManagerFactory;
+import org.apache.ftpserver.usermanager.UserVisitor;
 import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
 import org.apache.ftpserver.util.BaseProperties;
 import org.apache.ftpserver.util.IoUtils;
@@ -112,29 +126,93 @@ import org.slf4j.LoggerFactory;
  * ftpserver.user.admin.uploadrate=0
  * ftpserver.user.admin.downloadrate=0
  * </pre>
+ *
+ * <p>The users are parsed once, when the file is loaded, into a table of
+ * prebuilt users which is read without locking. Saved and deleted users are
+ * updated in the table, and the file rewritten to a temporary file which
+ * is then renamed over it, so that the file is never seen half written.
+ * Concurrent saves are written out together: a save waiting for the write of
+ * another one to finish returns without writing again if that write already
+ * included its change. A reload first writes the changes not written yet,
+ * and replaces the user data only if no change was made since, so that it
+ * never drops a change. If enabled, the file is watched
+ * for changes, and reloaded into a new table replacing the current one when
+ * modified by someone else.</p>
+ *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
-public class PropertiesUserManager extends AbstractUserManager {
+public class PropertiesUserManager extends AbstractUserManager implements
+        BatchUserManager {
 
     private final Logger LOG = LoggerFactory
             .getLogger(PropertiesUserManager.class);
 
     private final static String PREFIX = "ftpserver.user.";
 
+    /**
+     * Time to wait for more changes after the file is modified, before
+     * reloading it
+     */
+    private final static long WATCH_SETTLE_TIME = 100;
+
     private BaseProperties userDataProp;
 
+    /**
+     * The users, by name, rebuilt from <code>userDataProp</code> and replaced
+     * when the file is loaded
+     */
+    private volatile ConcurrentHashMap<String, StoredUser> users = new ConcurrentHashMap<String, StoredUser>();
+
     private File userDataFile;
 
     private URL userUrl;
 
+    /**
+     * Incremented for every change to <code>userDataProp</code>, guarded by
+     * this
+     */
+    private long version;
+
+    /**
+     * The version last written to, or read from, the file, guarded by this
+     * and only increased while holding <code>persistLock</code>
+     */
+    private long persistedVersion;
+
+    /**
+     * Held while writing the file, and while reloading it, taken before the
+     * lock on this
+     */
+    private final Object persistLock = new Object();
+
+    /**
+     * The modification time and size of the file when last written or read,
+     * to tell our own changes from others
+     */
+    private volatile String fileStamp;
+
+    private WatchService watchService;
+
     /**
      * Internal constructor, do not use directly. Use {@link PropertiesUserManagerFactory} instead.
      */
     public PropertiesUserManager(PasswordEncryptor passwordEncryptor,
             File userDataFile, String adminName) {
+        this(passwordEncryptor, userDataFile, adminName, false);
+    }
+
+    /**
+     * Internal constructor, do not use directly. Use {@link PropertiesUserManagerFactory} instead.
+     */
+    public PropertiesUserManager(PasswordEncryptor passwordEncryptor,
+            File userDataFile, String adminName, boolean watchFile) {
         super(adminName, passwordEncryptor);
 
         loadFromFile(userDataFile);
+
+        if (watchFile && this.userDataFile != null) {
+            startWatching();
+        }
     }
 
     /**
@@ -149,7 +227,7 @@ public class PropertiesUserManager extends AbstractUserManager {
 
     private void loadFromFile(File userDataFile) {
         try {
-            userDataProp = new BaseProperties();
+            BaseProperties props = new BaseProperties();
 
             if (userDataFile != null) {
                 LOG.debug("File configured, will try loading");
@@ -160,8 +238,10 @@ public class PropertiesUserManager extends AbstractUserManager {
                     LOG.debug("File found on file system");
                     FileInputStream fis = null;
                     try {
+                        String stamp = getFileStamp();
                         fis = new FileInputStream(userDataFile);
-                        userDataProp.load(fis);
+                        props.load(fis);
+                        fileStamp = stamp;
                     } finally {
                         IoUtils.close(fis);
                     }
@@ -175,7 +255,7 @@ public class PropertiesUserManager extends AbstractUserManager {
 
                     if (is != null) {
                         try {
-                            userDataProp.load(is);
+                            props.load(is);
                         } finally {
                             IoUtils.close(is);
                         }
@@ -187,6 +267,7 @@ public class PropertiesUserManager extends AbstractUserManager {
                     }
                 }
             }
+            setUserData(props);
         } catch (IOException e) {
             throw new FtpServerConfigurationException(
                     "Error loading user data file : " + userDataFile, e);
@@ -195,7 +276,7 @@ public class PropertiesUserManager extends AbstractUserManager {
 
     private void loadFromUrl(URL userDataPath) {
         try {
-            userDataProp = new BaseProperties();
+            BaseProperties props = new BaseProperties();
 
             if (userDataPath != null) {
                 LOG.debug("URL configured, will try loading");
@@ -206,28 +287,68 @@ public class PropertiesUserManager extends AbstractUserManager {
                 is = userDataPath.openStream();
 
                 try {
-                    userDataProp.load(is);
+                    props.load(is);
                 } finally {
                     IoUtils.close(is);
                 }
             }
+            setUserData(props);
         } catch (IOException e) {
             throw new FtpServerConfigurationException(
                     "Error loading user data resource : " + userDataPath, e);
         }
     }
 
+    /**
+     * Replace the user data and the table of users built from it
+     */
+    private synchronized void setUserData(BaseProperties props) {
+        ConcurrentHashMap<String, StoredUser> table = new ConcurrentHashMap<String, StoredUser>();
+        String suffix = '.' + ATTR_HOME;
+        Enumeration<?> allKeys = props.propertyNames();
+        while (allKeys.hasMoreElements()) {
+            String key = (String) allKeys.nextElement();
+            if (key.startsWith(PREFIX) && key.endsWith(suffix)) {
+                String name = key.substring(PREFIX.length(), key.length()
+                        - suffix.length());
+                table.put(name, buildUser(props, name));
+            }
+        }
+
+        userDataProp = props;
+        users = table;
+        version++;
+        persistedVersion = version;
+    }
+
     /**
      * Reloads the contents of the user.properties file. This allows any manual modifications to the file to be recognised by the running server.
      */
     public void refresh() {
-        synchronized (userDataProp) {
+        synchronized (persistLock) {
             if (userDataFile != null) {
                 LOG.debug("Refreshing user manager using file: "
                         + userDataFile.getAbsolutePath());
-                loadFromFile(userDataFile);
+                while (true) {
+                    // write the changes not written yet first, the reload
+                    // would drop them
+                    try {
+                        writeUserData();
+                    } catch (FtpException e) {
+                        LOG.warn("Not reloading " + userDataFile
+                                + ", failed to write the changes to it", e);
+                        return;
+                    }
+                    synchronized (this) {
+                        // changes wait for the reload
+                        if (version == persistedVersion) {
+                            loadFromFile(userDataFile);
+                            break;
+                        }
+                    }
+                }
     
-            } else {
+            } else if (userUrl != null) {
                 //file is null, must have been created using URL
                 LOG.debug("Refreshing user manager using URL: "
                         + userUrl.toString());
@@ -244,18 +365,68 @@ public class PropertiesUserManager extends AbstractUserManager {
         return userDataFile;
     }
 
+    /**
+     * Is the file watched for changes?
+     */
+    public synchronized boolean isWatchingFile() {
+        return watchService != null;
+    }
+
     /**
      * Save user data. Store the properties.
      */
-    public synchronized void save(User usr) throws FtpException {
+    public void save(User usr) throws FtpException {
         // null value check
         if (usr.getName() == null) {
             throw new NullPointerException("User name is null.");
         }
+        String password = usr.getPassword() == null ? null
+                : getPasswordEncryptor().encrypt(usr.getPassword());
+
+        long saveVersion;
+        synchronized (this) {
+            setUserProperties(usr, password);
+            saveVersion = ++version;
+        }
+
+        saveUserData(saveVersion);
+    }
+
+    /**
+     * Save a number of users, writing the file once
+     */
+    public void saveAll(Collection<? extends User> users) throws FtpException {
+        for (User user : users) {
+            if (user.getName() == null) {
+                throw new NullPointerException("User name is null.");
+            }
+        }
+        List<? extends User> userList = new ArrayList<User>(users);
+        String[] passwords = encryptPasswords(userList);
+
+        long saveVersion;
+        synchronized (this) {
+            for (int i = 0; i < userList.size(); i++) {
+                setUserProperties(userList.get(i), passwords[i]);
+            }
+            saveVersion = ++version;
+        }
+
+        saveUserData(saveVersion);
+    }
+
+    /**
+     * Set the properties of a user, must be called while holding the lock
+     * 
+     * @param password
+     *            The encrypted password, or null to keep the current one
+     */
+    private void setUserProperties(User usr, String password) {
         String thisPrefix = PREFIX + usr.getName() + '.';
 
         // set other properties
-        userDataProp.setProperty(thisPrefix + ATTR_PASSWORD, getPassword(usr));
+        userDataProp.setProperty(thisPrefix + ATTR_PASSWORD, getPassword(
+                usr.getName(), password));
 
         String home = usr.getHomeDirectory();
         if (home == null) {
@@ -298,17 +469,49 @@ public class PropertiesUserManager extends AbstractUserManager {
             userDataProp.remove(thisPrefix + ATTR_MAX_LOGIN_PER_IP);
         }
 
-        saveUserData();
+        users.put(usr.getName(), buildUser(userDataProp, usr.getName()));
     }
 
     /**
+     * Write the user data to the file, unless a concurrent save already wrote
+     * a version including the given one
+     * 
      * @throws FtpException
      */
-    private void saveUserData() throws FtpException {
+    private void saveUserData(long saveVersion) throws FtpException {
         if (userDataFile == null) {
             return;
         }
 
+        synchronized (persistLock) {
+            synchronized (this) {
+                if (persistedVersion >= saveVersion) {
+                    // written by a concurrent save
+                    return;
+                }
+            }
+            writeUserData();
+        }
+    }
+
+    /**
+     * Write the latest user data to the file, if changed since last written
+     * or read, must be called while holding <code>persistLock</code>
+     * 
+     * @throws FtpException
+     */
+    private void writeUserData() throws FtpException {
+        BaseProperties props;
+        long writeVersion;
+        synchronized (this) {
+            if (persistedVersion == version) {
+                return;
+            }
+            props = new BaseProperties();
+            props.putAll(userDataProp);
+            writeVersion = version;
+        }
+
         File dir = userDataFile.getAbsoluteFile().getParentFile();
         if (dir != null && !dir.exists() && !dir.mkdirs()) {
             String dirName = dir.getAbsolutePath();
@@ -316,11 +519,31 @@ public class PropertiesUserManager extends AbstractUserManager {
                     "Cannot create directory for user data file : " + dirName);
         }
 
-        // save user data
+        // save user data to a temporary file and move it in place
+        File tmpFile = new File(userDataFile.getAbsoluteFile().getParentFile(),
+                userDataFile.getName() + ".tmp");
         FileOutputStream fos = null;
         try {
-            fos = new FileOutputStream(userDataFile);
-            userDataProp.store(fos, "Generated file - don't edit (please)");
+            fos = new FileOutputStream(tmpFile);
+            props.store(fos, "Generated file - don't edit (please)");
+            fos.getFD().sync();
+            fos.close();
+            fos = null;
+
+            Path source = tmpFile.toPath();
+            Path target = userDataFile.toPath();
+            try {
+                Files.move(source, target,
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(source, target,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            fileStamp = getFileStamp();
+            synchronized (this) {
+                persistedVersion = writeVersion;
+            }
         } catch (IOException ex) {
             LOG.error("Failed saving user data", ex);
             throw new FtpException("Failed saving user data", ex);
@@ -334,22 +557,27 @@ public class PropertiesUserManager extends AbstractUserManager {
      * removing the corresponding from the properties, save the data.
      */
     public void delete(String usrName) throws FtpException {
-        // remove entries from properties
-        String thisPrefix = PREFIX + usrName + '.';
-        Enumeration<?> propNames = userDataProp.propertyNames();
-        ArrayList<String> remKeys = new ArrayList<String>();
-        while (propNames.hasMoreElements()) {
-            String thisKey = propNames.nextElement().toString();
-            if (thisKey.startsWith(thisPrefix)) {
-                remKeys.add(thisKey);
+        long saveVersion;
+        synchronized (this) {
+            // remove entries from properties
+            String thisPrefix = PREFIX + usrName + '.';
+            Enumeration<?> propNames = userDataProp.propertyNames();
+            ArrayList<String> remKeys = new ArrayList<String>();
+            while (propNames.hasMoreElements()) {
+                String thisKey = propNames.nextElement().toString();
+                if (thisKey.startsWith(thisPrefix)) {
+                    remKeys.add(thisKey);
+                }
             }
-        }
-        Iterator<String> remKeysIt = remKeys.iterator();
-        while (remKeysIt.hasNext()) {
-            userDataProp.remove(remKeysIt.next());
+            for (String key : remKeys) {
+                userDataProp.remove(key);
+            }
+
+            users.remove(usrName);
+            saveVersion = ++version;
         }
 
-        saveUserData();
+        saveUserData(saveVersion);
     }
 
     /**
@@ -365,13 +593,8 @@ public class PropertiesUserManager extends AbstractUserManager {
      *     password = &quot;&quot;
      * </pre>
      */
-    private String getPassword(User usr) {
-        String name = usr.getName();
-        String password = usr.getPassword();
-
-        if (password != null) {
-            password = getPasswordEncryptor().encrypt(password);
-        } else {
+    private String getPassword(String name, String password) {
+        if (password == null) {
             String blankPassword = getPasswordEncryptor().encrypt("");
 
             if (doesExist(name)) {
@@ -388,75 +611,81 @@ public class PropertiesUserManager extends AbstractUserManager {
      * Get all user names.
      */
     public String[] getAllUserNames() {
-        // get all user names
-        String suffix = '.' + ATTR_HOME;
-        ArrayList<String> ulst = new ArrayList<String>();
-        Enumeration<?> allKeys = userDataProp.propertyNames();
-        int prefixlen = PREFIX.length();
-        int suffixlen = suffix.length();
-        while (allKeys.hasMoreElements()) {
-            String key = (String) allKeys.nextElement();
-            if (key.endsWith(suffix)) {
-                String name = key.substring(prefixlen);
-                int endIndex = name.length() - suffixlen;
-                name = name.substring(0, endIndex);
-                ulst.add(name);
-            }
-        }
-
-        Collections.sort(ulst);
-        return ulst.toArray(new String[0]);
+        String[] names = users.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        return names;
     }
 
     /**
-     * Load user data.
+     * Visit all users, ordered by name
      */
-    public User getUserByName(String userName) {
-        if (!doesExist(userName)) {
-            return null;
+    public void forEachUser(UserVisitor visitor) throws FtpException {
+        for (String name : getAllUserNames()) {
+            User user = getUserByName(name);
+            // deleted since listed
+            if (user != null) {
+                visitor.visit(user);
+            }
         }
+    }
 
+    /**
+     * Build a user from the user data
+     */
+    private static StoredUser buildUser(BaseProperties props, String userName) {
         String baseKey = PREFIX + userName + '.';
         BaseUser user = new BaseUser();
         user.setName(userName);
-        user.setEnabled(userDataProp.getBoolean(baseKey + ATTR_ENABLE, true));
-        user.setHomeDirectory(userDataProp
+        user.setEnabled(props.getBoolean(baseKey + ATTR_ENABLE, true));
+        user.setHomeDirectory(props
                 .getProperty(baseKey + ATTR_HOME, "/"));
 
         List<Authority> authorities = new ArrayList<Authority>();
 
-        if (userDataProp.getBoolean(baseKey + ATTR_WRITE_PERM, false)) {
+        if (props.getBoolean(baseKey + ATTR_WRITE_PERM, false)) {
             authorities.add(new WritePermission());
         }
 
-        int maxLogin = userDataProp.getInteger(baseKey + ATTR_MAX_LOGIN_NUMBER,
+        int maxLogin = props.getInteger(baseKey + ATTR_MAX_LOGIN_NUMBER,
                 0);
-        int maxLoginPerIP = userDataProp.getInteger(baseKey
+        int maxLoginPerIP = props.getInteger(baseKey
                 + ATTR_MAX_LOGIN_PER_IP, 0);
 
         authorities.add(new ConcurrentLoginPermission(maxLogin, maxLoginPerIP));
 
-        int uploadRate = userDataProp.getInteger(
+        int uploadRate = props.getInteger(
                 baseKey + ATTR_MAX_UPLOAD_RATE, 0);
-        int downloadRate = userDataProp.getInteger(baseKey
+        int downloadRate = props.getInteger(baseKey
                 + ATTR_MAX_DOWNLOAD_RATE, 0);
 
         authorities.add(new TransferRatePermission(downloadRate, uploadRate));
 
         user.setAuthorities(authorities);
 
-        user.setMaxIdleTime(userDataProp.getInteger(baseKey
+        user.setMaxIdleTime(props.getInteger(baseKey
                 + ATTR_MAX_IDLE_TIME, 0));
 
-        return user;
+        return new StoredUser(user, props.getProperty(baseKey
+                + ATTR_PASSWORD));
+    }
+
+    /**
+     * Load user data.
+     */
+    public User getUserByName(String userName) {
+        StoredUser stored = users.get(userName);
+        if (stored == null) {
+            return null;
+        }
+        // a copy, so that the prebuilt user can not be changed
+        return new BaseUser(stored.user);
     }
 
     /**
      * User existance check
      */
     public boolean doesExist(String name) {
-        String key = PREFIX + name + '.' + ATTR_HOME;
-        return userDataProp.containsKey(key);
+        return users.containsKey(name);
     }
 
     /**
@@ -478,8 +707,8 @@ public class PropertiesUserManager extends AbstractUserManager {
                 password = "";
             }
 
-            String storedPassword = userDataProp.getProperty(PREFIX + user
-                    + '.' + ATTR_PASSWORD);
+            StoredUser stored = users.get(user);
+            String storedPassword = stored == null ? null : stored.password;
 
             if (storedPassword == null) {
                 // user does not exist
@@ -487,14 +716,15 @@ public class PropertiesUserManager extends AbstractUserManager {
             }
 
             if (getPasswordEncryptor().matches(password, storedPassword)) {
-                return getUserByName(user);
+                return new BaseUser(stored.user);
             } else {
                 throw new AuthenticationFailedException("Authentication failed");
             }
 
         } else if (authentication instanceof AnonymousAuthentication) {
-            if (doesExist("anonymous")) {
-                return getUserByName("anonymous");
+            User user = getUserByName("anonymous");
+            if (user != null) {
+                return user;
             } else {
                 throw new AuthenticationFailedException("Authentication failed");
             }
@@ -504,14 +734,119 @@ public class PropertiesUserManager extends AbstractUserManager {
         }
     }
 
+    private String getFileStamp() {
+        return userDataFile.lastModified() + ":" + userDataFile.length();
+    }
+
+    /**
+     * Watch the directory of the file, reloading the file when modified other
+     * than by this user manager
+     */
+    private synchronized void startWatching() {
+        final Path dir = userDataFile.getAbsoluteFile().getParentFile().toPath();
+        final Path fileName = userDataFile.toPath().getFileName();
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            closeQuitely(watchService);
+            watchService = null;
+            throw new FtpServerConfigurationException(
+                    "Failed to watch user data file : " + userDataFile, e);
+        }
+
+        final WatchService watcher = watchService;
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (true) {
+                        if (!isModified(watcher.take(), fileName)) {
+                            continue;
+                        }
+                        // wait for the changes to settle
+                        WatchKey key;
+                        while ((key = watcher.poll(WATCH_SETTLE_TIME,
+                                TimeUnit.MILLISECONDS)) != null) {
+                            isModified(key, fileName);
+                        }
+
+                        if (userDataFile.exists()
+                                && !getFileStamp().equals(fileStamp)) {
+                            try {
+                                refresh();
+                                LOG.info("Reloaded modified user data file {}",
+                                        userDataFile);
+                            } catch (RuntimeException e) {
+                                LOG.warn("Failed to reload user data file "
+                                        + userDataFile, e);
+                            }
+                        }
+                    }
+                } catch (ClosedWatchServiceException e) {
+                    // disposed
+                } catch (InterruptedException e) {
+                    // disposed
+                }
+            }
+        }, "FtpServer-user-file-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Consume the events of a key
+     * 
+     * @return true if any of the events was for the file
+     */
+    private static boolean isModified(WatchKey key, Path fileName) {
+        boolean modified = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (fileName.equals(event.context())) {
+                modified = true;
+            }
+        }
+        key.reset();
+        return modified;
+    }
+
+    private static void closeQuitely(WatchService watchService) {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
     /**
      * Close the user manager - remove existing entries.
      */
     public synchronized void dispose() {
+        if (watchService != null) {
+            closeQuitely(watchService);
+            watchService = null;
+        }
         if (userDataProp != null) {
             userDataProp.clear();
             userDataProp = null;
         }
+        users = new ConcurrentHashMap<String, StoredUser>();
     }
 
+    /**
+     * A prebuilt user along with its stored password
+     */
+    private static class StoredUser {
+
+        private final BaseUser user;
+
+        private final String password;
+
+        public StoredUser(BaseUser user, String password) {
+            this.user = user;
+            this.password = password;
+        }
+    }
 }
@@ -0,0 +1,663 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ftpserver.ftplet.Authentication;
+import org.apache.ftpserver.ftplet.AuthenticationFailedException;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.usermanager.AnonymousAuthentication;
+import org.apache.ftpserver.usermanager.ResilientUserManagerFactory;
+import org.apache.ftpserver.usermanager.UserManagerUnavailableException;
+import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * {@link UserManager} decorator protecting the server from a slow or failing
+ * user manager backend, such as a user database which stalls. Every call is
+ * given a time limit, after which the caller gets a
+ * {@link UserManagerUnavailableException} while the call carries on in the
+ * background. The number of calls in progress, including those timed out, is
+ * bounded, further calls failing straight away, so that a stalled backend
+ * ties up a fixed number of threads.
+ *
+ * A circuit breaker opens after a number of consecutive failures, and calls
+ * then fail straight away for a while. After that a single trial call is let
+ * through, closing the circuit if it succeeds and opening it again if not.
+ * Failures are timeouts, {@link UserManagerUnavailableException}s and
+ * exceptions other than failed authentications. Wrong credentials are not
+ * failures.
+ *
+ * Optionally, the users and successful password verifications of the last
+ * successful calls are kept for a while, and used when the user manager is
+ * unavailable, so that users who logged in recently can still do so. Like for
+ * the {@link CachingUserManager}, passwords are only kept as salted digests.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ResilientUserManager implements UserManager,
+        ResilientUserManagerMXBean {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(ResilientUserManager.class);
+
+    /**
+     * The states of the circuit breaker
+     */
+    public static enum CircuitState {
+        /** Calls are made */
+        CLOSED,
+        /** Calls fail straight away */
+        OPEN,
+        /** A single trial call is made */
+        HALF_OPEN
+    }
+
+    /**
+     * A call to the user manager
+     */
+    private interface Call<T> {
+        T call() throws FtpException;
+    }
+
+    private final UserManager userManager;
+
+    private final long callTimeout;
+
+    private final int failureThreshold;
+
+    private final long openDuration;
+
+    private final long staleTimeToLive;
+
+    private final Executor callExecutor;
+
+    private final Semaphore bulkhead;
+
+    private final AtomicInteger activeCalls = new AtomicInteger();
+
+    private final AtomicLong calls = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private final AtomicLong rejectedCalls = new AtomicLong();
+
+    private final AtomicLong staleFallbacks = new AtomicLong();
+
+    // guarded by this
+    private CircuitState state = CircuitState.CLOSED;
+
+    private int consecutiveFailures;
+
+    private long openedAt;
+
+    private boolean trialCall;
+
+    private final LruMap<String, StaleUser> staleUsers;
+
+    private final LruMap<String, StaleCredentials> staleCredentials;
+
+    private final CredentialDigester digester = new CredentialDigester();
+
+    /**
+     * Internal constructor, do not use directly. Use
+     * {@link ResilientUserManagerFactory} instead.
+     * 
+     * @param userManager
+     *            The user manager to protect
+     * @param callTimeout
+     *            The time limit of calls in milliseconds, 0 for no limit
+     * @param maxConcurrentCalls
+     *            The maximum number of calls in progress, 0 for no limit
+     * @param failureThreshold
+     *            The number of consecutive failures opening the circuit
+     * @param openDuration
+     *            The time in milliseconds the circuit stays open before a
+     *            trial call
+     * @param staleTimeToLive
+     *            The time in milliseconds users and password verifications
+     *            are used when the user manager is unavailable, 0 to not
+     *            use them
+     * @param maxStaleUsers
+     *            The maximum number of users, and separately of password
+     *            verifications, kept for when the user manager is unavailable
+     */
+    public ResilientUserManager(UserManager userManager, long callTimeout,
+            int maxConcurrentCalls, int failureThreshold, long openDuration,
+            long staleTimeToLive, int maxStaleUsers) {
+        this(userManager, callTimeout, maxConcurrentCalls, failureThreshold,
+                openDuration, staleTimeToLive, maxStaleUsers,
+                createCallExecutor());
+    }
+
+    /**
+     * Internal constructor, do not use directly. Use
+     * {@link ResilientUserManagerFactory} instead.
+     */
+    public ResilientUserManager(UserManager userManager, long callTimeout,
+            int maxConcurrentCalls, int failureThreshold, long openDuration,
+            long staleTimeToLive, int maxStaleUsers, Executor callExecutor) {
+        if (userManager == null) {
+            throw new IllegalArgumentException("userManager can not be null");
+        }
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException(
+                    "failureThreshold must be positive");
+        }
+        if (maxStaleUsers < 1) {
+            throw new IllegalArgumentException("maxStaleUsers must be positive");
+        }
+        this.userManager = userManager;
+        this.callTimeout = callTimeout;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.staleTimeToLive = staleTimeToLive;
+        this.callExecutor = callExecutor;
+        this.bulkhead = maxConcurrentCalls > 0 ? new Semaphore(
+                maxConcurrentCalls) : null;
+        this.staleUsers = new LruMap<String, StaleUser>(maxStaleUsers);
+        this.staleCredentials = new LruMap<String, StaleCredentials>(
+                maxStaleUsers);
+    }
+
+    /**
+     * Daemon threads created as needed, the number of threads is bounded by
+     * the maximum number of concurrent calls
+     */
+    private static Executor createCallExecutor() {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30,
+                TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable task) {
+                        Thread thread = new Thread(task,
+                                "FtpServer-user-manager-"
+                                        + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * The user manager being protected
+     */
+    public UserManager getUserManager() {
+        return userManager;
+    }
+
+    /**
+     * Make a call, unless the circuit is open or too many calls are in
+     * progress, waiting at most the call timeout for the result
+     */
+    private <T> T execute(final Call<T> call) throws FtpException {
+        if (!startCall()) {
+            rejectedCalls.incrementAndGet();
+            throw new UserManagerUnavailableException(
+                    "User manager unavailable, circuit open");
+        }
+        if (bulkhead != null && !bulkhead.tryAcquire()) {
+            abortCall();
+            rejectedCalls.incrementAndGet();
+            throw new UserManagerUnavailableException(
+                    "User manager unavailable, too many calls in progress");
+        }
+
+        calls.incrementAndGet();
+        activeCalls.incrementAndGet();
+        if (callTimeout <= 0) {
+            try {
+                T result = call.call();
+                callSucceeded();
+                return result;
+            } catch (FtpException e) {
+                callFailed(e);
+                throw e;
+            } catch (RuntimeException e) {
+                callFailed(e);
+                throw e;
+            } finally {
+                endCall();
+            }
+        }
+
+        // the permit is held until the call returns, even if the caller
+        // has given up on it, and released before the result is handed over
+        final AtomicBoolean ended = new AtomicBoolean();
+        final FutureTask<T> task = new FutureTask<T>(new Callable<T>() {
+            public T call() throws Exception {
+                try {
+                    return call.call();
+                } finally {
+                    endCall(ended);
+                }
+            }
+        });
+        try {
+            callExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        // cancelled before it ran
+                        endCall(ended);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            endCall(ended);
+            abortCall();
+            throw new UserManagerUnavailableException(
+                    "User manager unavailable, call rejected", e);
+        }
+
+        try {
+            T result = task.get(callTimeout, TimeUnit.MILLISECONDS);
+            callSucceeded();
+            return result;
+        } catch (TimeoutException e) {
+            task.cancel(true);
+            timeouts.incrementAndGet();
+            callFailed(e);
+            throw new UserManagerUnavailableException(
+                    "User manager call timed out after " + callTimeout
+                            + " ms");
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            abortCall();
+            Thread.currentThread().interrupt();
+            throw new UserManagerUnavailableException(
+                    "Interrupted while calling the user manager", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            callFailed(cause);
+            if (cause instanceof FtpException) {
+                throw (FtpException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new FtpException("User manager call failed", cause);
+        }
+    }
+
+    private void endCall(AtomicBoolean ended) {
+        if (ended.compareAndSet(false, true)) {
+            endCall();
+        }
+    }
+
+    private void endCall() {
+        activeCalls.decrementAndGet();
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * Is a call allowed by the circuit breaker?
+     */
+    private synchronized boolean startCall() {
+        if (state == CircuitState.OPEN) {
+            if (currentTime() - openedAt < openDuration) {
+                return false;
+            }
+            LOG.info("Trying the user manager again after the circuit was open");
+            state = CircuitState.HALF_OPEN;
+            trialCall = false;
+        }
+        if (state == CircuitState.HALF_OPEN) {
+            if (trialCall) {
+                return false;
+            }
+            trialCall = true;
+        }
+        return true;
+    }
+
+    /**
+     * A call allowed by the circuit breaker was not made
+     */
+    private synchronized void abortCall() {
+        trialCall = false;
+    }
+
+    private synchronized void callSucceeded() {
+        consecutiveFailures = 0;
+        trialCall = false;
+        if (state != CircuitState.CLOSED) {
+            LOG.info("User manager available again, closing circuit");
+            state = CircuitState.CLOSED;
+        }
+    }
+
+    /**
+     * Record the outcome of a call which threw an exception, which is not a
+     * failure if the user manager did its job
+     */
+    private void callFailed(Throwable cause) {
+        if (cause instanceof AuthenticationFailedException
+                && !(cause instanceof UserManagerUnavailableException)) {
+            // wrong credentials
+            callSucceeded();
+            return;
+        }
+
+        failures.incrementAndGet();
+        synchronized (this) {
+            consecutiveFailures++;
+            trialCall = false;
+            if (state == CircuitState.HALF_OPEN
+                    || (state == CircuitState.CLOSED && consecutiveFailures >= failureThreshold)) {
+                LOG.warn("User manager failed {} times in a row, opening circuit",
+                        consecutiveFailures);
+                state = CircuitState.OPEN;
+                openedAt = currentTime();
+            }
+        }
+    }
+
+    /**
+     * Get a user. If the user manager is unavailable, the user last loaded is
+     * returned if recent enough.
+     */
+    public User getUserByName(final String name) throws FtpException {
+        try {
+            User user = execute(new Call<User>() {
+                public User call() throws FtpException {
+                    return userManager.getUserByName(name);
+                }
+            });
+            if (name != null) {
+                if (user != null) {
+                    rememberUser(name, user);
+                } else {
+                    forget(name);
+                }
+            }
+            return user;
+        } catch (FtpException e) {
+            User stale = getStaleUser(name);
+            if (stale == null) {
+                throw e;
+            }
+            LOG.warn("Using the last loaded user " + name
+                    + " as the user manager is unavailable: " + e.getMessage());
+            staleFallbacks.incrementAndGet();
+            return stale;
+        }
+    }
+
+    /**
+     * Authenticate. If the user manager is unavailable, the last successful
+     * verification of the same credentials is used if recent enough, else a
+     * {@link UserManagerUnavailableException} is thrown.
+     */
+    public User authenticate(final Authentication authentication)
+            throws AuthenticationFailedException {
+        String name = null;
+        String password = null;
+        if (authentication instanceof UsernamePasswordAuthentication) {
+            name = ((UsernamePasswordAuthentication) authentication)
+                    .getUsername();
+            password = ((UsernamePasswordAuthentication) authentication)
+                    .getPassword();
+        } else if (authentication instanceof AnonymousAuthentication) {
+            name = "anonymous";
+        }
+
+        Exception failure;
+        try {
+            User user = execute(new Call<User>() {
+                public User call() throws FtpException {
+                    return userManager.authenticate(authentication);
+                }
+            });
+            if (name != null && user != null) {
+                rememberCredentials(name, password, user);
+            }
+            return user;
+        } catch (UserManagerUnavailableException e) {
+            failure = e;
+        } catch (AuthenticationFailedException e) {
+            // wrong credentials
+            throw e;
+        } catch (FtpException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+
+        User stale = getStaleUser(name, password);
+        if (stale == null) {
+            if (failure instanceof UserManagerUnavailableException) {
+                throw (UserManagerUnavailableException) failure;
+            }
+            throw new UserManagerUnavailableException(
+                    "User manager failed to authenticate", failure);
+        }
+        LOG.warn("Using the last successful authentication of " + name
+                + " as the user manager is unavailable: "
+                + failure.getMessage());
+        staleFallbacks.incrementAndGet();
+        return stale;
+    }
+
+    public boolean doesExist(String name) throws FtpException {
+        return getUserByName(name) != null;
+    }
+
+    public void save(final User user) throws FtpException {
+        try {
+            execute(new Call<Object>() {
+                public Object call() throws FtpException {
+                    userManager.save(user);
+                    return null;
+                }
+            });
+        } finally {
+            forget(user.getName());
+        }
+    }
+
+    public void delete(final String name) throws FtpException {
+        try {
+            execute(new Call<Object>() {
+                public Object call() throws FtpException {
+                    userManager.delete(name);
+                    return null;
+                }
+            });
+        } finally {
+            forget(name);
+        }
+    }
+
+    public String[] getAllUserNames() throws FtpException {
+        return execute(new Call<String[]>() {
+            public String[] call() throws FtpException {
+                return userManager.getAllUserNames();
+            }
+        });
+    }
+
+    public String getAdminName() throws FtpException {
+        return execute(new Call<String>() {
+            public String call() throws FtpException {
+                return userManager.getAdminName();
+            }
+        });
+    }
+
+    public boolean isAdmin(final String name) throws FtpException {
+        return execute(new Call<Boolean>() {
+            public Boolean call() throws FtpException {
+                return userManager.isAdmin(name);
+            }
+        });
+    }
+
+    private void rememberUser(String name, User user) {
+        if (staleTimeToLive > 0) {
+            staleUsers.put(name, new StaleUser(user, currentTime()));
+        }
+    }
+
+    private void rememberCredentials(String name, String password, User user) {
+        if (staleTimeToLive > 0) {
+            long now = currentTime();
+            staleUsers.put(name, new StaleUser(user, now));
+            staleCredentials.put(name, new StaleCredentials(digester.digest(
+                    name, password), now));
+        }
+    }
+
+    private void forget(String name) {
+        if (name != null) {
+            staleUsers.remove(name);
+            staleCredentials.remove(name);
+        }
+    }
+
+    private User getStaleUser(String name) {
+        if (staleTimeToLive <= 0 || name == null) {
+            return null;
+        }
+        StaleUser stale = staleUsers.get(name);
+        if (stale == null || currentTime() - stale.loaded >= staleTimeToLive) {
+            return null;
+        }
+        return stale.user;
+    }
+
+    private User getStaleUser(String name, String password) {
+        User user = getStaleUser(name);
+        if (user == null) {
+            return null;
+        }
+        StaleCredentials stale = staleCredentials.get(name);
+        if (stale == null
+                || currentTime() - stale.verified >= staleTimeToLive
+                || !CredentialDigester.matches(stale.digest, digester.digest(
+                        name, password))) {
+            return null;
+        }
+        return user;
+    }
+
+    /**
+     * The state of the circuit breaker
+     */
+    public synchronized CircuitState getState() {
+        return state;
+    }
+
+    public String getCircuitState() {
+        return getState().name();
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public int getActiveCalls() {
+        return activeCalls.get();
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public long getRejectedCalls() {
+        return rejectedCalls.get();
+    }
+
+    public long getStaleFallbacks() {
+        return staleFallbacks.get();
+    }
+
+    public synchronized void closeCircuit() {
+        LOG.info("Closing circuit");
+        state = CircuitState.CLOSED;
+        consecutiveFailures = 0;
+        trialCall = false;
+    }
+
+    /**
+     * The current time in milliseconds
+     */
+    long currentTime() {
+        return System.nanoTime() / 1000000;
+    }
+
+    private static class StaleUser {
+
+        private final User user;
+
+        private final long loaded;
+
+        public StaleUser(User user, long loaded) {
+            this.user = user;
+            this.loaded = loaded;
+        }
+    }
+
+    private static class StaleCredentials {
+
+        private final byte[] digest;
+
+        private final long verified;
+
+        public StaleCredentials(byte[] digest, long verified) {
+            this.digest = digest;
+            this.verified = verified;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+/**
+ * JMX view of a {@link ResilientUserManager}, with the state of its circuit
+ * breaker and the outcome of the calls made to the user manager it protects.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface ResilientUserManagerMXBean {
+
+    /**
+     * The state of the circuit breaker, CLOSED, OPEN or HALF_OPEN
+     */
+    String getCircuitState();
+
+    /**
+     * The number of failed calls since the last successful one
+     */
+    int getConsecutiveFailures();
+
+    /**
+     * The number of calls to the user manager in progress, including calls
+     * which timed out but have not returned yet
+     */
+    int getActiveCalls();
+
+    /**
+     * The number of calls made to the user manager
+     */
+    long getCalls();
+
+    /**
+     * The number of calls which failed, including timeouts
+     */
+    long getFailures();
+
+    /**
+     * The number of calls which timed out
+     */
+    long getTimeouts();
+
+    /**
+     * The number of calls rejected without calling the user manager, as the
+     * circuit was open or too many calls were in progress
+     */
+    long getRejectedCalls();
+
+    /**
+     * The number of times a previously loaded user or password verification
+     * was used as the user manager was unavailable
+     */
+    long getStaleFallbacks();
+
+    /**
+     * Close the circuit, allowing calls to the user manager again straight
+     * away
+     */
+    void closeCircuit();
+}
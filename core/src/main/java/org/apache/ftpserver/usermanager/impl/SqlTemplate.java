@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ftpserver.FtpServerConfigurationException;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * An SQL statement template, as configured for the {@link DbUserManager},
+ * compiled into SQL for a {@link PreparedStatement}. Each <code>{name}</code>
+ * placeholder is replaced by a <code>?</code> parameter, and the values are
+ * bound by name when the statement is executed, so that they never need to
+ * be escaped. A placeholder making up a whole string literal,
+ * <code>'{name}'</code>, is bound as a string, with null bound as the empty
+ * string the literal would have contained. Placeholders embedded in a longer
+ * string literal can not be bound and are rejected.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SqlTemplate {
+
+    private final String template;
+
+    private final String sql;
+
+    private final List<String> parameterNames;
+
+    private final boolean[] stringParameters;
+
+    /**
+     * Compile a template
+     *
+     * @param template
+     *            The SQL statement with <code>{name}</code> placeholders
+     * @throws FtpServerConfigurationException
+     *             If a placeholder is embedded in a string literal
+     */
+    public SqlTemplate(String template) {
+        this.template = template;
+
+        StringBuilder sql = new StringBuilder(template.length());
+        List<String> names = new ArrayList<String>();
+        List<Boolean> strings = new ArrayList<Boolean>();
+
+        int length = template.length();
+        int i = 0;
+        while (i < length) {
+            char c = template.charAt(i);
+            if (c == '\'') {
+                int end = findLiteralEnd(template, i + 1);
+                String literal = template.substring(i + 1, end);
+                String name = getPlaceholderName(literal, 0, literal.length());
+                if (name != null) {
+                    sql.append('?');
+                    names.add(name);
+                    strings.add(Boolean.TRUE);
+                } else if (containsPlaceholder(literal)) {
+                    throw new FtpServerConfigurationException(
+                            "Placeholders must make up a whole string literal, found '"
+                                    + literal + "' in: " + template);
+                } else {
+                    sql.append(template, i, Math.min(end + 1, length));
+                }
+                i = end + 1;
+            } else if (c == '{') {
+                int close = template.indexOf('}', i);
+                String name = close == -1 ? null : getPlaceholderName(
+                        template, i, close + 1);
+                if (name != null) {
+                    sql.append('?');
+                    names.add(name);
+                    strings.add(Boolean.FALSE);
+                    i = close + 1;
+                } else {
+                    sql.append(c);
+                    i++;
+                }
+            } else {
+                sql.append(c);
+                i++;
+            }
+        }
+
+        this.sql = sql.toString();
+        this.parameterNames = Collections.unmodifiableList(names);
+        this.stringParameters = new boolean[strings.size()];
+        for (int j = 0; j < stringParameters.length; j++) {
+            stringParameters[j] = strings.get(j).booleanValue();
+        }
+    }
+
+    /**
+     * Find the closing quote of a string literal, skipping escaped quotes
+     *
+     * @return The index of the closing quote, or the template length if the
+     *         literal is not terminated
+     */
+    private static int findLiteralEnd(String template, int start) {
+        int i = start;
+        while (i < template.length()) {
+            if (template.charAt(i) == '\'') {
+                if (i + 1 < template.length()
+                        && template.charAt(i + 1) == '\'') {
+                    i += 2;
+                    continue;
+                }
+                return i;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return The name if <code>source[start, end)</code> is a single
+     *         placeholder, null otherwise
+     */
+    private static String getPlaceholderName(String source, int start, int end) {
+        if (end - start < 3 || source.charAt(start) != '{'
+                || source.charAt(end - 1) != '}') {
+            return null;
+        }
+        for (int i = start + 1; i < end - 1; i++) {
+            char c = source.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_') {
+                return null;
+            }
+        }
+        return source.substring(start + 1, end - 1);
+    }
+
+    private static boolean containsPlaceholder(String literal) {
+        int open = literal.indexOf('{');
+        while (open != -1) {
+            int close = literal.indexOf('}', open);
+            if (close == -1) {
+                return false;
+            }
+            if (getPlaceholderName(literal, open, close + 1) != null) {
+                return true;
+            }
+            open = literal.indexOf('{', open + 1);
+        }
+        return false;
+    }
+
+    /**
+     * The template as configured
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * The compiled SQL, with a <code>?</code> for each placeholder
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * The placeholder names, in the order of the parameters in the compiled
+     * SQL
+     */
+    public List<String> getParameterNames() {
+        return parameterNames;
+    }
+
+    /**
+     * Prepare the compiled SQL on a connection
+     *
+     * @param connection
+     *            The connection
+     * @return The prepared statement, not yet bound
+     * @throws SQLException
+     */
+    public PreparedStatement prepare(Connection connection)
+            throws SQLException {
+        return connection.prepareStatement(sql);
+    }
+
+    /**
+     * Bind the parameters of a statement prepared from this template
+     *
+     * @param stmt
+     *            The prepared statement
+     * @param values
+     *            The values, by placeholder name. {@link Boolean} and
+     *            {@link Integer} values of unquoted placeholders are bound
+     *            with their type, anything else as a string.
+     * @throws SQLException
+     */
+    public void bind(PreparedStatement stmt, Map<String, Object> values)
+            throws SQLException {
+        for (int i = 0; i < stringParameters.length; i++) {
+            Object value = values.get(parameterNames.get(i));
+            int index = i + 1;
+            if (stringParameters[i]) {
+                stmt.setString(index, value == null ? "" : value.toString());
+            } else if (value instanceof Boolean) {
+                stmt.setBoolean(index, ((Boolean) value).booleanValue());
+            } else if (value instanceof Integer) {
+                stmt.setInt(index, ((Integer) value).intValue());
+            } else if (value == null) {
+                stmt.setNull(index, Types.VARCHAR);
+            } else {
+                stmt.setString(index, value.toString());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return sql;
+    }
+}
@@ -40,6 +40,20 @@ public class TransferRatePermission implements Authority {
         this.maxUploadRate = maxUploadRate;
     }
 
+    /**
+     * The maximum download rate in bytes per second, 0 for unlimited
+     */
+    public int getMaxDownloadRate() {
+        return maxDownloadRate;
+    }
+
+    /**
+     * The maximum upload rate in bytes per second, 0 for unlimited
+     */
+    public int getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
     /**
      * @see Authority#authorize(AuthorizationRequest)
      */
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+
+import org.apache.ftpserver.ftplet.User;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Reads users one at a time from a stream of records
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public abstract class UserRecordReader {
+
+    protected final BufferedReader in;
+
+    private int lineNumber;
+
+    protected UserRecordReader(Reader in) {
+        this.in = in instanceof BufferedReader ? (BufferedReader) in
+                : new BufferedReader(in);
+    }
+
+    /**
+     * Read the next record
+     * 
+     * @return The fields of the record, or null at the end of the stream
+     * @throws IOException
+     *             If the stream can not be read or is not well formed
+     */
+    protected abstract Map<String, String> readRecord() throws IOException;
+
+    /**
+     * Read a line, counting lines for error messages
+     */
+    protected String readLine() throws IOException {
+        String line = in.readLine();
+        if (line != null) {
+            lineNumber++;
+        }
+        return line;
+    }
+
+    /**
+     * The number of the line last read
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Create an exception for an error on the line last read
+     */
+    protected IOException error(String message) {
+        return new IOException("Line " + lineNumber + ": " + message);
+    }
+
+    /**
+     * Read the next user
+     * 
+     * @return The user, or null at the end of the stream
+     * @throws IOException
+     *             If the stream can not be read or a record is not valid
+     */
+    public User read() throws IOException {
+        Map<String, String> record = readRecord();
+        if (record == null) {
+            return null;
+        }
+        try {
+            return UserRecords.toUser(record);
+        } catch (IllegalArgumentException e) {
+            throw error(e.getMessage());
+        }
+    }
+}
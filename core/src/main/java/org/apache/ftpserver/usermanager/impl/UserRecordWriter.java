@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+import org.apache.ftpserver.ftplet.User;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Writes users one at a time to a stream of records
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public abstract class UserRecordWriter {
+
+    protected final Writer out;
+
+    protected UserRecordWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Write what comes before the records, if anything
+     */
+    public void writeHeader() throws IOException {
+        // nothing by default
+    }
+
+    /**
+     * Write a record
+     * 
+     * @param record
+     *            The fields of the record, in order
+     */
+    protected abstract void writeRecord(Map<String, String> record)
+            throws IOException;
+
+    /**
+     * Write a user
+     */
+    public void write(User user) throws IOException {
+        writeRecord(UserRecords.toRecord(user));
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.User;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Converts users to and from flat records of named fields, for importing and
+ * exporting users. The field names are the ones of the properties file and
+ * the database columns, such as <code>userid</code> and
+ * <code>homedirectory</code>. Passwords are only read, as user managers do not
+ * give them out.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class UserRecords {
+
+    /**
+     * The fields written for every user, in order
+     */
+    public static final List<String> FIELDS = Collections
+            .unmodifiableList(Arrays.asList(AbstractUserManager.ATTR_LOGIN,
+                    AbstractUserManager.ATTR_HOME,
+                    AbstractUserManager.ATTR_ENABLE,
+                    AbstractUserManager.ATTR_WRITE_PERM,
+                    AbstractUserManager.ATTR_MAX_IDLE_TIME,
+                    AbstractUserManager.ATTR_MAX_UPLOAD_RATE,
+                    AbstractUserManager.ATTR_MAX_DOWNLOAD_RATE,
+                    AbstractUserManager.ATTR_MAX_LOGIN_NUMBER,
+                    AbstractUserManager.ATTR_MAX_LOGIN_PER_IP));
+
+    private static final List<String> STRING_FIELDS = Arrays.asList(
+            AbstractUserManager.ATTR_LOGIN, AbstractUserManager.ATTR_PASSWORD,
+            AbstractUserManager.ATTR_HOME);
+
+    private UserRecords() {
+        // static methods only
+    }
+
+    /**
+     * Is the field a text, as opposed to a number or a boolean?
+     */
+    public static boolean isString(String field) {
+        return STRING_FIELDS.contains(field);
+    }
+
+    /**
+     * Convert a user to a record, with the fields in the order of
+     * {@link #FIELDS}
+     */
+    public static Map<String, String> toRecord(User user) {
+        Map<String, String> record = new LinkedHashMap<String, String>();
+        record.put(AbstractUserManager.ATTR_LOGIN, user.getName());
+        String home = user.getHomeDirectory();
+        record.put(AbstractUserManager.ATTR_HOME, home == null ? "/" : home);
+        record.put(AbstractUserManager.ATTR_ENABLE, String.valueOf(user
+                .getEnabled()));
+        record.put(AbstractUserManager.ATTR_WRITE_PERM, String.valueOf(user
+                .authorize(new WriteRequest()) != null));
+        record.put(AbstractUserManager.ATTR_MAX_IDLE_TIME, String
+                .valueOf(user.getMaxIdleTime()));
+
+        TransferRateRequest transferRateRequest = (TransferRateRequest) user
+                .authorize(new TransferRateRequest());
+        record.put(AbstractUserManager.ATTR_MAX_UPLOAD_RATE, String
+                .valueOf(transferRateRequest == null ? 0 : transferRateRequest
+                        .getMaxUploadRate()));
+        record.put(AbstractUserManager.ATTR_MAX_DOWNLOAD_RATE, String
+                .valueOf(transferRateRequest == null ? 0 : transferRateRequest
+                        .getMaxDownloadRate()));
+
+        // request that always will succeed
+        ConcurrentLoginRequest concurrentLoginRequest = (ConcurrentLoginRequest) user
+                .authorize(new ConcurrentLoginRequest(0, 0));
+        record.put(AbstractUserManager.ATTR_MAX_LOGIN_NUMBER, String
+                .valueOf(concurrentLoginRequest == null ? 0
+                        : concurrentLoginRequest.getMaxConcurrentLogins()));
+        record.put(AbstractUserManager.ATTR_MAX_LOGIN_PER_IP, String
+                .valueOf(concurrentLoginRequest == null ? 0
+                        : concurrentLoginRequest.getMaxConcurrentLoginsPerIP()));
+        return record;
+    }
+
+    /**
+     * Convert a record to a user. Only <code>userid</code> is mandatory. An
+     * empty or missing <code>userpassword</code> keeps the password of an
+     * existing user.
+     * 
+     * @throws IllegalArgumentException
+     *             If a field is unknown or has an invalid value
+     */
+    public static BaseUser toUser(Map<String, String> record) {
+        for (String field : record.keySet()) {
+            if (!FIELDS.contains(field)
+                    && !AbstractUserManager.ATTR_PASSWORD.equals(field)) {
+                throw new IllegalArgumentException("Unknown field " + field);
+            }
+        }
+
+        String name = record.get(AbstractUserManager.ATTR_LOGIN);
+        if (name == null || name.length() == 0) {
+            throw new IllegalArgumentException("Missing "
+                    + AbstractUserManager.ATTR_LOGIN);
+        }
+
+        BaseUser user = new BaseUser();
+        user.setName(name);
+        String password = record.get(AbstractUserManager.ATTR_PASSWORD);
+        if (password != null && password.length() > 0) {
+            user.setPassword(password);
+        }
+        String home = record.get(AbstractUserManager.ATTR_HOME);
+        if (home != null && home.length() > 0) {
+            user.setHomeDirectory(home);
+        }
+        user.setEnabled(getBoolean(record, AbstractUserManager.ATTR_ENABLE,
+                true));
+        user.setMaxIdleTime(getInt(record,
+                AbstractUserManager.ATTR_MAX_IDLE_TIME));
+
+        List<Authority> authorities = new ArrayList<Authority>();
+        if (getBoolean(record, AbstractUserManager.ATTR_WRITE_PERM, false)) {
+            authorities.add(new WritePermission());
+        }
+        authorities.add(new ConcurrentLoginPermission(getInt(record,
+                AbstractUserManager.ATTR_MAX_LOGIN_NUMBER), getInt(record,
+                AbstractUserManager.ATTR_MAX_LOGIN_PER_IP)));
+        authorities.add(new TransferRatePermission(getInt(record,
+                AbstractUserManager.ATTR_MAX_DOWNLOAD_RATE), getInt(record,
+                AbstractUserManager.ATTR_MAX_UPLOAD_RATE)));
+        user.setAuthorities(authorities);
+        return user;
+    }
+
+    private static boolean getBoolean(Map<String, String> record,
+            String field, boolean defaultValue) {
+        String value = record.get(field);
+        if (value == null || value.length() == 0) {
+            return defaultValue;
+        } else if ("true".equalsIgnoreCase(value)) {
+            return true;
+        } else if ("false".equalsIgnoreCase(value)) {
+            return false;
+        }
+        throw new IllegalArgumentException("Invalid value for " + field
+                + ": " + value);
+    }
+
+    private static int getInt(Map<String, String> record, String field) {
+        String value = record.get(field);
+        if (value == null || value.length() == 0) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + field
+                    + ": " + value);
+        }
+    }
+}
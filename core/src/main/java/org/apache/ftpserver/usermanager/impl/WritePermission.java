@@ -51,6 +51,14 @@ public class WritePermission implements Authority {
         this.permissionRoot = permissionRoot;
     }
 
+    /**
+     * The file or directory, relative to the user home directory, write
+     * access is granted to, including everything below it
+     */
+    public String getPermissionRoot() {
+        return permissionRoot;
+    }
+
     /**
      * @see Authority#authorize(AuthorizationRequest)
      */
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.net.Socket;
+
+import org.apache.commons.net.ftp.FTPConnectionClosedException;
+import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.impl.AdmissionController;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class AdmissionTest extends ClientTestTemplate {
+
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    @Override
+    protected ConnectionConfigFactory createConnectionConfigFactory() {
+        ConnectionConfigFactory factory = super.createConnectionConfigFactory();
+        factory.setMaxActiveTransfers(5);
+        factory.setAnonymousShedLoad(80);
+        return factory;
+    }
+
+    private AdmissionController getAdmissionController() {
+        return server.getServerContext().getAdmissionController();
+    }
+
+    private String readGreeting() throws Exception {
+        Socket socket = new Socket("localhost", getListenerPort());
+        try {
+            socket.setSoTimeout(10000);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    socket.getInputStream(), "UTF-8"));
+            String greeting = reader.readLine();
+            // the server must close the connection of rejected sessions
+            if (greeting.startsWith("421")) {
+                assertNull(reader.readLine());
+            }
+            return greeting;
+        } finally {
+            socket.close();
+        }
+    }
+
+    public void testRejectWhenSaturated() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            getAdmissionController().transferStarted();
+        }
+        assertTrue(readGreeting().startsWith("421 "));
+
+        // the rejected session never reached the handler
+        assertEquals(1, server.getServerContext().getFtpStatistics()
+                .getCurrentConnectionNumber());
+
+        getAdmissionController().transferEnded();
+        assertTrue(readGreeting().startsWith("220 "));
+    }
+
+    public void testShedAnonymous() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            getAdmissionController().transferStarted();
+        }
+
+        try {
+            client.login(ANONYMOUS_USERNAME, ANONYMOUS_PASSWORD);
+            fail("Must be disconnected");
+        } catch (FTPConnectionClosedException e) {
+            assertEquals(421, client.getReplyCode());
+        }
+
+        connectClient();
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+    }
+
+    public void testTransferCounted() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE, "TESTDATA".getBytes("UTF-8"));
+
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        client.enterLocalPassiveMode();
+        assertTrue(client.retrieveFile(TEST_FILENAME,
+                new ByteArrayOutputStream()));
+
+        // the data connection is closed after the reply has been sent
+        for (int i = 0; i < 20
+                && getAdmissionController().getActiveTransfers() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, getAdmissionController().getActiveTransfers());
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPConnectionClosedException;
+import org.apache.commons.net.ftp.FTPReply;
+import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ftplet.Authentication;
+import org.apache.ftpserver.ftplet.AuthenticationFailedException;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.impl.FtpMetrics;
+import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class AuthenticationExecutorTest extends ClientTestTemplate {
+
+    private static final String BLOCKED_USERNAME = TESTUSER1_USERNAME;
+
+    private final CountDownLatch authenticating = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private volatile String authenticationThread;
+
+    /**
+     * Blocks the authentication of one user until released
+     */
+    private class BlockingUserManager implements UserManager {
+
+        private final UserManager userManager;
+
+        public BlockingUserManager(UserManager userManager) {
+            this.userManager = userManager;
+        }
+
+        public User authenticate(Authentication authentication)
+                throws AuthenticationFailedException {
+            authenticationThread = Thread.currentThread().getName();
+            if (authentication instanceof UsernamePasswordAuthentication
+                    && BLOCKED_USERNAME
+                            .equals(((UsernamePasswordAuthentication) authentication)
+                                    .getUsername())) {
+                authenticating.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new AuthenticationFailedException(e.getMessage());
+                }
+            }
+            return userManager.authenticate(authentication);
+        }
+
+        public void delete(String username) throws FtpException {
+            userManager.delete(username);
+        }
+
+        public boolean doesExist(String username) throws FtpException {
+            return userManager.doesExist(username);
+        }
+
+        public String getAdminName() throws FtpException {
+            return userManager.getAdminName();
+        }
+
+        public String[] getAllUserNames() throws FtpException {
+            return userManager.getAllUserNames();
+        }
+
+        public User getUserByName(String username) throws FtpException {
+            return userManager.getUserByName(username);
+        }
+
+        public boolean isAdmin(String username) throws FtpException {
+            return userManager.isAdmin(username);
+        }
+
+        public void save(User user) throws FtpException {
+            userManager.save(user);
+        }
+    }
+
+    /**
+     * Logs in on its own thread, as the login of the blocked user only
+     * completes once released
+     */
+    private class LoginThread extends Thread {
+
+        private final FTPClient client;
+
+        private volatile boolean loggedIn;
+
+        public LoginThread() throws Exception {
+            client = createFTPClient();
+            client.connect("localhost", getListenerPort());
+        }
+
+        public void run() {
+            try {
+                loggedIn = client.login(BLOCKED_USERNAME, TESTUSER_PASSWORD);
+            } catch (Exception e) {
+                loggedIn = false;
+            }
+        }
+    }
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory serverFactory = super.createServer();
+        serverFactory.setUserManager(new BlockingUserManager(serverFactory
+                .getUserManager()));
+        return serverFactory;
+    }
+
+    @Override
+    protected ConnectionConfigFactory createConnectionConfigFactory() {
+        ConnectionConfigFactory factory = super.createConnectionConfigFactory();
+        factory.setMaxThreads(1);
+        factory.setAuthenticationThreads(1);
+        factory.setMaxQueuedAuthentications(1);
+        return factory;
+    }
+
+    private FtpMetrics getMetrics() {
+        return server.getServerContext().getMetrics();
+    }
+
+    public void testLoginOnAuthenticationThread() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        assertTrue(authenticationThread
+                .startsWith("FtpServer-authentication-"));
+
+        // the login is recorded after its reply, but before the next request
+        assertTrue(FTPReply.isPositiveCompletion(client.noop()));
+        assertEquals(1, getMetrics().getAuthenticationTime().getCount());
+        assertEquals(1, getMetrics().getAuthenticationQueueWaitTime()
+                .getCount());
+        assertEquals(0, getMetrics().getQueuedAuthentications());
+        assertEquals(1, getMetrics().getCommandExecutionTime("PASS")
+                .getCount());
+    }
+
+    public void testPipelinedCommandsAfterLogin() throws Exception {
+        // the PWD is read before the login has been verified
+        assertEquals(331, client.sendCommand("USER admin\r\nPASS admin\r\nPWD"));
+        client.completePendingCommand();
+        assertEquals(230, client.getReplyCode());
+        client.completePendingCommand();
+        assertEquals(257, client.getReplyCode());
+
+        assertTrue(FTPReply.isPositiveCompletion(client.noop()));
+    }
+
+    public void testSlowAuthenticationDoesNotHoldUpSessions()
+            throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+
+        LoginThread blocked = new LoginThread();
+        blocked.start();
+        try {
+            assertTrue(authenticating.await(10, TimeUnit.SECONDS));
+
+            // the only request thread must be free for other sessions
+            assertTrue(FTPReply.isPositiveCompletion(client.noop()));
+        } finally {
+            release.countDown();
+            blocked.join(10000);
+        }
+        assertTrue(blocked.loggedIn);
+    }
+
+    public void testRejectWhenSaturated() throws Exception {
+        LoginThread blocked = new LoginThread();
+        blocked.start();
+        LoginThread queued = null;
+        try {
+            assertTrue(authenticating.await(10, TimeUnit.SECONDS));
+
+            // takes the only place in the queue
+            queued = new LoginThread();
+            queued.start();
+            long timeout = System.currentTimeMillis() + 10000;
+            while (getMetrics().getQueuedAuthentications() == 0
+                    && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, getMetrics().getQueuedAuthentications());
+
+            try {
+                client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+                fail("Must be disconnected");
+            } catch (FTPConnectionClosedException e) {
+                assertEquals(421, client.getReplyCode());
+            }
+            assertEquals(1, getMetrics().getRejectedAuthentications());
+        } finally {
+            release.countDown();
+            blocked.join(10000);
+            if (queued != null) {
+                queued.join(10000);
+            }
+        }
+        assertTrue(blocked.loggedIn);
+        assertTrue(queued.loggedIn);
+        assertEquals(0, getMetrics().getQueuedAuthentications());
+    }
+}
@@ -40,4 +40,26 @@ public class ConcatedCommandsTest extends ClientTestTemplate {
         assertTrue(FTPReply.isPositiveCompletion(client.noop()));
     }
 
+    public void testRepliesInOrder() throws Exception {
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+
+        // the three replies are written in one go, they must still arrive
+        // in order
+        assertEquals(200, client.sendCommand("TYPE I\r\nNOOP\r\nPWD"));
+        client.completePendingCommand();
+        assertEquals(200, client.getReplyCode());
+        client.completePendingCommand();
+        assertEquals(257, client.getReplyCode());
+
+        assertTrue(FTPReply.isPositiveCompletion(client.noop()));
+    }
+
+    public void testQuitAfterPipelinedCommand() throws Exception {
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+
+        // replies held back must be written before the session is closed
+        assertEquals(200, client.sendCommand("NOOP\r\nQUIT"));
+        client.completePendingCommand();
+        assertEquals(221, client.getReplyCode());
+    }
 }
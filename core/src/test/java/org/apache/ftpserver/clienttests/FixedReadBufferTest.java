@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.mina.core.session.IoSessionConfig;
+
+/**
+* A fixed read buffer smaller than the default minimum size of MINA.
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class FixedReadBufferTest extends ClientTestTemplate {
+
+    private static final int READ_BUFFER_SIZE = 16;
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory serverFactory = super.createServer();
+
+        ListenerFactory listenerFactory = new ListenerFactory(serverFactory
+                .getListener("default"));
+        listenerFactory.setAdaptiveReadBuffer(false);
+        listenerFactory.setReadBufferSize(READ_BUFFER_SIZE);
+        serverFactory.addListener("default", listenerFactory.createListener());
+
+        return serverFactory;
+    }
+
+    public void testCommandsLongerThanBuffer() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+
+        IoSessionConfig config = getActiveSession().getConfig();
+        assertEquals(READ_BUFFER_SIZE, config.getReadBufferSize());
+        assertEquals(READ_BUFFER_SIZE, config.getMinReadBufferSize());
+        assertEquals(READ_BUFFER_SIZE, config.getMaxReadBufferSize());
+
+        assertTrue(client.makeDirectory("a-directory-with-a-long-name"));
+        assertTrue(client.changeWorkingDirectory("a-directory-with-a-long-name"));
+        assertEquals("/a-directory-with-a-long-name", client
+                .printWorkingDirectory());
+    }
+
+    public void testInvalidReadBufferSize() throws Exception {
+        ListenerFactory listenerFactory = new ListenerFactory();
+        listenerFactory.setReadBufferSize(0);
+        try {
+            listenerFactory.createListener();
+            fail("Must throw FtpServerConfigurationException");
+        } catch (FtpServerConfigurationException e) {
+            // expected
+        }
+    }
+}
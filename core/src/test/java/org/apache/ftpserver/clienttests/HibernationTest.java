@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.File;
+import java.io.OutputStream;
+
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.mina.core.session.IoSessionConfig;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class HibernationTest extends ClientTestTemplate {
+
+    private static final File TEST_DIR = new File(ROOT_DIR, "dir1");
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory serverFactory = super.createServer();
+
+        ListenerFactory listenerFactory = new ListenerFactory(serverFactory
+                .getListener("default"));
+        listenerFactory.setHibernationTime(1);
+        serverFactory.addListener("default", listenerFactory.createListener());
+
+        return serverFactory;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+    }
+
+    private void awaitHibernation() throws Exception {
+        IoSessionConfig config = getActiveSession().getConfig();
+        for (int i = 0; i < 50; i++) {
+            if (config.getReadBufferSize() == config.getMinReadBufferSize()) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        fail("Session not hibernated");
+    }
+
+    public void testSessionRestored() throws Exception {
+        TEST_DIR.mkdirs();
+        new File(TEST_DIR, "foo.txt").createNewFile();
+
+        assertTrue(client.changeWorkingDirectory("dir1"));
+        awaitHibernation();
+
+        FtpIoSession session = getActiveSession();
+        assertEquals("/dir1", client.printWorkingDirectory());
+        assertEquals("/dir1", session.getFileSystemView()
+                .getWorkingDirectory().getAbsolutePath());
+
+        client.enterLocalPassiveMode();
+        String[] names = client.listNames();
+        assertEquals(1, names.length);
+        assertEquals("foo.txt", names[0]);
+    }
+
+    public void testTransferNotInterrupted() throws Exception {
+        OutputStream os = client.storeFileStream("test.txt");
+
+        // longer than the hibernation time without a command
+        for (int i = 0; i < 100; i++) {
+            Thread.sleep(20);
+            os.write(1);
+            os.flush();
+        }
+        os.close();
+
+        assertTrue(client.completePendingCommand());
+        assertEquals(100, new File(ROOT_DIR, "test.txt").length());
+
+        awaitHibernation();
+        assertTrue(client.sendNoOp());
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.FtpServer;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.usermanager.PropertiesUserManagerFactory;
+import org.apache.ftpserver.usermanager.UserFactory;
+import org.apache.ftpserver.usermanager.impl.ConcurrentLoginPermission;
+
+/**
+ * Measures the heap retained by idle control connections, not run as part of
+ * the build. Starts a server, then opens the given number of sessions from a
+ * separate client process, so that only server side objects are counted. Each
+ * session logs in, sets up the data connection settings of a typical client,
+ * and then stays idle. The heap in use after garbage collection is compared
+ * to the heap in use before connecting, and reported as bytes per idle
+ * session.
+ *
+ * Usage: <code>IdleSessionMemoryBenchmark [sessions] [hibernation time in
+ * seconds]</code>, defaulting to 5000 sessions and no hibernation. With a
+ * hibernation time, the heap is measured once the sessions have been idle
+ * for longer than it. Run it with and without hibernation, and a fixed heap
+ * size (for example <code>-Xms1g -Xmx1g</code>) to compare. Each session uses
+ * one file descriptor in each process, so raise <code>ulimit -n</code>
+ * accordingly.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class IdleSessionMemoryBenchmark {
+
+    private static final int PORT = 2121;
+
+    private static final String READY = "READY";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && "clients".equals(args[0])) {
+            openSessions(Integer.parseInt(args[1]));
+            return;
+        }
+
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int hibernationTime = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+
+        File root = new File("test-tmp/memorytest");
+        root.mkdirs();
+
+        FtpServer server = createServer(root, hibernationTime);
+        server.start();
+        try {
+            run(sessions, hibernationTime);
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static FtpServer createServer(File root, int hibernationTime)
+            throws Exception {
+        FtpServerFactory serverFactory = new FtpServerFactory();
+
+        ConnectionConfigFactory connectionConfig = new ConnectionConfigFactory();
+        connectionConfig.setMaxLogins(0);
+        connectionConfig.setMaxThreads(16);
+        serverFactory.setConnectionConfig(connectionConfig
+                .createConnectionConfig());
+
+        ListenerFactory listenerFactory = new ListenerFactory();
+        listenerFactory.setPort(PORT);
+        listenerFactory.setIdleTimeout(0);
+        listenerFactory.setHibernationTime(hibernationTime);
+        serverFactory.addListener("default", listenerFactory.createListener());
+
+        UserManager userManager = new PropertiesUserManagerFactory()
+                .createUserManager();
+        UserFactory userFactory = new UserFactory();
+        userFactory.setName("idle");
+        userFactory.setPassword("idle");
+        userFactory.setHomeDirectory(root.getAbsolutePath());
+        userFactory.setMaxIdleTime(0);
+        List<Authority> authorities = new ArrayList<Authority>();
+        authorities.add(new ConcurrentLoginPermission(0, 0));
+        userFactory.setAuthorities(authorities);
+        userManager.save(userFactory.createUser());
+        serverFactory.setUserManager(userManager);
+
+        return serverFactory.createServer();
+    }
+
+    private static void run(int sessions, int hibernationTime)
+            throws Exception {
+        System.out.println("Opening " + sessions + " idle sessions, "
+                + (hibernationTime > 0 ? "hibernating after "
+                        + hibernationTime + " s" : "without hibernation"));
+
+        // warm up, so that classes and shared objects are not counted
+        Process warmUp = startClients(10);
+        awaitReady(warmUp);
+        warmUp.getOutputStream().close();
+        warmUp.waitFor();
+        Thread.sleep(1000);
+
+        long before = usedHeap();
+
+        Process clients = startClients(sessions);
+        long start = System.currentTimeMillis();
+        awaitReady(clients);
+        System.out.println("Sessions open after "
+                + (System.currentTimeMillis() - start) + " ms");
+        if (hibernationTime > 0) {
+            Thread.sleep((hibernationTime + 2) * 1000L);
+        }
+
+        long after = usedHeap();
+        System.out.println("Heap before: " + before / 1024 + " kB, with "
+                + sessions + " idle sessions: " + after / 1024 + " kB");
+        System.out.println("Bytes per idle session: " + (after - before)
+                / sessions);
+
+        clients.getOutputStream().close();
+        clients.waitFor();
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        // several collections, until nothing more is freed
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(200);
+            long current = memory.getHeapMemoryUsage().getUsed();
+            if (current >= used) {
+                break;
+            }
+            used = current;
+        }
+        return used;
+    }
+
+    private static Process startClients(int sessions) throws Exception {
+        String java = System.getProperty("java.home") + File.separator
+                + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System
+                .getProperty("java.class.path"),
+                IdleSessionMemoryBenchmark.class.getName(), "clients", Integer
+                        .toString(sessions));
+        builder.redirectErrorStream(true);
+        return builder.start();
+    }
+
+    private static void awaitReady(Process clients) throws Exception {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                clients.getInputStream(), "UTF-8"));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (READY.equals(line)) {
+                return;
+            }
+            System.out.println(line);
+        }
+        throw new IllegalStateException("Client process failed");
+    }
+
+    /**
+     * Run in the client process, opens the sessions and keeps them open
+     * until the standard input is closed
+     */
+    private static void openSessions(int sessions) throws Exception {
+        List<Socket> sockets = new ArrayList<Socket>();
+        for (int i = 0; i < sessions; i++) {
+            Socket socket = new Socket("localhost", PORT);
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            readReply(in);
+            command(in, out, "USER idle");
+            command(in, out, "PASS idle");
+            command(in, out, "TYPE I");
+            command(in, out, "PBSZ 0");
+            command(in, out, "MODE S");
+            command(in, out, "PWD");
+            sockets.add(socket);
+        }
+        System.out.println(READY);
+        System.out.flush();
+
+        while (System.in.read() != -1) {
+            // wait for the server process to close the input
+        }
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    private static void command(InputStream in, OutputStream out,
+            String command) throws Exception {
+        out.write((command + "\r\n").getBytes("US-ASCII"));
+        out.flush();
+        readReply(in);
+    }
+
+    /**
+     * Read a reply, only single line replies are sent to the commands used
+     */
+    private static void readReply(InputStream in) throws Exception {
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c == -1) {
+                throw new IllegalStateException("Connection closed");
+            }
+        }
+    }
+}
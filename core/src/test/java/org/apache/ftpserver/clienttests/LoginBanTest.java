@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.ipfilter.BanManager;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class LoginBanTest extends ClientTestTemplate {
+
+    @Override
+    protected ConnectionConfigFactory createConnectionConfigFactory() {
+        ConnectionConfigFactory factory = super.createConnectionConfigFactory();
+        factory.setMaxLoginFailures(0);
+        factory.setLoginFailureDelay(0);
+        factory.setBanLoginFailures(2);
+        return factory;
+    }
+
+    private BanManager getBanManager() {
+        return server.getServerContext().getBanManager();
+    }
+
+    public void testBanAfterLoginFailures() throws Exception {
+        assertFalse(client.login(ADMIN_USERNAME, "wrong"));
+        assertFalse(client.login(ADMIN_USERNAME, "wrong"));
+        try {
+            client.noop();
+            fail("Must be disconnected");
+        } catch (IOException e) {
+            // OK
+        }
+        assertTrue(getBanManager().isBanned(InetAddress.getByName("localhost")));
+
+        try {
+            connectClient();
+            client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+            fail("Must be disconnected");
+        } catch (IOException e) {
+            // OK
+        }
+
+        assertTrue(getBanManager().unban(InetAddress.getByName("localhost")));
+        connectClient();
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+    }
+
+    public void testSuccessfulLoginClearsFailures() throws Exception {
+        assertFalse(client.login(ADMIN_USERNAME, "wrong"));
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        client.logout();
+        client.disconnect();
+
+        connectClient();
+        assertFalse(client.login(ADMIN_USERNAME, "wrong"));
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.ftpserver.ConnectionConfigFactory;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class LoginFailureDelayTest extends ClientTestTemplate {
+
+    private static final int DELAY = 1000;
+
+    @Override
+    protected ConnectionConfigFactory createConnectionConfigFactory() {
+        ConnectionConfigFactory factory = super.createConnectionConfigFactory();
+        factory.setMaxThreads(1);
+        factory.setMaxLoginFailures(0);
+        factory.setLoginFailureDelay(DELAY);
+        factory.setLoginFailureBackoff(2);
+        factory.setMaxLoginFailureDelay(DELAY * 3 / 2);
+        return factory;
+    }
+
+    public void testDelayDoesNotHoldThread() throws Exception {
+        long start = System.currentTimeMillis();
+        assertFalse(client.login(ADMIN_USERNAME, "wrong"));
+        assertTrue(System.currentTimeMillis() - start < DELAY);
+
+        // the only thread must be free for other sessions
+        FTPClient other = createFTPClient();
+        try {
+            other.connect("localhost", getListenerPort());
+            assertTrue(other.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+            assertTrue(System.currentTimeMillis() - start < DELAY);
+        } finally {
+            other.disconnect();
+        }
+
+        // while requests of the failed session wait for the delay
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        assertTrue(System.currentTimeMillis() - start >= DELAY - 100);
+    }
+
+    public void testBackoff() throws Exception {
+        assertFalse(client.login(ADMIN_USERNAME, "wrong"));
+        assertFalse(client.login(ADMIN_USERNAME, "wrong"));
+
+        // twice the delay, capped
+        long start = System.currentTimeMillis();
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue(elapsed >= DELAY * 3 / 2 - 200);
+        assertTrue(elapsed < DELAY * 2);
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPConnectionClosedException;
+import org.apache.commons.net.ftp.FTPReply;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.test.TestUtil;
+import org.apache.ftpserver.usermanager.ClearTextPasswordEncryptor;
+import org.apache.ftpserver.usermanager.PropertiesUserManagerFactory;
+import org.apache.ftpserver.usermanager.impl.TransferRateRequest;
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class ManagementTest extends ClientTestTemplate {
+
+    private static final File USERS_FILE = new File("test-tmp/users.properties");
+
+    private final MBeanServer mbeanServer = ManagementFactory
+            .getPlatformMBeanServer();
+
+    private final List<FTPClient> clients = new ArrayList<FTPClient>();
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory serverFactory = super.createServer();
+
+        // users are saved, so work on a copy
+        FileInputStream in = new FileInputStream(new File(TestUtil
+                .getBaseDir(), "src/test/resources/users.properties"));
+        FileOutputStream out = new FileOutputStream(USERS_FILE);
+        try {
+            IoUtils.copy(in, out, 4096);
+        } finally {
+            in.close();
+            out.close();
+        }
+        PropertiesUserManagerFactory umFactory = new PropertiesUserManagerFactory();
+        umFactory.setAdminName("admin");
+        umFactory.setPasswordEncryptor(new ClearTextPasswordEncryptor());
+        umFactory.setFile(USERS_FILE);
+        serverFactory.setUserManager(umFactory.createUserManager());
+        return serverFactory;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (FTPClient other : clients) {
+            if (other.isConnected()) {
+                other.disconnect();
+            }
+        }
+        super.tearDown();
+    }
+
+    private ObjectName getName(String type) {
+        for (ObjectName name : server.getMBeanNames()) {
+            if (type.equals(name.getKeyProperty("type"))) {
+                return name;
+            }
+        }
+        fail("No MBean of type " + type);
+        return null;
+    }
+
+    private FTPClient connect() throws Exception {
+        FTPClient other = new FTPClient();
+        clients.add(other);
+        other.connect("localhost", getListenerPort());
+        return other;
+    }
+
+    private FtpIoSession getSession() {
+        return server.getServerContext().getSessionRegistry().getSessions()
+                .iterator().next();
+    }
+
+    public void testMBeansRegistered() throws Exception {
+        assertEquals("default", getName("Listener").getKeyProperty("name"));
+        assertEquals("default", getName("DataConnection").getKeyProperty(
+                "name"));
+        assertNull(mbeanServer.getAttribute(getName("Listener"),
+                "IpFilterType"));
+        assertEquals(getListenerPort(), mbeanServer.getAttribute(
+                getName("Listener"), "Port"));
+        assertTrue((Integer) mbeanServer.getAttribute(getName("ThreadPool"),
+                "MaximumPoolSize") > 0);
+
+        List<ObjectName> names = server.getMBeanNames();
+        server.stop();
+        for (ObjectName name : names) {
+            assertFalse(mbeanServer.isRegistered(name));
+        }
+    }
+
+    public void testSetMaxLogins() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+
+        mbeanServer.setAttribute(getName("Server"), new Attribute(
+                "MaxLogins", 1));
+        assertEquals(1, server.getConnectionConfig().getMaxLogins());
+        assertEquals(1, mbeanServer.getAttribute(getName("Server"),
+                "CurrentLogins"));
+
+        // the open session is kept, new logins are refused
+        assertTrue(FTPReply.isPositiveCompletion(client.noop()));
+        try {
+            connect().login(TESTUSER1_USERNAME, TESTUSER_PASSWORD);
+            fail("Must be refused");
+        } catch (FTPConnectionClosedException e) {
+            // OK, 421
+        }
+
+        mbeanServer.setAttribute(getName("Server"), new Attribute(
+                "MaxLogins", 10));
+        assertTrue(connect().login(TESTUSER1_USERNAME, TESTUSER_PASSWORD));
+    }
+
+    public void testSetIdleTimeout() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+
+        mbeanServer.setAttribute(getName("Listener"), new Attribute(
+                "IdleTimeout", 1));
+        assertEquals(1, server.getListener("default").getIdleTimeout());
+
+        // the open session of the admin, without an idle limit, is closed
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!server.getServerContext().getSessionRegistry().getSessions()
+                .isEmpty()
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertTrue(server.getServerContext().getSessionRegistry()
+                .getSessions().isEmpty());
+    }
+
+    public void testSetIpFilter() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+
+        mbeanServer.invoke(getName("Listener"), "setIpFilter", new Object[] {
+                "deny", "127.0.0.0/8, ::1" }, new String[] {
+                String.class.getName(), String.class.getName() });
+        assertEquals("DENY", mbeanServer.getAttribute(getName("Listener"),
+                "IpFilterType"));
+
+        // the open session is closed
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!server.getServerContext().getSessionRegistry().getSessions()
+                .isEmpty()
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertTrue(server.getServerContext().getSessionRegistry()
+                .getSessions().isEmpty());
+
+        mbeanServer.invoke(getName("Listener"), "clearIpFilter", null, null);
+        assertTrue(connect().login(ADMIN_USERNAME, ADMIN_PASSWORD));
+    }
+
+    public void testSetPassivePorts() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+
+        ServerSocket socket = new ServerSocket(0);
+        int port = socket.getLocalPort();
+        socket.close();
+
+        mbeanServer.setAttribute(getName("DataConnection"), new Attribute(
+                "PassivePorts", Integer.toString(port)));
+        assertEquals(1, mbeanServer.getAttribute(getName("DataConnection"),
+                "PassivePortCount"));
+
+        assertEquals(227, client.pasv());
+        assertTrue(client.getReplyString().contains(
+                "," + (port >> 8) + "," + (port & 0xff) + ")"));
+        assertEquals(1, mbeanServer.getAttribute(getName("DataConnection"),
+                "PassivePortsInUse"));
+
+        // the port in use stays reserved
+        mbeanServer.setAttribute(getName("DataConnection"), new Attribute(
+                "PassivePorts", Integer.toString(port)));
+        assertEquals(1, mbeanServer.getAttribute(getName("DataConnection"),
+                "PassivePortsInUse"));
+        FTPClient other = connect();
+        assertTrue(other.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        assertEquals(425, other.pasv());
+    }
+
+    public void testResizeThreadPool() throws Exception {
+        ObjectName name = getName("ThreadPool");
+        mbeanServer.setAttribute(name, new Attribute("CorePoolSize", 4));
+        mbeanServer.setAttribute(name, new Attribute("MaximumPoolSize", 2));
+
+        assertEquals(2, mbeanServer.getAttribute(name, "CorePoolSize"));
+        assertEquals(2, mbeanServer.getAttribute(name, "MaximumPoolSize"));
+
+        mbeanServer.setAttribute(name, new Attribute("CorePoolSize", 3));
+        assertEquals(3, mbeanServer.getAttribute(name, "MaximumPoolSize"));
+
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+    }
+
+    public void testSetUserTransferRate() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+
+        mbeanServer.invoke(getName("Server"), "setUserTransferRate",
+                new Object[] { ADMIN_USERNAME, 1000, 2000 }, new String[] {
+                        String.class.getName(), int.class.getName(),
+                        int.class.getName() });
+
+        TransferRateRequest request = (TransferRateRequest) getSession()
+                .getUser().authorize(new TransferRateRequest());
+        assertEquals(1000, request.getMaxUploadRate());
+        assertEquals(2000, request.getMaxDownloadRate());
+
+        // saved with the password unchanged
+        assertTrue(connect().login(ADMIN_USERNAME, ADMIN_PASSWORD));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.apache.ftpserver.impl.FtpMetrics;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class MetricsTest extends ClientTestTemplate {
+
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    private FtpMetrics getMetrics() {
+        return server.getServerContext().getMetrics();
+    }
+
+    public void testCommandTimes() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        client.noop();
+        client.sendCommand("XYZZY");
+
+        assertEquals(1, getMetrics().getCommandExecutionTime("PASS")
+                .getCount());
+        assertEquals(1, getMetrics().getCommandQueueWaitTime("PASS")
+                .getCount());
+        assertEquals(1, getMetrics().getCommandExecutionTime("NOOP")
+                .getCount());
+
+        // unknown commands are not recorded
+        assertNull(getMetrics().getCommandExecutionTime("XYZZY"));
+    }
+
+    public void testTransferTimes() throws Exception {
+        byte[] testData = new byte[100000];
+        TestUtil.writeDataToFile(TEST_FILE, testData);
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        client.enterLocalPassiveMode();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(client.retrieveFile(TEST_FILENAME, out));
+
+        assertEquals(1, getMetrics().getDataConnectionSetupTime().getCount());
+        assertEquals(1, getMetrics().getTimeToFirstByte().getCount());
+        assertEquals(1, getMetrics().getTransferThroughput().getCount());
+        assertTrue(getMetrics().getTransferThroughput().getMax() > 0);
+        assertEquals(1, getMetrics().getCommandExecutionTime("RETR")
+                .getCount());
+    }
+
+    public void testJmx() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        // the login is recorded after its reply, but before the next request
+        client.noop();
+
+        List<ObjectName> names = server.getMBeanNames();
+        assertEquals("Metrics", names.get(0).getKeyProperty("type"));
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        TabularData times = (TabularData) mbeanServer.getAttribute(names
+                .get(0), "CommandExecutionTimes");
+        CompositeData pass = times.get(new Object[] { "PASS" });
+        CompositeData snapshot = (CompositeData) pass.get("value");
+        assertEquals(1L, snapshot.get("count"));
+
+        CompositeData throughput = (CompositeData) mbeanServer.getAttribute(
+                names.get(0), "TransferThroughput");
+        assertEquals(0L, throughput.get("count"));
+
+        server.stop();
+        assertFalse(mbeanServer.isRegistered(names.get(0)));
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayInputStream;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.impl.DefaultFtpServer;
+import org.apache.ftpserver.impl.FileObserver;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.ObserverEventBus;
+import org.apache.ftpserver.impl.ObserverEventBus.OverflowPolicy;
+import org.apache.ftpserver.impl.ServerFtpStatistics;
+import org.apache.ftpserver.impl.SessionSnapshot;
+import org.apache.ftpserver.impl.SnapshotFileObserver;
+import org.apache.ftpserver.impl.StatisticsObserver;
+
+/**
+* The statistics and file events of a server delivered through an
+* {@link ObserverEventBus}.
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class ObserverEventBusDeliveryTest extends ClientTestTemplate {
+
+    private final List<String> events = Collections
+            .synchronizedList(new ArrayList<String>());
+
+    private ObserverEventBus bus;
+
+    private class RecordingObserver implements StatisticsObserver,
+            SnapshotFileObserver {
+
+        public void notifyUpload() {
+            events.add("upload");
+        }
+
+        public void notifyDownload() {
+        }
+
+        public void notifyDelete() {
+        }
+
+        public void notifyMkdir() {
+        }
+
+        public void notifyRmdir() {
+        }
+
+        public void notifyLogin(boolean anonymous) {
+            events.add("login");
+        }
+
+        public void notifyLoginFail(InetAddress address) {
+        }
+
+        public void notifyLogout(boolean anonymous) {
+        }
+
+        public void notifyOpenConnection() {
+        }
+
+        public void notifyCloseConnection() {
+        }
+
+        public void notifyUpload(SessionSnapshot session, FtpFile file,
+                long size) {
+            events.add("file upload " + session.getUserName() + " "
+                    + file.getName() + " " + size);
+        }
+
+        public void notifyDownload(SessionSnapshot session, FtpFile file,
+                long size) {
+        }
+
+        public void notifyDelete(SessionSnapshot session, FtpFile file) {
+        }
+
+        public void notifyMkdir(SessionSnapshot session, FtpFile file) {
+        }
+
+        public void notifyRmdir(SessionSnapshot session, FtpFile file) {
+        }
+    }
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory serverFactory = super.createServer();
+
+        bus = new ObserverEventBus(64, OverflowPolicy.BLOCK);
+        RecordingObserver observer = new RecordingObserver();
+        bus.setObserver(observer);
+        bus.setFileObserver(observer);
+        serverFactory.setObserverEventBus(bus);
+
+        return serverFactory;
+    }
+
+    public void testEventsDelivered() throws Exception {
+        assertTrue(bus.isStarted());
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+        assertTrue(client.storeFile("test.txt", new ByteArrayInputStream(
+                "hello".getBytes("US-ASCII"))));
+        client.logout();
+
+        // stopping the server delivers the events published before
+        server.stop();
+        assertFalse(bus.isStarted());
+
+        assertEquals("[login, upload, file upload admin test.txt 5]", events
+                .toString());
+    }
+
+    private DefaultFtpServer createServerWithBus(ObserverEventBus otherBus)
+            throws Exception {
+        FtpServerFactory serverFactory = super.createServer();
+        serverFactory.setObserverEventBus(otherBus);
+        return (DefaultFtpServer) serverFactory.createServer();
+    }
+
+    public void testObserverOnStatisticsMovedToBus() throws Exception {
+        ObserverEventBus otherBus = new ObserverEventBus(64,
+                OverflowPolicy.BLOCK);
+        DefaultFtpServer otherServer = createServerWithBus(otherBus);
+        ServerFtpStatistics statistics = (ServerFtpStatistics) otherServer
+                .getServerContext().getFtpStatistics();
+        RecordingObserver observer = new RecordingObserver();
+        statistics.setObserver(observer);
+
+        otherServer.start();
+        try {
+            assertSame(otherBus, statistics.getObserver());
+            assertSame(observer, otherBus.getObserver());
+        } finally {
+            otherServer.stop();
+        }
+    }
+
+    public void testObserverOnStatisticsAndBus() throws Exception {
+        ObserverEventBus otherBus = new ObserverEventBus(64,
+                OverflowPolicy.BLOCK);
+        otherBus.setObserver(new RecordingObserver());
+        DefaultFtpServer otherServer = createServerWithBus(otherBus);
+        ((ServerFtpStatistics) otherServer.getServerContext()
+                .getFtpStatistics()).setObserver(new RecordingObserver());
+
+        try {
+            otherServer.start();
+            fail("Must fail with an observer on the statistics and the bus");
+        } catch (FtpServerConfigurationException e) {
+            // expected
+        }
+        assertFalse(otherBus.isStarted());
+        otherServer.stop();
+    }
+
+    public void testFileObserverOnStatistics() throws Exception {
+        ObserverEventBus otherBus = new ObserverEventBus(64,
+                OverflowPolicy.BLOCK);
+        DefaultFtpServer otherServer = createServerWithBus(otherBus);
+        ((ServerFtpStatistics) otherServer.getServerContext()
+                .getFtpStatistics()).setFileObserver(new FileObserver() {
+            public void notifyUpload(FtpIoSession session, FtpFile file,
+                    long size) {
+            }
+
+            public void notifyDownload(FtpIoSession session, FtpFile file,
+                    long size) {
+            }
+
+            public void notifyDelete(FtpIoSession session, FtpFile file) {
+            }
+
+            public void notifyMkdir(FtpIoSession session, FtpFile file) {
+            }
+
+            public void notifyRmdir(FtpIoSession session, FtpFile file) {
+            }
+        });
+
+        try {
+            otherServer.start();
+            fail("Must fail with a file observer on the statistics");
+        } catch (FtpServerConfigurationException e) {
+            // expected
+        }
+        assertFalse(otherBus.isStarted());
+        otherServer.stop();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ftpserver.ConnectionConfigFactory;
+
+/**
+* Login failures pipelined in a single packet must be delayed and counted
+* like those sent one at a time.
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class PipelinedLoginFailureTest extends ClientTestTemplate {
+
+    private static final int DELAY = 500;
+
+    private Socket socket;
+
+    private BufferedReader reader;
+
+    /**
+     * Reply lines, with the time they were received after the requests were
+     * sent
+     */
+    private final List<String> replies = new ArrayList<String>();
+
+    private final List<Long> replyTimes = new ArrayList<Long>();
+
+    @Override
+    protected ConnectionConfigFactory createConnectionConfigFactory() {
+        ConnectionConfigFactory factory = super.createConnectionConfigFactory();
+        factory.setMaxLoginFailures(3);
+        factory.setLoginFailureDelay(DELAY);
+        // authenticate on the thread processing PASS
+        factory.setAuthenticationThreads(0);
+        return factory;
+    }
+
+    @Override
+    protected boolean isConnectClient() {
+        return false;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        socket = new Socket("localhost", getListenerPort());
+        socket.setSoTimeout(10000);
+        reader = new BufferedReader(new InputStreamReader(socket
+                .getInputStream(), "US-ASCII"));
+        assertTrue(reader.readLine().startsWith("220"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        socket.close();
+
+        super.tearDown();
+    }
+
+    /**
+     * Send the requests in a single write, and read the replies until the
+     * given number has been read, or the session is closed
+     */
+    private void send(String requests, int expectedReplies) throws Exception {
+        OutputStream out = socket.getOutputStream();
+        out.write(requests.getBytes("US-ASCII"));
+        out.flush();
+
+        long start = System.currentTimeMillis();
+        String line;
+        while (replies.size() < expectedReplies
+                && (line = reader.readLine()) != null) {
+            replies.add(line.substring(0, 3));
+            replyTimes.add(System.currentTimeMillis() - start);
+        }
+    }
+
+    private long getReplyTime(int index) {
+        return replyTimes.get(index);
+    }
+
+    public void testPipelinedLoginsDelayed() throws Exception {
+        send("USER admin\r\nPASS wrong\r\nUSER admin\r\nPASS admin\r\nPWD\r\n",
+                5);
+
+        assertEquals("331", replies.get(0));
+        assertEquals("530", replies.get(1));
+        assertEquals("331", replies.get(2));
+        assertEquals("230", replies.get(3));
+        assertEquals("257", replies.get(4));
+        assertTrue(getReplyTime(2) >= DELAY - 100);
+    }
+
+    public void testPipelinedLoginsKicked() throws Exception {
+        StringBuilder requests = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            requests.append("USER admin\r\nPASS wrong" + i + "\r\n");
+        }
+        requests.append("USER admin\r\nPASS admin\r\nPWD\r\n");
+        send(requests.toString(), Integer.MAX_VALUE);
+
+        // closed after the third failure and its delay, without reading
+        // further requests
+        assertEquals(replies.toString(), 6, replies.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("331", replies.get(i * 2));
+            assertEquals("530", replies.get(i * 2 + 1));
+        }
+        assertTrue(getReplyTime(3) >= DELAY - 100);
+        assertTrue(getReplyTime(5) >= 2 * DELAY - 100);
+        assertTrue(replyTimes.get(replyTimes.size() - 1) < 10000);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.impl.PrometheusEndpoint;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class PrometheusEndpointTest extends ClientTestTemplate {
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory serverFactory = super.createServer();
+        serverFactory.setMetricsPort(0);
+        serverFactory.setMetricsAddress("localhost");
+        return serverFactory;
+    }
+
+    private HttpURLConnection open(String path) throws Exception {
+        int port = server.getMetricsEndpoint().getPort();
+        return (HttpURLConnection) new URL("http://localhost:" + port + path)
+                .openConnection();
+    }
+
+    private String scrape() throws Exception {
+        HttpURLConnection connection = open(PrometheusEndpoint.PATH);
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(connection.getContentType().startsWith(
+                "text/plain; version=0.0.4"));
+        InputStream in = connection.getInputStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    public void testScrape() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        client.noop();
+
+        String metrics = scrape();
+        assertTrue(metrics.contains("# TYPE ftpserver_connections_total counter\n"));
+        assertTrue(metrics.contains("\nftpserver_connections 1\n"));
+        assertTrue(metrics.contains("\nftpserver_logins{class=\"user\"} 1\n"));
+        assertTrue(metrics.contains("\nftpserver_logins{class=\"anonymous\"} 0\n"));
+        assertTrue(metrics.contains("\nftpserver_sessions{listener=\"default\"} 1\n"));
+        assertTrue(metrics.contains("\nftpserver_active_transfers 0\n"));
+        assertTrue(metrics.contains("\nftpserver_executor_max_threads "));
+        assertTrue(metrics.contains("# TYPE ftpserver_command_execution_seconds summary\n"));
+        assertTrue(metrics.contains("\nftpserver_command_execution_seconds_count{command=\"PASS\"} 1\n"));
+        assertTrue(metrics.contains("\nftpserver_command_execution_seconds{command=\"NOOP\",quantile=\"0.99\"} "));
+    }
+
+    public void testUnknownPath() throws Exception {
+        assertEquals(404, open("/metricsfoo").getResponseCode());
+    }
+
+    public void testStoppedWithServer() throws Exception {
+        PrometheusEndpoint endpoint = server.getMetricsEndpoint();
+        assertTrue(endpoint.getPort() > 0);
+
+        server.stop();
+        assertNull(server.getMetricsEndpoint());
+        assertEquals(-1, endpoint.getPort());
+    }
+}
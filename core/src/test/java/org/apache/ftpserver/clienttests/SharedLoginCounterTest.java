@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.clienttests;
+
+import java.io.File;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPConnectionClosedException;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.impl.DefaultFtpServer;
+import org.apache.ftpserver.logincounter.FileLoginCounterStoreFactory;
+import org.apache.ftpserver.logincounter.LoginCounterStore;
+
+/**
+ * Two servers sharing a login counter store enforce the login limits of a
+ * user across both
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SharedLoginCounterTest extends ClientTestTemplate {
+
+    private static final File LOGINS_DIR = new File("test-tmp/logins");
+
+    private static int nodes = 0;
+
+    private DefaultFtpServer server2;
+
+    private FTPClient client2;
+
+    private FTPClient client3;
+
+    private FTPClient client4;
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory serverFactory = super.createServer();
+
+        FileLoginCounterStoreFactory storeFactory = new FileLoginCounterStoreFactory();
+        storeFactory.setDirectory(LOGINS_DIR);
+        storeFactory.setNodeId("node" + nodes++);
+        storeFactory.setLeaseTime(5000);
+        storeFactory.setRefreshInterval(50);
+        serverFactory.setLoginCounterStore(storeFactory
+                .createLoginCounterStore());
+
+        return serverFactory;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        // createServer() sets up another listener and login counter node
+        server2 = (DefaultFtpServer) createServer().createServer();
+        server2.start();
+
+        client2 = createFTPClient();
+        client3 = createFTPClient();
+        client4 = createFTPClient();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        disconnect(client2);
+        disconnect(client3);
+        disconnect(client4);
+        if (server2 != null) {
+            server2.stop();
+        }
+        super.tearDown();
+    }
+
+    private void disconnect(FTPClient client) {
+        try {
+            client.disconnect();
+        } catch (Exception e) {
+            // ignore
+        }
+    }
+
+    private void waitForLogins(DefaultFtpServer server, int expected)
+            throws Exception {
+        LoginCounterStore store = server.getServerContext()
+                .getLoginCounterStore();
+        for (int i = 0; i < 100; i++) {
+            if (store.getLoginCount(TESTUSER1_USERNAME) == expected) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        fail("Logins not seen by the other server");
+    }
+
+    public void testMaxLoginsAcrossServers() throws Exception {
+        // testuser1 can log in 3 times
+        assertTrue(client.login(TESTUSER1_USERNAME, TESTUSER_PASSWORD));
+        client2.connect("localhost", getListenerPort());
+        assertTrue(client2.login(TESTUSER1_USERNAME, TESTUSER_PASSWORD));
+
+        int port2 = server2.getListener("default").getPort();
+        waitForLogins(server2, 2);
+        client3.connect("localhost", port2);
+        assertTrue(client3.login(TESTUSER1_USERNAME, TESTUSER_PASSWORD));
+
+        waitForLogins(server2, 3);
+        client4.connect("localhost", port2);
+        try {
+            assertFalse(client4.login(TESTUSER1_USERNAME, TESTUSER_PASSWORD));
+        } catch (FTPConnectionClosedException e) {
+            // OK
+        }
+
+        // a logout on one server frees a login on the other
+        client.logout();
+        waitForLogins(server2, 2);
+        client4.disconnect();
+        client4.connect("localhost", port2);
+        assertTrue(client4.login(TESTUSER1_USERNAME, TESTUSER_PASSWORD));
+    }
+}
@@ -136,5 +136,35 @@ public class SiteTest extends ClientTestTemplate {
         assertTrue(siteReplies[14], Pattern.matches("200 Total Connections        : 3", siteReplies[14]));
     }
 
+    public void testSiteTop() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(TESTDATA)));
+        assertTrue(client.retrieveFile(TEST_FILENAME, new ByteArrayOutputStream()));
+        assertTrue(client.retrieveFile(TEST_FILENAME, new ByteArrayOutputStream()));
+
+        client.sendCommand("SITE TOP 5");
+        String[] siteReplies = client.getReplyString().split("\r\n");
+
+        assertEquals("200-", siteReplies[0]);
+        assertEquals("Most Downloaded Files :", siteReplies[1]);
+        assertEquals("  2 /" + TEST_FILENAME, siteReplies[2]);
+        assertEquals("", siteReplies[3]);
+        assertEquals("Users By Bytes :", siteReplies[4]);
+        assertEquals("  24 admin", siteReplies[5]);
+        assertEquals("", siteReplies[6]);
+        assertEquals("Addresses By Bytes :", siteReplies[7]);
+        assertEquals("  24 127.0.0.1", siteReplies[8]);
+        assertEquals("", siteReplies[9]);
+        assertEquals("Addresses By Connections :", siteReplies[10]);
+        assertEquals("200   1 127.0.0.1", siteReplies[11]);
+    }
+
+    public void testSiteTopInvalidCount() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+
+        assertEquals(501, client.sendCommand("SITE TOP 0"));
+        assertEquals(501, client.sendCommand("SITE TOP foo"));
+    }
+
     
 }
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.sql.SQLException;
+
+import org.apache.commons.net.ftp.FTPConnectionClosedException;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ftplet.Authentication;
+import org.apache.ftpserver.ftplet.AuthenticationFailedException;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.usermanager.ResilientUserManagerFactory;
+import org.apache.ftpserver.usermanager.UserManagerUnavailableException;
+import org.apache.ftpserver.usermanager.impl.ResilientUserManager;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class UserManagerUnavailableTest extends ClientTestTemplate {
+
+    private volatile boolean failing;
+
+    private volatile int calls;
+
+    /**
+     * Fails all calls as if its database was down
+     */
+    private class FailingUserManager implements UserManager {
+
+        private final UserManager userManager;
+
+        public FailingUserManager(UserManager userManager) {
+            this.userManager = userManager;
+        }
+
+        private void call() throws UserManagerUnavailableException {
+            calls++;
+            if (failing) {
+                throw new UserManagerUnavailableException(
+                        "Database unavailable", new SQLException(
+                                "Connection refused"));
+            }
+        }
+
+        public User authenticate(Authentication authentication)
+                throws AuthenticationFailedException {
+            call();
+            return userManager.authenticate(authentication);
+        }
+
+        public void delete(String username) throws FtpException {
+            call();
+            userManager.delete(username);
+        }
+
+        public boolean doesExist(String username) throws FtpException {
+            call();
+            return userManager.doesExist(username);
+        }
+
+        public String getAdminName() throws FtpException {
+            call();
+            return userManager.getAdminName();
+        }
+
+        public String[] getAllUserNames() throws FtpException {
+            call();
+            return userManager.getAllUserNames();
+        }
+
+        public User getUserByName(String username) throws FtpException {
+            call();
+            return userManager.getUserByName(username);
+        }
+
+        public boolean isAdmin(String username) throws FtpException {
+            call();
+            return userManager.isAdmin(username);
+        }
+
+        public void save(User user) throws FtpException {
+            call();
+            userManager.save(user);
+        }
+    }
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory serverFactory = super.createServer();
+        ResilientUserManagerFactory userManagerFactory = new ResilientUserManagerFactory();
+        userManagerFactory.setUserManager(new FailingUserManager(
+                serverFactory.getUserManager()));
+        userManagerFactory.setFailureThreshold(2);
+        serverFactory.setUserManager(userManagerFactory.createUserManager());
+        return serverFactory;
+    }
+
+    private ResilientUserManager getUserManager() {
+        return (ResilientUserManager) server.getServerContext()
+                .getUserManager();
+    }
+
+    private void assertUnavailable() throws Exception {
+        try {
+            client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+            fail("Must be disconnected");
+        } catch (FTPConnectionClosedException e) {
+            assertEquals(421, client.getReplyCode());
+        }
+    }
+
+    public void testLogin() throws Exception {
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        assertEquals(ResilientUserManager.CircuitState.CLOSED,
+                getUserManager().getState());
+    }
+
+    public void testUnavailable() throws Exception {
+        failing = true;
+        assertUnavailable();
+        assertEquals(1, getUserManager().getFailures());
+
+        // not a login failure
+        assertEquals(0, server.getServerContext().getFtpStatistics()
+                .getTotalFailedLoginNumber());
+    }
+
+    public void testUnavailableOnPassword() throws Exception {
+        assertEquals(331, client.user(ADMIN_USERNAME));
+        failing = true;
+        try {
+            client.pass(ADMIN_PASSWORD);
+            fail("Must be disconnected");
+        } catch (FTPConnectionClosedException e) {
+            assertEquals(421, client.getReplyCode());
+        }
+        assertEquals(0, server.getServerContext().getFtpStatistics()
+                .getTotalFailedLoginNumber());
+    }
+
+    public void testCircuitOpen() throws Exception {
+        failing = true;
+        assertUnavailable();
+        connectClient();
+        assertUnavailable();
+        assertEquals(ResilientUserManager.CircuitState.OPEN, getUserManager()
+                .getState());
+
+        // fails without calling the user manager
+        connectClient();
+        assertUnavailable();
+        assertEquals(2, calls);
+        assertEquals(1, getUserManager().getRejectedCalls());
+    }
+}
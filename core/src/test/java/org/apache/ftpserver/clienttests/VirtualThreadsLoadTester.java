@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.FtpServer;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.impl.OrderedVirtualThreadExecutor;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.usermanager.PropertiesUserManagerFactory;
+import org.apache.ftpserver.usermanager.UserFactory;
+import org.apache.ftpserver.usermanager.impl.ConcurrentLoginPermission;
+import org.apache.ftpserver.usermanager.impl.TransferRatePermission;
+
+/**
+ * Load test for the virtual thread execution mode, not run as part of the
+ * build. Starts a server and opens the given number of sessions, each of which
+ * starts downloading a file but does not read from the data connection until
+ * all sessions have a transfer in progress. Server side, every transfer is
+ * blocked writing to its data connection at that point, so the run only
+ * completes if the server can block in as many transfers at once.
+ *
+ * Usage: <code>VirtualThreadsLoadTester [sessions] [file size in kB]
+ * [virtual|pool]</code>, defaulting to 10000 sessions, 256 kB and virtual
+ * threads. Running with <code>pool</code> shows the shared thread pool
+ * stalling once all its threads are busy, use a file size larger than what
+ * the kernel buffers per connection to make that obvious. Each session uses
+ * five file descriptors in the test process, so raise <code>ulimit -n</code>
+ * accordingly, and keep sessions times file size within the kernel TCP
+ * memory limits to avoid connection resets.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class VirtualThreadsLoadTester {
+
+    private static final long TRANSFER_START_TIMEOUT = 120;
+
+    /**
+     * Limits the number of sessions connecting at the same time, to stay
+     * within the accept backlog of the listener
+     */
+    private static final int MAX_CONNECTING = 40;
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int fileSize = (args.length > 1 ? Integer.parseInt(args[1]) : 256) * 1024;
+        boolean virtualThreads = args.length < 3 || "virtual".equals(args[2]);
+
+        File root = new File("test-tmp/loadtest");
+        root.mkdirs();
+        File file = new File(root, "data.bin");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[fileSize]);
+        } finally {
+            out.close();
+        }
+
+        FtpServer server = createServer(root, virtualThreads);
+        server.start();
+        try {
+            run(sessions, fileSize, virtualThreads);
+        } finally {
+            server.stop();
+            file.delete();
+        }
+    }
+
+    private static FtpServer createServer(File root, boolean virtualThreads)
+            throws Exception {
+        FtpServerFactory serverFactory = new FtpServerFactory();
+
+        ConnectionConfigFactory connectionConfig = new ConnectionConfigFactory();
+        connectionConfig.setMaxLogins(0);
+        connectionConfig.setVirtualThreadsEnabled(virtualThreads);
+        serverFactory.setConnectionConfig(connectionConfig
+                .createConnectionConfig());
+
+        ListenerFactory listenerFactory = new ListenerFactory();
+        listenerFactory.setPort(2121);
+        listenerFactory.setIdleTimeout(0);
+        serverFactory.addListener("default", listenerFactory.createListener());
+
+        UserManager userManager = new PropertiesUserManagerFactory()
+                .createUserManager();
+        UserFactory userFactory = new UserFactory();
+        userFactory.setName("load");
+        userFactory.setPassword("load");
+        userFactory.setHomeDirectory(root.getAbsolutePath());
+        List<Authority> authorities = new ArrayList<Authority>();
+        authorities.add(new ConcurrentLoginPermission(0, 0));
+        authorities.add(new TransferRatePermission(0, 0));
+        userFactory.setAuthorities(authorities);
+        userManager.save(userFactory.createUser());
+        serverFactory.setUserManager(userManager);
+
+        return serverFactory.createServer();
+    }
+
+    private static void run(final int sessions, final int fileSize,
+            boolean virtualThreads) throws Exception {
+        System.out.println("Running " + sessions + " sessions on "
+                + (virtualThreads ? "virtual threads (supported: "
+                        + OrderedVirtualThreadExecutor.isVirtualThreadsSupported()
+                        + ")" : "the thread pool"));
+
+        final AtomicInteger transferring = new AtomicInteger();
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicReference<Exception> firstError = new AtomicReference<Exception>();
+        final CountDownLatch allTransferring = new CountDownLatch(sessions);
+        final CountDownLatch done = new CountDownLatch(sessions);
+        final Semaphore connecting = new Semaphore(MAX_CONNECTING);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < sessions; i++) {
+            Thread thread = new Thread(null, new Runnable() {
+                public void run() {
+                    try {
+                        FTPClient client = new FTPClient();
+                        client.setDefaultTimeout(600000);
+                        connecting.acquireUninterruptibly();
+                        try {
+                            client.connect("localhost", 2121);
+                            client.login("load", "load");
+                        } finally {
+                            connecting.release();
+                        }
+                        client.setFileType(FTP.BINARY_FILE_TYPE);
+                        client.enterLocalPassiveMode();
+
+                        InputStream in = client.retrieveFileStream("data.bin");
+                        transferring.incrementAndGet();
+                        allTransferring.countDown();
+                        allTransferring.await(TRANSFER_START_TIMEOUT,
+                                TimeUnit.SECONDS);
+
+                        byte[] buffer = new byte[8192];
+                        int read;
+                        long total = 0;
+                        while ((read = in.read(buffer)) != -1) {
+                            total += read;
+                        }
+                        in.close();
+                        client.completePendingCommand();
+                        client.disconnect();
+
+                        bytes.addAndGet(total);
+                        if (total == fileSize) {
+                            completed.incrementAndGet();
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                        firstError.compareAndSet(null, e);
+                        allTransferring.countDown();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "load-" + i, 256 * 1024);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        boolean concurrent = allTransferring.await(TRANSFER_START_TIMEOUT,
+                TimeUnit.SECONDS);
+        long started = System.currentTimeMillis();
+        System.out.println("Concurrent transfers: " + transferring.get()
+                + (concurrent ? "" : " (timed out waiting for all sessions)")
+                + " after " + (started - start) + " ms");
+
+        done.await();
+        long elapsed = System.currentTimeMillis() - start;
+        System.out.println("Completed: " + completed.get() + ", failed: "
+                + failed.get() + ", total time: " + elapsed + " ms, "
+                + (bytes.get() / 1024 / 1024 * 1000 / Math.max(elapsed, 1))
+                + " MB/s");
+        if (firstError.get() != null) {
+            System.out.println("First error: " + firstError.get());
+        }
+    }
+}
@@ -41,6 +41,7 @@ public class DbUserManagerConfigTest extends SpringConfigTestTemplate {
                 + "    </beans:bean>" + "</data-source>"
                 + "<insert-user>INSERT USER</insert-user>"
                 + "<update-user>UPDATE USER</update-user>"
+                + "<upsert-user>UPSERT USER</upsert-user>"
                 + "<delete-user>DELETE USER</delete-user>"
                 + "<select-user>SELECT USER</select-user>"
                 + "<select-all-users>SELECT ALL USERS</select-all-users>"
@@ -54,6 +55,7 @@ public class DbUserManagerConfigTest extends SpringConfigTestTemplate {
 
         assertEquals("INSERT USER", um.getSqlUserInsert());
         assertEquals("UPDATE USER", um.getSqlUserUpdate());
+        assertEquals("UPSERT USER", um.getSqlUserUpsert());
         assertEquals("DELETE USER", um.getSqlUserDelete());
         assertEquals("SELECT USER", um.getSqlUserSelect());
         assertEquals("SELECT ALL USERS", um.getSqlUserSelectAll());
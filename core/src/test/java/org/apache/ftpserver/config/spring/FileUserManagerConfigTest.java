@@ -45,6 +45,16 @@ public class FileUserManagerConfigTest extends SpringConfigTestTemplate {
     public void testFile() throws Throwable {
         PropertiesUserManager um = createPropertiesUserManager("<file-user-manager file=\"" + USER_FILE_PATH + "\" />");
         assertEquals(new File("src/test/resources/users.properties"), um.getFile());
+        assertFalse(um.isWatchingFile());
+    }
+
+    public void testWatchFile() throws Throwable {
+        PropertiesUserManager um = createPropertiesUserManager("<file-user-manager file=\"" + USER_FILE_PATH + "\" watch-file=\"true\" />");
+        try {
+            assertTrue(um.isWatchingFile());
+        } finally {
+            um.dispose();
+        }
     }
 
     public void testMd5PasswordEncryptor() throws Throwable {
@@ -33,6 +33,8 @@ import org.apache.ftpserver.impl.DefaultFtpServer;
 import org.apache.ftpserver.ipfilter.RemoteIpFilter;
 import org.apache.ftpserver.listener.Listener;
 import org.apache.ftpserver.listener.nio.NioListener;
+import org.apache.ftpserver.listener.nio.NioListenerConfiguration;
+import org.apache.ftpserver.logincounter.impl.FileLoginCounterStore;
 import org.apache.mina.filter.firewall.Subnet;
 import org.springframework.beans.factory.xml.XmlBeanFactory;
 import org.springframework.core.io.FileSystemResource;
@@ -56,6 +58,11 @@ public class SpringConfigTest extends TestCase {
         assertEquals(123, server.getConnectionConfig().getMaxAnonymousLogins());
         assertEquals(124, server.getConnectionConfig().getMaxLoginFailures());
         assertEquals(125, server.getConnectionConfig().getLoginFailureDelay());
+        assertEquals(2, server.getConnectionConfig().getLoginFailureBackoff());
+        assertEquals(126, server.getConnectionConfig().getMaxLoginFailureDelay());
+        assertEquals(2, server.getConnectionConfig().getAuthenticationThreads());
+        assertEquals(17, server.getConnectionConfig()
+                .getMaxQueuedAuthentications());
 
         Map<String, Listener> listeners = server.getServerContext()
                 .getListeners();
@@ -81,6 +88,19 @@ public class SpringConfigTest extends TestCase {
         assertEquals(false, ((NioListener) listener)
                 .getDataConnectionConfiguration().isPassiveIpCheck());
         
+        NioListenerConfiguration nioConfig = ((NioListener) listener)
+                .getConfiguration();
+        assertEquals(3, nioConfig.getIoProcessors());
+        assertEquals(512, nioConfig.getReadBufferSize());
+        assertFalse(nioConfig.isAdaptiveReadBuffer());
+        assertEquals(1024, nioConfig.getReceiveBufferSize());
+        assertEquals(4096, nioConfig.getSendBufferSize());
+        assertTrue(nioConfig.isTcpNoDelay());
+        assertEquals(1000, nioConfig.getBacklog());
+        assertFalse(nioConfig.isMdcEnabled());
+        assertFalse(nioConfig.isLoggingEnabled());
+        assertEquals(60, nioConfig.getHibernationTime());
+
         RemoteIpFilter filter = (RemoteIpFilter) listener.getSessionFilter();
         assertEquals(3, filter.size());
         assertTrue(filter.contains(new Subnet(InetAddress.getByName("1.2.3.0"), 16)));
@@ -114,5 +134,9 @@ public class SpringConfigTest extends TestCase {
         assertEquals(2, server.getFtplets().size());
         assertEquals(123, ((TestFtplet)server.getFtplets().get("ftplet1")).getFoo());
         assertEquals(223, ((TestFtplet)server.getFtplets().get("ftplet2")).getFoo());
+
+        assertEquals("node1", ((FileLoginCounterStore) server.getServerContext()
+                .getLoginCounterStore()).getNodeId());
+        assertNotNull(server.getServerContext().getObserverEventBus());
     }
 }
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.ConnectionConfigFactory;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class AdmissionControllerTest extends TestCase {
+
+    private DefaultFtpServerContext context = new DefaultFtpServerContext();
+
+    private AdmissionController createController(int maxQueuedEvents,
+            int maxActiveTransfers, int anonymousShedLoad) {
+        ConnectionConfigFactory factory = new ConnectionConfigFactory();
+        factory.setMaxQueuedEvents(maxQueuedEvents);
+        factory.setMaxActiveTransfers(maxActiveTransfers);
+        factory.setAnonymousShedLoad(anonymousShedLoad);
+        context.setConnectionConfig(factory.createConnectionConfig());
+        return new AdmissionController(context);
+    }
+
+    public void testNoLimits() {
+        AdmissionController controller = createController(0, 0, 80);
+        for (int i = 0; i < 100; i++) {
+            controller.accept(null, null);
+            controller.transferStarted();
+        }
+
+        assertEquals(0, controller.getLoad());
+        assertFalse(controller.isSaturated());
+        assertFalse(controller.isShedAnonymous());
+    }
+
+    public void testQueuedEvents() {
+        AdmissionController controller = createController(10, 0, 80);
+        for (int i = 0; i < 8; i++) {
+            assertTrue(controller.accept(null, null));
+        }
+        assertEquals(8, controller.getQueuedEvents());
+        assertEquals(80, controller.getLoad());
+        assertFalse(controller.isSaturated());
+        assertTrue(controller.isShedAnonymous());
+
+        controller.accept(null, null);
+        controller.accept(null, null);
+        assertTrue(controller.isSaturated());
+
+        controller.polled(null, null);
+        assertEquals(9, controller.getQueuedEvents());
+        assertFalse(controller.isSaturated());
+    }
+
+    public void testHighestLoadWins() {
+        AdmissionController controller = createController(10, 4, 80);
+        controller.accept(null, null);
+        controller.transferStarted();
+        controller.transferStarted();
+
+        assertEquals(50, controller.getLoad());
+        assertFalse(controller.isShedAnonymous());
+
+        controller.transferStarted();
+        controller.transferStarted();
+        assertTrue(controller.isSaturated());
+
+        controller.transferEnded();
+        assertEquals(75, controller.getLoad());
+    }
+
+    public void testAnonymousSheddingDisabled() {
+        AdmissionController controller = createController(0, 2, 0);
+        controller.transferStarted();
+        assertFalse(controller.isShedAnonymous());
+        controller.transferStarted();
+        assertTrue(controller.isSaturated());
+        assertFalse(controller.isShedAnonymous());
+    }
+
+    public void testLimitsChangedAtRuntime() {
+        AdmissionController controller = createController(10, 0, 0);
+        for (int i = 0; i < 5; i++) {
+            controller.accept(null, null);
+        }
+        assertEquals(50, controller.getLoad());
+
+        ConnectionConfigFactory factory = new ConnectionConfigFactory(context
+                .getConnectionConfig());
+        factory.setMaxQueuedEvents(5);
+        context.setConnectionConfig(factory.createConnectionConfig());
+        assertEquals(100, controller.getLoad());
+        assertTrue(controller.isSaturated());
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.net.InetAddress;
+import java.util.Date;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.ConnectionConfigFactory;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class DefaultBanManagerTest extends TestCase {
+
+    private long now = 1000000;
+
+    private DefaultFtpServerContext context = new DefaultFtpServerContext();
+
+    private DefaultBanManager createBanManager(int banLoginFailures,
+            int banSubnetLoginFailures, int maxEntries) {
+        ConnectionConfigFactory factory = new ConnectionConfigFactory();
+        factory.setBanLoginFailures(banLoginFailures);
+        factory.setBanSubnetLoginFailures(banSubnetLoginFailures);
+        factory.setBanDecayTime(60);
+        factory.setBanDuration(10);
+        factory.setMaxBanDuration(100);
+        context.setConnectionConfig(factory.createConnectionConfig());
+        return new DefaultBanManager(context, maxEntries) {
+            @Override
+            protected long currentTimeMillis() {
+                return now;
+            }
+        };
+    }
+
+    private DefaultBanManager createBanManager(int banLoginFailures,
+            int banSubnetLoginFailures) {
+        return createBanManager(banLoginFailures, banSubnetLoginFailures,
+                DefaultBanManager.DEFAULT_MAX_ENTRIES);
+    }
+
+    private static InetAddress address(String address) throws Exception {
+        return InetAddress.getByName(address);
+    }
+
+    private static void failLogins(DefaultBanManager banManager, String address,
+            int times) throws Exception {
+        for (int i = 0; i < times; i++) {
+            banManager.loginFailed(address(address));
+        }
+    }
+
+    public void testDisabled() throws Exception {
+        DefaultBanManager banManager = createBanManager(0, 0);
+        failLogins(banManager, "1.2.3.4", 100);
+        assertFalse(banManager.isBanned(address("1.2.3.4")));
+        assertTrue(banManager.getBans().isEmpty());
+        assertEquals(0, banManager.getLoginFailures(address("1.2.3.4")));
+    }
+
+    public void testCountFailuresForBackoff() throws Exception {
+        ConnectionConfigFactory factory = new ConnectionConfigFactory();
+        factory.setAddressLoginFailureBackoff(2);
+        factory.setBanDecayTime(60);
+        context.setConnectionConfig(factory.createConnectionConfig());
+        DefaultBanManager banManager = new DefaultBanManager(context) {
+            @Override
+            protected long currentTimeMillis() {
+                return now;
+            }
+        };
+
+        assertEquals(0, banManager.getLoginFailures(address("1.2.3.4")));
+        failLogins(banManager, "1.2.3.4", 4);
+        assertEquals(4, banManager.getLoginFailures(address("1.2.3.4")));
+        assertEquals(0, banManager.getLoginFailures(address("1.2.3.5")));
+        assertFalse(banManager.isBanned(address("1.2.3.4")));
+
+        now += 60000;
+        assertEquals(2, banManager.getLoginFailures(address("1.2.3.4")));
+
+        banManager.loginSucceeded(address("1.2.3.4"));
+        assertEquals(0, banManager.getLoginFailures(address("1.2.3.4")));
+    }
+
+    public void testBanAddress() throws Exception {
+        DefaultBanManager banManager = createBanManager(3, 0);
+        failLogins(banManager, "1.2.3.4", 2);
+        assertFalse(banManager.isBanned(address("1.2.3.4")));
+
+        failLogins(banManager, "1.2.3.4", 1);
+        assertTrue(banManager.isBanned(address("1.2.3.4")));
+        assertFalse(banManager.isBanned(address("1.2.3.5")));
+
+        Map<String, Date> bans = banManager.getBans();
+        assertEquals(1, bans.size());
+        assertEquals(new Date(now + 10000), bans.get("1.2.3.4/32"));
+
+        now += 10000;
+        assertFalse(banManager.isBanned(address("1.2.3.4")));
+        assertTrue(banManager.getBans().isEmpty());
+    }
+
+    public void testFailuresDecay() throws Exception {
+        DefaultBanManager banManager = createBanManager(3, 0);
+        failLogins(banManager, "1.2.3.4", 2);
+        // two half-lives later, the two failures count as a half
+        now += 120000;
+        failLogins(banManager, "1.2.3.4", 1);
+        assertFalse(banManager.isBanned(address("1.2.3.4")));
+        failLogins(banManager, "1.2.3.4", 1);
+        assertTrue(banManager.isBanned(address("1.2.3.4")));
+    }
+
+    public void testSuccessClearsFailures() throws Exception {
+        DefaultBanManager banManager = createBanManager(3, 0);
+        failLogins(banManager, "1.2.3.4", 2);
+        banManager.loginSucceeded(address("1.2.3.4"));
+        failLogins(banManager, "1.2.3.4", 2);
+        assertFalse(banManager.isBanned(address("1.2.3.4")));
+    }
+
+    public void testEscalatingDuration() throws Exception {
+        DefaultBanManager banManager = createBanManager(1, 0);
+        long[] durations = new long[] { 10000, 20000, 40000, 80000, 100000,
+                100000 };
+        for (long duration : durations) {
+            failLogins(banManager, "1.2.3.4", 1);
+            assertEquals(new Date(now + duration), banManager.getBans().get(
+                    "1.2.3.4/32"));
+            now += duration;
+        }
+
+        // not banned for the maximum duration, starts over
+        now += 100000;
+        failLogins(banManager, "1.2.3.4", 1);
+        assertEquals(new Date(now + 10000), banManager.getBans().get(
+                "1.2.3.4/32"));
+    }
+
+    public void testBanSubnet() throws Exception {
+        DefaultBanManager banManager = createBanManager(0, 3);
+        failLogins(banManager, "1.2.3.4", 1);
+        failLogins(banManager, "1.2.3.5", 1);
+        failLogins(banManager, "1.2.3.6", 1);
+
+        assertTrue(banManager.isBanned(address("1.2.3.200")));
+        assertFalse(banManager.isBanned(address("1.2.4.1")));
+        assertTrue(banManager.getBans().containsKey("1.2.3.0/24"));
+    }
+
+    public void testBanIpv6Subnet() throws Exception {
+        DefaultBanManager banManager = createBanManager(0, 2);
+        failLogins(banManager, "2001:db8:0:1::1", 1);
+        failLogins(banManager, "2001:db8:0:1::2", 1);
+
+        assertTrue(banManager.isBanned(address("2001:db8:0:1:ffff::1")));
+        assertFalse(banManager.isBanned(address("2001:db8:0:2::1")));
+        assertTrue(banManager.getBans().containsKey("2001:db8:0:1:0:0:0:0/64"));
+    }
+
+    public void testBanIpv6Address() throws Exception {
+        DefaultBanManager banManager = createBanManager(0, 0);
+        banManager.ban(address("2001:db8::1"), 60);
+
+        assertTrue(banManager.isBanned(address("2001:db8::1")));
+        assertFalse(banManager.isBanned(address("2001:db8::2")));
+        assertTrue(banManager.getBans().containsKey("2001:db8:0:0:0:0:0:1/128"));
+    }
+
+    public void testManualBanAndUnban() throws Exception {
+        DefaultBanManager banManager = createBanManager(0, 0);
+        banManager.ban(address("1.2.3.4"), 60);
+        assertTrue(banManager.isBanned(address("1.2.3.4")));
+        assertEquals(new Date(now + 60000), banManager.getBans().get(
+                "1.2.3.4/32"));
+
+        assertTrue(banManager.unban(address("1.2.3.4")));
+        assertFalse(banManager.isBanned(address("1.2.3.4")));
+        assertFalse(banManager.unban(address("1.2.3.4")));
+    }
+
+    public void testUnbanLiftsSubnetBan() throws Exception {
+        DefaultBanManager banManager = createBanManager(0, 2);
+        failLogins(banManager, "1.2.3.4", 1);
+        failLogins(banManager, "1.2.3.5", 1);
+
+        assertTrue(banManager.unban(address("1.2.3.6")));
+        assertFalse(banManager.isBanned(address("1.2.3.4")));
+    }
+
+    public void testBoundedMemory() throws Exception {
+        DefaultBanManager banManager = createBanManager(1, 0, 100);
+        for (int i = 0; i < 1000; i++) {
+            failLogins(banManager, "10.0." + (i / 256) + "." + (i % 256), 1);
+        }
+        assertTrue(banManager.getBans().size() <= 100);
+        // the most recent ban is kept
+        assertTrue(banManager.isBanned(address("10.0.3.231")));
+    }
+
+    public void testLimitsChangedAtRuntime() throws Exception {
+        DefaultBanManager banManager = createBanManager(5, 0);
+        failLogins(banManager, "1.2.3.4", 3);
+        assertFalse(banManager.isBanned(address("1.2.3.4")));
+
+        ConnectionConfigFactory factory = new ConnectionConfigFactory(context
+                .getConnectionConfig());
+        factory.setBanLoginFailures(4);
+        context.setConnectionConfig(factory.createConnectionConfig());
+        failLogins(banManager, "1.2.3.4", 1);
+        assertTrue(banManager.isBanned(address("1.2.3.4")));
+    }
+}
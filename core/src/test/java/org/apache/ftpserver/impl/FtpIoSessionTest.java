@@ -0,0 +1,266 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.impl;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.ftplet.DataType;
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ftplet.Structure;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.util.IoUtils;
+import org.apache.mina.core.session.DummySession;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class FtpIoSessionTest extends TestCase {
+
+    private DummySession minaSession = new DummySession();
+
+    private DefaultFtpServerContext context = new DefaultFtpServerContext();
+
+    private FtpIoSession session = new FtpIoSession(minaSession, context);
+
+    private static final File HOME_DIR = new File("test-tmp/hibernation");
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (HOME_DIR.exists()) {
+            IoUtils.delete(HOME_DIR);
+        }
+    }
+
+    private void login() throws Exception {
+        new File(HOME_DIR, "dir1").mkdirs();
+        BaseUser user = new BaseUser();
+        user.setName("user1");
+        user.setHomeDirectory(HOME_DIR.getAbsolutePath());
+        session.setUser(user);
+        FileSystemView view = context.getFileSystemManager()
+                .createFileSystemView(user);
+        assertTrue(view.changeWorkingDirectory("dir1"));
+        session.setLogin(view);
+    }
+
+    private void setUpDataConnection() throws Exception {
+        minaSession.setLocalAddress(new InetSocketAddress(InetAddress
+                .getByName("127.0.0.1"), 21));
+        session.setListener(new ListenerFactory().createListener());
+    }
+
+    public void testStateSharedBetweenWrappers() {
+        BaseUser user = new BaseUser();
+        user.setName("user1");
+        session.setUser(user);
+        session.setLanguage("en");
+        session.setFileOffset(10);
+        session.setDataType(DataType.BINARY);
+
+        FtpIoSession other = new FtpIoSession(minaSession, null);
+        assertSame(user, other.getUser());
+        assertTrue(other.isLoggedIn());
+        assertEquals("en", other.getLanguage());
+        assertEquals(10, other.getFileOffset());
+        assertEquals(DataType.BINARY, other.getDataType());
+        assertEquals(session.getSessionId(), other.getSessionId());
+    }
+
+    public void testStoredAsSingleAttribute() {
+        session.setUserArgument("user1");
+        session.setLanguage("en");
+        session.updateLastAccessTime();
+        session.increaseFailedLogins();
+
+        assertEquals(1, minaSession.getAttributeKeys().size());
+        assertTrue(minaSession.getAttribute(FtpSessionState.ATTRIBUTE_STATE) instanceof FtpSessionState);
+    }
+
+    public void testDefaults() {
+        assertNull(session.getUser());
+        assertFalse(session.isLoggedIn());
+        assertNull(session.getLoginTime());
+        assertNull(session.getLastAccessTime());
+        assertEquals(0, session.getMaxIdleTime());
+        assertEquals(0, session.getFailedLogins());
+        assertEquals(DataType.ASCII, session.getDataType());
+        assertEquals(Structure.FILE, session.getStructure());
+
+        session.setDataType(DataType.BINARY);
+        session.setDataType(null);
+        assertEquals(DataType.ASCII, session.getDataType());
+    }
+
+    public void testFailedLogins() {
+        session.increaseFailedLogins();
+        new FtpIoSession(minaSession, null).increaseFailedLogins();
+        assertEquals(2, session.getFailedLogins());
+    }
+
+    public void testLoginTimes() {
+        long before = System.currentTimeMillis();
+        session.setLogin(null);
+        session.updateLastAccessTime();
+
+        assertTrue(session.getLoginTime().getTime() >= before);
+        assertTrue(session.getLastAccessTime().getTime() >= before);
+    }
+
+    public void testReinitialize() {
+        BaseUser user = new BaseUser();
+        user.setName("user1");
+        session.setUser(user);
+        session.setUserArgument("user1");
+        session.setLogin(null);
+        session.setFileOffset(10);
+        session.setLanguage("en");
+        session.setStructure(Structure.FILE);
+
+        session.reinitialize();
+
+        assertNull(session.getUser());
+        assertNull(session.getUserArgument());
+        assertNull(session.getLoginTime());
+        assertEquals(0, session.getFileOffset());
+        assertEquals("en", session.getLanguage());
+    }
+
+    public void testFtpletAttributes() {
+        FtpSession ftpletSession = session.getFtpletSession();
+        ftpletSession.setAttribute("foo", "bar");
+
+        assertEquals("bar", ftpletSession.getAttribute("foo"));
+        assertEquals("bar", session.getAttribute("foo"));
+        ftpletSession.removeAttribute("foo");
+        assertNull(ftpletSession.getAttribute("foo"));
+
+        try {
+            ftpletSession.setAttribute(FtpSessionState.ATTRIBUTE_STATE, "foo");
+            fail("Must throw IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // OK
+        }
+    }
+
+    public void testHibernateReleasesFileSystemView() throws Exception {
+        login();
+        FileSystemView view = session.getFileSystemView();
+
+        session.hibernate();
+        assertNull(session.getActiveFileSystemView());
+
+        FileSystemView restored = session.getFileSystemView();
+        assertNotNull(restored);
+        assertNotSame(view, restored);
+        assertEquals("/dir1", restored.getWorkingDirectory()
+                .getAbsolutePath());
+        assertSame(restored, session.getActiveFileSystemView());
+    }
+
+    public void testHibernateWithDeletedWorkingDirectory() throws Exception {
+        login();
+        session.hibernate();
+        IoUtils.delete(new File(HOME_DIR, "dir1"));
+
+        assertEquals("/", session.getFileSystemView().getWorkingDirectory()
+                .getAbsolutePath());
+    }
+
+    public void testReinitializeHibernatedSession() throws Exception {
+        login();
+        session.hibernate();
+        session.reinitialize();
+
+        assertNull(session.getFileSystemView());
+    }
+
+    public void testHibernateReleasesIdleDataConnection() throws Exception {
+        setUpDataConnection();
+        ServerDataConnectionFactory dataCon = session.getDataConnection();
+        dataCon.setSecure(true);
+        dataCon.setZipMode(true);
+
+        session.hibernate();
+
+        ServerDataConnectionFactory restored = session.getDataConnection();
+        assertNotSame(dataCon, restored);
+        assertTrue(restored.isSecure());
+        assertTrue(restored.isZipMode());
+    }
+
+    public void testHibernateKeepsRequestedDataConnection() throws Exception {
+        setUpDataConnection();
+        ServerDataConnectionFactory dataCon = session.getDataConnection();
+        dataCon.initActiveDataConnection(new InetSocketAddress(InetAddress
+                .getByName("127.0.0.1"), 2121));
+
+        session.hibernate();
+        assertSame(dataCon, session.getDataConnection());
+
+        dataCon.closeDataConnection();
+        session.hibernate();
+        assertNotSame(dataCon, session.getDataConnection());
+    }
+
+    public void testHibernateShrinksReadBuffer() {
+        minaSession.getConfig().setMinReadBufferSize(64);
+        minaSession.getConfig().setReadBufferSize(2048);
+
+        session.hibernate();
+        assertEquals(64, minaSession.getConfig().getReadBufferSize());
+    }
+
+    public void testLogoutCountedOnlyForCountedLogin() throws Exception {
+        // another session of the same user
+        context.getLoginCounterStore().login("user1", null);
+
+        // logged in, but failed before the login was counted
+        login();
+        session.countLogout(true);
+        assertEquals(1, context.getLoginCounterStore().getLoginCount("user1"));
+    }
+
+    public void testLogoutCounted() throws Exception {
+        login();
+        session.countLogin();
+        assertEquals(1, context.getLoginCounterStore().getLoginCount("user1"));
+
+        session.reinitialize();
+        assertEquals(0, context.getLoginCounterStore().getLoginCount("user1"));
+
+        // counted once only
+        session.countLogout(true);
+        assertEquals(0, context.getLoginCounterStore().getLoginCount("user1"));
+    }
+
+    public void testLoginNotCountedAfterClose() throws Exception {
+        login();
+        session.countLogout(true);
+        session.countLogin();
+        assertEquals(0, context.getLoginCounterStore().getLoginCount("user1"));
+    }
+}
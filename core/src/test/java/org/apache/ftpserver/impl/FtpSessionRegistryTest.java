@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.listener.Listener;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.mina.core.session.DummySession;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class FtpSessionRegistryTest extends TestCase {
+
+    private FtpSessionRegistry registry = new FtpSessionRegistry();
+
+    private static DummySession createMinaSession(String address)
+            throws Exception {
+        DummySession session = new DummySession();
+        session.setRemoteAddress(new InetSocketAddress(InetAddress
+                .getByName(address), 1234));
+        return session;
+    }
+
+    private static FtpIoSession createSession(String address) throws Exception {
+        return new FtpIoSession(createMinaSession(address), null);
+    }
+
+    private static void setUser(FtpIoSession session, String name) {
+        BaseUser user = new BaseUser();
+        user.setName(name);
+        session.setUser(user);
+    }
+
+    public void testAddAndRemove() throws Exception {
+        FtpIoSession session1 = createSession("1.2.3.4");
+        FtpIoSession session2 = createSession("1.2.3.4");
+        registry.add(session1);
+        registry.add(session2);
+
+        assertEquals(2, registry.size());
+        assertSame(session1, registry.getSession(session1.getSessionId()));
+        assertEquals(2, registry.getSessionsByAddress(
+                InetAddress.getByName("1.2.3.4")).size());
+
+        registry.remove(session1);
+        assertEquals(1, registry.size());
+        assertNull(registry.getSession(session1.getSessionId()));
+        assertEquals(1, registry.getSessionsByAddress(
+                InetAddress.getByName("1.2.3.4")).size());
+
+        registry.remove(session2);
+        assertEquals(0, registry.size());
+        assertTrue(registry.getSessions().isEmpty());
+        assertTrue(registry.getSessionsByAddress(
+                InetAddress.getByName("1.2.3.4")).isEmpty());
+    }
+
+    public void testSessionsByListener() throws Exception {
+        Listener listener1 = new ListenerFactory().createListener();
+        Listener listener2 = new ListenerFactory().createListener();
+        Set<FtpIoSession> sessions1 = registry.getSessionsByListener(listener1);
+
+        FtpIoSession session1 = createSession("1.2.3.4");
+        session1.setListener(listener1);
+        FtpIoSession session2 = createSession("1.2.3.5");
+        session2.setListener(listener2);
+        registry.add(session1);
+        registry.add(session2);
+
+        // the view is live
+        assertEquals(1, sessions1.size());
+        assertSame(session1, sessions1.iterator().next());
+        assertEquals(1, registry.getSessionsByListener(listener2).size());
+        try {
+            sessions1.clear();
+            fail("Must be unmodifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        registry.remove(session1);
+        assertTrue(sessions1.isEmpty());
+    }
+
+    public void testOtherWrapperResolvesToRegisteredSession() throws Exception {
+        DummySession minaSession = createMinaSession("1.2.3.4");
+        FtpIoSession session = new FtpIoSession(minaSession, null);
+        registry.add(session);
+
+        FtpIoSession otherWrapper = new FtpIoSession(minaSession, null);
+        setUser(otherWrapper, "user1");
+        registry.login(otherWrapper);
+
+        assertEquals(1, registry.getSessionsByUser("user1").size());
+        assertSame(session, registry.getSessionsByUser("user1").iterator()
+                .next());
+
+        registry.remove(otherWrapper);
+        assertEquals(0, registry.size());
+        assertTrue(registry.getSessionsByUser("user1").isEmpty());
+    }
+
+    public void testLoginAndLogout() throws Exception {
+        FtpIoSession session1 = createSession("1.2.3.4");
+        FtpIoSession session2 = createSession("1.2.3.5");
+        registry.add(session1);
+        registry.add(session2);
+
+        setUser(session1, "user1");
+        registry.login(session1);
+        setUser(session2, "user1");
+        registry.login(session2);
+
+        assertEquals(2, registry.getSessionsByUser("user1").size());
+        assertTrue(registry.getSessionsByUser("user2").isEmpty());
+
+        registry.logout(session1);
+        assertEquals(1, registry.getSessionsByUser("user1").size());
+        assertTrue(registry.getSessionsByUser("user1").contains(session2));
+    }
+
+    public void testLoginUnknownSession() throws Exception {
+        FtpIoSession session = createSession("1.2.3.4");
+        setUser(session, "user1");
+        registry.login(session);
+
+        assertTrue(registry.getSessionsByUser("user1").isEmpty());
+    }
+
+    public void testViewsAreUnmodifiable() throws Exception {
+        FtpIoSession session = createSession("1.2.3.4");
+        registry.add(session);
+
+        try {
+            registry.getSessions().clear();
+            fail("Must throw UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // OK
+        }
+        assertEquals(1, registry.size());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class HeavyHittersTest extends TestCase {
+
+    private static final long NOW = 1000000;
+
+    public void testExactBelowCapacity() {
+        HeavyHitters heavyHitters = new HeavyHitters(10, 1000, 10);
+        heavyHitters.add("a", 5, NOW);
+        heavyHitters.add("b", 7, NOW);
+        heavyHitters.add("a", 3, NOW);
+        heavyHitters.add("c", 1, NOW);
+
+        List<HeavyHitter> top = heavyHitters.getTop(2, NOW);
+        assertEquals(2, top.size());
+        assertEquals("a", top.get(0).getKey());
+        assertEquals(8, top.get(0).getCount());
+        assertEquals(0, top.get(0).getError());
+        assertEquals("b", top.get(1).getKey());
+        assertEquals(7, top.get(1).getCount());
+    }
+
+    public void testIgnoreEmptyUpdates() {
+        HeavyHitters heavyHitters = new HeavyHitters(10, 1000, 10);
+        heavyHitters.add(null, 5, NOW);
+        heavyHitters.add("a", 0, NOW);
+
+        assertTrue(heavyHitters.getTop(10, NOW).isEmpty());
+    }
+
+    public void testHeavyKeysSurviveEviction() {
+        // 11500 updates over 32 counters, any key seen more than 360 times
+        // is guaranteed to be tracked
+        HeavyHitters heavyHitters = new HeavyHitters(32, 1000, 1);
+        for (int i = 0; i < 10000; i++) {
+            heavyHitters.add("key" + i, 1, NOW);
+            if (i % 10 == 0) {
+                heavyHitters.add("hot", 1, NOW);
+            }
+            if (i % 20 == 0) {
+                heavyHitters.add("warm", 1, NOW);
+            }
+        }
+
+        List<HeavyHitter> top = heavyHitters.getTop(2, NOW);
+        assertEquals("hot", top.get(0).getKey());
+        assertEquals("warm", top.get(1).getKey());
+        for (HeavyHitter heavyHitter : top) {
+            assertTrue(heavyHitter.getGuaranteedCount() <= (heavyHitter
+                    .getKey().equals("hot") ? 1000 : 500));
+            assertTrue(heavyHitter.getCount() >= (heavyHitter.getKey()
+                    .equals("hot") ? 1000 : 500));
+        }
+        assertEquals(32, heavyHitters.getTop(100, NOW).size());
+    }
+
+    public void testSlidingWindow() {
+        HeavyHitters heavyHitters = new HeavyHitters(10, 1000, 4);
+        heavyHitters.add("old", 100, NOW);
+        heavyHitters.add("new", 10, NOW + 500);
+        heavyHitters.add("new", 10, NOW + 750);
+
+        List<HeavyHitter> top = heavyHitters.getTop(10, NOW + 750);
+        assertEquals("old", top.get(0).getKey());
+        assertEquals(20, top.get(1).getCount());
+
+        // the slice of the first update has left the window
+        top = heavyHitters.getTop(10, NOW + 1000);
+        assertEquals(1, top.size());
+        assertEquals("new", top.get(0).getKey());
+
+        // and is reused for new updates
+        heavyHitters.add("newer", 1, NOW + 1000);
+        top = heavyHitters.getTop(10, NOW + 1000);
+        assertEquals(2, top.size());
+        assertEquals("newer", top.get(1).getKey());
+
+        assertTrue(heavyHitters.getTop(10, NOW + 10000).isEmpty());
+    }
+
+    public void testClear() {
+        HeavyHitters heavyHitters = new HeavyHitters(10, 1000, 4);
+        heavyHitters.add("a", 1, NOW);
+        heavyHitters.clear();
+
+        assertTrue(heavyHitters.getTop(10, NOW).isEmpty());
+    }
+
+    public void testInvalidSettings() {
+        try {
+            new HeavyHitters(0, 1000, 4);
+            fail("Must throw IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // OK
+        }
+        try {
+            new HeavyHitters(10, 2, 4);
+            fail("Must throw IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // OK
+        }
+    }
+}
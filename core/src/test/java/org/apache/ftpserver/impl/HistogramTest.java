@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class HistogramTest extends TestCase {
+
+    public void testBuckets() {
+        int previous = -1;
+        for (long value = 0; value < 100000; value++) {
+            int index = Histogram.bucketIndex(value);
+            assertTrue(index == previous || index == previous + 1);
+            previous = index;
+
+            long highest = Histogram.highestValue(index);
+            assertTrue(highest >= value);
+            assertTrue(highest - value <= Math.max(value / 8, 0));
+        }
+        assertEquals(Histogram.BUCKETS - 1, Histogram
+                .bucketIndex(Histogram.MAX_VALUE));
+        assertEquals(Histogram.MAX_VALUE, Histogram
+                .highestValue(Histogram.BUCKETS - 1));
+    }
+
+    public void testEmpty() {
+        HistogramSnapshot snapshot = new Histogram().getSnapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0, snapshot.getPercentile99());
+        assertEquals(0.0, snapshot.getMean(), 0);
+    }
+
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        HistogramSnapshot snapshot = histogram.getSnapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500.5, snapshot.getMean(), 0.001);
+        assertEquals(1000, snapshot.getMax());
+        assertWithinError(500, snapshot.getMedian());
+        assertWithinError(900, snapshot.getPercentile90());
+        assertWithinError(990, snapshot.getPercentile99());
+        assertEquals(1000, snapshot.getPercentile(100));
+        assertEquals(1, snapshot.getPercentile(0));
+    }
+
+    private static void assertWithinError(long expected, long actual) {
+        assertTrue(actual + " for " + expected, actual >= expected
+                && actual <= expected + expected / 8);
+    }
+
+    public void testOutOfRange() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        HistogramSnapshot snapshot = histogram.getSnapshot();
+        assertEquals(2, snapshot.getCount());
+        assertEquals(0, snapshot.getPercentile(50));
+        assertEquals(Histogram.MAX_VALUE, snapshot.getMax());
+    }
+
+    public void testConcurrentRecording() throws Exception {
+        final Histogram histogram = new Histogram();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        histogram.record(j);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        HistogramSnapshot snapshot = histogram.getSnapshot();
+        assertEquals(80000, snapshot.getCount());
+        assertEquals(8 * (9999L * 10000 / 2), snapshot.getSum());
+        assertEquals(9999, snapshot.getMax());
+    }
+
+    public void testReset() {
+        Histogram histogram = new Histogram();
+        histogram.record(10);
+        histogram.reset();
+        assertEquals(0, histogram.getSnapshot().getCount());
+        assertEquals(0, histogram.getSnapshot().getMax());
+    }
+}
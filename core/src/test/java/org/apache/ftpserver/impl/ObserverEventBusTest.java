@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.impl.ObserverEventBus.OverflowPolicy;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.mina.core.session.DummySession;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class ObserverEventBusTest extends TestCase {
+
+    private ObserverEventBus bus;
+
+    private final List<String> events = Collections
+            .synchronizedList(new ArrayList<String>());
+
+    /**
+     * Blocks delivery of the first event until released
+     */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final CountDownLatch blocked = new CountDownLatch(1);
+
+    private class RecordingObserver implements StatisticsObserver,
+            SnapshotFileObserver {
+
+        private final boolean blocking;
+
+        private RecordingObserver(boolean blocking) {
+            this.blocking = blocking;
+        }
+
+        private void record(String event) {
+            if (blocking) {
+                blocked.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            events.add(event);
+        }
+
+        public void notifyUpload() {
+            record("upload");
+        }
+
+        public void notifyDownload() {
+            record("download");
+        }
+
+        public void notifyDelete() {
+            record("delete");
+        }
+
+        public void notifyMkdir() {
+            record("mkdir");
+        }
+
+        public void notifyRmdir() {
+            record("rmdir");
+        }
+
+        public void notifyLogin(boolean anonymous) {
+            record("login " + anonymous);
+        }
+
+        public void notifyLoginFail(InetAddress address) {
+            record("loginfail " + address.getHostAddress());
+        }
+
+        public void notifyLogout(boolean anonymous) {
+            record("logout " + anonymous);
+        }
+
+        public void notifyOpenConnection() {
+            record("open");
+        }
+
+        public void notifyCloseConnection() {
+            record("close");
+        }
+
+        public void notifyUpload(SessionSnapshot session, FtpFile file,
+                long size) {
+            record("file upload " + size);
+        }
+
+        public void notifyDownload(SessionSnapshot session, FtpFile file,
+                long size) {
+            record("file download " + size);
+        }
+
+        public void notifyDelete(SessionSnapshot session, FtpFile file) {
+            record("file delete");
+        }
+
+        public void notifyMkdir(SessionSnapshot session, FtpFile file) {
+            if (session != null) {
+                record("file mkdir " + session.getUserName() + " "
+                        + session.getClientAddress() + " "
+                        + session.getSessionId());
+            } else {
+                record("file mkdir");
+            }
+        }
+
+        public void notifyRmdir(SessionSnapshot session, FtpFile file) {
+            record("file rmdir");
+        }
+    }
+
+    private ObserverEventBus createBus(int capacity, OverflowPolicy policy,
+            boolean blocking) {
+        bus = new ObserverEventBus(capacity, 4, policy, 2);
+        RecordingObserver observer = new RecordingObserver(blocking);
+        bus.setObserver(observer);
+        bus.setFileObserver(observer);
+        bus.start();
+        return bus;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        release.countDown();
+        if (bus != null) {
+            bus.stop();
+        }
+    }
+
+    public void testDeliverInOrder() throws Exception {
+        createBus(16, OverflowPolicy.BLOCK, false);
+        bus.notifyOpenConnection();
+        bus.notifyLogin(true);
+        bus.notifyUpload(null, null, 10);
+        bus.notifyUpload();
+        bus.notifyLoginFail(InetAddress.getByName("1.2.3.4"));
+        bus.notifyLogout(false);
+        bus.notifyCloseConnection();
+        bus.stop();
+
+        assertEquals("[open, login true, file upload 10, upload, "
+                + "loginfail 1.2.3.4, logout false, close]", events.toString());
+        assertEquals(7, bus.getPublishedEvents());
+        assertEquals(7, bus.getDeliveredEvents());
+        assertEquals(0, bus.getDroppedEvents());
+        assertEquals(0, bus.getBacklog());
+        assertTrue(bus.getDeliveredBatches() >= 2);
+    }
+
+    public void testSessionCopiedWhenPublished() throws Exception {
+        createBus(4, OverflowPolicy.BLOCK, true);
+        bus.notifyMkdir();
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+        DummySession minaSession = new DummySession();
+        FtpIoSession session = new FtpIoSession(minaSession, null);
+        BaseUser user = new BaseUser();
+        user.setName("user1");
+        session.setUser(user);
+        bus.notifyMkdir(session, null);
+        String expected = "file mkdir user1 " + minaSession.getRemoteAddress()
+                + " " + session.getSessionId();
+
+        // changes after publishing are not seen by the observer
+        session.setUser(null);
+        release.countDown();
+        bus.stop();
+
+        assertEquals("[mkdir, " + expected + "]", events.toString());
+    }
+
+    public void testDropWhenFull() throws Exception {
+        createBus(4, OverflowPolicy.DROP, true);
+        bus.notifyMkdir();
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+        // the first event is being delivered, the buffer holds 4 more
+        for (int i = 0; i < 10; i++) {
+            bus.notifyRmdir();
+        }
+        assertEquals(4, bus.getBacklog());
+        assertEquals(6, bus.getDroppedEvents());
+
+        Thread.sleep(20);
+        release.countDown();
+        bus.stop();
+        assertEquals(5, events.size());
+        assertEquals(5, bus.getDeliveredEvents());
+        assertTrue(bus.getMaxLag() >= 20);
+    }
+
+    public void testBlockWhenFull() throws Exception {
+        createBus(4, OverflowPolicy.BLOCK, true);
+        bus.notifyMkdir();
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+        Thread releaser = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                release.countDown();
+            }
+        };
+        releaser.start();
+        for (int i = 0; i < 10; i++) {
+            bus.notifyRmdir();
+        }
+        releaser.join();
+        bus.stop();
+
+        assertEquals(11, events.size());
+        assertEquals(0, bus.getDroppedEvents());
+    }
+
+    public void testSampleWhenHalfFull() throws Exception {
+        createBus(8, OverflowPolicy.SAMPLE, true);
+        bus.notifyMkdir();
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+        // 4 published before half full, then every other one until full
+        for (int i = 0; i < 20; i++) {
+            bus.notifyRmdir();
+        }
+        assertEquals(8, bus.getBacklog());
+        assertEquals(12, bus.getDroppedEvents());
+    }
+
+    public void testDropWhenStopped() throws Exception {
+        createBus(4, OverflowPolicy.BLOCK, false);
+        bus.stop();
+        bus.notifyMkdir();
+
+        assertEquals(1, bus.getDroppedEvents());
+        assertTrue(events.isEmpty());
+    }
+
+    public void testFailingObserver() throws Exception {
+        bus = new ObserverEventBus(4, OverflowPolicy.BLOCK);
+        bus.setObserver(new RecordingObserver(false) {
+            @Override
+            public void notifyMkdir() {
+                throw new RuntimeException("Test");
+            }
+        });
+        bus.start();
+        bus.notifyMkdir();
+        bus.notifyRmdir();
+        bus.stop();
+
+        assertEquals("[rmdir]", events.toString());
+        assertEquals(2, bus.getDeliveredEvents());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoEvent;
+import org.apache.mina.core.session.IoEventType;
+import org.apache.mina.core.session.IoSession;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class OrderedVirtualThreadExecutorTest extends TestCase {
+
+    private OrderedVirtualThreadExecutor executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        executor = new OrderedVirtualThreadExecutor();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private static class TestEvent extends IoEvent {
+        private final Runnable action;
+
+        public TestEvent(IoSession session, Runnable action) {
+            super(IoEventType.MESSAGE_RECEIVED, session, null);
+            this.action = action;
+        }
+
+        @Override
+        public void fire() {
+            action.run();
+        }
+    }
+
+    public void testEventsRunInOrderPerSession() throws Exception {
+        final int count = 1000;
+        IoSession[] sessions = new IoSession[] { new DummySession(),
+                new DummySession(), new DummySession() };
+        final List<List<Integer>> results = new ArrayList<List<Integer>>();
+        final CountDownLatch done = new CountDownLatch(sessions.length * count);
+
+        for (int i = 0; i < sessions.length; i++) {
+            results.add(Collections.synchronizedList(new ArrayList<Integer>()));
+        }
+
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < sessions.length; j++) {
+                final List<Integer> result = results.get(j);
+                final int value = i;
+                executor.execute(new TestEvent(sessions[j], new Runnable() {
+                    public void run() {
+                        result.add(value);
+                        done.countDown();
+                    }
+                }));
+            }
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (List<Integer> result : results) {
+            assertEquals(count, result.size());
+            for (int i = 0; i < count; i++) {
+                assertEquals(i, result.get(i).intValue());
+            }
+        }
+    }
+
+    public void testBlockedSessionDoesNotBlockOthers() throws Exception {
+        // more blocked sessions than the default thread pool size
+        final int blocked = 50;
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(blocked);
+
+        for (int i = 0; i < blocked; i++) {
+            executor.execute(new TestEvent(new DummySession(), new Runnable() {
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    done.countDown();
+                }
+            }));
+        }
+
+        executor.execute(new TestEvent(new DummySession(), new Runnable() {
+            public void run() {
+                release.countDown();
+            }
+        }));
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+}
@@ -180,4 +180,26 @@ public class PassivePortsTest extends TestCase {
         assertEquals(0, valid.size());
     }
 
-}
\ No newline at end of file
+    public void testReplaceKeepsReservations() {
+        PassivePorts ports = new PassivePorts("123, 456", false);
+        ports.reserveNextPort();
+        ports.reserveNextPort();
+        assertEquals(2, ports.getReservedPortCount());
+
+        PassivePorts replaced = new PassivePorts("456, 789", ports);
+        assertEquals(2, replaced.getPortCount());
+        assertEquals(1, replaced.getReservedPortCount());
+
+        // 456 is still in use
+        assertEquals(789, replaced.reserveNextPort());
+        assertEquals(-1, replaced.reserveNextPort());
+
+        // 123 is no longer part of the configuration
+        replaced.releasePort(123);
+        assertEquals(-1, replaced.reserveNextPort());
+
+        replaced.releasePort(456);
+        assertEquals(456, replaced.reserveNextPort());
+    }
+
+}
@@ -19,10 +19,16 @@
 
 package org.apache.ftpserver.impl;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.Date;
+import java.util.concurrent.CountDownLatch;
 
 import junit.framework.TestCase;
 
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.mina.core.session.DummySession;
+
 /**
 *
 * @author <a href="http://mina.apache.org">Apache MINA Project</a>
@@ -58,6 +64,111 @@ public abstract class ServerFtpStatisticsTestTemplate extends TestCase {
         assertEquals(0, stats.getCurrentConnectionNumber());
     }
 
+    private static FtpIoSession createSession(String userName, String address)
+            throws Exception {
+        DummySession minaSession = new DummySession();
+        minaSession.setRemoteAddress(new InetSocketAddress(InetAddress
+                .getByName(address), 1234));
+        FtpIoSession session = new FtpIoSession(minaSession, null);
+        BaseUser user = new BaseUser();
+        user.setName(userName);
+        session.setUser(user);
+        return session;
+    }
+
+    public void testUserLoginCount() throws Exception {
+        ServerFtpStatistics stats = createStatistics();
+        FtpIoSession session1 = createSession("user1", "1.2.3.4");
+        FtpIoSession session2 = createSession("user1", "1.2.3.5");
+        FtpIoSession session3 = createSession("anonymous", "1.2.3.4");
+        InetAddress address = InetAddress.getByName("1.2.3.4");
+
+        stats.setLogin(session1);
+        stats.setLogin(session2);
+        stats.setLogin(session3);
+        assertEquals(3, stats.getCurrentLoginNumber());
+        assertEquals(1, stats.getCurrentAnonymousLoginNumber());
+        assertEquals(2, stats.getCurrentUserLoginNumber(session1.getUser()));
+        assertEquals(1, stats.getCurrentUserLoginNumber(session1.getUser(),
+                address));
+        assertEquals(1, stats.getCurrentUserLoginNumber(session3.getUser(),
+                address));
+
+        stats.setLogout(session1);
+        stats.setLogout(session3);
+        assertEquals(1, stats.getCurrentLoginNumber());
+        assertEquals(0, stats.getCurrentAnonymousLoginNumber());
+        assertEquals(1, stats.getCurrentUserLoginNumber(session1.getUser()));
+        assertEquals(0, stats.getCurrentUserLoginNumber(session1.getUser(),
+                address));
+        assertEquals(3, stats.getTotalLoginNumber());
+        assertEquals(1, stats.getTotalAnonymousLoginNumber());
+
+        // logging out again must not go below zero
+        stats.setLogout(session1);
+        assertEquals(0, stats.getCurrentUserLoginNumber(session1.getUser(),
+                address));
+    }
+
+    public void testConcurrentUpdates() throws Exception {
+        final ServerFtpStatistics stats = createStatistics();
+        final int threads = 8;
+        final int iterations = 1000;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final FtpIoSession session = createSession("user", "1.2.3."
+                    + (i % 2));
+            workers[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < iterations; j++) {
+                        stats.setOpenConnection(session);
+                        stats.setLogin(session);
+                        stats.setDownload(session, null, 10);
+                        stats.setLogout(session);
+                        stats.setCloseConnection(session);
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(threads * iterations, stats.getTotalConnectionNumber());
+        assertEquals(0, stats.getCurrentConnectionNumber());
+        assertEquals(threads * iterations, stats.getTotalLoginNumber());
+        assertEquals(0, stats.getCurrentLoginNumber());
+        assertEquals(threads * iterations, stats.getTotalDownloadNumber());
+        assertEquals(threads * iterations * 10L, stats.getTotalDownloadSize());
+        BaseUser user = new BaseUser();
+        user.setName("user");
+        assertEquals(0, stats.getCurrentUserLoginNumber(user));
+    }
+
+    public void testResetCounters() throws Exception {
+        ServerFtpStatistics stats = createStatistics();
+        FtpIoSession session = createSession("user1", "1.2.3.4");
+        stats.setOpenConnection(session);
+        stats.setUpload(session, null, 100);
+        stats.setLoginFail(session);
+
+        stats.resetStatisticsCounters();
+        assertEquals(0, stats.getTotalConnectionNumber());
+        assertEquals(1, stats.getCurrentConnectionNumber());
+        assertEquals(0, stats.getTotalUploadNumber());
+        assertEquals(0, stats.getTotalUploadSize());
+        assertEquals(0, stats.getTotalFailedLoginNumber());
+    }
+
     @SuppressWarnings("deprecation")
     public void testStartDateImmutable() {
         ServerFtpStatistics stats = createStatistics();
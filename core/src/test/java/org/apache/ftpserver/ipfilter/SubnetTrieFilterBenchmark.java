@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.ipfilter;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.filter.firewall.Subnet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark comparing {@link RemoteIpFilter} with
+ * {@link SubnetTrieFilter} for block lists of random /16 to /32 subnets,
+ * accepting sessions from addresses mostly not in the list, which is the
+ * common and, for the linear scan, worst case. Run with the test classpath, e.g.
+ * through <code>java -cp ... SubnetTrieFilterBenchmark</code>. Setting up
+ * the {@link RemoteIpFilter} with 100000 subnets takes a while, as every
+ * subnet added is compared with the ones already in the set.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubnetTrieFilterBenchmark {
+
+    private static final int SESSIONS = 1024;
+
+    @Param( { "100", "10000", "100000" })
+    private int subnetCount;
+
+    private RemoteIpFilter remoteIpFilter;
+
+    private SubnetTrieFilter subnetTrieFilter;
+
+    private DummySession[] sessions;
+
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        Random random = new Random(42);
+        List<String> subnets = new ArrayList<String>();
+        List<Subnet> minaSubnets = new ArrayList<Subnet>();
+        for (int i = 0; i < subnetCount; i++) {
+            // block list entries in 1.0.0.0/8 to 126.0.0.0/8
+            int prefixLength = 16 + random.nextInt(17);
+            int bits = ((1 + random.nextInt(126)) << 24)
+                    | random.nextInt(1 << 24);
+            // Subnet expects the host bits to be cleared
+            bits &= (int) (0xFFFFFFFF00000000L >>> prefixLength);
+            InetAddress address = InetAddress.getByAddress(new byte[] {
+                    (byte) (bits >>> 24), (byte) (bits >>> 16),
+                    (byte) (bits >>> 8), (byte) bits });
+            subnets.add(address.getHostAddress() + "/" + prefixLength);
+            minaSubnets.add(new Subnet(address, prefixLength));
+        }
+        remoteIpFilter = new RemoteIpFilter(IpFilterType.DENY, minaSubnets);
+        subnetTrieFilter = new SubnetTrieFilter(IpFilterType.DENY);
+        subnetTrieFilter.setSubnets(subnets);
+
+        // clients connecting from the address range of the block list, most
+        // of them not blocked
+        sessions = new DummySession[SESSIONS];
+        for (int i = 0; i < SESSIONS; i++) {
+            sessions[i] = new DummySession();
+            sessions[i].setRemoteAddress(new InetSocketAddress(InetAddress
+                    .getByAddress(new byte[] {
+                            (byte) (1 + random.nextInt(126)),
+                            (byte) random.nextInt(256),
+                            (byte) random.nextInt(256),
+                            (byte) random.nextInt(256) }), 1234));
+        }
+    }
+
+    private DummySession nextSession() {
+        next = (next + 1) & (SESSIONS - 1);
+        return sessions[next];
+    }
+
+    @Benchmark
+    public boolean remoteIpFilter() {
+        return remoteIpFilter.accept(nextSession());
+    }
+
+    @Benchmark
+    public boolean subnetTrieFilter() {
+        return subnetTrieFilter.accept(nextSession());
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(
+                SubnetTrieFilterBenchmark.class.getSimpleName()).build())
+                .run();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.ipfilter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import junit.framework.TestCase;
+
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class SubnetTrieFilterTest extends TestCase {
+
+    private static final File TEST_TMP_DIR = new File("test-tmp");
+
+    private static final File SUBNETS_FILE = new File(TEST_TMP_DIR,
+            "subnets.txt");
+
+    @Override
+    protected void setUp() throws Exception {
+        TEST_TMP_DIR.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SUBNETS_FILE.delete();
+    }
+
+    private static IoSession createSession(String address) throws Exception {
+        DummySession session = new DummySession();
+        session.setRemoteAddress(new InetSocketAddress(InetAddress
+                .getByName(address), 1234));
+        return session;
+    }
+
+    private static void writeSubnets(String subnets) throws IOException {
+        FileOutputStream out = new FileOutputStream(SUBNETS_FILE);
+        try {
+            out.write(subnets.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    public void testDeny() throws Exception {
+        SubnetTrieFilter filter = new SubnetTrieFilter(IpFilterType.DENY,
+                "1.2.3.0/24, 2001:db8::/32");
+        assertFalse(filter.accept(createSession("1.2.3.4")));
+        assertFalse(filter.accept(createSession("2001:db8::1")));
+        assertTrue(filter.accept(createSession("1.2.4.4")));
+        assertTrue(filter.accept(createSession("::1")));
+    }
+
+    public void testAllow() throws Exception {
+        SubnetTrieFilter filter = new SubnetTrieFilter(IpFilterType.ALLOW,
+                "1.2.3.0/24");
+        assertTrue(filter.accept(createSession("1.2.3.4")));
+        assertFalse(filter.accept(createSession("1.2.4.4")));
+    }
+
+    public void testEmpty() throws Exception {
+        IoSession session = createSession("1.2.3.4");
+        assertTrue(new SubnetTrieFilter(IpFilterType.DENY).accept(session));
+        assertFalse(new SubnetTrieFilter(IpFilterType.ALLOW, "")
+                .accept(session));
+    }
+
+    public void testLoadAndReload() throws Exception {
+        writeSubnets("# blocked\n1.2.3.0/24\n");
+        SubnetTrieFilter filter = new SubnetTrieFilter(IpFilterType.DENY,
+                SUBNETS_FILE);
+        assertFalse(filter.accept(createSession("1.2.3.4")));
+        assertTrue(filter.accept(createSession("5.6.7.8")));
+
+        writeSubnets("5.6.7.0/24\n");
+        filter.reload();
+        assertTrue(filter.accept(createSession("1.2.3.4")));
+        assertFalse(filter.accept(createSession("5.6.7.8")));
+    }
+
+    public void testInvalidReloadKeepsSubnets() throws Exception {
+        writeSubnets("1.2.3.0/24\n");
+        SubnetTrieFilter filter = new SubnetTrieFilter(IpFilterType.DENY,
+                SUBNETS_FILE);
+        SubnetTrie subnets = filter.getSubnets();
+
+        writeSubnets("5.6.7.0/24\n5.6.8.0/99\n");
+        try {
+            filter.reload();
+            fail("Must throw IOException");
+        } catch (IOException e) {
+            // OK
+        }
+        assertSame(subnets, filter.getSubnets());
+        assertFalse(filter.accept(createSession("1.2.3.4")));
+    }
+
+    public void testReloadWithoutFile() throws Exception {
+        try {
+            new SubnetTrieFilter(IpFilterType.DENY, "1.2.3.4").reload();
+            fail("Must throw IllegalStateException");
+        } catch (IllegalStateException e) {
+            // OK
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.ipfilter;
+
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.mina.filter.firewall.Subnet;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class SubnetTrieTest extends TestCase {
+
+    private static SubnetTrie createTrie(String... subnets) throws Exception {
+        return new SubnetTrie(Arrays.asList(subnets));
+    }
+
+    private static String match(SubnetTrie trie, String address)
+            throws Exception {
+        return trie.getMatch(InetAddress.getByName(address));
+    }
+
+    public void testEmpty() throws Exception {
+        SubnetTrie trie = createTrie();
+        assertTrue(trie.isEmpty());
+        assertNull(match(trie, "1.2.3.4"));
+        assertNull(match(trie, "::1"));
+    }
+
+    public void testSingleAddress() throws Exception {
+        SubnetTrie trie = createTrie("1.2.3.4");
+        assertEquals("1.2.3.4/32", match(trie, "1.2.3.4"));
+        assertNull(match(trie, "1.2.3.5"));
+    }
+
+    public void testLongestPrefixMatches() throws Exception {
+        SubnetTrie trie = createTrie("10.0.0.0/8", "10.1.0.0/16",
+                "10.1.2.0/24", "10.1.2.3");
+        assertEquals(4, trie.size());
+        assertEquals("10.1.2.3/32", match(trie, "10.1.2.3"));
+        assertEquals("10.1.2.0/24", match(trie, "10.1.2.4"));
+        assertEquals("10.1.0.0/16", match(trie, "10.1.3.4"));
+        assertEquals("10.0.0.0/8", match(trie, "10.2.3.4"));
+        assertNull(match(trie, "11.0.0.0"));
+    }
+
+    public void testInsertOrderDoesNotMatter() throws Exception {
+        SubnetTrie trie = createTrie("10.1.2.3", "10.1.2.0/24",
+                "10.1.0.0/16", "10.0.0.0/8");
+        assertEquals("10.1.2.3/32", match(trie, "10.1.2.3"));
+        assertEquals("10.1.2.0/24", match(trie, "10.1.2.4"));
+        assertEquals("10.1.0.0/16", match(trie, "10.1.3.4"));
+        assertEquals("10.0.0.0/8", match(trie, "10.2.3.4"));
+    }
+
+    public void testSiblings() throws Exception {
+        SubnetTrie trie = createTrie("192.168.1.0/24", "192.168.2.0/24");
+        assertEquals("192.168.1.0/24", match(trie, "192.168.1.1"));
+        assertEquals("192.168.2.0/24", match(trie, "192.168.2.1"));
+        assertNull(match(trie, "192.168.3.1"));
+        assertNull(match(trie, "192.168.0.1"));
+    }
+
+    public void testHostBitsIgnored() throws Exception {
+        SubnetTrie trie = createTrie("1.2.3.4/16", "1.2.0.0/16");
+        assertEquals(1, trie.size());
+        assertEquals("1.2.0.0/16", match(trie, "1.2.200.1"));
+    }
+
+    public void testDefaultRoute() throws Exception {
+        SubnetTrie trie = createTrie("0.0.0.0/0");
+        assertEquals("0.0.0.0/0", match(trie, "1.2.3.4"));
+        assertNull(match(trie, "::1"));
+    }
+
+    public void testIpv6() throws Exception {
+        SubnetTrie trie = createTrie("2001:db8::/32", "2001:db8:1::/48",
+                "::1");
+        assertEquals("2001:db8:1:0:0:0:0:0/48", match(trie, "2001:db8:1::5"));
+        assertEquals("2001:db8:0:0:0:0:0:0/32", match(trie, "2001:db8:2::5"));
+        assertEquals("0:0:0:0:0:0:0:1/128", match(trie, "::1"));
+        assertNull(match(trie, "2001:db9::1"));
+        assertNull(match(trie, "1.2.3.4"));
+    }
+
+    public void testInvalidPrefixLength() throws Exception {
+        try {
+            createTrie("1.2.3.4/33");
+            fail("Must throw IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // OK
+        }
+    }
+
+    public void testBlank() throws Exception {
+        try {
+            createTrie(" ");
+            fail("Must throw IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // OK
+        }
+    }
+
+    public void testReadSubnets() throws Exception {
+        List<String> subnets = SubnetTrie.readSubnets(new StringReader(
+                "# blocklist\n1.2.3.0/24\n\n  5.6.7.8 ; comment\n9.9.9.9,x\n"));
+        assertEquals(Arrays.asList("1.2.3.0/24", "5.6.7.8", "9.9.9.9"),
+                subnets);
+    }
+
+    public void testSameAsLinearScan() throws Exception {
+        Random random = new Random(42);
+        List<String> subnets = new ArrayList<String>();
+        List<Subnet> minaSubnets = new ArrayList<Subnet>();
+        for (int i = 0; i < 1000; i++) {
+            // few distinct leading bytes, so that subnets overlap
+            int prefixLength = 8 + random.nextInt(25);
+            int bits = (random.nextInt(4) << 24) | random.nextInt(1 << 24);
+            // Subnet expects the host bits to be cleared
+            bits &= (int) (0xFFFFFFFF00000000L >>> prefixLength);
+            InetAddress address = InetAddress.getByAddress(new byte[] {
+                    (byte) (bits >>> 24), (byte) (bits >>> 16),
+                    (byte) (bits >>> 8), (byte) bits });
+            subnets.add(address.getHostAddress() + "/" + prefixLength);
+            minaSubnets.add(new Subnet(address, prefixLength));
+        }
+        SubnetTrie trie = new SubnetTrie(subnets);
+
+        for (int i = 0; i < 10000; i++) {
+            InetAddress address = InetAddress.getByAddress(new byte[] {
+                    (byte) random.nextInt(4), (byte) random.nextInt(256),
+                    (byte) random.nextInt(256), (byte) random.nextInt(256) });
+            boolean expected = false;
+            for (Subnet subnet : minaSubnets) {
+                if (subnet.inSubnet(address)) {
+                    expected = true;
+                    break;
+                }
+            }
+            assertEquals(address.toString(), expected, trie.contains(address));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.listener.nio;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.MDC;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class FtpMdcFilterTest extends TestCase {
+
+    private DummySession session = new DummySession();
+
+    private FtpIoSession ftpSession = new FtpIoSession(session, null);
+
+    private String remoteAddress;
+
+    private String remoteIp;
+
+    private String remotePort;
+
+    private String localPort;
+
+    private String sessionId;
+
+    private String userName;
+
+    @Override
+    protected void setUp() throws Exception {
+        session.setRemoteAddress(new InetSocketAddress(InetAddress
+                .getByName("1.2.3.4"), 1234));
+        session.setLocalAddress(new InetSocketAddress(InetAddress
+                .getByName("5.6.7.8"), 21));
+        session.getFilterChain().addLast("mdcFilter", new FtpMdcFilter());
+        session.setHandler(new IoHandlerAdapter() {
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                remoteAddress = MDC.get(FtpMdcFilter.REMOTE_ADDRESS);
+                remoteIp = MDC.get(FtpMdcFilter.REMOTE_IP);
+                remotePort = MDC.get(FtpMdcFilter.REMOTE_PORT);
+                localPort = MDC.get(FtpMdcFilter.LOCAL_PORT);
+                sessionId = MDC.get(FtpMdcFilter.SESSION);
+                userName = MDC.get(FtpMdcFilter.USER_NAME);
+            }
+        });
+    }
+
+    public void testSessionValues() {
+        session.getFilterChain().fireMessageReceived("NOOP");
+
+        assertEquals("/1.2.3.4:1234", remoteAddress);
+        assertEquals("1.2.3.4", remoteIp);
+        assertEquals("1234", remotePort);
+        assertEquals("21", localPort);
+        assertEquals(ftpSession.getSessionId().toString(), sessionId);
+        assertNull(userName);
+    }
+
+    public void testUserName() {
+        ftpSession.setUserArgument("user1");
+        session.getFilterChain().fireMessageReceived("NOOP");
+        assertEquals("user1", userName);
+
+        BaseUser user = new BaseUser();
+        user.setName("user2");
+        ftpSession.setUser(user);
+        session.getFilterChain().fireMessageReceived("NOOP");
+        assertEquals("user2", userName);
+    }
+
+    public void testClearedAfterEvent() {
+        ftpSession.setUserArgument("user1");
+        session.getFilterChain().fireMessageReceived("NOOP");
+
+        assertNull(MDC.get(FtpMdcFilter.SESSION));
+        assertNull(MDC.get(FtpMdcFilter.USER_NAME));
+    }
+
+    public void testNoStateKeptInSession() {
+        session.getFilterChain().fireMessageReceived("NOOP");
+
+        // only the session state created by the test
+        assertEquals(1, session.getAttributeKeys().size());
+    }
+}
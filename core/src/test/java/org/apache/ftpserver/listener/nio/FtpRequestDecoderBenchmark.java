@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.listener.nio;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ftpserver.command.CommandFactory;
+import org.apache.ftpserver.command.CommandFactoryFactory;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.DecodedFtpRequest;
+import org.apache.ftpserver.impl.DefaultFtpRequest;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilter.NextFilter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolDecoder;
+import org.apache.mina.filter.codec.ProtocolDecoderOutput;
+import org.apache.mina.filter.codec.textline.TextLineDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark comparing the old request path (MINA {@link TextLineDecoder},
+ * {@link DefaultFtpRequest} and a command factory lookup) with
+ * {@link FtpRequestDecoder}. Run with the test classpath, e.g. from the IDE or
+ * through <code>java -cp ... FtpRequestDecoderBenchmark</code>, and add
+ * <code>-prof gc</code> to the JMH options to compare allocation rates.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FtpRequestDecoderBenchmark {
+
+    private static final byte[] REQUESTS = ("TYPE I\r\nPASV\r\n"
+            + "RETR /pub/releases/ftpserver-1.1.0.tar.gz\r\n"
+            + "CWD /pub\r\nNOOP\r\n").getBytes(Charset.forName("UTF-8"));
+
+    private CommandFactory commandFactory;
+
+    private ProtocolDecoder textLineDecoder;
+
+    private ProtocolDecoder requestDecoder;
+
+    private IoSession session;
+
+    private IoBuffer buffer;
+
+    private Blackhole blackhole;
+
+    private final ProtocolDecoderOutput textLineOutput = new ProtocolDecoderOutput() {
+        public void write(Object message) {
+            FtpRequest request = new DefaultFtpRequest(message.toString());
+            blackhole.consume(commandFactory.getCommand(request.getCommand()));
+        }
+
+        public void flush(NextFilter nextFilter, IoSession session) {
+            // do nothing
+        }
+    };
+
+    private final ProtocolDecoderOutput requestOutput = new ProtocolDecoderOutput() {
+        public void write(Object message) {
+            blackhole.consume(((DecodedFtpRequest) message).getResolvedCommand());
+        }
+
+        public void flush(NextFilter nextFilter, IoSession session) {
+            // do nothing
+        }
+    };
+
+    @Setup
+    public void setUp(Blackhole blackhole) throws Exception {
+        this.blackhole = blackhole;
+        commandFactory = new CommandFactoryFactory().createCommandFactory();
+        textLineDecoder = new TextLineDecoder(Charset.forName("UTF-8"));
+        requestDecoder = new FtpServerProtocolCodecFactory(commandFactory,
+                FtpRequestDecoder.DEFAULT_MAX_LINE_LENGTH).getDecoder(null);
+        session = new DummySession();
+        buffer = IoBuffer.allocate(REQUESTS.length);
+    }
+
+    private IoBuffer requests() {
+        buffer.clear();
+        buffer.put(REQUESTS);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Benchmark
+    public void textLineDecoder() throws Exception {
+        textLineDecoder.decode(session, requests(), textLineOutput);
+    }
+
+    @Benchmark
+    public void ftpRequestDecoder() throws Exception {
+        requestDecoder.decode(session, requests(), requestOutput);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(
+                FtpRequestDecoderBenchmark.class.getSimpleName()).build())
+                .run();
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.listener.nio;
+
+import java.nio.charset.MalformedInputException;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.command.CommandFactory;
+import org.apache.ftpserver.command.CommandFactoryFactory;
+import org.apache.ftpserver.command.impl.MKD;
+import org.apache.ftpserver.command.impl.SITE_DESCUSER;
+import org.apache.ftpserver.command.impl.STOR;
+import org.apache.ftpserver.impl.DecodedFtpRequest;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilter.NextFilter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.AbstractProtocolDecoderOutput;
+import org.apache.mina.filter.codec.ProtocolDecoder;
+import org.apache.mina.filter.codec.ProtocolDecoderException;
+import org.apache.mina.filter.codec.RecoverableProtocolDecoderException;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class FtpRequestDecoderTest extends TestCase {
+
+    private IoSession session;
+
+    private ProtocolDecoder decoder;
+
+    private AbstractProtocolDecoderOutput out;
+
+    @Override
+    protected void setUp() throws Exception {
+        session = new DummySession();
+        CommandFactory commandFactory = new CommandFactoryFactory()
+                .createCommandFactory();
+        decoder = new FtpServerProtocolCodecFactory(commandFactory, 32)
+                .getDecoder(session);
+        out = new AbstractProtocolDecoderOutput() {
+            public void flush(NextFilter nextFilter, IoSession session) {
+                // do nothing
+            }
+        };
+    }
+
+    private void decode(String data) throws Exception {
+        decoder.decode(session, IoBuffer.wrap(data.getBytes("UTF-8")), out);
+    }
+
+    private DecodedFtpRequest next() {
+        return (DecodedFtpRequest) out.getMessageQueue().poll();
+    }
+
+    public void testCommandAndArgument() throws Exception {
+        decode("stor foo  bar\r\n");
+
+        DecodedFtpRequest request = next();
+        assertEquals("STOR", request.getCommand());
+        assertEquals("stor foo  bar", request.getRequestLine());
+        assertTrue(request.hasArgument());
+        assertEquals("foo  bar", request.getArgument());
+        assertTrue(request.isResolved());
+        assertTrue(request.getResolvedCommand() instanceof STOR);
+    }
+
+    public void testCommandOnly() throws Exception {
+        decode("Noop\n");
+
+        DecodedFtpRequest request = next();
+        assertEquals("NOOP", request.getCommand());
+        assertFalse(request.hasArgument());
+        assertNull(request.getArgument());
+    }
+
+    public void testTrailingWhitespace() throws Exception {
+        decode(" pwd \r\r\n");
+
+        DecodedFtpRequest request = next();
+        assertEquals("PWD", request.getCommand());
+        assertEquals("pwd", request.getRequestLine());
+        assertFalse(request.hasArgument());
+    }
+
+    public void testXPrefixIsStripped() throws Exception {
+        decode("XMKD dir\r\n");
+
+        DecodedFtpRequest request = next();
+        assertEquals("MKD", request.getCommand());
+        assertTrue(request.getResolvedCommand() instanceof MKD);
+    }
+
+    public void testUnknownCommand() throws Exception {
+        decode("foo bar\r\n");
+
+        DecodedFtpRequest request = next();
+        assertEquals("FOO", request.getCommand());
+        assertTrue(request.isResolved());
+        assertNull(request.getResolvedCommand());
+    }
+
+    public void testLongCommandNotResolved() throws Exception {
+        decode("site_descuser\r\n");
+
+        DecodedFtpRequest request = next();
+        assertEquals("SITE_DESCUSER", request.getCommand());
+        assertFalse(request.isResolved());
+        assertTrue(new CommandFactoryFactory().createCommandFactory()
+                .getCommand(request.getCommand()) instanceof SITE_DESCUSER);
+    }
+
+    public void testEmptyLine() throws Exception {
+        decode("\r\n");
+
+        DecodedFtpRequest request = next();
+        assertEquals("", request.getCommand());
+        assertFalse(request.hasArgument());
+    }
+
+    public void testMultipleLines() throws Exception {
+        decode("TYPE I\r\nPASV\r\nRETR få\r\n");
+
+        assertEquals("TYPE", next().getCommand());
+        assertEquals("PASV", next().getCommand());
+        DecodedFtpRequest request = next();
+        assertEquals("RETR", request.getCommand());
+        assertEquals("få", request.getArgument());
+        assertNull(next());
+    }
+
+    public void testLineSplitOverReads() throws Exception {
+        decode("RE");
+        assertNull(next());
+        decode("TR fo");
+        assertNull(next());
+        decode("o\r\nNOOP\r\n");
+
+        DecodedFtpRequest request = next();
+        assertEquals("RETR", request.getCommand());
+        assertEquals("foo", request.getArgument());
+        assertEquals("NOOP", next().getCommand());
+    }
+
+    public void testInvalidUtf8() throws Exception {
+        try {
+            decoder.decode(session, IoBuffer.wrap(new byte[] { 'L', 'I',
+                    'S', 'T', ' ', (byte) 0xae, '\r', '\n' }), out);
+            fail("Must throw ProtocolDecoderException");
+        } catch (RecoverableProtocolDecoderException e) {
+            assertTrue(e.getCause() instanceof MalformedInputException);
+        }
+
+        // the decoder must recover
+        decode("NOOP\r\n");
+        assertEquals("NOOP", next().getCommand());
+    }
+
+    public void testLineTooLong() throws Exception {
+        try {
+            decode("STOR 01234567890123456789012345678901234567890\r\n");
+            fail("Must throw ProtocolDecoderException");
+        } catch (ProtocolDecoderException e) {
+            assertFalse(e instanceof RecoverableProtocolDecoderException);
+        }
+    }
+
+    public void testPartialLineTooLong() throws Exception {
+        decode("STOR 0123456789");
+        try {
+            decode("01234567890123456789");
+            fail("Must throw ProtocolDecoderException");
+        } catch (ProtocolDecoderException e) {
+            // OK
+        }
+    }
+
+    public void testUtf8Validation() throws Exception {
+        assertTrue(FtpRequestDecoder.isValidUtf8(
+                "få€😀".getBytes("UTF-8"), 0, 10));
+        // overlong encoding of '/'
+        assertFalse(FtpRequestDecoder.isValidUtf8(new byte[] { (byte) 0xc0,
+                (byte) 0xaf }, 0, 2));
+        // encoded surrogate
+        assertFalse(FtpRequestDecoder.isValidUtf8(new byte[] { (byte) 0xed,
+                (byte) 0xa0, (byte) 0x80 }, 0, 3));
+        // truncated sequence
+        assertFalse(FtpRequestDecoder.isValidUtf8(new byte[] { (byte) 0xe2,
+                (byte) 0x82 }, 0, 2));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.listener.nio;
+
+import junit.framework.TestCase;
+
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class QueueWaitFilterTest extends TestCase {
+
+    private DummySession session = new DummySession();
+
+    private long queueWait = -2;
+
+    @Override
+    protected void setUp() throws Exception {
+        session.getFilterChain().addLast("queueWaitStart",
+                QueueWaitFilter.ENQUEUE);
+        session.getFilterChain().addLast("queueWaitEnd",
+                QueueWaitFilter.DEQUEUE);
+        session.setHandler(new IoHandlerAdapter() {
+            @Override
+            public void messageReceived(IoSession session, Object message) {
+                queueWait = QueueWaitFilter.getQueueWait(session);
+            }
+        });
+    }
+
+    public void testCreatedOnFirstRead() {
+        assertEquals(-1, QueueWaitFilter.getQueueWait(session));
+        assertTrue(session.getAttributeKeys().isEmpty());
+
+        session.getFilterChain().fireMessageReceived("NOOP");
+        assertTrue(queueWait >= 0);
+        assertEquals(1, session.getAttributeKeys().size());
+    }
+
+    public void testRelease() {
+        session.getFilterChain().fireMessageReceived("NOOP");
+
+        QueueWaitFilter.release(session);
+        assertTrue(session.getAttributeKeys().isEmpty());
+
+        queueWait = -2;
+        session.getFilterChain().fireMessageReceived("NOOP");
+        assertTrue(queueWait >= 0);
+    }
+
+    public void testNotReleasedWhileWaiting() throws Exception {
+        session.getFilterChain().remove("queueWaitEnd");
+        session.getFilterChain().fireMessageReceived("NOOP");
+
+        QueueWaitFilter.release(session);
+        assertEquals(1, session.getAttributeKeys().size());
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.logincounter.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.InetAddress;
+import java.util.concurrent.ScheduledExecutorService;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class FileLoginCounterStoreTest extends TestCase {
+
+    private static final long LEASE_TIME = 30000;
+
+    private static final File DIR = new File("test-tmp/logins");
+
+    /**
+     * The clocks of the nodes, so that a node can be stopped in time while
+     * its background writes are still running
+     */
+    private final long[] clock1 = { 1000000 };
+
+    private final long[] clock2 = { 1000000 };
+
+    private InetAddress address;
+
+    private FileLoginCounterStore node1;
+
+    private FileLoginCounterStore node2;
+
+    @Override
+    protected void setUp() throws Exception {
+        if (DIR.exists()) {
+            IoUtils.delete(DIR);
+        }
+        address = InetAddress.getByName("1.2.3.4");
+        node1 = createStore("node1", clock1);
+        node2 = createStore("node2", clock2);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        node1.dispose();
+        node2.dispose();
+        IoUtils.delete(DIR);
+    }
+
+    /**
+     * Refreshed explicitly by the tests, on a clock they control. Logins and
+     * logouts are written straight away, rather than in the background.
+     */
+    private FileLoginCounterStore createStore(String nodeId,
+            final long[] clock) {
+        return new FileLoginCounterStore(DIR, nodeId, LEASE_TIME,
+                Integer.MAX_VALUE) {
+            @Override
+            long currentTime() {
+                return clock[0];
+            }
+
+            @Override
+            void executeWrite(ScheduledExecutorService executor,
+                    Runnable write) {
+                write.run();
+            }
+        };
+    }
+
+    public void testCountsAcrossNodes() throws Exception {
+        node1.login("user1", address);
+        node1.login("user1", address);
+        node2.login("user1", null);
+
+        node1.refresh();
+        node2.refresh();
+        node1.refresh();
+
+        assertEquals(3, node1.getLoginCount("user1"));
+        assertEquals(2, node1.getLoginCount("user1", address));
+        assertEquals(3, node2.getLoginCount("user1"));
+        assertEquals(2, node2.getLoginCount("user1", address));
+
+        node1.logout("user1", address);
+        node1.refresh();
+        node2.refresh();
+
+        assertEquals(2, node2.getLoginCount("user1"));
+        assertEquals(1, node2.getLoginCount("user1", address));
+    }
+
+    public void testCachedUntilRefreshed() throws Exception {
+        node2.getLoginCount("user1");
+        node1.login("user1", address);
+        node1.refresh();
+
+        assertEquals(0, node2.getLoginCount("user1"));
+        node2.refresh();
+        assertEquals(1, node2.getLoginCount("user1"));
+    }
+
+    public void testLeaseExpires() throws Exception {
+        node1.login("user1", address);
+        node1.refresh();
+        node2.refresh();
+        assertEquals(1, node2.getLoginCount("user1"));
+
+        // node1 stops renewing its lease
+        clock2[0] += LEASE_TIME - 1;
+        node2.refresh();
+        assertEquals(1, node2.getLoginCount("user1"));
+
+        clock2[0] += 2;
+        node2.refresh();
+        assertEquals(0, node2.getLoginCount("user1"));
+        assertTrue(new File(DIR, "node1.logins").exists());
+
+        // removed once expired for a whole lease time
+        clock2[0] += LEASE_TIME;
+        node2.refresh();
+        assertFalse(new File(DIR, "node1.logins").exists());
+    }
+
+    public void testRenewedLease() throws Exception {
+        node1.login("user1", address);
+        node1.refresh();
+
+        clock1[0] += LEASE_TIME - 1;
+        clock2[0] += LEASE_TIME - 1;
+        node1.refresh();
+        clock2[0] += LEASE_TIME - 1;
+        node2.refresh();
+        assertEquals(1, node2.getLoginCount("user1"));
+    }
+
+    public void testLoginWrittenStraightAway() throws Exception {
+        node2.getLoginCount("user1");
+        node1.login("user1", address);
+
+        node2.refresh();
+        assertEquals(1, node2.getLoginCount("user1"));
+    }
+
+    public void testDisposeRemovesNodeFile() throws Exception {
+        node1.login("user1", address);
+        node1.refresh();
+        assertTrue(new File(DIR, "node1.logins").exists());
+
+        node1.dispose();
+        assertFalse(new File(DIR, "node1.logins").exists());
+        node2.refresh();
+        assertEquals(0, node2.getLoginCount("user1"));
+    }
+
+    public void testInvalidFileIgnored() throws Exception {
+        node1.login("user1", address);
+        node1.refresh();
+        FileOutputStream out = new FileOutputStream(new File(DIR,
+                "broken.logins"));
+        try {
+            out.write("user.user1=10\n".getBytes("ISO-8859-1"));
+        } finally {
+            out.close();
+        }
+
+        node2.refresh();
+        assertEquals(1, node2.getLoginCount("user1"));
+    }
+
+    public void testSpecialUserNames() throws Exception {
+        node1.login("a=b: c/d", address);
+        node1.refresh();
+        node2.refresh();
+
+        assertEquals(1, node2.getLoginCount("a=b: c/d"));
+        assertEquals(1, node2.getLoginCount("a=b: c/d", address));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.logincounter.impl;
+
+import java.net.InetAddress;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class InProcessLoginCounterStoreTest extends TestCase {
+
+    private InProcessLoginCounterStore store = new InProcessLoginCounterStore();
+
+    public void testLoginAndLogout() throws Exception {
+        InetAddress address1 = InetAddress.getByName("1.2.3.4");
+        InetAddress address2 = InetAddress.getByName("::1");
+        store.login("user1", address1);
+        store.login("user1", address1);
+        store.login("user1", address2);
+        store.login("user2", null);
+
+        assertEquals(3, store.getLoginCount("user1"));
+        assertEquals(2, store.getLoginCount("user1", address1));
+        assertEquals(1, store.getLoginCount("user1", address2));
+        assertEquals(1, store.getLoginCount("user2"));
+        assertEquals(0, store.getLoginCount("user2", address1));
+        assertEquals(0, store.getLoginCount("user1", null));
+
+        store.logout("user1", address1);
+        store.logout("user1", address2);
+        store.logout("user2", null);
+        assertEquals(1, store.getLoginCount("user1"));
+        assertEquals(1, store.getLoginCount("user1", address1));
+        assertEquals(0, store.getLoginCount("user1", address2));
+        assertEquals(0, store.getLoginCount("user2"));
+    }
+
+    public void testLoggedOutKeysAreRemoved() throws Exception {
+        InetAddress address = InetAddress.getByName("1.2.3.4");
+        store.login("user1", address);
+        store.logout("user1", address);
+        store.logout("user1", address);
+
+        assertTrue(store.getUserLogins().isEmpty());
+        assertTrue(store.getAddressLogins().isEmpty());
+        assertEquals(0, store.getLoginCount("user1"));
+    }
+
+    public void testUserNameWithSlash() throws Exception {
+        InetAddress address = InetAddress.getByName("1.2.3.4");
+        store.login("a/b", address);
+
+        assertEquals(1, store.getLoginCount("a/b", address));
+        assertEquals(0, store.getLoginCount("b", address));
+    }
+}
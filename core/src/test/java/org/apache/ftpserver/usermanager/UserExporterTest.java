@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.usermanager;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.config.spring.MockUserManager;
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.usermanager.impl.ConcurrentLoginPermission;
+import org.apache.ftpserver.usermanager.impl.TransferRatePermission;
+import org.apache.ftpserver.usermanager.impl.WritePermission;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class UserExporterTest extends TestCase {
+
+    private UserManager userManager;
+
+    @Override
+    protected void setUp() throws Exception {
+        userManager = new PropertiesUserManagerFactory().createUserManager();
+
+        BaseUser user1 = new BaseUser();
+        user1.setName("user1");
+        user1.setPassword("pw1");
+        user1.setHomeDirectory("/home/a,\"b\"");
+        userManager.save(user1);
+
+        BaseUser user2 = new BaseUser();
+        user2.setName("user2");
+        user2.setPassword("pw2");
+        user2.setHomeDirectory("/home/user2");
+        user2.setEnabled(false);
+        user2.setMaxIdleTime(2);
+        List<Authority> authorities = new ArrayList<Authority>();
+        authorities.add(new WritePermission());
+        authorities.add(new ConcurrentLoginPermission(3, 4));
+        authorities.add(new TransferRatePermission(1, 5));
+        user2.setAuthorities(authorities);
+        userManager.save(user2);
+    }
+
+    public void testExportCsv() throws Exception {
+        StringWriter out = new StringWriter();
+        assertEquals(2, new UserExporter(userManager).exportUsers(out));
+
+        assertEquals(
+                "userid,homedirectory,enableflag,writepermission,idletime,uploadrate,downloadrate,maxloginnumber,maxloginperip\n"
+                        + "user1,\"/home/a,\"\"b\"\"\",true,false,0,0,0,0,0\n"
+                        + "user2,/home/user2,false,true,2,5,1,3,4\n",
+                out.toString());
+    }
+
+    public void testExportJsonLines() throws Exception {
+        StringWriter out = new StringWriter();
+        UserExporter exporter = new UserExporter(userManager);
+        exporter.setFormat(UserFileFormat.JSON_LINES);
+        assertEquals(2, exporter.exportUsers(out));
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(
+                "{\"userid\":\"user1\",\"homedirectory\":\"/home/a,\\\"b\\\"\",\"enableflag\":true,\"writepermission\":false,"
+                        + "\"idletime\":0,\"uploadrate\":0,\"downloadrate\":0,\"maxloginnumber\":0,\"maxloginperip\":0}",
+                lines[0]);
+    }
+
+    public void testRoundTripCsv() throws Exception {
+        assertRoundTrip(UserFileFormat.CSV);
+    }
+
+    public void testRoundTripJsonLines() throws Exception {
+        assertRoundTrip(UserFileFormat.JSON_LINES);
+    }
+
+    public void testForEachUserWithoutBatchSupport() throws Exception {
+        UserManager plain = new MockUserManager() {
+            @Override
+            public String[] getAllUserNames() {
+                return new String[] { "user1", "removed" };
+            }
+
+            @Override
+            public User getUserByName(String name) {
+                if ("removed".equals(name)) {
+                    return null;
+                }
+                BaseUser user = new BaseUser();
+                user.setName(name);
+                return user;
+            }
+        };
+
+        StringWriter out = new StringWriter();
+        assertEquals(1, new UserExporter(plain).exportUsers(out));
+        assertTrue(out.toString().contains("\nuser1,"));
+    }
+
+    private void assertRoundTrip(UserFileFormat format) throws Exception {
+        UserExporter exporter = new UserExporter(userManager);
+        exporter.setFormat(format);
+        StringWriter out = new StringWriter();
+        exporter.exportUsers(out);
+
+        UserManager target = new PropertiesUserManagerFactory()
+                .createUserManager();
+        UserImporter importer = new UserImporter(target);
+        importer.setFormat(format);
+        assertEquals(2, importer.importUsers(new StringReader(out.toString())));
+
+        StringWriter reexported = new StringWriter();
+        exporter = new UserExporter(target);
+        exporter.setFormat(format);
+        exporter.exportUsers(reexported);
+        assertEquals(out.toString(), reexported.toString());
+
+        // passwords are not exported
+        assertNull(target.getUserByName("user1").getPassword());
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.usermanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.config.spring.MockUserManager;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.usermanager.impl.PropertiesUserManager;
+import org.apache.ftpserver.usermanager.impl.WriteRequest;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class UserImporterTest extends TestCase {
+
+    private UserManager userManager;
+
+    private UserImporter importer;
+
+    @Override
+    protected void setUp() throws Exception {
+        userManager = new PropertiesUserManagerFactory().createUserManager();
+        importer = new UserImporter(userManager);
+    }
+
+    public void testImportCsv() throws Exception {
+        String csv = "userid,userpassword,homedirectory,writepermission,idletime\r\n"
+                + "user1,pw1,/home/user1,true,10\r\n"
+                + "\r\n"
+                + "\"user2\",\"p,w\"\"2\",\"/home/with\nnewline\",false,0\r\n";
+
+        assertEquals(2, importer.importUsers(new StringReader(csv)));
+
+        User user1 = userManager.authenticate(new UsernamePasswordAuthentication(
+                "user1", "pw1"));
+        assertEquals("/home/user1", user1.getHomeDirectory());
+        assertEquals(10, user1.getMaxIdleTime());
+        assertTrue(user1.getEnabled());
+        assertNotNull(user1.authorize(new WriteRequest()));
+
+        User user2 = userManager.authenticate(new UsernamePasswordAuthentication(
+                "user2", "p,w\"2"));
+        assertEquals("/home/with\nnewline", user2.getHomeDirectory());
+        assertNull(user2.authorize(new WriteRequest()));
+    }
+
+    public void testImportJsonLines() throws Exception {
+        String json = "{\"userid\": \"user1\", \"userpassword\": \"pw\\\"1\", \"enableflag\": false, \"maxloginnumber\": 3}\n"
+                + "\n"
+                + "{\"userid\":\"user2\",\"homedirectory\":\"/home/\\u00e5\",\"idletime\":null}\n";
+
+        importer.setFormat(UserFileFormat.JSON_LINES);
+        assertEquals(2, importer.importUsers(new StringReader(json)));
+
+        User user1 = userManager.authenticate(new UsernamePasswordAuthentication(
+                "user1", "pw\"1"));
+        assertFalse(user1.getEnabled());
+        assertEquals("/home/å", userManager.getUserByName("user2")
+                .getHomeDirectory());
+    }
+
+    public void testUpdateKeepsPassword() throws Exception {
+        importer.importUsers(new StringReader("userid,userpassword\nuser1,pw1\n"));
+        importer.importUsers(new StringReader(
+                "userid,userpassword,homedirectory\nuser1,,/new\n"));
+
+        User user = userManager.authenticate(new UsernamePasswordAuthentication(
+                "user1", "pw1"));
+        assertEquals("/new", user.getHomeDirectory());
+    }
+
+    public void testUnknownField() throws Exception {
+        assertInvalid("userid,foo\nuser1,bar\n", "Line 2");
+    }
+
+    public void testInvalidValue() throws Exception {
+        assertInvalid("userid,idletime\nuser1,0\nuser2,abc\n", "Line 3");
+    }
+
+    public void testMissingUserId() throws Exception {
+        assertInvalid("homedirectory\n/home\n", "Line 2");
+    }
+
+    public void testWrongFieldCount() throws Exception {
+        assertInvalid("userid,homedirectory\nuser1\n", "Line 2");
+    }
+
+    public void testInvalidJson() throws Exception {
+        importer.setFormat(UserFileFormat.JSON_LINES);
+        assertInvalid("{\"userid\":\"user1\"}\n{\"userid\":[1]}\n", "Line 2");
+    }
+
+    public void testBatches() throws Exception {
+        final List<Integer> batches = new ArrayList<Integer>();
+        PropertiesUserManager batchUserManager = new PropertiesUserManager(
+                new Md5PasswordEncryptor(), (File) null, "admin") {
+            @Override
+            public void saveAll(Collection<? extends User> users)
+                    throws FtpException {
+                batches.add(users.size());
+                super.saveAll(users);
+            }
+        };
+
+        importer = new UserImporter(batchUserManager);
+        importer.setBatchSize(2);
+        assertEquals(5, importer.importUsers(new StringReader(
+                "userid\nu1\nu2\nu3\nu4\nu5\n")));
+
+        assertEquals("[2, 2, 1]", batches.toString());
+        assertEquals(5, batchUserManager.getAllUserNames().length);
+    }
+
+    public void testSaveAllFallsBackToSave() throws Exception {
+        final List<String> saved = new ArrayList<String>();
+        UserManager plain = new MockUserManager() {
+            @Override
+            public void save(User user) {
+                saved.add(user.getName());
+            }
+        };
+
+        importer = new UserImporter(plain);
+        assertEquals(2, importer.importUsers(new StringReader("userid\nu1\nu2\n")));
+        assertEquals("[u1, u2]", saved.toString());
+    }
+
+    public void testInvalidBatchSize() {
+        try {
+            importer.setBatchSize(0);
+            fail("Must throw IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // OK
+        }
+    }
+
+    private void assertInvalid(String content, String message) throws Exception {
+        try {
+            importer.importUsers(new StringReader(content));
+            fail("Must throw IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.ftplet.Authentication;
+import org.apache.ftpserver.ftplet.AuthenticationFailedException;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class CachingUserManagerTest extends TestCase {
+
+    private static final long TTL = 60000;
+
+    private static final long NEGATIVE_TTL = 10000;
+
+    private static final long REFRESH_AFTER = 45000;
+
+    private StubUserManager stub = new StubUserManager();
+
+    private long now = 1000000;
+
+    private CachingUserManager cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        stub.add("user1", "pw1", "home1");
+        cache = createCache(10);
+    }
+
+    private CachingUserManager createCache(int maxSize) {
+        Executor direct = new Executor() {
+            public void execute(Runnable task) {
+                task.run();
+            }
+        };
+        return new CachingUserManager(stub, maxSize, TTL, NEGATIVE_TTL,
+                REFRESH_AFTER, direct) {
+            @Override
+            long currentTime() {
+                return now;
+            }
+        };
+    }
+
+    private static Authentication auth(String name, String password) {
+        return new UsernamePasswordAuthentication(name, password);
+    }
+
+    public void testUserCached() throws Exception {
+        assertEquals("home1", cache.getUserByName("user1").getHomeDirectory());
+        assertEquals("home1", cache.getUserByName("user1").getHomeDirectory());
+        assertTrue(cache.doesExist("user1"));
+
+        assertEquals(1, stub.lookups.get());
+    }
+
+    public void testUserExpires() throws Exception {
+        cache.getUserByName("user1");
+        now += TTL;
+        cache.getUserByName("user1");
+
+        assertEquals(2, stub.lookups.get());
+    }
+
+    public void testUnknownUserCached() throws Exception {
+        assertNull(cache.getUserByName("user2"));
+        stub.add("user2", "pw2", "home2");
+        assertNull(cache.getUserByName("user2"));
+        assertEquals(1, stub.lookups.get());
+
+        now += NEGATIVE_TTL;
+        assertEquals("home2", cache.getUserByName("user2").getHomeDirectory());
+        assertEquals(2, stub.lookups.get());
+    }
+
+    public void testRefreshInBackground() throws Exception {
+        cache.getUserByName("user1");
+        stub.add("user1", "pw1", "newhome");
+
+        now += REFRESH_AFTER;
+        // the cached user is returned while refreshing
+        assertEquals("home1", cache.getUserByName("user1").getHomeDirectory());
+        assertEquals(2, stub.lookups.get());
+
+        assertEquals("newhome", cache.getUserByName("user1")
+                .getHomeDirectory());
+        assertEquals(2, stub.lookups.get());
+    }
+
+    public void testAuthenticationCached() throws Exception {
+        assertEquals("user1", cache.authenticate(auth("user1", "pw1"))
+                .getName());
+        assertEquals("user1", cache.authenticate(auth("user1", "pw1"))
+                .getName());
+        assertEquals(1, stub.authentications.get());
+
+        try {
+            cache.authenticate(auth("user1", "wrong"));
+            fail("Must throw AuthenticationFailedException");
+        } catch (AuthenticationFailedException e) {
+            // OK
+        }
+        assertEquals(2, stub.authentications.get());
+
+        now += TTL;
+        cache.authenticate(auth("user1", "pw1"));
+        assertEquals(3, stub.authentications.get());
+    }
+
+    public void testAuthenticateUnknownUser() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            try {
+                cache.authenticate(auth("user2", "pw2"));
+                fail("Must throw AuthenticationFailedException");
+            } catch (AuthenticationFailedException e) {
+                // OK
+            }
+        }
+        assertEquals(1, stub.lookups.get());
+        assertEquals(0, stub.authentications.get());
+    }
+
+    public void testSaveInvalidates() throws Exception {
+        cache.authenticate(auth("user1", "pw1"));
+
+        BaseUser user = new BaseUser();
+        user.setName("user1");
+        user.setPassword("newpw");
+        user.setHomeDirectory("newhome");
+        cache.save(user);
+
+        assertEquals("newhome", cache.getUserByName("user1")
+                .getHomeDirectory());
+        try {
+            cache.authenticate(auth("user1", "pw1"));
+            fail("Must throw AuthenticationFailedException");
+        } catch (AuthenticationFailedException e) {
+            // OK
+        }
+    }
+
+    public void testDeleteInvalidates() throws Exception {
+        cache.authenticate(auth("user1", "pw1"));
+        cache.delete("user1");
+
+        assertNull(cache.getUserByName("user1"));
+        try {
+            cache.authenticate(auth("user1", "pw1"));
+            fail("Must throw AuthenticationFailedException");
+        } catch (AuthenticationFailedException e) {
+            // OK
+        }
+    }
+
+    public void testInvalidateAll() throws Exception {
+        cache.getUserByName("user1");
+        cache.invalidateAll();
+        cache.getUserByName("user1");
+
+        assertEquals(2, stub.lookups.get());
+    }
+
+    public void testLeastRecentlyUsedEvicted() throws Exception {
+        cache = createCache(2);
+        stub.add("user2", "pw2", "home2");
+        stub.add("user3", "pw3", "home3");
+
+        cache.getUserByName("user1");
+        cache.getUserByName("user2");
+        cache.getUserByName("user1");
+        cache.getUserByName("user3");
+        assertEquals(2, cache.getCachedUserCount());
+        assertEquals(3, stub.lookups.get());
+
+        cache.getUserByName("user1");
+        assertEquals(3, stub.lookups.get());
+        cache.getUserByName("user2");
+        assertEquals(4, stub.lookups.get());
+    }
+
+    public void testConcurrentLoadsShared() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        stub.block = blocked;
+
+        final AtomicInteger found = new AtomicInteger();
+        Thread[] threads = new Thread[5];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        if (cache.getUserByName("user1") != null) {
+                            found.incrementAndGet();
+                        }
+                    } catch (FtpException e) {
+                        // fails the test below
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        // let all threads reach the cache before the load completes
+        Thread.sleep(200);
+        blocked.countDown();
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+
+        assertEquals(threads.length, found.get());
+        assertEquals(1, stub.lookups.get());
+    }
+
+    private static class StubUserManager implements UserManager {
+
+        private final Map<String, BaseUser> users = new HashMap<String, BaseUser>();
+
+        private final Map<String, String> passwords = new HashMap<String, String>();
+
+        private final AtomicInteger lookups = new AtomicInteger();
+
+        private final AtomicInteger authentications = new AtomicInteger();
+
+        private volatile CountDownLatch block;
+
+        public synchronized void add(String name, String password, String home) {
+            BaseUser user = new BaseUser();
+            user.setName(name);
+            user.setHomeDirectory(home);
+            users.put(name, user);
+            passwords.put(name, password);
+        }
+
+        public User getUserByName(String name) throws FtpException {
+            lookups.incrementAndGet();
+            CountDownLatch latch = block;
+            if (latch != null) {
+                try {
+                    latch.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new FtpException(e);
+                }
+            }
+            synchronized (this) {
+                return users.get(name);
+            }
+        }
+
+        public synchronized User authenticate(Authentication authentication)
+                throws AuthenticationFailedException {
+            authentications.incrementAndGet();
+            UsernamePasswordAuthentication upauth = (UsernamePasswordAuthentication) authentication;
+            String password = passwords.get(upauth.getUsername());
+            if (password == null || !password.equals(upauth.getPassword())) {
+                throw new AuthenticationFailedException("Authentication failed");
+            }
+            return users.get(upauth.getUsername());
+        }
+
+        public synchronized void save(User user) {
+            add(user.getName(), user.getPassword(), user.getHomeDirectory());
+        }
+
+        public synchronized void delete(String name) {
+            users.remove(name);
+            passwords.remove(name);
+        }
+
+        public synchronized boolean doesExist(String name) {
+            return users.containsKey(name);
+        }
+
+        public synchronized String[] getAllUserNames() {
+            return users.keySet().toArray(new String[0]);
+        }
+
+        public String getAdminName() {
+            return "admin";
+        }
+
+        public boolean isAdmin(String name) {
+            return "admin".equals(name);
+        }
+    }
+}
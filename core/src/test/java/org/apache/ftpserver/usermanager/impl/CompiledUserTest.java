@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.AuthorizationRequest;
+import org.apache.ftpserver.ftplet.User;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class CompiledUserTest extends TestCase {
+
+    private static BaseUser createUser(Authority... authorities) {
+        BaseUser user = new BaseUser();
+        user.setName("user");
+        user.setAuthorities(new ArrayList<Authority>(Arrays.asList(authorities)));
+        return user;
+    }
+
+    private static boolean canWrite(User user, String file) {
+        return user.authorize(new WriteRequest(file)) != null;
+    }
+
+    public void testCompile() {
+        BaseUser user = createUser(new WritePermission());
+        User compiled = CompiledUser.compile(user);
+
+        assertTrue(compiled instanceof CompiledUser);
+        assertSame(user, ((CompiledUser) compiled).getUser());
+        assertEquals("user", compiled.getName());
+    }
+
+    public void testNotCompiled() {
+        assertNull(CompiledUser.compile(null));
+
+        BaseUser user = createUser(new WritePermission(), new Authority() {
+            public boolean canAuthorize(AuthorizationRequest request) {
+                return true;
+            }
+
+            public AuthorizationRequest authorize(AuthorizationRequest request) {
+                return request;
+            }
+        });
+        assertSame(user, CompiledUser.compile(user));
+
+        user = createUser();
+        user.setAuthorities(null);
+        assertSame(user, CompiledUser.compile(user));
+    }
+
+    public void testWriteHome() {
+        User user = CompiledUser.compile(createUser(new WritePermission()));
+
+        assertTrue(canWrite(user, "/"));
+        assertTrue(canWrite(user, "/dir/file"));
+    }
+
+    public void testNoWritePermission() {
+        User user = CompiledUser.compile(createUser(new TransferRatePermission(
+                0, 0)));
+
+        assertFalse(canWrite(user, "/"));
+        assertFalse(canWrite(user, "/dir/file"));
+    }
+
+    public void testWriteRootWithinDirectory() {
+        User user = CompiledUser.compile(createUser(new WritePermission(
+                "/dir/fi")));
+
+        // the same directory, with the cached position, for all files
+        assertTrue(canWrite(user, "/dir/file"));
+        assertTrue(canWrite(user, "/dir/fi"));
+        assertFalse(canWrite(user, "/dir/f"));
+        assertFalse(canWrite(user, "/dir/other"));
+        assertFalse(canWrite(user, "/dir/"));
+        assertTrue(canWrite(user, "/dir/fix/file"));
+        assertFalse(canWrite(user, "/other/file"));
+        assertFalse(canWrite(user, "file"));
+    }
+
+    public void testSameAnswersAsBaseUser() {
+        Random random = new Random(42);
+        String[] segments = { "a", "ab", "b", "pub", "public", "" };
+        for (int i = 0; i < 200; i++) {
+            List<Authority> authorities = new ArrayList<Authority>();
+            int roots = random.nextInt(4);
+            for (int j = 0; j < roots; j++) {
+                authorities.add(new WritePermission(randomPath(random,
+                        segments)));
+            }
+            BaseUser user = createUser(authorities
+                    .toArray(new Authority[authorities.size()]));
+            User compiled = CompiledUser.compile(user);
+            assertTrue(compiled instanceof CompiledUser);
+
+            for (int j = 0; j < 50; j++) {
+                String file = randomPath(random, segments);
+                assertEquals(authorities + " " + file, canWrite(user, file),
+                        canWrite(compiled, file));
+            }
+        }
+    }
+
+    private static String randomPath(Random random, String[] segments) {
+        StringBuilder path = new StringBuilder();
+        int depth = random.nextInt(4);
+        for (int i = 0; i < depth; i++) {
+            path.append('/').append(segments[random.nextInt(segments.length)]);
+        }
+        if (path.length() == 0 || random.nextInt(4) == 0) {
+            path.append('/');
+        }
+        return path.toString();
+    }
+
+    public void testTransferRate() {
+        User user = CompiledUser.compile(createUser(new TransferRatePermission(
+                1, 2), new TransferRatePermission(3, 4)));
+
+        TransferRateRequest request = (TransferRateRequest) user
+                .authorize(new TransferRateRequest());
+        assertEquals(3, request.getMaxDownloadRate());
+        assertEquals(4, request.getMaxUploadRate());
+
+        user = CompiledUser.compile(createUser(new WritePermission()));
+        assertNull(user.authorize(new TransferRateRequest()));
+    }
+
+    public void testConcurrentLogin() {
+        BaseUser baseUser = createUser(new ConcurrentLoginPermission(5, 0),
+                new ConcurrentLoginPermission(0, 2));
+        User user = CompiledUser.compile(baseUser);
+
+        for (int logins = 0; logins < 8; logins++) {
+            for (int ipLogins = 0; ipLogins < 4; ipLogins++) {
+                ConcurrentLoginRequest expected = (ConcurrentLoginRequest) baseUser
+                        .authorize(new ConcurrentLoginRequest(logins, ipLogins));
+                ConcurrentLoginRequest actual = (ConcurrentLoginRequest) user
+                        .authorize(new ConcurrentLoginRequest(logins, ipLogins));
+                if (expected == null) {
+                    assertNull(actual);
+                } else {
+                    assertEquals(expected.getMaxConcurrentLogins(), actual
+                            .getMaxConcurrentLogins());
+                    assertEquals(expected.getMaxConcurrentLoginsPerIP(),
+                            actual.getMaxConcurrentLoginsPerIP());
+                }
+            }
+        }
+    }
+}
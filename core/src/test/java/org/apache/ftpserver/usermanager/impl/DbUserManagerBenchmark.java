@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.io.File;
+import java.io.FileReader;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.test.TestUtil;
+import org.apache.ftpserver.usermanager.DbUserManagerFactory;
+import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
+import org.apache.ftpserver.util.IoUtils;
+import org.hsqldb.jdbc.jdbcDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark of the {@link DbUserManager} operations against an in-memory
+ * HSQLDB database with the schema and statements used by
+ * {@link DbUserManagerTest}, for a table of <code>userCount</code> users.
+ * The import benchmarks save all the users again, one by one and as a batch,
+ * so the table does not grow between invocations. Run with the test
+ * classpath, e.g. through <code>java -cp ... DbUserManagerBenchmark</code>.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DbUserManagerBenchmark {
+
+    @Param( { "100", "1000" })
+    private int userCount;
+
+    private jdbcDataSource dataSource;
+
+    private DbUserManager userManager;
+
+    private List<User> users;
+
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        dataSource = new jdbcDataSource();
+        dataSource.setDatabase("jdbc:hsqldb:mem:benchmark");
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+
+        Connection conn = dataSource.getConnection();
+        try {
+            Statement stmt = conn.createStatement();
+            stmt.execute(IoUtils.readFully(new FileReader(new File(TestUtil
+                    .getBaseDir(), "src/test/resources/dbusermanagertest-hsql.sql"))));
+            stmt.close();
+        } finally {
+            conn.close();
+        }
+
+        DbUserManagerFactory factory = new DbUserManagerFactory();
+        factory.setDataSource(dataSource);
+        factory.setSqlUserInsert("INSERT INTO FTP_USER (userid, userpassword, homedirectory, enableflag, writepermission, idletime, uploadrate, downloadrate, maxloginnumber, maxloginperip) VALUES ('{userid}', '{userpassword}', '{homedirectory}', {enableflag}, {writepermission}, {idletime}, {uploadrate}, {downloadrate}, {maxloginnumber}, {maxloginperip})");
+        factory.setSqlUserUpdate("UPDATE FTP_USER SET userpassword='{userpassword}',homedirectory='{homedirectory}',enableflag={enableflag},writepermission={writepermission},idletime={idletime},uploadrate={uploadrate},downloadrate={downloadrate},maxloginnumber={maxloginnumber}, maxloginperip={maxloginperip} WHERE userid='{userid}'");
+        factory.setSqlUserDelete("DELETE FROM FTP_USER WHERE userid = '{userid}'");
+        factory.setSqlUserSelect("SELECT * FROM FTP_USER WHERE userid = '{userid}'");
+        factory.setSqlUserSelectAll("SELECT userid FROM FTP_USER ORDER BY userid");
+        factory.setSqlUserAuthenticate("SELECT userid, userpassword FROM FTP_USER WHERE userid='{userid}'");
+        factory.setSqlUserAdmin("SELECT userid FROM FTP_USER WHERE userid='{userid}' AND userid='admin'");
+        userManager = (DbUserManager) factory.createUserManager();
+
+        users = new ArrayList<User>();
+        for (int i = 0; i < userCount; i++) {
+            BaseUser user = new BaseUser();
+            user.setName("user" + i);
+            user.setPassword("pw" + i);
+            user.setHomeDirectory("home");
+            List<Authority> authorities = new ArrayList<Authority>();
+            authorities.add(new WritePermission());
+            authorities.add(new ConcurrentLoginPermission(10, 2));
+            authorities.add(new TransferRatePermission(0, 0));
+            user.setAuthorities(authorities);
+            users.add(user);
+        }
+        userManager.saveAll(users);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Connection conn = dataSource.getConnection();
+        try {
+            conn.createStatement().execute("SHUTDOWN");
+        } finally {
+            conn.close();
+        }
+    }
+
+    private int nextUser() {
+        next = (next + 1) % userCount;
+        return next;
+    }
+
+    @Benchmark
+    public User authenticate() throws Exception {
+        int i = nextUser();
+        return userManager.authenticate(new UsernamePasswordAuthentication(
+                "user" + i, "pw" + i));
+    }
+
+    @Benchmark
+    public User getUserByName() throws Exception {
+        return userManager.getUserByName("user" + nextUser());
+    }
+
+    @Benchmark
+    public User save() throws Exception {
+        User user = users.get(nextUser());
+        userManager.save(user);
+        return user;
+    }
+
+    @Benchmark
+    public void importOneByOne() throws Exception {
+        for (User user : users) {
+            userManager.save(user);
+        }
+    }
+
+    @Benchmark
+    public void importBatch() throws Exception {
+        userManager.saveAll(users);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(
+                DbUserManagerBenchmark.class.getSimpleName()).build())
+                .run();
+    }
+}
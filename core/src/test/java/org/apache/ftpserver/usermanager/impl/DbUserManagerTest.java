@@ -23,11 +23,18 @@ import java.io.File;
 import java.io.FileReader;
 import java.sql.Connection;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+import org.apache.ftpserver.ftplet.Authority;
 import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.User;
 import org.apache.ftpserver.test.TestUtil;
 import org.apache.ftpserver.usermanager.DbUserManagerFactory;
 import org.apache.ftpserver.usermanager.UserManagerFactory;
+import org.apache.ftpserver.usermanager.UserVisitor;
+import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
 import org.apache.ftpserver.util.IoUtils;
 import org.hsqldb.jdbc.jdbcDataSource;
 
@@ -106,4 +113,87 @@ public class DbUserManagerTest extends UserManagerTestTemplate {
         super.tearDown();
     }
 
+    private static BaseUser createUser(String name, String password) {
+        BaseUser user = new BaseUser();
+        user.setName(name);
+        user.setPassword(password);
+        user.setHomeDirectory("home-" + name);
+        List<Authority> authorities = new ArrayList<Authority>();
+        authorities.add(new WritePermission());
+        user.setAuthorities(authorities);
+        return user;
+    }
+
+    public void testSaveNameWithQuotes() throws Exception {
+        userManager.save(createUser("o'brien", "pw"));
+
+        assertTrue(userManager.doesExist("o'brien"));
+        assertFalse(userManager.doesExist("o"));
+        assertEquals("home-o'brien", userManager.getUserByName("o'brien")
+                .getHomeDirectory());
+        assertNotNull(userManager.authenticate(new UsernamePasswordAuthentication(
+                "o'brien", "pw")));
+    }
+
+    public void testSaveAll() throws Exception {
+        List<User> users = new ArrayList<User>();
+        for (int i = 0; i < 50; i++) {
+            users.add(createUser("bulk" + i, "pw" + i));
+        }
+        // existing users, one keeping its password
+        users.add(createUser("user1", "newpw"));
+        users.add(createUser("user2", null));
+
+        ((DbUserManager) userManager).saveAll(users);
+
+        for (int i = 0; i < 50; i++) {
+            assertNotNull(userManager.authenticate(new UsernamePasswordAuthentication(
+                    "bulk" + i, "pw" + i)));
+        }
+        assertEquals("home-user1", userManager.getUserByName("user1")
+                .getHomeDirectory());
+        assertNotNull(userManager.authenticate(new UsernamePasswordAuthentication(
+                "user1", "newpw")));
+        assertEquals("home-user2", userManager.getUserByName("user2")
+                .getHomeDirectory());
+        assertNotNull(userManager.authenticate(new UsernamePasswordAuthentication(
+                "user2", "pw2")));
+        assertEquals(54, userManager.getAllUserNames().length);
+    }
+
+    public void testForEachUserInOneQuery() throws Exception {
+        DbUserManager manager = (DbUserManager) userManager;
+        manager.setSqlUserSelectAll("SELECT * FROM FTP_USER ORDER BY userid");
+
+        final List<User> users = new ArrayList<User>();
+        manager.forEachUser(new UserVisitor() {
+            public void visit(User user) {
+                users.add(user);
+            }
+        });
+
+        assertEquals(manager.getAllUserNames().length, users.size());
+        User user2 = users.get(Arrays.asList(manager.getAllUserNames())
+                .indexOf("user2"));
+        assertEquals("user2", user2.getName());
+        assertNull(user2.getPassword());
+        assertEquals("home", user2.getHomeDirectory());
+        assertFalse(user2.getEnabled());
+        assertEquals(2, user2.getMaxIdleTime());
+    }
+
+    public void testSaveWithUpsert() throws Exception {
+        DbUserManager manager = (DbUserManager) userManager;
+        // HSQLDB 1.8 has no MERGE, an UPDATE shows that the statement is used
+        // on its own
+        manager.setSqlUserUpsert(manager.getSqlUserUpdate());
+
+        manager.save(createUser("user1", "newpw"));
+        manager.save(createUser("newuser", "newpw"));
+
+        assertEquals("home-user1", manager.getUserByName("user1")
+                .getHomeDirectory());
+        assertFalse(manager.doesExist("newuser"));
+    }
+
 }
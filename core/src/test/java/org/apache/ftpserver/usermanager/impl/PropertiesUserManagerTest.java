@@ -24,6 +24,8 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import org.apache.ftpserver.ftplet.FtpException;
@@ -115,4 +117,149 @@ public class PropertiesUserManagerTest extends UserManagerTestTemplate {
     	modifiedUser = pum.getUserByName("user1");
     	assertEquals("Home directory should have reset back to \""+originalSetting+"\" after second call to refresh().",originalSetting,modifiedUser.getHomeDirectory());
     }
+
+    public void testSaveReplacesFile() throws Exception {
+        BaseUser user = new BaseUser();
+        user.setName("newuser");
+        user.setPassword("newpw");
+        user.setHomeDirectory("newhome");
+        userManager.save(user);
+
+        assertFalse(new File(TEST_DIR, USERS_FILE.getName() + ".tmp").exists());
+
+        Properties users = new Properties();
+        FileInputStream fis = new FileInputStream(USERS_FILE);
+        try {
+            users.load(fis);
+        } finally {
+            fis.close();
+        }
+        assertEquals("newhome", users.getProperty("ftpserver.user.newuser.homedirectory"));
+        assertEquals("home", users.getProperty("ftpserver.user.user1.homedirectory"));
+    }
+
+    public void testConcurrentSaves() throws Exception {
+        final List<Exception> errors = new ArrayList<Exception>();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            final int thread = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 20; j++) {
+                            BaseUser user = new BaseUser();
+                            user.setName("user" + thread + "_" + j);
+                            user.setPassword("pw");
+                            user.setHomeDirectory("home");
+                            userManager.save(user);
+                        }
+                    } catch (Exception e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+
+        // all users must have been written to the file
+        PropertiesUserManager reloaded = (PropertiesUserManager) createUserManagerFactory()
+                .createUserManager();
+        assertEquals(3 + threads.length * 20, reloaded.getAllUserNames().length);
+    }
+
+    public void testSavesNotLostToRefresh() throws Exception {
+        final PropertiesUserManager pum = (PropertiesUserManager) userManager;
+        final boolean[] done = { false };
+        // reloads the file as the watcher does when it changes
+        Thread refresher = new Thread() {
+            @Override
+            public void run() {
+                while (true) {
+                    synchronized (done) {
+                        if (done[0]) {
+                            return;
+                        }
+                    }
+                    pum.refresh();
+                }
+            }
+        };
+        refresher.start();
+        try {
+            for (int i = 0; i < 100; i++) {
+                BaseUser user = new BaseUser();
+                user.setName("saved" + i);
+                user.setPassword("pw");
+                user.setHomeDirectory("home");
+                pum.save(user);
+            }
+        } finally {
+            synchronized (done) {
+                done[0] = true;
+            }
+            refresher.join();
+        }
+
+        PropertiesUserManager reloaded = (PropertiesUserManager) createUserManagerFactory()
+                .createUserManager();
+        for (int i = 0; i < 100; i++) {
+            assertTrue("saved" + i, pum.doesExist("saved" + i));
+            assertTrue("saved" + i, reloaded.doesExist("saved" + i));
+        }
+    }
+
+    public void testReturnedUserIsACopy() throws Exception {
+        BaseUser user = (BaseUser) userManager.getUserByName("user1");
+        user.setHomeDirectory("changed");
+
+        assertEquals("home", userManager.getUserByName("user1").getHomeDirectory());
+    }
+
+    public void testWatchFile() throws Exception {
+        PropertiesUserManagerFactory factory = (PropertiesUserManagerFactory) createUserManagerFactory();
+        factory.setWatchFile(true);
+        PropertiesUserManager pum = (PropertiesUserManager) factory.createUserManager();
+        try {
+            // our own saves are not reloaded
+            BaseUser user = new BaseUser();
+            user.setName("newuser");
+            user.setPassword("newpw");
+            user.setHomeDirectory("newhome");
+            pum.save(user);
+
+            Properties users = new Properties();
+            FileInputStream fis = new FileInputStream(USERS_FILE);
+            try {
+                users.load(fis);
+            } finally {
+                fis.close();
+            }
+            users.setProperty("ftpserver.user.user4.userpassword", "pw4");
+            users.setProperty("ftpserver.user.user4.homedirectory", "home4");
+            FileOutputStream fos = new FileOutputStream(USERS_FILE);
+            try {
+                users.store(fos, null);
+            } finally {
+                fos.close();
+            }
+
+            // the watch service might poll for changes
+            long timeout = System.currentTimeMillis() + 20000;
+            while (!pum.doesExist("user4")
+                    && System.currentTimeMillis() < timeout) {
+                Thread.sleep(50);
+            }
+            assertEquals("home4", pum.getUserByName("user4").getHomeDirectory());
+            assertEquals("newhome", pum.getUserByName("newuser").getHomeDirectory());
+        } finally {
+            pum.dispose();
+        }
+    }
 }
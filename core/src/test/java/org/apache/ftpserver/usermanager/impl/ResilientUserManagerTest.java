@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.ftplet.Authentication;
+import org.apache.ftpserver.ftplet.AuthenticationFailedException;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.usermanager.UserManagerUnavailableException;
+import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class ResilientUserManagerTest extends TestCase {
+
+    private static final long TIMEOUT = 200;
+
+    private static final long OPEN_DURATION = 30000;
+
+    private static final long STALE_TTL = 60000;
+
+    private StubUserManager stub = new StubUserManager();
+
+    private long now = 1000000;
+
+    private ResilientUserManager createUserManager(long callTimeout,
+            int maxConcurrentCalls, long staleTimeToLive) {
+        return new ResilientUserManager(stub, callTimeout, maxConcurrentCalls,
+                3, OPEN_DURATION, staleTimeToLive, 10) {
+            @Override
+            long currentTime() {
+                return now;
+            }
+        };
+    }
+
+    private static Authentication auth(String name, String password) {
+        return new UsernamePasswordAuthentication(name, password);
+    }
+
+    private static void assertUnavailable(UserManager userManager,
+            Authentication auth) throws Exception {
+        try {
+            userManager.authenticate(auth);
+            fail("Must throw UserManagerUnavailableException");
+        } catch (UserManagerUnavailableException e) {
+            // OK
+        }
+    }
+
+    public void testCallsPassedThrough() throws Exception {
+        ResilientUserManager userManager = createUserManager(TIMEOUT, 2, 0);
+
+        assertEquals("user1", userManager.authenticate(auth("user1", "pw1"))
+                .getName());
+        assertNotNull(userManager.getUserByName("user1"));
+        assertNull(userManager.getUserByName("user2"));
+        assertEquals(3, userManager.getCalls());
+        assertEquals(0, userManager.getFailures());
+        assertEquals(ResilientUserManager.CircuitState.CLOSED, userManager
+                .getState());
+    }
+
+    public void testWrongPasswordIsNotAFailure() throws Exception {
+        ResilientUserManager userManager = createUserManager(TIMEOUT, 2, 0);
+
+        for (int i = 0; i < 5; i++) {
+            try {
+                userManager.authenticate(auth("user1", "wrong"));
+                fail("Must throw AuthenticationFailedException");
+            } catch (UserManagerUnavailableException e) {
+                fail("Must not be unavailable");
+            } catch (AuthenticationFailedException e) {
+                // OK
+            }
+        }
+        assertEquals(0, userManager.getFailures());
+        assertEquals(ResilientUserManager.CircuitState.CLOSED, userManager
+                .getState());
+    }
+
+    public void testTimeout() throws Exception {
+        ResilientUserManager userManager = createUserManager(TIMEOUT, 2, 0);
+        stub.block = new CountDownLatch(1);
+        try {
+            long start = System.currentTimeMillis();
+            assertUnavailable(userManager, auth("user1", "pw1"));
+            assertTrue(System.currentTimeMillis() - start < 5000);
+            assertEquals(1, userManager.getTimeouts());
+            assertEquals(1, userManager.getFailures());
+            assertEquals(1, userManager.getConsecutiveFailures());
+        } finally {
+            stub.block.countDown();
+        }
+    }
+
+    public void testCircuitOpensAndRecovers() throws Exception {
+        ResilientUserManager userManager = createUserManager(TIMEOUT, 2, 0);
+        stub.failure = new SQLException("Connection refused");
+
+        for (int i = 0; i < 3; i++) {
+            assertUnavailable(userManager, auth("user1", "pw1"));
+        }
+        assertEquals(3, stub.calls);
+        assertEquals(ResilientUserManager.CircuitState.OPEN, userManager
+                .getState());
+
+        // fails fast without calling the user manager
+        assertUnavailable(userManager, auth("user1", "pw1"));
+        assertEquals(3, stub.calls);
+        assertEquals(1, userManager.getRejectedCalls());
+
+        // the trial call fails, opening the circuit again
+        now += OPEN_DURATION;
+        assertUnavailable(userManager, auth("user1", "pw1"));
+        assertEquals(4, stub.calls);
+        assertEquals(ResilientUserManager.CircuitState.OPEN, userManager
+                .getState());
+        assertUnavailable(userManager, auth("user1", "pw1"));
+        assertEquals(4, stub.calls);
+
+        // the trial call succeeds, closing the circuit
+        now += OPEN_DURATION;
+        stub.failure = null;
+        assertNotNull(userManager.authenticate(auth("user1", "pw1")));
+        assertEquals(ResilientUserManager.CircuitState.CLOSED, userManager
+                .getState());
+        assertEquals(0, userManager.getConsecutiveFailures());
+        assertNotNull(userManager.authenticate(auth("user1", "pw1")));
+        assertEquals(6, stub.calls);
+    }
+
+    public void testCloseCircuit() throws Exception {
+        ResilientUserManager userManager = createUserManager(0, 0, 0);
+        stub.failure = new SQLException("Connection refused");
+        for (int i = 0; i < 3; i++) {
+            assertUnavailable(userManager, auth("user1", "pw1"));
+        }
+        assertEquals("OPEN", userManager.getCircuitState());
+
+        userManager.closeCircuit();
+        stub.failure = null;
+        assertNotNull(userManager.authenticate(auth("user1", "pw1")));
+    }
+
+    public void testBulkhead() throws Exception {
+        final ResilientUserManager userManager = createUserManager(10000, 1,
+                0);
+        stub.block = new CountDownLatch(1);
+        Thread blocked = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    userManager.authenticate(auth("user1", "pw1"));
+                } catch (AuthenticationFailedException e) {
+                    // ignore
+                }
+            }
+        };
+        blocked.start();
+        try {
+            assertTrue(stub.started.await(5, TimeUnit.SECONDS));
+            assertEquals(1, userManager.getActiveCalls());
+
+            assertUnavailable(userManager, auth("user1", "pw1"));
+            assertEquals(1, userManager.getRejectedCalls());
+            // rejected calls are not failures of the user manager
+            assertEquals(0, userManager.getConsecutiveFailures());
+        } finally {
+            stub.block.countDown();
+        }
+        blocked.join(5000);
+
+        assertEquals(0, userManager.getActiveCalls());
+        assertNotNull(userManager.authenticate(auth("user1", "pw1")));
+    }
+
+    public void testStaleFallback() throws Exception {
+        ResilientUserManager userManager = createUserManager(TIMEOUT, 2,
+                STALE_TTL);
+        assertNotNull(userManager.authenticate(auth("user1", "pw1")));
+
+        stub.failure = new SQLException("Connection refused");
+        assertEquals("user1", userManager.authenticate(auth("user1", "pw1"))
+                .getName());
+        assertEquals("user1", userManager.getUserByName("user1").getName());
+        assertEquals(2, userManager.getStaleFallbacks());
+
+        // only the verified password
+        assertUnavailable(userManager, auth("user1", "other"));
+
+        // also while the circuit is open
+        assertEquals(ResilientUserManager.CircuitState.OPEN, userManager
+                .getState());
+        assertNotNull(userManager.authenticate(auth("user1", "pw1")));
+
+        // but not for longer than the time to live
+        now += STALE_TTL;
+        assertUnavailable(userManager, auth("user1", "pw1"));
+    }
+
+    public void testSaveForgetsStaleUser() throws Exception {
+        ResilientUserManager userManager = createUserManager(TIMEOUT, 2,
+                STALE_TTL);
+        assertNotNull(userManager.authenticate(auth("user1", "pw1")));
+        userManager.save(stub.getUserByName("user1"));
+
+        stub.failure = new SQLException("Connection refused");
+        assertUnavailable(userManager, auth("user1", "pw1"));
+    }
+
+    private static class StubUserManager implements UserManager {
+
+        private volatile Exception failure;
+
+        private volatile CountDownLatch block;
+
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        private volatile int calls;
+
+        private void call() throws FtpException {
+            calls++;
+            started.countDown();
+            if (block != null) {
+                try {
+                    block.await();
+                } catch (InterruptedException e) {
+                    throw new FtpException("Interrupted", e);
+                }
+            }
+            if (failure != null) {
+                throw new UserManagerUnavailableException(
+                        "Authentication failed", failure);
+            }
+        }
+
+        private static User createUser(String name) {
+            BaseUser user = new BaseUser();
+            user.setName(name);
+            user.setPassword("pw1");
+            return user;
+        }
+
+        public User authenticate(Authentication authentication)
+                throws AuthenticationFailedException {
+            try {
+                call();
+            } catch (AuthenticationFailedException e) {
+                throw e;
+            } catch (FtpException e) {
+                throw new AuthenticationFailedException(e.getMessage(), e);
+            }
+            UsernamePasswordAuthentication upauth = (UsernamePasswordAuthentication) authentication;
+            if ("user1".equals(upauth.getUsername())
+                    && "pw1".equals(upauth.getPassword())) {
+                return createUser("user1");
+            }
+            throw new AuthenticationFailedException("Authentication failed");
+        }
+
+        public User getUserByName(String name) throws FtpException {
+            call();
+            return "user1".equals(name) ? createUser(name) : null;
+        }
+
+        public boolean doesExist(String name) throws FtpException {
+            return getUserByName(name) != null;
+        }
+
+        public void save(User user) throws FtpException {
+            call();
+        }
+
+        public void delete(String name) throws FtpException {
+            call();
+        }
+
+        public String[] getAllUserNames() throws FtpException {
+            call();
+            return new String[] { "user1" };
+        }
+
+        public String getAdminName() {
+            return "admin";
+        }
+
+        public boolean isAdmin(String name) {
+            return "admin".equals(name);
+        }
+    }
+}
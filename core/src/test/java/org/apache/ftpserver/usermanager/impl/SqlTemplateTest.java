@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.FtpServerConfigurationException;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class SqlTemplateTest extends TestCase {
+
+    public void testQuotedAndUnquotedPlaceholders() {
+        SqlTemplate template = new SqlTemplate(
+                "UPDATE FTP_USER SET userpassword='{userpassword}',enableflag={enableflag} WHERE userid='{userid}'");
+
+        assertEquals(
+                "UPDATE FTP_USER SET userpassword=?,enableflag=? WHERE userid=?",
+                template.getSql());
+        assertEquals(Arrays.asList("userpassword", "enableflag", "userid"),
+                template.getParameterNames());
+    }
+
+    public void testRepeatedPlaceholder() {
+        SqlTemplate template = new SqlTemplate(
+                "SELECT userid FROM FTP_USER WHERE userid='{userid}' OR alias='{userid}'");
+
+        assertEquals("SELECT userid FROM FTP_USER WHERE userid=? OR alias=?",
+                template.getSql());
+        assertEquals(Arrays.asList("userid", "userid"), template
+                .getParameterNames());
+    }
+
+    public void testLiteralsKept() {
+        SqlTemplate template = new SqlTemplate(
+                "SELECT userid FROM FTP_USER WHERE userid='{userid}' AND userid='admin' AND x='it''s {' AND y = '{}'");
+
+        assertEquals(
+                "SELECT userid FROM FTP_USER WHERE userid=? AND userid='admin' AND x='it''s {' AND y = '{}'",
+                template.getSql());
+        assertEquals(Arrays.asList("userid"), template.getParameterNames());
+    }
+
+    public void testNoPlaceholders() {
+        SqlTemplate template = new SqlTemplate(
+                "SELECT userid FROM FTP_USER ORDER BY userid");
+
+        assertEquals("SELECT userid FROM FTP_USER ORDER BY userid", template
+                .getSql());
+        assertTrue(template.getParameterNames().isEmpty());
+    }
+
+    public void testPlaceholderInLongerLiteral() {
+        try {
+            new SqlTemplate("SELECT userid FROM FTP_USER WHERE userid LIKE '{userid}%'");
+            fail("Must throw FtpServerConfigurationException");
+        } catch (FtpServerConfigurationException e) {
+            // OK
+        }
+    }
+}
@@ -29,7 +29,9 @@ import org.apache.ftpserver.ftplet.AuthenticationFailedException;
 import org.apache.ftpserver.ftplet.Authority;
 import org.apache.ftpserver.ftplet.User;
 import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.usermanager.BatchUserManager;
 import org.apache.ftpserver.usermanager.UserManagerFactory;
+import org.apache.ftpserver.usermanager.UserVisitor;
 import org.apache.ftpserver.usermanager.UsernamePasswordAuthentication;
 
 /**
@@ -402,4 +404,53 @@ public abstract class UserManagerTestTemplate extends TestCase {
         assertEquals(0, getMaxLoginPerIP(actualUser));
         assertEquals(0, getMaxUploadRate(actualUser));
     }
+
+    public void testSaveAllWithExistingUser() throws Exception {
+        BaseUser existing = new BaseUser();
+        existing.setName("user2");
+        existing.setHomeDirectory("newhome");
+        List<User> users = new ArrayList<User>();
+        users.add(existing);
+        for (int i = 0; i < 40; i++) {
+            BaseUser user = new BaseUser();
+            user.setName("batch" + i);
+            user.setPassword("pw" + i);
+            users.add(user);
+        }
+
+        ((BatchUserManager) userManager).saveAll(users);
+
+        // keeps the password when not provided
+        assertEquals("newhome", userManager.authenticate(
+                new UsernamePasswordAuthentication("user2", "pw2"))
+                .getHomeDirectory());
+        for (int i = 0; i < 40; i++) {
+            assertNotNull(userManager
+                    .authenticate(new UsernamePasswordAuthentication("batch"
+                            + i, "pw" + i)));
+        }
+    }
+
+    public void testForEachUser() throws Exception {
+        final List<User> users = new ArrayList<User>();
+        ((BatchUserManager) userManager).forEachUser(new UserVisitor() {
+            public void visit(User user) {
+                users.add(user);
+            }
+        });
+
+        String[] names = userManager.getAllUserNames();
+        assertEquals(names.length, users.size());
+        for (int i = 0; i < names.length; i++) {
+            assertEquals(names[i], users.get(i).getName());
+            assertNull("Password must not be set", users.get(i).getPassword());
+        }
+        for (User user : users) {
+            if (user.getName().equals("user2")) {
+                assertEquals(2, user.getMaxIdleTime());
+                assertEquals(4, getMaxLoginPerIP(user));
+                assertNotNull(user.authorize(new WriteRequest()));
+            }
+        }
+    }
 }